@@ -1,4 +1,4 @@
 sudo docker pull mmorrell/serum-data
 sudo docker stop blue
 sudo docker container prune -f
-sudo docker run --name blue -d -p 8080:8080 mmorrell/serum-data:latest
\ No newline at end of file
+sudo docker run --name blue -d -v /home/serum-data/journal/blue:/data/journal -v /home/serum-data/state/blue:/data/state -p 8080:8080 mmorrell/serum-data:latest
\ No newline at end of file
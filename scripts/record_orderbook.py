@@ -0,0 +1,56 @@
+#!/usr/bin/env python3
+# Records a market's raw accounts from mainnet for SlabDecoderTest: the market, its bids/asks slabs and both mints,
+# all fetched in one getMultipleAccounts call so they come from the same slot.
+#
+# usage: scripts/record_orderbook.py [market] [rpc url] > src/test/resources/orderbook_accounts.json
+import base64
+import json
+import sys
+import urllib.request
+
+MARKET = sys.argv[1] if len(sys.argv) > 1 else "8BnEgHoWFysVcuFFX7QztDmzuH8r5ZFvyP3sYwn1XTh6"
+RPC_URL = sys.argv[2] if len(sys.argv) > 2 else "https://api.mainnet-beta.solana.com"
+ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz"
+
+# Market account offsets, see serum's Market.readMarket
+BASE_MINT_OFFSET = 53
+QUOTE_MINT_OFFSET = 85
+BIDS_OFFSET = 285
+ASKS_OFFSET = 317
+
+
+def rpc(method, params):
+    request = urllib.request.Request(
+        RPC_URL,
+        data=json.dumps({"jsonrpc": "2.0", "id": 1, "method": method, "params": params}).encode(),
+        headers={"Content-Type": "application/json"},
+    )
+    with urllib.request.urlopen(request, timeout=30) as response:
+        return json.load(response)["result"]
+
+
+def base58(key):
+    number = int.from_bytes(key, "big")
+    encoded = ""
+    while number > 0:
+        number, remainder = divmod(number, 58)
+        encoded = ALPHABET[remainder] + encoded
+    return "1" * (len(key) - len(key.lstrip(b"\0"))) + encoded
+
+
+market = base64.b64decode(rpc("getAccountInfo", [MARKET, {"encoding": "base64"}])["value"]["data"][0])
+keys = {
+    "market": MARKET,
+    "bids": base58(market[BIDS_OFFSET:BIDS_OFFSET + 32]),
+    "asks": base58(market[ASKS_OFFSET:ASKS_OFFSET + 32]),
+    "baseMint": base58(market[BASE_MINT_OFFSET:BASE_MINT_OFFSET + 32]),
+    "quoteMint": base58(market[QUOTE_MINT_OFFSET:QUOTE_MINT_OFFSET + 32]),
+}
+result = rpc("getMultipleAccounts", [list(keys.values()), {"encoding": "base64"}])
+
+json.dump({
+    "slot": result["context"]["slot"],
+    "keys": keys,
+    "accounts": {name: account["data"][0] for name, account in zip(keys, result["value"])},
+}, sys.stdout, indent=2)
+print()
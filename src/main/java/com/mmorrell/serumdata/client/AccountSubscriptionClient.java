@@ -0,0 +1,183 @@
+package com.mmorrell.serumdata.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal Solana websocket client for accountSubscribe streams.
+ * Subscriptions are dropped on disconnect, the owner is expected to call connect() and subscribe() again.
+ */
+@Slf4j
+public class AccountSubscriptionClient extends WebSocketListener {
+
+    public interface Listener {
+        void onAccountNotification(PublicKey account, byte[] data, long slot);
+
+        void onSubscribed(PublicKey account);
+
+        void onDisconnected();
+    }
+
+    private final OkHttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final String endpoint;
+    private final Listener listener;
+
+    private final AtomicLong requestId = new AtomicLong();
+    // <requestId, account>
+    private final Map<Long, PublicKey> pendingSubscriptions = new ConcurrentHashMap<>();
+    // <subscriptionId, account>
+    private final Map<Long, PublicKey> subscriptions = new ConcurrentHashMap<>();
+    private final Set<PublicKey> requestedAccounts = ConcurrentHashMap.newKeySet();
+    private volatile WebSocket webSocket;
+
+    public AccountSubscriptionClient(final OkHttpClient httpClient,
+                                     final ObjectMapper objectMapper,
+                                     final String endpoint,
+                                     final Listener listener) {
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.endpoint = endpoint;
+        this.listener = listener;
+    }
+
+    /**
+     * Opens the websocket if it isn't already open or connecting. Messages sent before the
+     * handshake completes are queued by OkHttp.
+     */
+    public synchronized void connect() {
+        if (webSocket != null) {
+            return;
+        }
+
+        Request request = new Request.Builder()
+                .url(endpoint)
+                .build();
+        webSocket = httpClient.newWebSocket(request, this);
+    }
+
+    public synchronized void close() {
+        if (webSocket != null) {
+            webSocket.close(1000, "shutdown");
+        }
+        reset();
+    }
+
+    public boolean isSubscribed(PublicKey account) {
+        return subscriptions.containsValue(account);
+    }
+
+    public void accountSubscribe(PublicKey account) {
+        WebSocket socket = webSocket;
+        if (socket == null || !requestedAccounts.add(account)) {
+            return;
+        }
+
+        long id = requestId.incrementAndGet();
+        Map<String, Object> request = Map.of(
+                "jsonrpc", "2.0",
+                "id", id,
+                "method", "accountSubscribe",
+                "params", new Object[]{
+                        account.toBase58(),
+                        Map.of(
+                                "encoding", "base64",
+                                "commitment", "confirmed"
+                        )
+                }
+        );
+
+        try {
+            pendingSubscriptions.put(id, account);
+            socket.send(objectMapper.writeValueAsString(request));
+        } catch (Exception ex) {
+            pendingSubscriptions.remove(id);
+            requestedAccounts.remove(account);
+            log.error("Unable to subscribe to " + account.toBase58() + ": " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(@NotNull WebSocket webSocket, @NotNull String text) {
+        try {
+            JsonNode message = objectMapper.readTree(text);
+
+            if (message.has("id")) {
+                // Response to accountSubscribe
+                PublicKey account = pendingSubscriptions.remove(message.get("id").asLong());
+                if (account == null) {
+                    return;
+                }
+
+                if (message.has("result")) {
+                    subscriptions.put(message.get("result").asLong(), account);
+                    listener.onSubscribed(account);
+                } else {
+                    requestedAccounts.remove(account);
+                    log.error("accountSubscribe rejected for " + account.toBase58() + ": " + message.path("error"));
+                }
+            } else if ("accountNotification".equals(message.path("method").asText())) {
+                JsonNode params = message.path("params");
+                PublicKey account = subscriptions.get(params.path("subscription").asLong());
+                if (account == null) {
+                    return;
+                }
+
+                JsonNode result = params.path("result");
+                long slot = result.path("context").path("slot").asLong();
+                byte[] data = Base64.getDecoder().decode(
+                        result.path("value").path("data").path(0).asText()
+                );
+
+                listener.onAccountNotification(account, data, slot);
+            }
+        } catch (Exception ex) {
+            // Case: malformed message or decode failure, keep the stream alive
+            log.error("Unable to process websocket message: " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public void onClosing(@NotNull WebSocket webSocket, int code, @NotNull String reason) {
+        webSocket.close(1000, null);
+    }
+
+    @Override
+    public void onClosed(@NotNull WebSocket webSocket, int code, @NotNull String reason) {
+        log.warn("Websocket closed: " + code + " " + reason);
+        disconnected(webSocket);
+    }
+
+    @Override
+    public void onFailure(@NotNull WebSocket webSocket, @NotNull Throwable t, Response response) {
+        log.warn("Websocket failure: " + t.getMessage());
+        disconnected(webSocket);
+    }
+
+    private synchronized void disconnected(WebSocket closedSocket) {
+        // Ignore callbacks from a socket that was already replaced
+        if (closedSocket != webSocket) {
+            return;
+        }
+
+        reset();
+        listener.onDisconnected();
+    }
+
+    private void reset() {
+        webSocket = null;
+        pendingSubscriptions.clear();
+        subscriptions.clear();
+        requestedAccounts.clear();
+    }
+}
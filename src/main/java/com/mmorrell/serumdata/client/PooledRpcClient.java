@@ -0,0 +1,229 @@
+package com.mmorrell.serumdata.client;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+import org.p2p.solanaj.rpc.RpcClient;
+import org.p2p.solanaj.rpc.RpcException;
+import org.p2p.solanaj.rpc.types.RpcRequest;
+import org.p2p.solanaj.rpc.types.RpcResponse;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RpcClient over several RPC nodes. Each call goes to the healthiest node (EWMA latency, weighted by
+ * error rate), fails over to the next one on error, and is hedged to a second node if the first is
+ * slower than its usual latency percentile. Nodes failing repeatedly are ejected for a cooldown.
+ * <p>
+ * getApi() calls route through call(), so this is a drop-in for a single-endpoint RpcClient. Requests are
+ * encoded like RpcClient's, but sent asynchronously so the losing hedge's HTTP call is cancelled, not left
+ * running until its read timeout. At most {@value #MAX_CONCURRENT_CALLS} calls run at once, the rest queue.
+ */
+@Slf4j
+public class PooledRpcClient extends RpcClient {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long MIN_HEDGE_DELAY_MS = 50;
+    private static final long MAX_HEDGE_DELAY_MS = 2_000;
+    private static final int MAX_CONCURRENT_CALLS = 64;
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private final List<RpcEndpoint> endpoints;
+    // 0 disables hedging
+    private final double hedgePercentile;
+    private final OkHttpClient httpClient;
+    private final Moshi moshi = new Moshi.Builder().build();
+    private final JsonAdapter<RpcRequest> requestAdapter = moshi.adapter(RpcRequest.class);
+
+    /**
+     * @param urls RPC endpoints, at least one
+     * @param timeoutSeconds read timeout of each endpoint
+     * @param hedgePercentile latency percentile of the chosen node after which a hedged request is sent, 0 to disable
+     */
+    public PooledRpcClient(List<String> urls, int timeoutSeconds, double hedgePercentile) {
+        super(urls.get(0), timeoutSeconds);
+        this.endpoints = urls.stream()
+                .map(RpcEndpoint::new)
+                .toList();
+        this.hedgePercentile = hedgePercentile;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                MAX_CONCURRENT_CALLS,
+                MAX_CONCURRENT_CALLS,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "RpcPool-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        Dispatcher dispatcher = new Dispatcher(executor);
+        dispatcher.setMaxRequests(MAX_CONCURRENT_CALLS);
+        dispatcher.setMaxRequestsPerHost(MAX_CONCURRENT_CALLS);
+        this.httpClient = new OkHttpClient.Builder()
+                .readTimeout(timeoutSeconds, TimeUnit.SECONDS)
+                .dispatcher(dispatcher)
+                .build();
+    }
+
+    @Override
+    public <T> T call(String method, List<Object> params, Class<T> clazz) throws RpcException {
+        final List<RpcEndpoint> ranked = rankEndpoints();
+        final JsonAdapter<RpcResponse<T>> responseAdapter =
+                moshi.adapter(Types.newParameterizedType(RpcResponse.class, clazz));
+        final RequestBody body = RequestBody.create(requestAdapter.toJson(new RpcRequest(method, params)), JSON);
+        // Attempts in the order they finish
+        final BlockingQueue<Attempt<T>> completed = new LinkedBlockingQueue<>();
+        final List<Attempt<T>> inFlight = new ArrayList<>();
+        final int maxAttempts = Math.min(MAX_ATTEMPTS, ranked.size());
+
+        int attempts = 0;
+        boolean hedged = false;
+        RpcException lastError = null;
+
+        inFlight.add(send(ranked.get(attempts++), method, body, responseAdapter, completed));
+
+        try {
+            while (!inFlight.isEmpty()) {
+                long hedgeDelay = !hedged && attempts < maxAttempts ? getHedgeDelay(ranked.get(0)) : -1;
+                Attempt<T> done = hedgeDelay > 0 ?
+                        completed.poll(hedgeDelay, TimeUnit.MILLISECONDS) :
+                        completed.take();
+
+                if (done == null) {
+                    // Still waiting past the usual latency, race a second node
+                    hedged = true;
+                    RpcEndpoint hedgeEndpoint = ranked.get(attempts++);
+                    log.debug("Hedging " + method + " to " + hedgeEndpoint.getUrl());
+                    inFlight.add(send(hedgeEndpoint, method, body, responseAdapter, completed));
+                    continue;
+                }
+
+                inFlight.remove(done);
+                if (done.error == null) {
+                    // Losers are cancelled, their connections freed right away
+                    inFlight.forEach(attempt -> attempt.call.cancel());
+                    return done.result;
+                }
+
+                lastError = done.error;
+                // Fail over if nothing else is still running
+                if (inFlight.isEmpty() && attempts < maxAttempts) {
+                    inFlight.add(send(ranked.get(attempts++), method, body, responseAdapter, completed));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            inFlight.forEach(attempt -> attempt.call.cancel());
+            throw new RpcException("Interrupted during " + method);
+        }
+
+        throw lastError;
+    }
+
+    public List<RpcEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    // HTTP calls running now, hedge losers included until cancelled
+    public int getRunningCallCount() {
+        return httpClient.dispatcher().runningCallsCount();
+    }
+
+    // Available nodes best first, then ejected ones (soonest to recover first) as a last resort
+    private List<RpcEndpoint> rankEndpoints() {
+        long now = System.currentTimeMillis();
+        List<RpcEndpoint> available = new ArrayList<>(endpoints.size());
+        List<RpcEndpoint> ejected = new ArrayList<>();
+        for (RpcEndpoint endpoint : endpoints) {
+            (endpoint.isAvailable(now) ? available : ejected).add(endpoint);
+        }
+
+        available.sort(Comparator.comparingDouble(RpcEndpoint::getScore));
+        ejected.sort(Comparator.comparingLong(RpcEndpoint::getOpenUntil));
+        available.addAll(ejected);
+        return available;
+    }
+
+    private long getHedgeDelay(RpcEndpoint endpoint) {
+        if (hedgePercentile <= 0) {
+            return -1;
+        }
+
+        long latency = endpoint.getLatencyPercentile(hedgePercentile);
+        return latency < 0 ? MAX_HEDGE_DELAY_MS : Math.max(MIN_HEDGE_DELAY_MS, Math.min(MAX_HEDGE_DELAY_MS, latency));
+    }
+
+    /**
+     * Starts the call on the endpoint, the attempt is added to completed once it succeeds or fails.
+     */
+    private <T> Attempt<T> send(RpcEndpoint endpoint, String method, RequestBody body,
+                                JsonAdapter<RpcResponse<T>> responseAdapter, BlockingQueue<Attempt<T>> completed) {
+        final Request request = new Request.Builder()
+                .url(endpoint.getUrl())
+                .post(body)
+                .build();
+        final Attempt<T> attempt = new Attempt<>(httpClient.newCall(request));
+        final long start = System.currentTimeMillis();
+
+        attempt.call.enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try (response) {
+                    ResponseBody responseBody = response.body();
+                    RpcResponse<T> rpcResponse = responseBody == null ? null : responseAdapter.fromJson(responseBody.source());
+                    if (rpcResponse == null) {
+                        throw new IOException("HTTP " + response.code() + ", no JSON-RPC response");
+                    }
+                    if (rpcResponse.getError() != null) {
+                        fail(new RpcException(rpcResponse.getError().getMessage()));
+                        return;
+                    }
+                    endpoint.recordSuccess(System.currentTimeMillis() - start);
+                    attempt.result = rpcResponse.getResult();
+                    completed.add(attempt);
+                } catch (IOException | RuntimeException ex) {
+                    fail(new RpcException(ex.getMessage()));
+                }
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException ex) {
+                fail(new RpcException(ex.getMessage()));
+            }
+
+            private void fail(RpcException error) {
+                long end = System.currentTimeMillis();
+                // A cancelled hedge loser isn't the node's fault
+                if (!attempt.call.isCanceled()) {
+                    endpoint.recordFailure(end - start, end);
+                    log.debug("RPC " + method + " failed on " + endpoint.getUrl() + ": " + error.getMessage());
+                }
+                attempt.error = error;
+                completed.add(attempt);
+            }
+        });
+        return attempt;
+    }
+
+    // One node's try at a call, result or error is set before it's added to the completed queue
+    private static class Attempt<T> {
+        private final Call call;
+        private volatile T result;
+        private volatile RpcException error;
+
+        private Attempt(Call call) {
+            this.call = call;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.mmorrell.serumdata.client;
+
+import java.util.Arrays;
+
+/**
+ * One RPC node in a PooledRpcClient, with its latency/error history and circuit breaker state.
+ */
+public class RpcEndpoint {
+
+    private static final double EWMA_ALPHA = 0.2;
+    private static final int LATENCY_WINDOW = 64;
+    // Error rate weighs in as extra latency when ranking
+    private static final double ERROR_PENALTY = 4.0;
+
+    // Circuit breaker: ejected after this many consecutive failures, probed again after the cooldown
+    static final int FAILURE_THRESHOLD = 5;
+    static final long OPEN_CIRCUIT_MS = 10_000;
+
+    private final String url;
+
+    private double latencyEwmaMs;
+    private double errorRateEwma;
+    private long requests, failures;
+    // Ring of the latest latencies, latencyIndex is the next slot to write
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int latencyIndex;
+    // Samples in the ring, at most LATENCY_WINDOW
+    private int latencyCount;
+    private int consecutiveFailures;
+    private long openUntil;
+
+    RpcEndpoint(String url) {
+        this.url = url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    synchronized void recordSuccess(long latencyMs) {
+        requests++;
+        latencyEwmaMs = requests == 1 ? latencyMs : EWMA_ALPHA * latencyMs + (1 - EWMA_ALPHA) * latencyEwmaMs;
+        errorRateEwma = (1 - EWMA_ALPHA) * errorRateEwma;
+        latencies[latencyIndex] = latencyMs;
+        latencyIndex = (latencyIndex + 1) % LATENCY_WINDOW;
+        latencyCount = Math.min(latencyCount + 1, LATENCY_WINDOW);
+        consecutiveFailures = 0;
+        openUntil = 0;
+    }
+
+    synchronized void recordFailure(long latencyMs, long now) {
+        requests++;
+        failures++;
+        // Slow failures (timeouts) also count as latency
+        latencyEwmaMs = Math.max(latencyEwmaMs, EWMA_ALPHA * latencyMs + (1 - EWMA_ALPHA) * latencyEwmaMs);
+        errorRateEwma = EWMA_ALPHA + (1 - EWMA_ALPHA) * errorRateEwma;
+        consecutiveFailures++;
+        if (consecutiveFailures >= FAILURE_THRESHOLD) {
+            openUntil = now + OPEN_CIRCUIT_MS;
+        }
+    }
+
+    // Closed circuit, or open but cooled down and due for a probe
+    synchronized boolean isAvailable(long now) {
+        return now >= openUntil;
+    }
+
+    // Lower is better, endpoints without samples score 0 so they get tried
+    synchronized double getScore() {
+        return latencyEwmaMs * (1 + ERROR_PENALTY * errorRateEwma);
+    }
+
+    /**
+     * Latency percentile over the recent window, used as the hedge threshold.
+     *
+     * @param percentile 0.0 - 1.0
+     * @return latency in ms, -1 without samples
+     */
+    public synchronized long getLatencyPercentile(double percentile) {
+        final int count = latencyCount;
+        if (count == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return sorted[Math.max(0, Math.min(count - 1, (int) Math.ceil(percentile * count) - 1))];
+    }
+
+    public synchronized double getLatencyEwmaMs() {
+        return latencyEwmaMs;
+    }
+
+    public synchronized double getErrorRate() {
+        return errorRateEwma;
+    }
+
+    public synchronized long getRequests() {
+        return requests;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    public synchronized boolean isCircuitOpen() {
+        return openUntil > System.currentTimeMillis();
+    }
+
+    synchronized long getOpenUntil() {
+        return openUntil;
+    }
+}
@@ -1,9 +1,13 @@
 package com.mmorrell.serumdata.config;
 
+import com.mmorrell.serumdata.client.PooledRpcClient;
+import com.mmorrell.serumdata.util.ResponseCache;
 import com.mmorrell.serumdata.util.RpcUtil;
+import com.mmorrell.serumdata.util.TokenImageCache;
 import okhttp3.OkHttpClient;
 import org.p2p.solanaj.rpc.RpcClient;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
@@ -16,6 +20,8 @@ import org.springframework.web.servlet.view.BeanNameViewResolver;
 import org.springframework.web.servlet.view.InternalResourceViewResolver;
 import org.springframework.web.servlet.view.JstlView;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.concurrent.TimeUnit;
 
 @EnableWebMvc
@@ -24,6 +30,8 @@ import java.util.concurrent.TimeUnit;
 public class WebConfig implements WebMvcConfigurer {
 
     private static final int HTTP_TIMEOUT_SECONDS = 30;
+    // A second node is raced once a call runs longer than this percentile of the first node's latency
+    private static final double RPC_HEDGE_PERCENTILE = 0.95;
 
     @Bean
     public ViewResolver viewResolver() {
@@ -56,11 +64,11 @@ public class WebConfig implements WebMvcConfigurer {
     }
 
     /**
-     * Used for updating market listings every 5 minutes.
+     * Shared by all managers. Routes across every configured endpoint, see PooledRpcClient.
      */
     @Bean
     public RpcClient backgroundRpcClient() {
-        return new RpcClient(RpcUtil.getPublicEndpoint(), HTTP_TIMEOUT_SECONDS);
+        return new PooledRpcClient(RpcUtil.getPublicEndpoints(), HTTP_TIMEOUT_SECONDS, RPC_HEDGE_PERCENTILE);
     }
 
     @Bean
@@ -76,4 +84,24 @@ public class WebConfig implements WebMvcConfigurer {
         // You can configure your ObjectMapper here if needed
     }
 
-}
\ No newline at end of file
+    /**
+     * Serialized API responses, see ApiController.
+     */
+    @Bean
+    public ResponseCache responseCache(ObjectMapper objectMapper) {
+        return new ResponseCache(objectMapper);
+    }
+
+    /**
+     * Token logos, in memory and on disk, see TokenManager.
+     */
+    @Bean
+    public TokenImageCache tokenImageCache(OkHttpClient okHttpClient,
+                                           @Value("${openserum.token.image-dir:images}") String directory,
+                                           @Value("${openserum.token.image-memory-bytes:33554432}") long maxMemoryBytes,
+                                           @Value("${openserum.token.image-fetch-concurrency:8}") int maxConcurrentFetches)
+            throws IOException {
+        return new TokenImageCache(okHttpClient, Path.of(directory), maxMemoryBytes, maxConcurrentFetches);
+    }
+
+}
@@ -1,29 +1,55 @@
 package com.mmorrell.serumdata.controller;
 
 import com.mmorrell.serum.model.*;
-import com.mmorrell.serumdata.manager.IdentityManager;
+import com.mmorrell.serumdata.manager.CandleManager;
 import com.mmorrell.serumdata.manager.MarketManager;
+import com.mmorrell.serumdata.manager.MarketResponseManager;
+import com.mmorrell.serumdata.manager.MarketStreamManager;
+import com.mmorrell.serumdata.manager.TickerManager;
 import com.mmorrell.serumdata.manager.TokenManager;
+import com.mmorrell.serumdata.manager.TokenSpriteManager;
+import com.mmorrell.serumdata.model.BookGrouping;
+import com.mmorrell.serumdata.model.CacheStats;
+import com.mmorrell.serumdata.model.Candle;
+import com.mmorrell.serumdata.model.CandleResolution;
 import com.mmorrell.serumdata.model.MarketDepth;
-import com.mmorrell.serumdata.model.SerumOrder;
-import com.mmorrell.serumdata.model.TradeHistoryEvent;
-import com.mmorrell.serumdata.util.MarketUtil;
+import com.mmorrell.serumdata.model.MarketDiff;
+import com.mmorrell.serumdata.model.MarketRegistry;
+import com.mmorrell.serumdata.model.MarketSnapshot;
+import com.mmorrell.serumdata.model.OrderBookDiff;
+import com.mmorrell.serumdata.model.OrderBookSide;
+import com.mmorrell.serumdata.model.SnapshotField;
+import com.mmorrell.serumdata.model.TradeTape;
+import com.mmorrell.serumdata.util.Base58Cache;
+import com.mmorrell.serumdata.util.MarketDepthEncoder;
+import com.mmorrell.serumdata.util.ResponseCache;
 import org.p2p.solanaj.core.PublicKey;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 
 @RestController
 public class ApiController {
 
     private final TokenManager tokenManager;
     private final MarketManager marketManager;
-    private final IdentityManager identityManager;
+    private final CandleManager candleManager;
+    private final MarketResponseManager marketResponseManager;
+    private final MarketStreamManager marketStreamManager;
+    private final TickerManager tickerManager;
+    private final TokenSpriteManager tokenSpriteManager;
+    private final ResponseCache responseCache;
 
     // Cache headers
     private final static String CACHE_CONTROL_HEADER_NAME = "Cache-Control";
@@ -36,26 +62,55 @@ public class ApiController {
             CACHE_HEADER_VALUE,
             CACHE_MAX_DURATION_SECONDS
     );
+    // Versioned responses: the CDN keeps them, but revalidates each request by ETag
+    private final static String VERSIONED_CACHE_HEADER_VALUE = "no-cache";
+
+    private final static String ACCEL_BUFFERING_HEADER_NAME = "X-Accel-Buffering";
 
     // Called on startup, loads our caches first etc
     // Auto-injected beans created by Component annotation
     public ApiController(TokenManager tokenManager,
                          MarketManager marketManager,
-                         IdentityManager identityManager) {
+                         CandleManager candleManager,
+                         MarketResponseManager marketResponseManager,
+                         MarketStreamManager marketStreamManager,
+                         TickerManager tickerManager,
+                         TokenSpriteManager tokenSpriteManager,
+                         ResponseCache responseCache) {
         this.tokenManager = tokenManager;
         this.marketManager = marketManager;
-        this.identityManager = identityManager;
+        this.candleManager = candleManager;
+        this.marketResponseManager = marketResponseManager;
+        this.marketStreamManager = marketStreamManager;
+        this.tickerManager = tickerManager;
+        this.tokenSpriteManager = tokenSpriteManager;
+        this.responseCache = responseCache;
     }
 
     @GetMapping(value = "/api/serum/token/{tokenId}")
-    public List<Map<String, Object>> getMarketsByBaseMint(@PathVariable String tokenId, HttpServletResponse response) {
-        response.addHeader(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED);
-        response.addHeader(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
+    public ResponseEntity<byte[]> getMarketsByBaseMint(@PathVariable String tokenId, HttpServletRequest request) {
+        final PublicKey tokenMint = new PublicKey(tokenId);
+        final MarketRegistry marketRegistry = marketManager.getMarketRegistry();
+        final List<Market> markets = marketRegistry.getMarketsByTokenMint(tokenMint);
+        if (markets.isEmpty()) {
+            return toResponse(Collections.emptyList());
+        }
+
+        // Only changes with the market generation, or token names loaded since
+        return toCachedResponse(
+                request,
+                responseCache.get(
+                        "token/" + tokenId,
+                        List.of(marketRegistry, tokenManager.getRegistryGeneration()),
+                        0,
+                        () -> convertToMarketList(tokenMint, markets)
+                )
+        );
+    }
 
-        // return a list of Maps, similar to getMarket, instead of a direct list of Markets.
-        List<Map<String, Object>> results = new ArrayList<>();
-        PublicKey tokenMint = new PublicKey(tokenId);
-        List<Market> markets = marketManager.getMarketsByTokenMint(tokenMint);
+    // return a list of Maps, similar to getMarket, instead of a direct list of Markets.
+    private List<Map<String, Object>> convertToMarketList(PublicKey tokenMint, List<Market> markets) {
+        List<Map<String, Object>> results = new ArrayList<>(markets.size());
 
         // get total deposits, for percentage ranking
         long totalDeposits = 0;
@@ -87,250 +142,387 @@ public class ApiController {
      * @return map with market metadata
      */
     @GetMapping(value = "/api/serum/market/{marketId}")
-    public Map<String, Object> getMarket(@PathVariable String marketId, HttpServletResponse response) {
-        response.addHeader(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED);
-        response.addHeader(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
-
+    public ResponseEntity<byte[]> getMarket(@PathVariable String marketId, HttpServletRequest request) {
         final Optional<Market> market = marketManager.getMarketById(marketId);
 
         if (market.isEmpty()) {
-            return Collections.emptyMap();
+            return toResponse(Collections.emptyMap());
         }
 
-        return convertMarketToMap(market.get());
+        return toCachedResponse(request, getMarketResponse(marketId, market.get()));
     }
 
-    @GetMapping(value = "/api/serum/market/{marketId}/bids")
-    public List<SerumOrder> getMarketBids(@PathVariable String marketId, HttpServletResponse response) {
-        response.addHeader(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED);
-        response.addHeader(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
-
-        final PublicKey marketPublicKey = PublicKey.valueOf(marketId);
-        final Optional<OrderBook> orderBook = marketManager.getCachedBidOrderBook(marketPublicKey);
+    /**
+     * Market, bids, asks, depth and tradeHistory (same bodies as those endpoints) of one snapshot in a
+     * single response, so all sections are from the same slots.
+     * @param marketId serum market id
+     * @param fields comma separated sections to include, default all
+     * @return JSON object with the snapshot's slots and one member per section
+     */
+    @GetMapping(value = "/api/serum/market/{marketId}/snapshot")
+    public ResponseEntity<byte[]> getMarketSnapshot(@PathVariable String marketId,
+                                                    @RequestParam(required = false) String fields,
+                                                    HttpServletRequest request) {
+        final Optional<Market> market = marketManager.getMarketById(marketId);
+        if (market.isEmpty()) {
+            return toResponse(Collections.emptyMap());
+        }
 
-        if (orderBook.isPresent()) {
-            List<SerumOrder> serumOrders = MarketUtil.convertOrderBookToSerumOrders(orderBook.get(), true);
+        final PublicKey marketPubkey = market.get().getOwnAddress();
+        final Optional<MarketSnapshot> snapshot = getRequestedSnapshot(marketPubkey);
+        if (snapshot.isEmpty()) {
+            return toResponse(Collections.emptyMap());
+        }
 
-            // Calculate aggregate percentages for each quote, add to metadata
-            float aggregateNotional = serumOrders.stream()
-                    .map(order -> order.getQuantity() * order.getPrice())
-                    .reduce(0f, Float::sum);
+        return toCachedResponse(
+                request,
+                marketResponseManager.getSnapshot(
+                        marketId,
+                        snapshot.get(),
+                        marketManager.getTradeTape(marketPubkey),
+                        getMarketResponse(marketId, market.get()),
+                        SnapshotField.parse(fields)
+                )
+        );
+    }
 
-            float currentTotal = 0.0f;
-            for (SerumOrder order : serumOrders) {
-                float notional = order.getPrice() * order.getQuantity();
-                currentTotal += notional;
-                order.addMetadata("percent", currentTotal / aggregateNotional);
-            }
+    /**
+     * Bids best first, one row per order with its owner. With levels, tick or bps, aggregated price levels
+     * instead, without owners.
+     * @param levels number of best levels to return
+     * @param tick price bucket size, e.g. 0.01
+     * @param bps price bucket size in basis points of the midpoint, if no tick is given
+     */
+    @GetMapping(value = "/api/serum/market/{marketId}/bids")
+    public ResponseEntity<byte[]> getMarketBids(@PathVariable String marketId,
+                                                 @RequestParam(required = false) Integer levels,
+                                                 @RequestParam(required = false) Double tick,
+                                                 @RequestParam(required = false) Double bps,
+                                                 HttpServletRequest request) {
+        final PublicKey marketPublicKey = PublicKey.valueOf(marketId);
+        final Optional<MarketSnapshot> snapshot = getRequestedSnapshot(marketPublicKey);
 
+        if (snapshot.isEmpty()) {
+            return toResponse(Collections.emptyList());
+        }
 
-            identityManager.reverseOwnerLookup(serumOrders);
-            return serumOrders;
-        } else {
-            return Collections.emptyList();
+        final Optional<BookGrouping> grouping = BookGrouping.of(levels, tick, bps);
+        if (grouping.isPresent()) {
+            return toCachedResponse(
+                    request,
+                    marketResponseManager.getGroupedOrders(snapshot.get(), true, grouping.get())
+            );
         }
+        return toCachedResponse(request, marketResponseManager.getBids(marketId, snapshot.get()));
     }
 
+    /**
+     * Asks best first, one row per order with its owner. With levels, tick or bps, aggregated price levels
+     * instead, without owners.
+     * @param levels number of best levels to return
+     * @param tick price bucket size, e.g. 0.01
+     * @param bps price bucket size in basis points of the midpoint, if no tick is given
+     */
     @GetMapping(value = "/api/serum/market/{marketId}/asks")
-    public List<SerumOrder> getMarketAsks(@PathVariable String marketId, HttpServletResponse response) {
-        response.addHeader(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED);
-        response.addHeader(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
-
+    public ResponseEntity<byte[]> getMarketAsks(@PathVariable String marketId,
+                                                 @RequestParam(required = false) Integer levels,
+                                                 @RequestParam(required = false) Double tick,
+                                                 @RequestParam(required = false) Double bps,
+                                                 HttpServletRequest request) {
         final PublicKey marketPublicKey = PublicKey.valueOf(marketId);
-        final Optional<OrderBook> orderBook = marketManager.getCachedAskOrderBook(marketPublicKey);
-
-        if (orderBook.isPresent()) {
-            List<SerumOrder> serumOrders = MarketUtil.convertOrderBookToSerumOrders(orderBook.get(), false);
+        final Optional<MarketSnapshot> snapshot = getRequestedSnapshot(marketPublicKey);
 
-            // Calculate aggregate percentages for each quote, add to metadata
-            float aggregateNotional = serumOrders.stream()
-                    .map(order -> order.getQuantity() * order.getPrice())
-                    .reduce(0f, Float::sum);
-
-            float currentTotal = 0.0f;
-            for (SerumOrder order : serumOrders) {
-                float notional = order.getPrice() * order.getQuantity();
-                currentTotal += notional;
-                order.addMetadata("percent", currentTotal / aggregateNotional);
-            }
+        if (snapshot.isEmpty()) {
+            return toResponse(Collections.emptyList());
+        }
 
-            identityManager.reverseOwnerLookup(serumOrders);
-            return serumOrders;
-        } else {
-            return Collections.emptyList();
+        final Optional<BookGrouping> grouping = BookGrouping.of(levels, tick, bps);
+        if (grouping.isPresent()) {
+            return toCachedResponse(
+                    request,
+                    marketResponseManager.getGroupedOrders(snapshot.get(), false, grouping.get())
+            );
         }
+        return toCachedResponse(request, marketResponseManager.getAsks(marketId, snapshot.get()));
     }
 
     @GetMapping(value = "/api/serum/market/{marketId}/tradeHistory")
-    public List<TradeHistoryEvent> getMarketTradeHistory(@PathVariable String marketId, HttpServletResponse response) {
-        response.addHeader(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED);
-        response.addHeader(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
-
-        final List<TradeHistoryEvent> result = new ArrayList<>();
+    public ResponseEntity<byte[]> getMarketTradeHistory(@PathVariable String marketId, HttpServletRequest request) {
         final PublicKey marketKey = new PublicKey(marketId);
-
-        final Optional<EventQueue> eventQueue = marketManager.getCachedEventQueue(marketKey);
-        if (eventQueue.isEmpty()) {
-            return Collections.emptyList();
+        final Optional<MarketSnapshot> snapshot = getRequestedSnapshot(marketKey);
+        final Optional<TradeTape> tradeTape = marketManager.getTradeTape(marketKey);
+        if (snapshot.isEmpty() || tradeTape.isEmpty()) {
+            return toResponse(Collections.emptyList());
         }
 
-        List<TradeEvent> tradeEvents = eventQueue.get().getEvents();
-        Map<PublicKey, Optional<PublicKey>> owners = identityManager.lookupAndAddOwnersToCache(
-                tradeEvents.stream()
-                        .map(TradeEvent::getOpenOrders)
-                        .toList()
+        return toCachedResponse(
+                request,
+                marketResponseManager.getTradeHistory(marketId, snapshot.get(), tradeTape.get())
         );
+    }
 
-        for (int i = 0; i < tradeEvents.size(); i++) {
-            TradeEvent event = tradeEvents.get(i);
+    /**
+     * Cumulative depth of both sides, as JSON triplets or, for clients accepting
+     * application/vnd.openserum.depth, the packed binary layout of MarketDepthEncoder.
+     * Only works for cached markets.
+     * @param levels number of best levels per side
+     * @param tick price bucket size, e.g. 0.01
+     * @param bps price bucket size in basis points of the midpoint, if no tick is given
+     */
+    @GetMapping(value = "/api/serum/market/{marketId}/depth")
+    public ResponseEntity<byte[]> getMarketDepth(@PathVariable String marketId,
+                                                 @RequestParam(required = false) Integer levels,
+                                                 @RequestParam(required = false) Double tick,
+                                                 @RequestParam(required = false) Double bps,
+                                                 HttpServletRequest request) {
+        final PublicKey marketPubkey = new PublicKey(marketId);
+        final Optional<MarketSnapshot> snapshot = getRequestedSnapshot(marketPubkey);
+        final boolean isBinary = acceptsMediaType(request, MarketDepthEncoder.MEDIA_TYPE);
+
+        if (snapshot.isEmpty()) {
+            final MarketDepth emptyDepth = MarketDepth.builder().build();
+            return isBinary ?
+                    toResponse(MarketDepthEncoder.encode(emptyDepth), MarketDepthEncoder.MEDIA_TYPE) :
+                    toResponse(emptyDepth);
+        }
 
-            if (event.getEventQueueFlags().isMaker()) {
-                // Skip event if it's a maker side fill
-                // We are attaching that metadata to the taker event instead.
-                continue;
-            }
+        // Both variants share the URL, caches must key on Accept too
+        final List<String> vary = List.of(HttpHeaders.ACCEPT_ENCODING, HttpHeaders.ACCEPT);
+        final Optional<BookGrouping> grouping = BookGrouping.of(levels, tick, bps);
+        if (grouping.isPresent()) {
+            return toCachedResponse(
+                    request,
+                    marketResponseManager.getGroupedDepth(snapshot.get(), grouping.get(), isBinary),
+                    isBinary ? MarketDepthEncoder.MEDIA_TYPE : MediaType.APPLICATION_JSON,
+                    vary
+            );
+        }
+        if (isBinary) {
+            return toCachedResponse(request, marketResponseManager.getBinaryDepth(marketId, snapshot.get()),
+                    MarketDepthEncoder.MEDIA_TYPE, vary);
+        }
+        return toCachedResponse(request, marketResponseManager.getDepth(marketId, snapshot.get()),
+                MediaType.APPLICATION_JSON, vary);
+    }
 
-            // Get owner of taker OOA
-            Optional<PublicKey> owner = owners.getOrDefault(event.getOpenOrders(), Optional.empty());
-
-            // Fall back if not found yet
-            PublicKey taker = owner.orElseGet(event::getOpenOrders);
-
-            // Calculate the corresponding maker for trade.
-            // The maker row is always adjacent to the taker. E.g. index 0 is taker, index 1 is maker.
-            // Volume and price can also be correlated but it isn't as deterministic.
-            int makerIndex = i + 1;
-            final Optional<PublicKey> makerPubkey = makerIndex < tradeEvents.size() ?
-                    Optional.ofNullable(tradeEvents.get(makerIndex).getOpenOrders()) :
-                    Optional.empty();
-
-            final TradeHistoryEvent tradeHistoryEvent = TradeHistoryEvent.builder()
-                    .index(i)
-                    .price(event.getFloatPrice())
-                    .quantity(event.getFloatQuantity())
-                    .owner(taker)
-                    .takerOoa(event.getOpenOrders())
-                    .build();
-
-            // Known entity e.g. Wintermute
-            boolean isKnownTaker = identityManager.hasReverseLookup(taker);
-            if (isKnownTaker) {
-                tradeHistoryEvent.setTakerEntityName(identityManager.getEntityNameByOwner(taker));
-                tradeHistoryEvent.setTakerEntityIcon(identityManager.getEntityIconByOwner(taker));
-            }
+    /**
+     * Pushes depth, bids, asks and tradeHistory events (same bodies as those endpoints) whenever they change,
+     * instead of polling each of them. Every event is sent once on connect.
+     * @param marketId serum market id
+     * @return text/event-stream, 404 for unknown markets
+     */
+    @GetMapping(value = "/api/serum/market/{marketId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> getMarketStream(@PathVariable String marketId) {
+        final Optional<Market> market = marketManager.getMarketById(marketId);
+        if (market.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
 
-            // Maker metadata
-            if (makerPubkey.isPresent()) {
-                Optional<PublicKey> makerOwner = owners.get(makerPubkey.get());
-                tradeHistoryEvent.setMakerOoa(makerPubkey.get());
-                if (makerOwner.isPresent()) {
-                    tradeHistoryEvent.setMakerOwner(makerOwner.get());
-                    if (identityManager.hasReverseLookup(makerOwner.get())) {
-                        tradeHistoryEvent.setMakerEntityName(identityManager.getEntityNameByOwner(makerOwner.get()));
-                        tradeHistoryEvent.setMakerEntityIcon(identityManager.getEntityIconByOwner(makerOwner.get()));
-                    }
-                } else {
-                    tradeHistoryEvent.setMakerOwner(makerPubkey.get());
-                }
-            }
+        return ResponseEntity.ok()
+                .header(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE)
+                // Disables proxy buffering, events must reach the browser as they're sent
+                .header(ACCEL_BUFFERING_HEADER_NAME, "no")
+                .body(marketStreamManager.subscribe(market.get().getOwnAddress()));
+    }
 
-            tradeHistoryEvent.setFill(event.getEventQueueFlags().isFill());
-            tradeHistoryEvent.setOut(event.getEventQueueFlags().isOut());
-            tradeHistoryEvent.setBid(event.getEventQueueFlags().isBid());
-            tradeHistoryEvent.setMaker(event.getEventQueueFlags().isMaker());
+    /**
+     * Book changes since the client's last seen slot (toSlot of its previous response).
+     * Returns the full book instead when sinceSlot is missing, too old, or the changes outweigh the book.
+     * @param marketId serum market id
+     * @param sinceSlot toSlot of the client's previous response
+     * @return changed levels, or full levels with snapshot set
+     */
+    @GetMapping(value = "/api/serum/market/{marketId}/diff")
+    public MarketDiff getMarketDiff(@PathVariable String marketId,
+                                    @RequestParam(required = false) Long sinceSlot,
+                                    HttpServletResponse response) {
+        response.addHeader(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED);
+        response.addHeader(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
+
+        final PublicKey marketPubkey = new PublicKey(marketId);
+        final Optional<MarketSnapshot> snapshot = getRequestedSnapshot(marketPubkey);
 
-            result.add(tradeHistoryEvent);
+        if (snapshot.isEmpty()) {
+            return MarketDiff.builder().build();
         }
 
-        return result;
+        final OrderBookSide bids = snapshot.get().getBids();
+        final OrderBookSide asks = snapshot.get().getAsks();
+
+        if (sinceSlot != null) {
+            Optional<OrderBookDiff> diff = marketManager.getOrderBookDiff(marketPubkey, sinceSlot);
+            if (diff.isPresent() && diff.get().size() < bids.getLevels().size() + asks.getLevels().size()) {
+                return MarketDiff.builder()
+                        .bids(diff.get().getBids().toArray())
+                        .asks(diff.get().getAsks().toArray())
+                        .fromSlot(diff.get().getFromSlot())
+                        .toSlot(diff.get().getToSlot())
+                        .build();
+            }
+        }
+
+        return MarketDiff.builder()
+                .bids(bids.getLevels().toArray())
+                .asks(asks.getLevels().toArray())
+                .fromSlot(snapshot.get().getBookSlot())
+                .toSlot(snapshot.get().getBookSlot())
+                .snapshot(true)
+                .build();
     }
 
-    // Only works for cached markets.
-    @GetMapping(value = "/api/serum/market/{marketId}/depth")
-    public MarketDepth getMarketDepth(@PathVariable String marketId, HttpServletResponse response) {
+    /**
+     * OHLCV candles, oldest first. Intervals without trades have no candle.
+     *
+     * @param resolution 1s, 1m, 5m, 1h or 1d
+     * @param from epoch ms, inclusive (default: oldest kept)
+     * @param to epoch ms, exclusive (default: now)
+     */
+    @GetMapping(value = "/api/serum/market/{marketId}/candles")
+    public List<Candle> getMarketCandles(@PathVariable String marketId,
+                                         @RequestParam(required = false, defaultValue = "1m") String resolution,
+                                         @RequestParam(required = false, defaultValue = "0") long from,
+                                         @RequestParam(required = false, defaultValue = "" + Long.MAX_VALUE) long to,
+                                         HttpServletResponse response) {
         response.addHeader(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED);
         response.addHeader(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
 
         final PublicKey marketPubkey = new PublicKey(marketId);
-        CompletableFuture<Optional<OrderBook>> bidFuture = CompletableFuture.supplyAsync(() -> marketManager.getCachedBidOrderBook(marketPubkey));
-        CompletableFuture<Optional<OrderBook>> askFuture = CompletableFuture.supplyAsync(() -> marketManager.getCachedAskOrderBook(marketPubkey));
+        final Optional<CandleResolution> candleResolution = CandleResolution.fromLabel(resolution);
+        if (candleResolution.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-        final CompletableFuture<Void> combinedFutures = CompletableFuture.allOf(bidFuture, askFuture);
-        Optional<OrderBook> bidOrderBook, askOrderBook;
+        marketManager.recordMarketRequest(marketPubkey);
+        return candleManager.getCandles(marketPubkey, candleResolution.get(), from, to);
+    }
 
-        try {
-            combinedFutures.get();
-            bidOrderBook = bidFuture.get();
-            askOrderBook = askFuture.get();
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Best bid/ask, spread, last price and 24h stats of every loaded market, in one precomputed response.
+     * Markets without a snapshot yet are left out.
+     */
+    @GetMapping(value = "/api/serum/tickers")
+    public ResponseEntity<byte[]> getTickers(HttpServletRequest request) {
+        return toCachedResponse(request, tickerManager.getTickers());
+    }
 
-        if (bidOrderBook.isEmpty() || askOrderBook.isEmpty()) {
-            return MarketDepth.builder().build();
-        }
+    /**
+     * Sprite sheet of the active tokens' icons: its URL, cell size and the cell of each token mint. Tokens missing
+     * from it use /api/serum/token/{tokenId}/icon.
+     */
+    @GetMapping(value = "/api/serum/token/sprite")
+    public ResponseEntity<byte[]> getTokenSprite(HttpServletRequest request) {
+        return toCachedResponse(request, tokenSpriteManager.getSpriteResponse());
+    }
 
-        // isBid = false on the bids since chart JS library expects ascending order
-        final List<SerumOrder> bids = MarketUtil.convertOrderBookToSerumOrders(bidOrderBook.get(), false);
-        final List<SerumOrder> asks = MarketUtil.convertOrderBookToSerumOrders(askOrderBook.get(), false);
+    // Hit/miss/load-time counters of the market snapshot cache since startup
+    @GetMapping(value = "/api/serum/stats/cache")
+    public CacheStats getCacheStats(HttpServletResponse response) {
+        response.addHeader(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
+        return marketManager.getSnapshotCacheStats();
+    }
 
-        float bestBid = bids.size() > 0 ? bidOrderBook.get().getBestBid().getFloatPrice() : 0.0f;
-        float bestAsk = asks.size() > 0 ? askOrderBook.get().getBestAsk().getFloatPrice() : 0.0f;
-        float midPoint = (bestBid + bestAsk) / 2;
-        float aggregateBidQuantity = 0.0f, aggregateAskQuantity = 0.0f;
+    private ResponseEntity<byte[]> toCachedResponse(HttpServletRequest request, ResponseCache.CachedResponse cached) {
+        return toCachedResponse(request, cached, MediaType.APPLICATION_JSON, List.of(HttpHeaders.ACCEPT_ENCODING));
+    }
 
-        for (SerumOrder bid : bids) {
-            aggregateBidQuantity += bid.getQuantity();
+    /**
+     * Serves a response cached per data version. Answers If-None-Match with 304, and gzips larger bodies for
+     * clients accepting it.
+     *
+     * @param contentType type of the cached body
+     * @param vary request headers the response depends on
+     */
+    private ResponseEntity<byte[]> toCachedResponse(HttpServletRequest request, ResponseCache.CachedResponse cached,
+                                                    MediaType contentType, List<String> vary) {
+        final String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        final boolean gzip = cached.isCompressible() && acceptEncoding != null && acceptEncoding.contains("gzip");
+        // Each encoding is validated against its own ETag
+        final String etag = gzip ? cached.getGzipEtag() : cached.getEtag();
+
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        headers.set(CACHE_HEADER_NAME, VERSIONED_CACHE_HEADER_VALUE);
+        headers.set(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
+        headers.setVary(vary);
+
+        if (ResponseCache.isNotModified(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
         }
 
-        final List<float[]> bidList = new ArrayList<>();
-        for (SerumOrder bid : bids) {
-            bidList.add(new float[]{bid.getPrice(), aggregateBidQuantity, bid.getQuantity()});
-            aggregateBidQuantity -= bid.getQuantity();
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return ResponseEntity.ok().headers(headers).contentType(contentType).body(cached.getGzipBody());
         }
+        return ResponseEntity.ok().headers(headers).contentType(contentType).body(cached.getBody());
+    }
 
-        float[][] floatBids = bidList.toArray(new float[0][0]);
-
-        final List<float[]> askList = new ArrayList<>();
-        for (SerumOrder ask : asks) {
-            aggregateAskQuantity += ask.getQuantity();
-            askList.add(new float[]{ask.getPrice(), aggregateAskQuantity, ask.getQuantity()});
+    // True if the Accept header names the type explicitly, wildcards don't count
+    private static boolean acceptsMediaType(HttpServletRequest request, MediaType mediaType) {
+        final String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (accept == null) {
+            return false;
         }
+        try {
+            return MediaType.parseMediaTypes(accept).stream()
+                    .anyMatch(accepted -> !accepted.isWildcardType() && !accepted.isWildcardSubtype() &&
+                            accepted.includes(mediaType));
+        } catch (InvalidMediaTypeException ex) {
+            return false;
+        }
+    }
 
-        float[][] floatAsks = askList.toArray(new float[0][0]);
+    // Uncached response, e.g. no data yet
+    private ResponseEntity<byte[]> toResponse(Object body) {
+        return toResponse(responseCache.serialize(body), MediaType.APPLICATION_JSON);
+    }
 
-        return MarketDepth.builder()
-                .asks(floatAsks)
-                .bids(floatBids)
-                .midpoint(midPoint)
-                .bidContextSlot(marketManager.getBidContext(marketPubkey))
-                .askContextSlot(marketManager.getAskContext(marketPubkey))
-                .build();
+    private ResponseEntity<byte[]> toResponse(byte[] body, MediaType contentType) {
+        return ResponseEntity.ok()
+                .header(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED)
+                .header(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE)
+                .contentType(contentType)
+                .body(body);
+    }
+
+    // Only changes with the market generation, or token names loaded since
+    private ResponseCache.CachedResponse getMarketResponse(String marketId, Market market) {
+        return responseCache.get(
+                marketId + "/market",
+                List.of(market, tokenManager.getRegistryGeneration()),
+                0,
+                () -> convertMarketToMap(market)
+        );
+    }
+
+    // Snapshot for a user request, counted towards the market's refresh tier
+    private Optional<MarketSnapshot> getRequestedSnapshot(PublicKey marketPubkey) {
+        marketManager.recordMarketRequest(marketPubkey);
+        return marketManager.getMarketSnapshot(marketPubkey);
     }
 
     private Map<String, Object> convertMarketToMap(Market market) {
         Map<String, Object> result = new HashMap<>();
-        result.put("id", market.getOwnAddress().toBase58());
+        result.put("id", Base58Cache.toBase58(market.getOwnAddress()));
         result.put("baseName", tokenManager.getTokenNameByMint(market.getBaseMint()));
-        result.put("baseMint", market.getBaseMint().toBase58());
+        result.put("baseMint", Base58Cache.toBase58(market.getBaseMint()));
         result.put("baseSymbol", tokenManager.getTokenSymbolByMint(market.getBaseMint()));
         result.put("baseLogo", tokenManager.getTokenLogoByMint(market.getBaseMint()));
         result.put("quoteName", tokenManager.getTokenNameByMint(market.getQuoteMint()));
-        result.put("quoteMint", market.getQuoteMint().toBase58());
+        result.put("quoteMint", Base58Cache.toBase58(market.getQuoteMint()));
         result.put("quoteSymbol", tokenManager.getTokenSymbolByMint(market.getQuoteMint()));
         result.put("quoteLogo", tokenManager.getTokenLogoByMint(market.getQuoteMint()));
 
         // Market details (bottom)
-        result.put("bids", market.getBids().toBase58());
-        result.put("asks", market.getAsks().toBase58());
-        result.put("baseVault", market.getBaseVault().toBase58());
-        result.put("quoteVault", market.getQuoteVault().toBase58());
+        result.put("bids", Base58Cache.toBase58(market.getBids()));
+        result.put("asks", Base58Cache.toBase58(market.getAsks()));
+        result.put("baseVault", Base58Cache.toBase58(market.getBaseVault()));
+        result.put("quoteVault", Base58Cache.toBase58(market.getQuoteVault()));
         result.put("baseDepositsTotal", market.getBaseDepositsTotal());
         result.put("quoteDepositsTotal", market.getQuoteDepositsTotal());
         result.put("quoteFeesAccrued", market.getQuoteFeesAccrued());
         result.put("quoteFeesAccruedFloat", (float) market.getQuoteFeesAccrued() / Math.pow(10,
                 market.getQuoteDecimals()));
-        result.put("eventQueue", market.getEventQueueKey().toBase58());
+        result.put("eventQueue", Base58Cache.toBase58(market.getEventQueueKey()));
         result.put("baseLotSize", market.getBaseLotSize());
         result.put("quoteLotSize", market.getQuoteLotSize());
         result.put("baseDecimals", market.getBaseDecimals());
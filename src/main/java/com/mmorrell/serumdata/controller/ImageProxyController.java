@@ -1,65 +1,248 @@
 package com.mmorrell.serumdata.controller;
 
-import com.mmorrell.serumdata.manager.MarketRankManager;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
 import com.mmorrell.serumdata.manager.TokenManager;
+import com.mmorrell.serumdata.manager.TokenSpriteManager;
 import com.mmorrell.serumdata.model.Token;
+import com.mmorrell.serumdata.model.TokenImage;
+import com.mmorrell.serumdata.model.TokenSprite;
+import com.mmorrell.serumdata.util.ResponseCache;
+import com.mmorrell.serumdata.util.TokenImageCache;
+import com.mmorrell.serumdata.util.TokenThumbnails;
+import io.undertow.io.BufferWritableOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.p2p.solanaj.core.PublicKey;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 public class ImageProxyController {
 
+    // Longest a request waits for an image being fetched, the placeholder is sent after
+    private static final long ICON_WAIT_SECONDS = 5;
+    // Images are revalidated against their source daily, browsers and CDNs keep them as long
+    private static final String IMAGE_CACHE_CONTROL = "public, max-age=86400, immutable";
+    // The placeholder may be replaced by the real image once it's fetched
+    private static final String PLACEHOLDER_CACHE_CONTROL = "public, max-age=60";
+    // Sprite URLs change with their contents
+    private static final String SPRITE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
     private final TokenManager tokenManager;
+    private final TokenImageCache tokenImageCache;
+    private final TokenSpriteManager tokenSpriteManager;
+    private final IconResponse placeHolder;
+    // Headers of each cached image, built on its first request. Dropped with the image.
+    private final Cache<TokenImage, IconResponse> iconResponses = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
 
-    public ImageProxyController(final TokenManager tokenManager) {
+    public ImageProxyController(final TokenManager tokenManager,
+                                final TokenImageCache tokenImageCache,
+                                final TokenSpriteManager tokenSpriteManager) {
         this.tokenManager = tokenManager;
+        this.tokenImageCache = tokenImageCache;
+        this.tokenSpriteManager = tokenSpriteManager;
+
+        byte[] placeHolderImage = Optional.ofNullable(tokenManager.getPlaceHolderImage()).orElse(new byte[0]);
+        this.placeHolder = new IconResponse(
+                MediaType.IMAGE_PNG_VALUE,
+                "\"" + Hashing.sha256().hashBytes(placeHolderImage) + "\"",
+                PLACEHOLDER_CACHE_CONTROL,
+                placeHolderImage,
+                null
+        );
     }
 
+    /**
+     * Cached icons are written straight to the response, those on disk with FileChannel.transferTo.
+     * Icons not cached yet are answered asynchronously once fetched, without holding the request thread.
+     * With a size from TokenThumbnails.SIZES, the square PNG thumbnail is sent instead of the original logo, unless
+     * the logo can't be rasterized (e.g. SVG).
+     */
     @GetMapping(value = "/api/serum/token/{tokenId}/icon")
     @ResponseBody
-    public ResponseEntity<InputStreamResource> getIconByTokenMint(@PathVariable String tokenId) {
+    public CompletableFuture<ResponseEntity<byte[]>> getIconByTokenMint(@PathVariable String tokenId,
+                                                                       @RequestParam(required = false) Integer size,
+                                                                       HttpServletRequest request,
+                                                                       HttpServletResponse response)
+            throws IOException {
+        final Optional<Token> token;
         try {
-            PublicKey tokenMint = new PublicKey(tokenId);
-            Optional<Token> optionalToken = tokenManager.getTokenByMint(tokenMint);
-            if (optionalToken.isPresent()) {
-                Token token = optionalToken.get();
-                InputStreamResource tokenImage = tokenManager.getTokenImageInputStream(token);
-                MediaType contentType = switch (token.getImageFormat()) {
-                    case "gif" -> MediaType.IMAGE_GIF;
-                    case "jpg" -> MediaType.IMAGE_JPEG;
-                    case "svg" -> MediaType.valueOf("image/svg+xml");
-                    default -> MediaType.IMAGE_PNG;
-                };
-
-                // Edge case: in tokenlist, not in listings
-                if (!tokenManager.isImageCached(tokenMint)) {
-                    contentType = MediaType.IMAGE_PNG;
-                }
+            token = tokenManager.getTokenByMint(new PublicKey(tokenId));
+        } catch (RuntimeException ex) {
+            // Case: Invalid public key, or other dirty input
+            writeIcon(request, response, placeHolder);
+            return null;
+        }
+        if (token.isEmpty()) {
+            // Case: Real pubkey, fake token
+            writeIcon(request, response, placeHolder);
+            return null;
+        }
+
+        CompletableFuture<Optional<TokenImage>> image = tokenManager.getTokenImage(token.get());
+        if (image.isDone()) {
+            // Memory or disk hit, null tells Spring the response is written
+            writeIcon(request, response, getIconResponse(image.join(), size));
+            return null;
+        }
+
+        final String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        return image
+                .thenApply(fetched -> toResponseEntity(ifNoneMatch, getIconResponse(fetched, size)))
+                .completeOnTimeout(toResponseEntity(ifNoneMatch, placeHolder), ICON_WAIT_SECONDS, TimeUnit.SECONDS);
+    }
 
-                return ResponseEntity.ok()
-                        .contentType(contentType)
-                        .body(tokenImage);
+    /**
+     * Sprite sheet of token icons, see /api/serum/token/sprite for where each token is.
+     */
+    @GetMapping(value = "/api/serum/token/sprite/{version}.png")
+    public ResponseEntity<byte[]> getSprite(@PathVariable String version, HttpServletRequest request) {
+        Optional<TokenSprite> sprite = tokenSpriteManager.getSprite(version);
+        if (sprite.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        final String etag = "\"" + version + "\"";
+        if (ResponseCache.isNotModified(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .header(HttpHeaders.CACHE_CONTROL, SPRITE_CACHE_CONTROL)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .header(HttpHeaders.CACHE_CONTROL, SPRITE_CACHE_CONTROL)
+                .contentType(MediaType.IMAGE_PNG)
+                .body(sprite.get().getPng());
+    }
+
+    private IconResponse getIconResponse(Optional<TokenImage> image, Integer size) {
+        if (image.isEmpty()) {
+            return placeHolder;
+        }
+        if (size != null && TokenThumbnails.SIZES.contains(size)) {
+            Optional<Path> thumbnail = tokenImageCache.getThumbnail(image.get(), size);
+            if (thumbnail.isPresent()) {
+                return new IconResponse(
+                        MediaType.IMAGE_PNG_VALUE,
+                        "\"" + image.get().getHash() + "-" + size + "\"",
+                        IMAGE_CACHE_CONTROL,
+                        null,
+                        thumbnail.get()
+                );
+            }
+        }
+        try {
+            return iconResponses.get(image.get(), () -> new IconResponse(
+                    image.get().getContentType(),
+                    "\"" + image.get().getHash() + "\"",
+                    IMAGE_CACHE_CONTROL,
+                    image.get().getData(),
+                    image.get().getData() == null ? tokenImageCache.getObjectFile(image.get()) : null
+            ));
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    private void writeIcon(HttpServletRequest request, HttpServletResponse response, IconResponse icon)
+            throws IOException {
+        response.setHeader(HttpHeaders.ETAG, icon.etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, icon.cacheControl);
+        if (ResponseCache.isNotModified(request.getHeader(HttpHeaders.IF_NONE_MATCH), icon.etag)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        response.setContentType(icon.contentType);
+        if (icon.data != null) {
+            response.setContentLength(icon.data.length);
+            response.getOutputStream().write(icon.data);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(icon.file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            response.setContentLengthLong(size);
+            final OutputStream output = response.getOutputStream();
+            if (output instanceof BufferWritableOutputStream undertowOutput) {
+                // sendfile to the connection
+                undertowOutput.transferFrom(channel);
             } else {
-                // Case: Real pubkey, fake token
-                return ResponseEntity.ok()
-                        .contentType(MediaType.IMAGE_PNG)
-                        .body(new InputStreamResource(new ByteArrayInputStream(tokenManager.getPlaceHolderImage())));
+                WritableByteChannel target = Channels.newChannel(output);
+                for (long position = 0; position < size; ) {
+                    position += channel.transferTo(position, size - position, target);
+                }
             }
-        } catch (Exception ex) {
-            // Case: Invalid public key, or other dirty input
-            return ResponseEntity.ok()
-                    .contentType(MediaType.IMAGE_PNG)
-                    .body(new InputStreamResource(new ByteArrayInputStream(tokenManager.getPlaceHolderImage())));
+        } catch (NoSuchFileException ex) {
+            // Object deleted from the store
+            writeIcon(request, response, placeHolder);
         }
     }
 
+    // Async path, images just fetched are in memory
+    private ResponseEntity<byte[]> toResponseEntity(String ifNoneMatch, IconResponse icon) {
+        if (ResponseCache.isNotModified(ifNoneMatch, icon.etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(icon.etag)
+                    .header(HttpHeaders.CACHE_CONTROL, icon.cacheControl)
+                    .build();
+        }
+
+        byte[] body = icon.data;
+        if (body == null) {
+            try {
+                body = Files.readAllBytes(icon.file);
+            } catch (IOException ex) {
+                return toResponseEntity(ifNoneMatch, placeHolder);
+            }
+        }
+        return ResponseEntity.ok()
+                .eTag(icon.etag)
+                .header(HttpHeaders.CACHE_CONTROL, icon.cacheControl)
+                .contentType(MediaType.parseMediaType(icon.contentType))
+                .body(body);
+    }
+
+    private static class IconResponse {
+        private final String contentType;
+        private final String etag;
+        private final String cacheControl;
+        // Either the bytes, or the file holding them
+        private final byte[] data;
+        private final Path file;
+
+        private IconResponse(String contentType, String etag, String cacheControl, byte[] data, Path file) {
+            this.contentType = contentType;
+            this.etag = etag;
+            this.cacheControl = cacheControl;
+            this.data = data;
+            this.file = file;
+        }
+    }
 }
@@ -4,6 +4,7 @@ import com.mmorrell.serum.model.Market;
 import com.mmorrell.serumdata.manager.MarketManager;
 import com.mmorrell.serumdata.manager.MarketRankManager;
 import com.mmorrell.serumdata.manager.TokenManager;
+import com.mmorrell.serumdata.manager.TokenSpriteManager;
 import com.mmorrell.serumdata.model.MarketListing;
 import com.mmorrell.serumdata.model.Token;
 import org.p2p.solanaj.core.PublicKey;
@@ -28,14 +29,17 @@ public class IndexController {
     private final TokenManager tokenManager;
     private final MarketManager marketManager;
     private final MarketRankManager marketRankManager;
+    private final TokenSpriteManager tokenSpriteManager;
     private final Map<PublicKey, Token> activeTokenMap = new HashMap<>();
 
     public IndexController(TokenManager tokenManager,
                            MarketManager marketManager,
-                           MarketRankManager marketRankManager) {
+                           MarketRankManager marketRankManager,
+                           TokenSpriteManager tokenSpriteManager) {
         this.tokenManager = tokenManager;
         this.marketManager = marketManager;
         this.marketRankManager = marketRankManager;
+        this.tokenSpriteManager = tokenSpriteManager;
 
         // Only list Tokens with an active Serum market.
         tokenManager.getRegistry().forEach((tokenMint, token) -> {
@@ -63,6 +67,7 @@ public class IndexController {
         model.addAttribute("tokens", activeTokenMap);
         model.addAttribute(marketRankManager);
         model.addAttribute("marketListings", marketRankManager.getMarketListings());
+        model.addAttribute("tokenSprite", tokenSpriteManager.getSprite());
 
         return "markets";
     }
@@ -0,0 +1,199 @@
+package com.mmorrell.serumdata.manager;
+
+import com.google.common.collect.Lists;
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.model.AccountBatch;
+import com.mmorrell.serumdata.model.MarketActivity;
+import com.mmorrell.serumdata.model.MarketListing;
+import com.mmorrell.serumdata.model.RefreshTier;
+import com.mmorrell.serumdata.util.RpcUtil;
+import com.mmorrell.serumdata.util.TimerWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.p2p.solanaj.core.PublicKey;
+import org.p2p.solanaj.rpc.RpcClient;
+import org.p2p.solanaj.rpc.RpcException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Background refresh of every market's snapshot (bids, asks and event queue), independent of web traffic.
+ * Each market is refreshed at the interval of its tier (hot/warm/cold, by request rate and how often its book
+ * changes), scheduled on a jittered timer wheel. Markets due on the same tick share getMultipleAccounts batches.
+ */
+@Component
+@Slf4j
+public class BatchRefreshManager {
+
+    private static final int TICK_MS = 250;
+    // 16 s per turn, longer than the COLD interval
+    private static final int WHEEL_SIZE = 64;
+    private static final int ACCOUNTS_PER_MARKET = 3;
+    public static final int MAX_MARKETS_PER_BATCH = 100 / ACCOUNTS_PER_MARKET;
+
+    // Tiering
+    private static final int TIER_UPDATE_MS = 5_000;
+    private static final double JITTER = 0.1;
+    private static final int PREWARM_MARKETS = 10;
+    // Requests per second (moving average), an open page polling every few seconds stays HOT
+    private static final double HOT_REQUEST_RATE = 0.1;
+    private static final double WARM_REQUEST_RATE = 0.005;
+    // Share of refreshes that changed the book
+    private static final double WARM_CHANGE_RATIO = 0.5;
+
+    private final MarketManager marketManager;
+    private final RpcClient client;
+
+    private final TimerWheel<PublicKey> timerWheel = new TimerWheel<>(WHEEL_SIZE, TICK_MS);
+    private final Map<PublicKey, RefreshTier> marketTiers = new ConcurrentHashMap<>();
+    // Top ranked markets at startup, never below WARM
+    private final Set<PublicKey> prewarmedMarkets = new HashSet<>();
+    // Highest slot seen, used as minContextSlot so data never goes backwards across RPC nodes
+    private final AtomicLong lastContextSlot = new AtomicLong();
+
+    public BatchRefreshManager(final MarketManager marketManager,
+                               final RpcClient rpcClient,
+                               final MarketRankManager marketRankManager) {
+        this.marketManager = marketManager;
+        this.client = rpcClient;
+
+        marketRankManager.getMarketListings().stream()
+                .limit(PREWARM_MARKETS)
+                .map(MarketListing::getId)
+                .forEach(prewarmedMarkets::add);
+
+        // Pre-warmed markets load on the first tick, the rest spread over one COLD interval
+        for (Market market : marketManager.getMarketCache()) {
+            PublicKey marketId = market.getOwnAddress();
+            boolean prewarmed = prewarmedMarkets.contains(marketId);
+            marketTiers.put(marketId, prewarmed ? RefreshTier.HOT : RefreshTier.COLD);
+            timerWheel.schedule(
+                    marketId,
+                    prewarmed ? 0 : ThreadLocalRandom.current().nextLong(RefreshTier.COLD.getIntervalMs())
+            );
+        }
+        log.info("Refresh scheduled for " + marketTiers.size() + " markets, pre-warming " + prewarmedMarkets.size());
+    }
+
+    @Scheduled(initialDelay = TICK_MS, fixedRate = TICK_MS)
+    public void refreshDueMarkets() {
+        List<PublicKey> dueMarketIds = timerWheel.advance();
+        if (dueMarketIds.isEmpty()) {
+            return;
+        }
+
+        List<Market> dueMarkets = new ArrayList<>(dueMarketIds.size());
+        for (PublicKey marketId : dueMarketIds) {
+            Optional<Market> market = marketManager.getMarketRegistry().getMarket(marketId);
+            if (market.isEmpty()) {
+                marketTiers.remove(marketId);
+                continue;
+            }
+
+            // Rescheduled first, so a failed batch is retried at the next interval
+            scheduleNext(marketId, marketTiers.getOrDefault(marketId, RefreshTier.COLD));
+
+            // Fully streamed markets are already up to date, and on-demand fetches already running cover the rest
+            if (!marketManager.isFullyStreamed(market.get()) && !marketManager.isRefreshing(marketId)) {
+                dueMarkets.add(market.get());
+            }
+        }
+
+        fetchMarketAccounts(client, dueMarkets, lastContextSlot, marketManager::updateMarketSnapshot);
+    }
+
+    /**
+     * Reads the markets' bids, asks and event queues, {@value #MAX_MARKETS_PER_BATCH} markets per
+     * getMultipleAccounts call.
+     *
+     * @param client rpc client
+     * @param markets markets to read
+     * @param lastContextSlot highest slot seen, sent as minContextSlot and raised to each batch's slot
+     * @param onFetched called with each market and the batch holding its three accounts. Markets of a failed call
+     *                  are skipped.
+     */
+    public static void fetchMarketAccounts(RpcClient client,
+                                           List<Market> markets,
+                                           AtomicLong lastContextSlot,
+                                           BiConsumer<Market, AccountBatch> onFetched) {
+        for (List<Market> batch : Lists.partition(markets, MAX_MARKETS_PER_BATCH)) {
+            List<PublicKey> accounts = new ArrayList<>(batch.size() * ACCOUNTS_PER_MARKET);
+            for (Market market : batch) {
+                accounts.add(market.getBids());
+                accounts.add(market.getAsks());
+                accounts.add(market.getEventQueueKey());
+            }
+
+            try {
+                AccountBatch accountBatch = RpcUtil.getMultipleAccounts(client, accounts, lastContextSlot.get());
+                lastContextSlot.accumulateAndGet(accountBatch.getSlot(), Math::max);
+
+                for (Market market : batch) {
+                    onFetched.accept(market, accountBatch);
+                }
+            } catch (RpcException ex) {
+                // Retried at the next interval, on-demand refresh still covers reads
+                log.warn("Batch refresh failed (" + accounts.size() + " accounts): " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Re-tiers every market from its latest activity. Promotions take effect immediately, demotions at the
+     * next refresh. Markets added to the registry since the last run are scheduled here.
+     */
+    @Scheduled(initialDelay = TIER_UPDATE_MS, fixedRate = TIER_UPDATE_MS)
+    public void updateTiers() {
+        long now = System.currentTimeMillis();
+        Map<RefreshTier, Integer> tierCounts = new EnumMap<>(RefreshTier.class);
+
+        for (Market market : marketManager.getMarketCache()) {
+            PublicKey marketId = market.getOwnAddress();
+            Optional<MarketActivity> activity = marketManager.getMarketActivity(marketId);
+            activity.ifPresent(marketActivity -> marketActivity.sample(now));
+
+            RefreshTier tier = activity.map(marketActivity -> getTier(marketId, marketActivity))
+                    .orElse(RefreshTier.COLD);
+            RefreshTier previousTier = marketTiers.put(marketId, tier);
+
+            if (previousTier == null || !timerWheel.isScheduled(marketId)) {
+                timerWheel.schedule(marketId, ThreadLocalRandom.current().nextLong(tier.getIntervalMs()));
+            } else if (tier.getIntervalMs() < previousTier.getIntervalMs()) {
+                scheduleNext(marketId, tier);
+            }
+
+            tierCounts.merge(tier, 1, Integer::sum);
+        }
+
+        log.debug("Refresh tiers: " + tierCounts);
+    }
+
+    public Optional<RefreshTier> getTier(PublicKey marketId) {
+        return Optional.ofNullable(marketTiers.get(marketId));
+    }
+
+    private RefreshTier getTier(PublicKey marketId, MarketActivity activity) {
+        if (activity.getRequestRate() >= HOT_REQUEST_RATE) {
+            return RefreshTier.HOT;
+        }
+
+        if (activity.getRequestRate() >= WARM_REQUEST_RATE ||
+                activity.getChangeRatio() >= WARM_CHANGE_RATIO ||
+                prewarmedMarkets.contains(marketId)) {
+            return RefreshTier.WARM;
+        }
+
+        return RefreshTier.COLD;
+    }
+
+    // Interval +/- JITTER, so markets sharing a tier drift apart instead of hitting the same tick
+    private void scheduleNext(PublicKey marketId, RefreshTier tier) {
+        double jitter = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        timerWheel.schedule(marketId, (long) (tier.getIntervalMs() * jitter));
+    }
+}
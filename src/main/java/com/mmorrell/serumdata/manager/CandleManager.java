@@ -0,0 +1,112 @@
+package com.mmorrell.serumdata.manager;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.model.Candle;
+import com.mmorrell.serumdata.model.CandleResolution;
+import com.mmorrell.serumdata.model.Fill;
+import com.mmorrell.serumdata.model.TradeTape;
+import com.mmorrell.serumdata.util.CandleAggregator;
+import lombok.extern.slf4j.Slf4j;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Candles for every market, aggregated once as fills arrive on the trade tape. On startup each market's
+ * journaled fills are replayed, so candles cover the persisted history.
+ * Only taker fills count as trades, each match also has a maker fill for the same quantity. Backfilled fills are
+ * skipped, their time is unknown.
+ */
+@Component
+@Slf4j
+public class CandleManager {
+
+    private static final int INGEST_INTERVAL_MS = 500;
+    private static final int REPLAY_BATCH_SIZE = 10_000;
+
+    private final MarketManager marketManager;
+
+    private final Map<PublicKey, CandleAggregator> aggregators = new ConcurrentHashMap<>();
+    // <marketId, seqNum of the next fill to aggregate>
+    private final Map<PublicKey, Long> cursors = new ConcurrentHashMap<>();
+
+    public CandleManager(final MarketManager marketManager, final TradeJournalManager tradeJournalManager) {
+        this.marketManager = marketManager;
+
+        long replayedFills = 0;
+        for (Market market : marketManager.getMarketCache()) {
+            PublicKey marketId = market.getOwnAddress();
+            CandleAggregator aggregator = getAggregator(marketId);
+            long cursor = 0;
+            List<Fill> fills;
+            while (!(fills = tradeJournalManager.getFillsFromSeqNum(marketId, cursor, REPLAY_BATCH_SIZE)).isEmpty()) {
+                cursor = addFills(aggregator, fills);
+                replayedFills += fills.size();
+            }
+            cursors.put(marketId, cursor);
+        }
+        log.info("Candles built from " + replayedFills + " journaled fills");
+    }
+
+    /**
+     * Aggregates fills added to each market's trade tape since the last run.
+     */
+    @Scheduled(initialDelay = INGEST_INTERVAL_MS, fixedDelay = INGEST_INTERVAL_MS)
+    public void ingestTradeTapes() {
+        for (Market market : marketManager.getMarketCache()) {
+            PublicKey marketId = market.getOwnAddress();
+            Optional<TradeTape> tradeTape = marketManager.getTradeTape(marketId);
+            if (tradeTape.isEmpty()) {
+                continue;
+            }
+
+            List<Fill> fills = tradeTape.get().getFillsSince(cursors.getOrDefault(marketId, 0L));
+            if (!fills.isEmpty()) {
+                cursors.put(marketId, addFills(getAggregator(marketId), fills));
+            }
+        }
+    }
+
+    /**
+     * @param marketPubkey market id
+     * @param resolution candle interval
+     * @param from epoch ms, inclusive
+     * @param to epoch ms, exclusive
+     * @return candles starting within the range, oldest first
+     */
+    public List<Candle> getCandles(PublicKey marketPubkey, CandleResolution resolution, long from, long to) {
+        CandleAggregator aggregator = aggregators.get(marketPubkey);
+        return aggregator == null ? Collections.emptyList() : aggregator.getCandles(resolution, from, to);
+    }
+
+    /**
+     * @param marketPubkey market id
+     * @param resolution granularity of the window start
+     * @param from epoch ms, inclusive
+     * @return all trades since from as one candle, empty if there were none
+     */
+    public Optional<Candle> getSummary(PublicKey marketPubkey, CandleResolution resolution, long from) {
+        CandleAggregator aggregator = aggregators.get(marketPubkey);
+        return aggregator == null ? Optional.empty() : aggregator.getSummary(resolution, from);
+    }
+
+    private CandleAggregator getAggregator(PublicKey marketId) {
+        return aggregators.computeIfAbsent(marketId, key -> new CandleAggregator());
+    }
+
+    // Returns the next cursor
+    private static long addFills(CandleAggregator aggregator, List<Fill> fills) {
+        for (Fill fill : fills) {
+            if (!fill.isMaker() && !fill.isBackfilled()) {
+                aggregator.addTrade(fill.getTimestamp(), fill.getPrice(), fill.getQuantity());
+            }
+        }
+        return fills.get(fills.size() - 1).getSeqNum() + 1;
+    }
+}
@@ -3,22 +3,41 @@ package com.mmorrell.serumdata.manager;
 import com.mmorrell.serum.model.OpenOrdersAccount;
 import com.google.common.collect.Lists;
 import com.mmorrell.serumdata.model.SerumOrder;
+import com.mmorrell.serumdata.util.MicroBatcher;
+import com.mmorrell.serumdata.util.OwnerCache;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.p2p.solanaj.core.PublicKey;
 import org.p2p.solanaj.rpc.RpcClient;
 import org.p2p.solanaj.rpc.RpcException;
 import org.p2p.solanaj.rpc.types.AccountInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.stream.Collectors;
 
 @Component
+@Slf4j
 public class IdentityManager {
 
+    // Owners resolved since the last save are written this often, and on shutdown
+    private static final int PERSIST_INTERVAL_MS = 300_000;
+
     private final RpcClient client;
-    // <ooa, owner>
-    private final Map<PublicKey, PublicKey> ownerReverseLookupCache = new HashMap<>();
+    // <ooa, owner>, saved to ownerCacheFile and warmed from it on startup
+    private final OwnerCache ownerReverseLookupCache;
+    private final Path ownerCacheFile;
+    private volatile long persistedModificationCount;
+    // Unknown owners from all requests, looked up together off the request threads
+    private final ScheduledExecutorService ownerLookupExecutor;
+    private final MicroBatcher<PublicKey> ownerLookupBatcher;
     private final Map<PublicKey, String> knownEntities = new HashMap<>();
     private final Map<PublicKey, String> knownEntitiesIcons = new HashMap<>();
 
@@ -104,8 +123,52 @@ public class IdentityManager {
         );
     }
 
-    public IdentityManager(final RpcClient rpcClient) {
+    public IdentityManager(final RpcClient rpcClient,
+                           @Value("${openserum.identity.owner-cache-size:250000}") int ownerCacheSize,
+                           @Value("${openserum.identity.owner-cache-file:owners.bin}") String ownerCacheFile,
+                           @Value("${openserum.identity.owner-batch-window-ms:5}") long ownerBatchWindowMs) {
         this.client = rpcClient;
+        this.ownerReverseLookupCache = new OwnerCache(ownerCacheSize);
+        this.ownerCacheFile = Path.of(ownerCacheFile);
+        this.ownerLookupExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "OwnerLookup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ownerLookupBatcher = new MicroBatcher<>(ownerLookupExecutor, ownerBatchWindowMs, this::lookupOwners);
+
+        try {
+            int restored = ownerReverseLookupCache.readFrom(this.ownerCacheFile);
+            persistedModificationCount = ownerReverseLookupCache.getModificationCount();
+            log.info("Owner cache warmed with " + restored + " owners from " + this.ownerCacheFile.toAbsolutePath());
+        } catch (IOException ex) {
+            log.warn("Unable to read owner cache " + this.ownerCacheFile.toAbsolutePath() + ": " + ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ownerLookupExecutor.shutdownNow();
+        persistOwnerCache();
+    }
+
+    /**
+     * Saves the owner cache if owners were resolved since the last save.
+     */
+    @Scheduled(initialDelay = PERSIST_INTERVAL_MS, fixedDelay = PERSIST_INTERVAL_MS)
+    public void persistOwnerCache() {
+        long modificationCount = ownerReverseLookupCache.getModificationCount();
+        if (modificationCount == persistedModificationCount) {
+            return;
+        }
+
+        try {
+            int saved = ownerReverseLookupCache.writeTo(ownerCacheFile);
+            persistedModificationCount = modificationCount;
+            log.info("Owner cache saved, " + saved + " owners");
+        } catch (IOException ex) {
+            log.warn("Unable to save owner cache " + ownerCacheFile.toAbsolutePath() + ": " + ex.getMessage());
+        }
     }
 
     public void addKnownEntity(String publicKeyString, String name, String icon) {
@@ -114,6 +177,11 @@ public class IdentityManager {
         knownEntitiesIcons.put(publicKey, icon);
     }
 
+    // Changes as owners are resolved, responses built with unresolved owners are rebuilt when it does
+    public long getOwnerCacheVersion() {
+        return ownerReverseLookupCache.getModificationCount();
+    }
+
     public boolean hasReverseLookup(PublicKey publicKey) {
         return knownEntities.containsKey(publicKey);
     }
@@ -126,33 +194,62 @@ public class IdentityManager {
         return knownEntitiesIcons.get(owner);
     }
 
-    public void reverseOwnerLookup(List<SerumOrder> serumOrders) {
+    /**
+     * Sets the owners already known, without waiting on RPC. The rest are looked up in the background and
+     * show up once the owner cache version changes.
+     *
+     * @param serumOrders orders with their open orders account as owner
+     * @return true if some owners aren't resolved yet
+     */
+    public boolean reverseOwnerLookup(List<SerumOrder> serumOrders) {
         List<SerumOrder> unknownOwnerOrders = new ArrayList<>();
         ownerReverseLookup(serumOrders, unknownOwnerOrders);
 
-        List<PublicKey> unknownAccounts = unknownOwnerOrders.stream()
-                .map(SerumOrder::getOwner)
-                .distinct()
-                .toList();
+        ownerLookupBatcher.submit(
+                unknownOwnerOrders.stream()
+                        .map(SerumOrder::getOwner)
+                        .toList()
+        );
+        return !unknownOwnerOrders.isEmpty();
+    }
 
-        lookupAndAddOwnersToCache(unknownAccounts);
+    /**
+     * Cached owners, without waiting on RPC. Unknown ones are looked up in the background.
+     *
+     * @param openOrdersAccounts ooa pubkeys to lookup
+     * @return map <ooa, optional<owner>>, empty for owners not resolved yet
+     */
+    public Map<PublicKey, Optional<PublicKey>> getCachedOwners(@NotNull List<PublicKey> openOrdersAccounts) {
+        Map<PublicKey, Optional<PublicKey>> resultMap = new HashMap<>();
+        List<PublicKey> unknownAccounts = new ArrayList<>();
+        for (PublicKey ooa : openOrdersAccounts) {
+            Optional<PublicKey> owner = ownerReverseLookupCache.get(ooa);
+            resultMap.put(ooa, owner);
+            if (owner.isEmpty()) {
+                unknownAccounts.add(ooa);
+            }
+        }
+
+        ownerLookupBatcher.submit(unknownAccounts);
+        return resultMap;
     }
 
     public void ownerReverseLookup(List<SerumOrder> orders, List<SerumOrder> unknownOwnerOrders) {
         for (SerumOrder order : orders) {
             // do we have the true owner?
-            if (ownerReverseLookupCache.containsKey(order.getOwner())) {
+            Optional<PublicKey> cachedOwner = ownerReverseLookupCache.get(order.getOwner());
+            if (cachedOwner.isPresent()) {
                 PublicKey ooa = order.getOwner();
-                PublicKey owner = ownerReverseLookupCache.get(ooa);
+                PublicKey owner = cachedOwner.get();
                 order.setOwner(owner);
 
                 if (knownEntities.containsKey(owner)) {
                     String entityName = knownEntities.get(owner);
-                    order.addMetadata("name", entityName);
-                    order.addMetadata("icon", knownEntitiesIcons.get(owner));
+                    order.setEntityName(entityName);
+                    order.setEntityIcon(knownEntitiesIcons.get(owner));
 
                     if (entityName.equalsIgnoreCase("Mango")) {
-                        order.addMetadata("mangoKey", ooa.toBase58());
+                        order.setMangoKey(ooa);
                     }
                 }
             } else {
@@ -173,14 +270,7 @@ public class IdentityManager {
 
         // Build map of keys to search
         for (PublicKey ooa : openOrdersAccounts) {
-            boolean hasOwner = ownerReverseLookupCache.containsKey(ooa);
-            if (hasOwner) {
-                // LOGGER.info("hasOwner (not searching): " + ooa.toBase58() + ", " + ownerReverseLookupCache.get(ooa));
-                resultMap.put(ooa, Optional.of(ownerReverseLookupCache.get(ooa)));
-            } else {
-                // LOGGER.info("Going to search: " + ooa.toBase58());
-                resultMap.put(ooa, Optional.empty());
-            }
+            resultMap.put(ooa, ownerReverseLookupCache.get(ooa));
         }
 
         // Craft list to pass to getMultipleAccounts
@@ -220,4 +310,13 @@ public class IdentityManager {
 
         return resultMap;
     }
+
+    // Batches from MicroBatcher, failed owners are retried when next requested
+    private void lookupOwners(List<PublicKey> openOrdersAccounts) {
+        try {
+            lookupAndAddOwnersToCache(openOrdersAccounts);
+        } catch (RuntimeException ex) {
+            log.warn("Unable to lookup " + openOrdersAccounts.size() + " owners: " + ex.getMessage());
+        }
+    }
 }
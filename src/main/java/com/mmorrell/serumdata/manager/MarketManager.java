@@ -1,194 +1,132 @@
 package com.mmorrell.serumdata.manager;
 
 import com.mmorrell.serum.model.*;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
+import com.mmorrell.serumdata.model.AccountBatch;
+import com.mmorrell.serumdata.model.CacheStats;
+import com.mmorrell.serumdata.model.MarketActivity;
+import com.mmorrell.serumdata.model.MarketRegistry;
+import com.mmorrell.serumdata.model.MarketSnapshot;
+import com.mmorrell.serumdata.model.OrderBookDiff;
+import com.mmorrell.serumdata.model.OrderBookDiffLog;
+import com.mmorrell.serumdata.model.OrderBookSide;
+import com.mmorrell.serumdata.model.TradeTape;
+import com.mmorrell.serumdata.util.CacheStatsCounter;
+import com.mmorrell.serumdata.util.EventQueueDecoder;
 import com.mmorrell.serumdata.util.MarketUtil;
+import com.mmorrell.serumdata.util.RpcUtil;
+import com.mmorrell.serumdata.util.SingleFlight;
+import com.mmorrell.serumdata.util.SlabDecoder;
 import lombok.extern.slf4j.Slf4j;
 import org.p2p.solanaj.core.PublicKey;
 import org.p2p.solanaj.rpc.RpcClient;
 import org.p2p.solanaj.rpc.RpcException;
 import org.p2p.solanaj.rpc.types.*;
-import org.p2p.solanaj.rpc.types.config.Commitment;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class MarketManager {
 
-    private static final int ORDER_BOOK_CACHE_DURATION_SECONDS = 1;
-    private static final int EVENT_QUEUE_CACHE_DURATION_MS = 2500;
+    private static final long DEFAULT_MIN_CONTEXT_SLOT = 0L;
 
     private final RpcClient client;
     // Managers
     private final TokenManager tokenManager;
 
-    // <marketPubkey, Market>
-    private final Map<PublicKey, Market> marketCache = new HashMap<>();
-    // <baseMint, List<Market>>
-    private final Map<PublicKey, List<Market>> marketMapCache = new HashMap<>();
-    // <quoteMint, List<Market>>
-    private final Map<PublicKey, List<Market>> marketMapQuoteMintCache = new HashMap<>();
+    // Current generation of markets and their indexes, replaced as a whole on refresh
+    private volatile MarketRegistry marketRegistry = MarketRegistry.EMPTY;
 
-    // Price cache for notional calculations
-    // <marketId, bestBid>
+    // Price cache for notional calculations, filled by TickerManager
+    // <baseMint, bestBid of a USD quoted market>
     private static final int MINIMUM_REQUIRED_MARKETS_FOR_PRICING = 2;
-    private final Map<PublicKey, Float> priceCache = new HashMap<>();
-
-    // Solana Context
-    private final long DEFAULT_MIN_CONTEXT_SLOT = 0L;
-    private final Map<PublicKey, Long> askOrderBookMinContextSlot = new HashMap<>();
-    private final Map<PublicKey, Long> bidOrderBookMinContextSlot = new HashMap<>();
-    private final Map<PublicKey, Long> eventQueueMinContextSlot = new HashMap<>();
-
-    // Caching for individual bid and asks orderbooks.
-    final LoadingCache<PublicKey, OrderBook> bidOrderBookLoadingCache = CacheBuilder.newBuilder()
-            .refreshAfterWrite(ORDER_BOOK_CACHE_DURATION_SECONDS, TimeUnit.SECONDS)
-            .build(
-                    new CacheLoader<>() {
-                        @Override
-                        public OrderBook load(PublicKey marketPubkey) {
-                            try {
-                                Market cachedMarket = marketCache.get(marketPubkey);
-                                long slotToUse = bidOrderBookMinContextSlot.getOrDefault(marketPubkey, DEFAULT_MIN_CONTEXT_SLOT);
-
-                                AccountInfo accountInfo = client.getApi()
-                                        .getAccountInfo(
-                                                cachedMarket.getBids(),
-                                                Map.of(
-                                                        "minContextSlot",
-                                                        slotToUse,
-                                                        "commitment",
-                                                        Commitment.CONFIRMED
-                                                )
-                                        );
-
-                                bidOrderBookMinContextSlot.put(marketPubkey, accountInfo.getContext().getSlot());
-
-                                return buildOrderBook(
-                                        Base64.getDecoder().decode(
-                                                accountInfo.getValue()
-                                                        .getData()
-                                                        .get(0)
-                                        ),
-                                        cachedMarket
-                                );
-                            } catch (RpcException ex) {
-                                return bidOrderBookLoadingCache.asMap().get(marketPubkey);
-                            }
-                        }
-                    });
-
-    // Caching for individual bid and asks orderbooks.
-    final LoadingCache<PublicKey, OrderBook> askOrderBookLoadingCache = CacheBuilder.newBuilder()
-            .refreshAfterWrite(ORDER_BOOK_CACHE_DURATION_SECONDS, TimeUnit.SECONDS)
-            .build(
-                    new CacheLoader<>() {
-                        @Override
-                        public OrderBook load(PublicKey marketPubkey) {
-                            try {
-                                Market cachedMarket = marketCache.get(marketPubkey);
-                                long slotToUse = askOrderBookMinContextSlot.getOrDefault(marketPubkey, DEFAULT_MIN_CONTEXT_SLOT);
-
-                                AccountInfo accountInfo = client.getApi()
-                                        .getAccountInfo(
-                                                cachedMarket.getAsks(),
-                                                Map.of(
-                                                        "minContextSlot",
-                                                        slotToUse,
-                                                        "commitment",
-                                                        Commitment.CONFIRMED
-                                                )
-                                        );
-
-                                askOrderBookMinContextSlot.put(marketPubkey, accountInfo.getContext().getSlot());
-
-                                return buildOrderBook(
-                                        Base64.getDecoder().decode(
-                                                accountInfo.getValue()
-                                                        .getData()
-                                                        .get(0)
-                                        ),
-                                        cachedMarket
-                                );
-                            } catch (RpcException ex) {
-                                return askOrderBookLoadingCache.asMap().get(marketPubkey);
-                            }
-                        }
-                    });
-
-    final LoadingCache<PublicKey, EventQueue> eventQueueLoadingCache = CacheBuilder.newBuilder()
-            .refreshAfterWrite(EVENT_QUEUE_CACHE_DURATION_MS, TimeUnit.MILLISECONDS)
-            .build(
-                    new CacheLoader<>() {
-                        @Override
-                        public EventQueue load(PublicKey marketPubkey) {
-                            try {
-                                Market cachedMarket = marketCache.get(marketPubkey);
-                                long slotToUse = eventQueueMinContextSlot.getOrDefault(marketPubkey, DEFAULT_MIN_CONTEXT_SLOT);
-
-                                AccountInfo accountInfo = client.getApi()
-                                        .getAccountInfo(
-                                                cachedMarket.getEventQueueKey(),
-                                                Map.of(
-                                                        "minContextSlot",
-                                                        slotToUse,
-                                                        "commitment",
-                                                        Commitment.CONFIRMED
-                                                )
-                                        );
-
-                                eventQueueMinContextSlot.put(marketPubkey, accountInfo.getContext().getSlot());
-
-                                return EventQueue.readEventQueue(
-                                        Base64.getDecoder().decode(
-                                                accountInfo.getValue().getData().get(0)
-                                        ),
-                                        cachedMarket.getBaseDecimals(),
-                                        cachedMarket.getQuoteDecimals(),
-                                        cachedMarket.getBaseLotSize(),
-                                        cachedMarket.getQuoteLotSize()
-                                );
-                            } catch (RpcException ex) {
-                                return eventQueueLoadingCache.asMap().get(marketPubkey);
-                            }
-                        }
-                    });
-
-    public MarketManager(final TokenManager tokenManager, final RpcClient rpcClient) {
+    private final Map<PublicKey, Float> priceCache = new ConcurrentHashMap<>();
+
+    // Snapshot refresh: stale snapshots are served while one background fetch per market revalidates them.
+    // Past the max staleness of the book or event queue, a snapshot counts as missing and readers wait for the fetch.
+    private static final int REFRESH_THREADS = 8;
+    private static final long MISS_WAIT_MS = 10_000;
+    private final long refreshAfterMs;
+    private final long bookMaxStalenessMs;
+    private final long eventQueueMaxStalenessMs;
+    private final CacheStatsCounter snapshotCacheStats = new CacheStatsCounter();
+    private final SingleFlight<PublicKey, MarketSnapshot> snapshotLoader;
+
+    // <marketPubkey, latest snapshot>, each reference is swapped atomically on update
+    private final Map<PublicKey, AtomicReference<MarketSnapshot>> marketSnapshots = new ConcurrentHashMap<>();
+
+    // Book diffs kept per market for /diff, roughly a minute of changes at one per slot
+    private static final int ORDER_BOOK_DIFF_HISTORY = 150;
+    private final Map<PublicKey, OrderBookDiffLog> orderBookDiffLogs = new ConcurrentHashMap<>();
+
+    // Fills per market, read incrementally from the event queue so none are lost between refreshes
+    private static final int TRADE_TAPE_CAPACITY = 5_000;
+    private final Map<PublicKey, TradeTape> tradeTapes = new ConcurrentHashMap<>();
+
+    // <marketPubkey, request and change counts>, read by BatchRefreshManager to pick refresh tiers
+    private final Map<PublicKey, MarketActivity> marketActivity = new ConcurrentHashMap<>();
+
+    // Accounts with a live accountSubscribe stream, these skip polling on refresh
+    private final Set<PublicKey> streamingAccounts = ConcurrentHashMap.newKeySet();
+
+    public MarketManager(final TokenManager tokenManager,
+                         final RpcClient rpcClient,
+                         @Value("${openserum.cache.refresh-after-ms:2000}") long refreshAfterMs,
+                         @Value("${openserum.cache.book-max-staleness-ms:15000}") long bookMaxStalenessMs,
+                         @Value("${openserum.cache.event-queue-max-staleness-ms:30000}") long eventQueueMaxStalenessMs) {
         this.tokenManager = tokenManager;
         this.client = rpcClient;
+        this.refreshAfterMs = refreshAfterMs;
+        this.bookMaxStalenessMs = bookMaxStalenessMs;
+        this.eventQueueMaxStalenessMs = eventQueueMaxStalenessMs;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.snapshotLoader = new SingleFlight<>(
+                Executors.newFixedThreadPool(REFRESH_THREADS, runnable -> {
+                    Thread thread = new Thread(runnable, "MarketRefresh-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }),
+                snapshotCacheStats
+        );
+
         updateMarkets();
     }
 
+    // Lists returned by the market getters are immutable, copy before sorting
     public List<Market> getMarketCache() {
-        return new ArrayList<>(marketCache.values());
+        return marketRegistry.getMarkets();
     }
 
     public List<Market> getMarketsByBaseMint(PublicKey tokenMint) {
-        final Set<Market> result = new HashSet<>(marketMapCache.getOrDefault(tokenMint, new ArrayList<>()));
-        return new ArrayList<>(result);
+        return marketRegistry.getMarketsByBaseMint(tokenMint);
     }
 
     public List<Market> getMarketsByTokenMint(PublicKey tokenMint) {
-        final Set<Market> result = new HashSet<>();
+        return marketRegistry.getMarketsByTokenMint(tokenMint);
+    }
 
-        result.addAll(marketMapCache.getOrDefault(tokenMint, new ArrayList<>()));
-        result.addAll(marketMapQuoteMintCache.getOrDefault(tokenMint, new ArrayList<>()));
+    public List<Market> getMarketsByPair(PublicKey baseMint, PublicKey quoteMint) {
+        return marketRegistry.getMarketsByPair(baseMint, quoteMint);
+    }
 
-        return new ArrayList<>(result);
+    // For callers needing several lookups from the same generation
+    public MarketRegistry getMarketRegistry() {
+        return marketRegistry;
     }
 
     /**
-     * Update marketCache with the latest markets
+     * Update the market registry with the latest markets
      */
-    public void updateMarkets() {
+    public synchronized void updateMarkets() {
         log.info("Caching specific Serum markets.");
     
         // List of market public keys that you want to load
@@ -208,6 +146,7 @@ public class MarketManager {
             new PublicKey("FbwncFP5bZjdx8J6yfDDTrCmmMkwieuape1enCvwLG33")
         );
     
+        List<Market> loadedMarkets = new ArrayList<>();
         for (PublicKey marketPublicKey : marketPublicKeys) {
             try {
                 // Fetch market account data for each specified market
@@ -220,20 +159,25 @@ public class MarketManager {
                 Market market = Market.readMarket(decodedData);
         
                 // Process and cache the market as before
-                processAndCacheMarket(market);
+                if (processAndCacheMarket(market)) {
+                    loadedMarkets.add(market);
+                }
         
             } catch (RpcException e) {
                 log.error("Failed to load market: " + marketPublicKey, e);
             }
         }
+
+        // Readers switch to the new generation in one step
+        marketRegistry = marketRegistry.withMarkets(loadedMarkets);
     
         log.info("Specific Serum markets cached: " + marketPublicKeys.size());
     }
     
-    private void processAndCacheMarket(Market market) {
+    private boolean processAndCacheMarket(Market market) {
         // Existing logic to process and cache the market
         if (market.getOwnAddress().equals(new PublicKey("11111111111111111111111111111111"))) {
-            return;
+            return false;
         }
     
         market.setBaseDecimals(
@@ -246,23 +190,21 @@ public class MarketManager {
                         market.getQuoteMint()
                 )
         );
-        marketCache.put(market.getOwnAddress(), market);
-    
-        Set<Market> existingBaseMarketList = new HashSet<>(marketMapCache.getOrDefault(market.getBaseMint(), new ArrayList<>()));
-        existingBaseMarketList.add(market);
-        marketMapCache.put(market.getBaseMint(), new ArrayList<>(existingBaseMarketList));
-    
-        Set<Market> existingQuoteMarketList = new HashSet<>(marketMapQuoteMintCache.getOrDefault(market.getQuoteMint(), new ArrayList<>()));
-        existingQuoteMarketList.add(market);
-        marketMapQuoteMintCache.put(market.getQuoteMint(), new ArrayList<>(existingQuoteMarketList));
+
+        // Registered before the market is published, so readers always find its snapshot slot
+        marketSnapshots.computeIfAbsent(market.getOwnAddress(), marketPubkey -> new AtomicReference<>());
+        orderBookDiffLogs.computeIfAbsent(market.getOwnAddress(), marketPubkey -> new OrderBookDiffLog(ORDER_BOOK_DIFF_HISTORY));
+        tradeTapes.computeIfAbsent(market.getOwnAddress(), marketPubkey -> new TradeTape(TRADE_TAPE_CAPACITY));
+        marketActivity.computeIfAbsent(market.getOwnAddress(), marketPubkey -> new MarketActivity(System.currentTimeMillis()));
+        return true;
     }
     
     public int numMarketsByToken(PublicKey tokenMint) {
-        return marketMapCache.getOrDefault(tokenMint, new ArrayList<>()).size();
+        return marketRegistry.getMarketsByBaseMint(tokenMint).size();
     }
 
     public Optional<Market> getMarketById(String marketId) {
-        return Optional.ofNullable(marketCache.get(PublicKey.valueOf(marketId)));
+        return marketRegistry.getMarket(PublicKey.valueOf(marketId));
     }
 
     // note: stablecoin values are hardcoded since most liquidity is on saber/mercurial
@@ -276,6 +218,18 @@ public class MarketManager {
         return price * totalQuantity;
     }
 
+    /**
+     * Prices a market's base token for notional calculations, if the market is quoted in a USD stablecoin.
+     *
+     * @param market market the bid is from
+     * @param bestBid best bid, 0 if the book is empty
+     */
+    public void updateTokenPrice(Market market, float bestBid) {
+        if (bestBid > 0 && getQuoteMintPrice(market.getQuoteMint()) == 1f) {
+            priceCache.put(market.getBaseMint(), bestBid);
+        }
+    }
+
     /**
      * Top 20 quote mints have their price calculated on startup / interval, used for subsequent calculations
      *
@@ -299,45 +253,265 @@ public class MarketManager {
         return 0;
     }
 
-    public Optional<OrderBook> getCachedBidOrderBook(PublicKey marketPubkey) {
-        try {
-            return Optional.of(bidOrderBookLoadingCache.get(marketPubkey));
-        } catch (ExecutionException e) {
+    /**
+     * Returns the latest snapshot of a cached market without waiting on the network, refreshing it in the
+     * background when due. Only waits (up to MISS_WAIT_MS) when there is no snapshot yet, or it is past max staleness.
+     *
+     * @param marketPubkey market id
+     * @return latest snapshot, empty if the market is unknown or no fresh enough data could be loaded
+     */
+    public Optional<MarketSnapshot> getMarketSnapshot(PublicKey marketPubkey) {
+        AtomicReference<MarketSnapshot> snapshotReference = marketSnapshots.get(marketPubkey);
+        Market market = marketRegistry.getMarket(marketPubkey).orElse(null);
+        if (snapshotReference == null || market == null) {
             return Optional.empty();
         }
-    }
 
-    public Optional<OrderBook> getCachedAskOrderBook(PublicKey marketPubkey) {
+        MarketSnapshot snapshot = snapshotReference.get();
+        long now = System.currentTimeMillis();
+        if (snapshot != null && !isPastMaxStaleness(market, snapshot, now)) {
+            if (isRefreshDue(market, snapshot, now)) {
+                snapshotCacheStats.recordStaleHit();
+                refreshMarketSnapshot(market);
+            } else {
+                snapshotCacheStats.recordHit();
+            }
+            return Optional.of(snapshot);
+        }
+
+        snapshotCacheStats.recordMiss();
         try {
-            return Optional.of(askOrderBookLoadingCache.get(marketPubkey));
-        } catch (ExecutionException e) {
+            refreshMarketSnapshot(market).get(MISS_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException ex) {
+            log.warn("Unable to load market " + marketPubkey.toBase58() + ": " + ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        snapshot = snapshotReference.get();
+        if (snapshot == null || isPastMaxStaleness(market, snapshot, System.currentTimeMillis())) {
             return Optional.empty();
         }
+        return Optional.of(snapshot);
     }
 
-    public Optional<EventQueue> getCachedEventQueue(PublicKey marketPubkey) {
-        try {
-            return Optional.of(eventQueueLoadingCache.get(marketPubkey));
-        } catch (ExecutionException e) {
+    /**
+     * Like getMarketSnapshot, but never waits: a missing or too stale snapshot is loaded in the background and
+     * returned empty meanwhile. For pollers running on shared threads, e.g. market streams. Not counted in the
+     * snapshot cache stats, pollers would drown out real requests.
+     *
+     * @param marketPubkey market id
+     * @return latest snapshot, empty if the market is unknown or has no fresh enough data yet
+     */
+    public Optional<MarketSnapshot> peekMarketSnapshot(PublicKey marketPubkey) {
+        AtomicReference<MarketSnapshot> snapshotReference = marketSnapshots.get(marketPubkey);
+        Market market = marketRegistry.getMarket(marketPubkey).orElse(null);
+        if (snapshotReference == null || market == null) {
             return Optional.empty();
         }
+
+        MarketSnapshot snapshot = snapshotReference.get();
+        long now = System.currentTimeMillis();
+        if (snapshot == null || isPastMaxStaleness(market, snapshot, now)) {
+            refreshMarketSnapshot(market);
+            return Optional.empty();
+        }
+
+        if (isRefreshDue(market, snapshot, now)) {
+            refreshMarketSnapshot(market);
+        }
+        return Optional.of(snapshot);
+    }
+
+    /**
+     * The snapshot as currently held, however old. Never refreshes, for background readers that shouldn't keep
+     * every market hot, e.g. tickers.
+     *
+     * @param marketPubkey market id
+     * @return latest snapshot, empty if none was loaded yet
+     */
+    public Optional<MarketSnapshot> getCachedMarketSnapshot(PublicKey marketPubkey) {
+        AtomicReference<MarketSnapshot> snapshotReference = marketSnapshots.get(marketPubkey);
+        return snapshotReference == null ? Optional.empty() : Optional.ofNullable(snapshotReference.get());
+    }
+
+    /**
+     * Fetches a market's bids, asks and event queue in the background. Joins the fetch already running for
+     * the market, if any.
+     *
+     * @param market market to refresh
+     * @return completes with the snapshot after the fetch is applied
+     */
+    public CompletableFuture<MarketSnapshot> refreshMarketSnapshot(Market market) {
+        AtomicReference<MarketSnapshot> snapshotReference = marketSnapshots.get(market.getOwnAddress());
+        return snapshotLoader.load(market.getOwnAddress(), () -> {
+            MarketSnapshot current = snapshotReference.get();
+            AccountBatch accountBatch = RpcUtil.getMultipleAccounts(
+                    client,
+                    List.of(market.getBids(), market.getAsks(), market.getEventQueueKey()),
+                    current == null ? DEFAULT_MIN_CONTEXT_SLOT : current.getSlot()
+            );
+            updateMarketSnapshot(market, accountBatch);
+            return snapshotReference.get();
+        });
+    }
+
+    public boolean isRefreshing(PublicKey marketPubkey) {
+        return snapshotLoader.isLoading(marketPubkey);
+    }
+
+    public CacheStats getSnapshotCacheStats() {
+        return snapshotCacheStats.snapshot();
+    }
+
+    // Streamed accounts are current as of their last notification, however long ago
+    private long getAge(PublicKey account, long receivedTime, long now) {
+        return isStreaming(account) ? 0 : now - receivedTime;
+    }
+
+    private boolean isRefreshDue(Market market, MarketSnapshot snapshot, long now) {
+        return getAge(market.getBids(), snapshot.getBidsTime(), now) >= refreshAfterMs ||
+                getAge(market.getAsks(), snapshot.getAsksTime(), now) >= refreshAfterMs ||
+                getAge(market.getEventQueueKey(), snapshot.getEventQueueTime(), now) >= refreshAfterMs;
+    }
+
+    private boolean isPastMaxStaleness(Market market, MarketSnapshot snapshot, long now) {
+        return getAge(market.getBids(), snapshot.getBidsTime(), now) > bookMaxStalenessMs ||
+                getAge(market.getAsks(), snapshot.getAsksTime(), now) > bookMaxStalenessMs ||
+                getAge(market.getEventQueueKey(), snapshot.getEventQueueTime(), now) > eventQueueMaxStalenessMs;
+    }
+
+    /**
+     * Publishes a fetch of a market's bids, asks and event queue, read together at one slot.
+     *
+     * @param market market the accounts belong to
+     * @param accountBatch getMultipleAccounts result containing the three accounts
+     */
+    public void updateMarketSnapshot(Market market, AccountBatch accountBatch) {
+        AtomicReference<MarketSnapshot> snapshotReference = marketSnapshots.get(market.getOwnAddress());
+        byte[] bidsData = accountBatch.getAccounts().get(market.getBids());
+        byte[] asksData = accountBatch.getAccounts().get(market.getAsks());
+        byte[] eventQueueData = accountBatch.getAccounts().get(market.getEventQueueKey());
+        if (snapshotReference == null || bidsData == null || asksData == null || eventQueueData == null) {
+            return;
+        }
+
+        long slot = accountBatch.getSlot();
+        long now = System.currentTimeMillis();
+        MarketSnapshot fetched = MarketSnapshot.builder()
+                .marketId(market.getOwnAddress())
+                .bids(SlabDecoder.decode(ByteBuffer.wrap(bidsData), true, market))
+                .bidsSlot(slot)
+                .asks(SlabDecoder.decode(ByteBuffer.wrap(asksData), false, market))
+                .asksSlot(slot)
+                .eventQueueSeqNum(recordEventQueue(market, eventQueueData, slot))
+                .eventQueueSlot(slot)
+                .bidsTime(now)
+                .asksTime(now)
+                .eventQueueTime(now)
+                .build();
+
+        recordSnapshot(snapshotReference.accumulateAndGet(
+                fetched,
+                (current, update) -> current == null ? update : current.merge(update)
+        ));
+    }
+
+    /**
+     * Publishes a pushed update of a single bids, asks or event queue account, unless a newer slot is already held.
+     *
+     * @param market market owning the account
+     * @param account bids, asks or event queue account
+     * @param data raw account data
+     * @param slot context slot the data was read at
+     */
+    public void updateMarketAccount(Market market, PublicKey account, byte[] data, long slot) {
+        AtomicReference<MarketSnapshot> snapshotReference = marketSnapshots.get(market.getOwnAddress());
+        // Partial updates need a full snapshot to apply to
+        if (snapshotReference == null || snapshotReference.get() == null) {
+            return;
+        }
+
+        if (account.equals(market.getBids())) {
+            OrderBookSide bids = SlabDecoder.decode(ByteBuffer.wrap(data), true, market);
+            recordSnapshot(snapshotReference.updateAndGet(snapshot -> snapshot.withBids(bids, slot)));
+        } else if (account.equals(market.getAsks())) {
+            OrderBookSide asks = SlabDecoder.decode(ByteBuffer.wrap(data), false, market);
+            recordSnapshot(snapshotReference.updateAndGet(snapshot -> snapshot.withAsks(asks, slot)));
+        } else if (account.equals(market.getEventQueueKey())) {
+            long seqNum = recordEventQueue(market, data, slot);
+            snapshotReference.updateAndGet(snapshot -> snapshot.withEventQueue(seqNum, slot));
+            // Pushed only when the account changed
+            getMarketActivity(market.getOwnAddress()).ifPresent(activity -> activity.recordUpdate(true));
+        }
     }
 
-    private OrderBook buildOrderBook(byte[] data, Market market) {
-        OrderBook orderBook = OrderBook.readOrderBook(data);
-        orderBook.setBaseDecimals(market.getBaseDecimals());
-        orderBook.setQuoteDecimals(market.getQuoteDecimals());
-        orderBook.setBaseLotSize(market.getBaseLotSize());
-        orderBook.setQuoteLotSize(market.getQuoteLotSize());
+    /**
+     * Changed book levels since a client's last seen book slot.
+     *
+     * @param marketPubkey market id
+     * @param sinceSlot book slot of the client's copy
+     * @return combined diff, empty if history doesn't reach back that far and a full book is needed
+     */
+    public Optional<OrderBookDiff> getOrderBookDiff(PublicKey marketPubkey, long sinceSlot) {
+        OrderBookDiffLog diffLog = orderBookDiffLogs.get(marketPubkey);
+        return diffLog == null ? Optional.empty() : diffLog.getDiffSince(sinceSlot);
+    }
 
-        return orderBook;
+    private void recordSnapshot(MarketSnapshot snapshot) {
+        OrderBookDiffLog diffLog = orderBookDiffLogs.get(snapshot.getMarketId());
+        if (diffLog != null) {
+            boolean bookChanged = diffLog.record(snapshot);
+            getMarketActivity(snapshot.getMarketId()).ifPresent(activity -> activity.recordUpdate(bookChanged));
+        }
     }
 
-    public long getBidContext(PublicKey publicKey) {
-        return bidOrderBookMinContextSlot.getOrDefault(publicKey, DEFAULT_MIN_CONTEXT_SLOT);
+    /**
+     * Appends the fills pushed since the market's last event queue read to its trade tape.
+     *
+     * @return seqNum of the event queue as read
+     */
+    private long recordEventQueue(Market market, byte[] data, long slot) {
+        ByteBuffer eventQueue = ByteBuffer.wrap(data);
+        TradeTape tradeTape = tradeTapes.get(market.getOwnAddress());
+        if (tradeTape != null) {
+            long missedEvents = tradeTape.record(eventQueue, market, slot);
+            if (missedEvents > 0) {
+                log.warn("Event queue gap on " + market.getOwnAddress().toBase58() + ": " + missedEvents +
+                        " events rotated out before slot " + slot);
+            }
+        }
+        return EventQueueDecoder.getSeqNum(eventQueue);
     }
 
-    public long getAskContext(PublicKey publicKey) {
-        return bidOrderBookMinContextSlot.getOrDefault(publicKey, DEFAULT_MIN_CONTEXT_SLOT);
+    public Optional<TradeTape> getTradeTape(PublicKey marketPubkey) {
+        return Optional.ofNullable(tradeTapes.get(marketPubkey));
+    }
+
+    // Counts a user-facing request for the market, drives its refresh tier
+    public void recordMarketRequest(PublicKey marketPubkey) {
+        getMarketActivity(marketPubkey).ifPresent(MarketActivity::recordRequest);
+    }
+
+    public Optional<MarketActivity> getMarketActivity(PublicKey marketPubkey) {
+        return Optional.ofNullable(marketActivity.get(marketPubkey));
+    }
+
+    public boolean isStreaming(PublicKey account) {
+        return streamingAccounts.contains(account);
+    }
+
+    public boolean isFullyStreamed(Market market) {
+        return isStreaming(market.getBids()) &&
+                isStreaming(market.getAsks()) &&
+                isStreaming(market.getEventQueueKey());
+    }
+
+    public void setStreaming(PublicKey account, boolean streaming) {
+        if (streaming) {
+            streamingAccounts.add(account);
+        } else {
+            streamingAccounts.remove(account);
+        }
     }
 }
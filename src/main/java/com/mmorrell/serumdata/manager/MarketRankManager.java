@@ -12,7 +12,6 @@ import org.springframework.stereotype.Component;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 @Component
 @Slf4j
@@ -46,19 +45,29 @@ public class MarketRankManager {
 
         updateCachedMarketListings();
 
-        log.info("Caching token images.");
-        List<PublicKey> mintImagesToCache = marketListings.stream()
-                .map(MarketListing::getBaseMint)
-                .collect(Collectors.toList());
-
-        // Always add USDC
-        mintImagesToCache.add(new PublicKey("EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v"));
+        log.info("Prefetching token images.");
+        tokenManager.prefetchTokenImages(getActiveTokenMints().stream().toList());
+    }
 
-        // Dedupe
-        Set<PublicKey> deDupedMintImagesToCache = new HashSet<>(mintImagesToCache);
-        tokenManager.cacheAllTokenImages(deDupedMintImagesToCache.stream().toList());
+    /**
+     * Tokens shown in the markets list: base and quote tokens of every listed market, and always USDC.
+     *
+     * @return deduped token mints
+     */
+    public Set<PublicKey> getActiveTokenMints() {
+        Set<PublicKey> tokenMints = new HashSet<>();
+        for (MarketListing marketListing : marketListings) {
+            if (marketListing.getBaseMint() != null) {
+                tokenMints.add(marketListing.getBaseMint());
+            }
+            if (marketListing.getQuoteMint() != null) {
+                tokenMints.add(marketListing.getQuoteMint());
+            }
+        }
 
-        log.info("Successfully cached token images: " + marketListings.size());
+        // Always add USDC
+        tokenMints.add(MarketUtil.USDC_MINT);
+        return tokenMints;
     }
 
     @Scheduled(initialDelay = 5L, fixedRate = 5L, timeUnit = TimeUnit.MINUTES)
@@ -91,8 +100,13 @@ public class MarketRankManager {
         return "/api/serum/token/" + tokenMint + "/icon";
     }
 
+    // Used in Thymeleaf, size is one of TokenThumbnails.SIZES
+    public String getImage(String tokenMint, int size) {
+        return getImage(tokenMint) + "?size=" + size;
+    }
+
     public Optional<Market> getMostActiveMarket(PublicKey baseMint) {
-        List<Market> markets = marketManager.getMarketsByBaseMint(baseMint);
+        List<Market> markets = new ArrayList<>(marketManager.getMarketsByBaseMint(baseMint));
         if (markets.size() < 1) {
             return Optional.empty();
         }
@@ -117,20 +131,8 @@ public class MarketRankManager {
     }
 
     public Optional<Market> getMostActiveMarket(PublicKey baseMint, PublicKey quoteMint) {
-        List<Market> markets = marketManager.getMarketsByTokenMint(baseMint);
-        if (markets.size() < 1) {
-            return Optional.empty();
-        }
-
-        // sort by base deposits
-        markets.sort(Comparator.comparingLong(Market::getBaseDepositsTotal).reversed());
-        for (Market market : markets) {
-            if (market.getQuoteMint().equals(quoteMint)) {
-                return Optional.of(market);
-            }
-        }
-
-        return Optional.empty();
+        return marketManager.getMarketsByPair(baseMint, quoteMint).stream()
+                .max(Comparator.comparingLong(Market::getBaseDepositsTotal));
     }
 
     /**
@@ -0,0 +1,377 @@
+package com.mmorrell.serumdata.manager;
+
+import com.mmorrell.serumdata.model.BookGrouping;
+import com.mmorrell.serumdata.model.BookLevels;
+import com.mmorrell.serumdata.model.Fill;
+import com.mmorrell.serumdata.model.MarketDepth;
+import com.mmorrell.serumdata.model.MarketSnapshot;
+import com.mmorrell.serumdata.model.OrderBookSide;
+import com.mmorrell.serumdata.model.SerumOrder;
+import com.mmorrell.serumdata.model.SnapshotField;
+import com.mmorrell.serumdata.model.TradeHistoryEvent;
+import com.mmorrell.serumdata.model.TradeTape;
+import com.mmorrell.serumdata.util.MarketDepthEncoder;
+import com.mmorrell.serumdata.util.MarketUtil;
+import com.mmorrell.serumdata.util.ResponseCache;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Serialized bids, asks, depth and trade history of a market snapshot, alone or combined by getSnapshot.
+ * Shared by the REST endpoints and the market streams, so each version is built once however it's delivered.
+ */
+@Component
+public class MarketResponseManager {
+
+    // Latest fills returned by /tradeHistory
+    private static final int TRADE_HISTORY_LIMIT = 500;
+    // Trade history section of markets without a tape yet
+    private static final byte[] EMPTY_LIST = "[]".getBytes(StandardCharsets.US_ASCII);
+
+    private final IdentityManager identityManager;
+    private final ResponseCache responseCache;
+    // Keys of bodies last built with unresolved owners, only these are rebuilt as the owner cache changes
+    private final Set<String> pendingOwnerKeys = ConcurrentHashMap.newKeySet();
+
+    public MarketResponseManager(final IdentityManager identityManager, final ResponseCache responseCache) {
+        this.identityManager = identityManager;
+        this.responseCache = responseCache;
+    }
+
+    public ResponseCache.CachedResponse getBids(String marketId, MarketSnapshot snapshot) {
+        final OrderBookSide bids = snapshot.getBids();
+        final String key = marketId + "/bids";
+        return responseCache.get(
+                key,
+                List.of(bids, getOwnerVersion(key)),
+                snapshot.getBidsSlot(),
+                () -> convertToSerumOrders(key, bids, true)
+        );
+    }
+
+    public ResponseCache.CachedResponse getAsks(String marketId, MarketSnapshot snapshot) {
+        final OrderBookSide asks = snapshot.getAsks();
+        final String key = marketId + "/asks";
+        return responseCache.get(
+                key,
+                List.of(asks, getOwnerVersion(key)),
+                snapshot.getAsksSlot(),
+                () -> convertToSerumOrders(key, asks, false)
+        );
+    }
+
+    public ResponseCache.CachedResponse getDepth(String marketId, MarketSnapshot snapshot) {
+        return responseCache.get(
+                marketId + "/depth",
+                List.of(snapshot.getBids(), snapshot.getAsks()),
+                snapshot.getBookSlot(),
+                () -> convertToMarketDepth(snapshot)
+        );
+    }
+
+    // Same levels as getDepth, see MarketDepthEncoder
+    public ResponseCache.CachedResponse getBinaryDepth(String marketId, MarketSnapshot snapshot) {
+        return responseCache.getEncoded(
+                marketId + "/depth.bin",
+                List.of(snapshot.getBids(), snapshot.getAsks()),
+                snapshot.getBookSlot(),
+                () -> MarketDepthEncoder.encode(convertToMarketDepth(snapshot))
+        );
+    }
+
+    /**
+     * Aggregated levels of one side, best first, as orders without owners. Built per request, the work is
+     * bounded by the grouping's level count.
+     */
+    public ResponseCache.CachedResponse getGroupedOrders(MarketSnapshot snapshot, boolean isBid,
+                                                         BookGrouping grouping) {
+        final OrderBookSide side = isBid ? snapshot.getBids() : snapshot.getAsks();
+        final BookLevels levels = grouping.apply(side, getMidpoint(snapshot));
+
+        float aggregateNotional = 0.0f;
+        for (int i = 0; i < levels.size(); i++) {
+            aggregateNotional += levels.getPrice(i) * levels.getQuantity(i);
+        }
+
+        final List<SerumOrder> serumOrders = new ArrayList<>(levels.size());
+        float currentTotal = 0.0f;
+        for (int i = 0; i < levels.size(); i++) {
+            SerumOrder order = new SerumOrder();
+            order.setPrice(levels.getPrice(i));
+            order.setQuantity(levels.getQuantity(i));
+            currentTotal += levels.getPrice(i) * levels.getQuantity(i);
+            order.setPercent(currentTotal / aggregateNotional);
+            serumOrders.add(order);
+        }
+
+        return responseCache.build(isBid ? snapshot.getBidsSlot() : snapshot.getAsksSlot(), serumOrders);
+    }
+
+    /**
+     * Depth of the grouped levels, JSON or binary (see MarketDepthEncoder). Built per request, the work is
+     * bounded by the grouping's level count.
+     */
+    public ResponseCache.CachedResponse getGroupedDepth(MarketSnapshot snapshot, BookGrouping grouping,
+                                                        boolean isBinary) {
+        final float midpoint = getMidpoint(snapshot);
+        final BookLevels bids = grouping.apply(snapshot.getBids(), midpoint);
+        final BookLevels asks = grouping.apply(snapshot.getAsks(), midpoint);
+
+        float aggregateBidQuantity = 0.0f, aggregateAskQuantity = 0.0f;
+        for (int i = 0; i < bids.size(); i++) {
+            aggregateBidQuantity += bids.getQuantity(i);
+        }
+
+        // Ascending price order, like convertToMarketDepth
+        final float[][] floatBids = new float[bids.size()][];
+        for (int i = bids.size() - 1, row = 0; i >= 0; i--, row++) {
+            floatBids[row] = new float[]{bids.getPrice(i), aggregateBidQuantity, bids.getQuantity(i)};
+            aggregateBidQuantity -= bids.getQuantity(i);
+        }
+
+        final float[][] floatAsks = new float[asks.size()][];
+        for (int i = 0; i < asks.size(); i++) {
+            aggregateAskQuantity += asks.getQuantity(i);
+            floatAsks[i] = new float[]{asks.getPrice(i), aggregateAskQuantity, asks.getQuantity(i)};
+        }
+
+        final MarketDepth marketDepth = MarketDepth.builder()
+                .asks(floatAsks)
+                .bids(floatBids)
+                .midpoint(midpoint)
+                .bidContextSlot(snapshot.getBidsSlot())
+                .askContextSlot(snapshot.getAsksSlot())
+                .build();
+        return isBinary ?
+                responseCache.buildEncoded(snapshot.getBookSlot(), MarketDepthEncoder.encode(marketDepth)) :
+                responseCache.build(snapshot.getBookSlot(), marketDepth);
+    }
+
+    // The tape only changes when new events are read
+    public ResponseCache.CachedResponse getTradeHistory(String marketId, MarketSnapshot snapshot, TradeTape tradeTape) {
+        final String key = marketId + "/tradeHistory";
+        return responseCache.get(
+                key,
+                List.of(tradeTape.getNextSeqNum(), getOwnerVersion(key)),
+                snapshot.getEventQueueSlot(),
+                () -> convertToTradeHistory(key, tradeTape)
+        );
+    }
+
+    /**
+     * Several sections of one snapshot in a single JSON object, spliced from the cached section bodies rather
+     * than serialized again. Kept per field set, so at most one entry per combination of fields.
+     *
+     * @param market cached /market body
+     * @param fields sections to include
+     * @return {"slot", "bidsSlot", "asksSlot", "eventQueueSlot", then one member per field}
+     */
+    public ResponseCache.CachedResponse getSnapshot(String marketId, MarketSnapshot snapshot,
+                                                    Optional<TradeTape> tradeTape,
+                                                    ResponseCache.CachedResponse market,
+                                                    Set<SnapshotField> fields) {
+        final Map<SnapshotField, byte[]> sections = new EnumMap<>(SnapshotField.class);
+        for (SnapshotField field : fields) {
+            sections.put(field, switch (field) {
+                case MARKET -> market.getBody();
+                case BIDS -> getBids(marketId, snapshot).getBody();
+                case ASKS -> getAsks(marketId, snapshot).getBody();
+                case DEPTH -> getDepth(marketId, snapshot).getBody();
+                case TRADE_HISTORY -> tradeTape.map(tape -> getTradeHistory(marketId, snapshot, tape).getBody())
+                        .orElse(EMPTY_LIST);
+            });
+        }
+
+        final String fieldKey = sections.keySet().stream()
+                .map(SnapshotField::getLabel)
+                .collect(Collectors.joining(","));
+        return responseCache.getEncoded(
+                marketId + "/snapshot/" + fieldKey,
+                List.of(snapshot.getBidsSlot(), snapshot.getAsksSlot(), snapshot.getEventQueueSlot(),
+                        List.copyOf(sections.values())),
+                snapshot.getSlot(),
+                () -> writeSnapshot(snapshot, sections)
+        );
+    }
+
+    private static byte[] writeSnapshot(MarketSnapshot snapshot, Map<SnapshotField, byte[]> sections) {
+        final int length = sections.values().stream().mapToInt(body -> body.length).sum();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(length + 128);
+        writeAscii(output, "{\"slot\":" + snapshot.getSlot() +
+                ",\"bidsSlot\":" + snapshot.getBidsSlot() +
+                ",\"asksSlot\":" + snapshot.getAsksSlot() +
+                ",\"eventQueueSlot\":" + snapshot.getEventQueueSlot());
+        sections.forEach((field, body) -> {
+            writeAscii(output, ",\"" + field.getLabel() + "\":");
+            output.writeBytes(body);
+        });
+        writeAscii(output, "}");
+        return output.toByteArray();
+    }
+
+    private static void writeAscii(ByteArrayOutputStream output, String text) {
+        output.writeBytes(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Owner part of a body's version. Bodies whose owners were all resolved don't depend on the owner cache, those
+     * with unresolved ones follow it until a rebuild finds them all.
+     */
+    private long getOwnerVersion(String key) {
+        return pendingOwnerKeys.contains(key) ? identityManager.getOwnerCacheVersion() : -1;
+    }
+
+    private void setOwnersPending(String key, boolean pending) {
+        if (pending) {
+            pendingOwnerKeys.add(key);
+        } else {
+            pendingOwnerKeys.remove(key);
+        }
+    }
+
+    // Orders with cumulative notional percentages and known owners
+    private List<SerumOrder> convertToSerumOrders(String key, OrderBookSide side, boolean isBid) {
+        List<SerumOrder> serumOrders = MarketUtil.convertOrderBookToSerumOrders(side, isBid);
+
+        // Calculate aggregate percentages for each quote, add to metadata
+        float aggregateNotional = serumOrders.stream()
+                .map(order -> order.getQuantity() * order.getPrice())
+                .reduce(0f, Float::sum);
+
+        float currentTotal = 0.0f;
+        for (SerumOrder order : serumOrders) {
+            float notional = order.getPrice() * order.getQuantity();
+            currentTotal += notional;
+            order.setPercent(currentTotal / aggregateNotional);
+        }
+
+        setOwnersPending(key, identityManager.reverseOwnerLookup(serumOrders));
+        return serumOrders;
+    }
+
+    private List<TradeHistoryEvent> convertToTradeHistory(String key, TradeTape tradeTape) {
+        final List<TradeHistoryEvent> result = new ArrayList<>();
+
+        // Newest first, so each taker fill is followed by its maker fill
+        List<Fill> fills = tradeTape.getFills(TRADE_HISTORY_LIMIT);
+        Map<PublicKey, Optional<PublicKey>> owners = identityManager.getCachedOwners(
+                fills.stream()
+                        .map(Fill::getOpenOrders)
+                        .toList()
+        );
+        setOwnersPending(key, owners.values().stream().anyMatch(Optional::isEmpty));
+
+        for (int i = 0; i < fills.size(); i++) {
+            Fill event = fills.get(i);
+
+            if (event.isMaker()) {
+                // Skip event if it's a maker side fill
+                // We are attaching that metadata to the taker event instead.
+                continue;
+            }
+
+            // Get owner of taker OOA
+            Optional<PublicKey> owner = owners.getOrDefault(event.getOpenOrders(), Optional.empty());
+
+            // Fall back if not found yet
+            PublicKey taker = owner.orElseGet(event::getOpenOrders);
+
+            // Calculate the corresponding maker for trade.
+            // The maker row is always adjacent to the taker. E.g. index 0 is taker, index 1 is maker.
+            // Volume and price can also be correlated but it isn't as deterministic.
+            int makerIndex = i + 1;
+            final Optional<PublicKey> makerPubkey = makerIndex < fills.size() ?
+                    Optional.ofNullable(fills.get(makerIndex).getOpenOrders()) :
+                    Optional.empty();
+
+            final TradeHistoryEvent tradeHistoryEvent = TradeHistoryEvent.builder()
+                    .index(i)
+                    .seqNum(event.getSeqNum())
+                    .price(event.getPrice())
+                    .quantity(event.getQuantity())
+                    .owner(taker)
+                    .takerOoa(event.getOpenOrders())
+                    .build();
+
+            // Known entity e.g. Wintermute
+            boolean isKnownTaker = identityManager.hasReverseLookup(taker);
+            if (isKnownTaker) {
+                tradeHistoryEvent.setTakerEntityName(identityManager.getEntityNameByOwner(taker));
+                tradeHistoryEvent.setTakerEntityIcon(identityManager.getEntityIconByOwner(taker));
+            }
+
+            // Maker metadata
+            if (makerPubkey.isPresent()) {
+                Optional<PublicKey> makerOwner = owners.get(makerPubkey.get());
+                tradeHistoryEvent.setMakerOoa(makerPubkey.get());
+                if (makerOwner.isPresent()) {
+                    tradeHistoryEvent.setMakerOwner(makerOwner.get());
+                    if (identityManager.hasReverseLookup(makerOwner.get())) {
+                        tradeHistoryEvent.setMakerEntityName(identityManager.getEntityNameByOwner(makerOwner.get()));
+                        tradeHistoryEvent.setMakerEntityIcon(identityManager.getEntityIconByOwner(makerOwner.get()));
+                    }
+                } else {
+                    tradeHistoryEvent.setMakerOwner(makerPubkey.get());
+                }
+            }
+
+            tradeHistoryEvent.setFill(true);
+            tradeHistoryEvent.setOut(false);
+            tradeHistoryEvent.setBid(event.isBid());
+            tradeHistoryEvent.setMaker(event.isMaker());
+
+            result.add(tradeHistoryEvent);
+        }
+
+        return result;
+    }
+
+    private MarketDepth convertToMarketDepth(MarketSnapshot snapshot) {
+        // Bids and asks from the same snapshot, never mixed across refreshes
+        final OrderBookSide bids = snapshot.getBids();
+        final OrderBookSide asks = snapshot.getAsks();
+
+        float midPoint = getMidpoint(snapshot);
+        float aggregateBidQuantity = 0.0f, aggregateAskQuantity = 0.0f;
+
+        for (int i = 0; i < bids.size(); i++) {
+            aggregateBidQuantity += bids.getQuantity(i);
+        }
+
+        // Ascending price order since chart JS library expects it, so bids are walked from the worst price
+        final float[][] floatBids = new float[bids.size()][];
+        for (int i = bids.size() - 1, row = 0; i >= 0; i--, row++) {
+            floatBids[row] = new float[]{bids.getPrice(i), aggregateBidQuantity, bids.getQuantity(i)};
+            aggregateBidQuantity -= bids.getQuantity(i);
+        }
+
+        final float[][] floatAsks = new float[asks.size()][];
+        for (int i = 0; i < asks.size(); i++) {
+            aggregateAskQuantity += asks.getQuantity(i);
+            floatAsks[i] = new float[]{asks.getPrice(i), aggregateAskQuantity, asks.getQuantity(i)};
+        }
+
+        return MarketDepth.builder()
+                .asks(floatAsks)
+                .bids(floatBids)
+                .midpoint(midPoint)
+                .bidContextSlot(snapshot.getBidsSlot())
+                .askContextSlot(snapshot.getAsksSlot())
+                .build();
+    }
+
+    private static float getMidpoint(MarketSnapshot snapshot) {
+        return (snapshot.getBids().getBestPrice() + snapshot.getAsks().getBestPrice()) / 2;
+    }
+}
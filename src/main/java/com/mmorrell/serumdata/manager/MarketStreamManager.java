@@ -0,0 +1,147 @@
+package com.mmorrell.serumdata.manager;
+
+import com.mmorrell.serumdata.model.MarketSnapshot;
+import com.mmorrell.serumdata.model.TradeTape;
+import com.mmorrell.serumdata.util.MarketStream;
+import lombok.extern.slf4j.Slf4j;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-sent event streams per market, replacing browser polling of depth, bids, asks and trade history.
+ * One publisher per market checks its snapshot every tick and pushes only the responses that changed, built once
+ * (see MarketResponseManager) and shared by all of the market's subscribers.
+ */
+@Component
+@Slf4j
+public class MarketStreamManager {
+
+    private static final int PUBLISH_INTERVAL_MS = 100;
+    // Keeps idle connections open through proxies, and detects closed ones
+    private static final long KEEP_ALIVE_MS = 15_000;
+    // Subscribers stuck on one send this long are dropped, EventSource reconnects them
+    private static final long SLOW_CONSUMER_MS = 5_000;
+    // Streams are reopened by the browser after this, releasing abandoned connections
+    private static final long STREAM_TIMEOUT_MS = 600_000;
+    private static final byte[] KEEP_ALIVE_DATA = "{}".getBytes(StandardCharsets.UTF_8);
+    // Sends running at once, and waiting for a thread. Past both, MarketStream keeps the payloads coalesced and
+    // drops subscribers that can't get a send through within SLOW_CONSUMER_MS.
+    private static final int SEND_THREADS = 64;
+    private static final int SEND_QUEUE_SIZE = 256;
+
+    private final MarketManager marketManager;
+    private final MarketResponseManager marketResponseManager;
+
+    // Sends block on the client's connection, so each one runs on a pooled thread
+    private final ThreadPoolExecutor sendExecutor;
+    private final Map<PublicKey, MarketStream> marketStreams = new ConcurrentHashMap<>();
+
+    public MarketStreamManager(final MarketManager marketManager,
+                               final MarketResponseManager marketResponseManager) {
+        this.marketManager = marketManager;
+        this.marketResponseManager = marketResponseManager;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.sendExecutor = new ThreadPoolExecutor(
+                SEND_THREADS,
+                SEND_THREADS,
+                60L,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(SEND_QUEUE_SIZE),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "MarketStream-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        // Idle streams hold no threads
+        this.sendExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Opens a stream of the market's events. The latest payload of each event is sent right away.
+     *
+     * @param marketPubkey cached market id
+     * @return emitter to return from the controller
+     */
+    public SseEmitter subscribe(PublicKey marketPubkey) {
+        final SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        final MarketStream marketStream = marketStreams.computeIfAbsent(
+                marketPubkey,
+                key -> new MarketStream(sendExecutor, SLOW_CONSUMER_MS, System::currentTimeMillis)
+        );
+
+        final MarketStream.Subscriber subscriber = marketStream.subscribe(new MarketStream.Sink() {
+            @Override
+            public void send(String event, byte[] data) throws IOException {
+                emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void close() {
+                emitter.complete();
+            }
+        });
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+
+        // First subscriber, nothing published yet
+        publish(marketPubkey, marketStream);
+        return emitter;
+    }
+
+    @Scheduled(initialDelay = PUBLISH_INTERVAL_MS, fixedDelay = PUBLISH_INTERVAL_MS)
+    public void publishUpdates() {
+        long now = System.currentTimeMillis();
+        marketStreams.forEach((marketPubkey, marketStream) -> {
+            if (marketStream.getSubscriberCount() == 0) {
+                return;
+            }
+
+            // An open stream keeps its market as hot as a polling client would
+            marketManager.recordMarketRequest(marketPubkey);
+            try {
+                publish(marketPubkey, marketStream);
+            } catch (RuntimeException ex) {
+                log.warn("Unable to publish market " + marketPubkey.toBase58() + ": " + ex.getMessage());
+            }
+
+            if (now - marketStream.getLastPublishTime() >= KEEP_ALIVE_MS) {
+                marketStream.broadcast("ping", KEEP_ALIVE_DATA);
+            }
+        });
+    }
+
+    // Publishes the responses that changed since the last tick, unchanged ones are the same cached bodies
+    private void publish(PublicKey marketPubkey, MarketStream marketStream) {
+        final Optional<MarketSnapshot> snapshot = marketManager.peekMarketSnapshot(marketPubkey);
+        if (snapshot.isEmpty()) {
+            return;
+        }
+
+        final String marketId = marketPubkey.toBase58();
+        marketStream.publish("depth", marketResponseManager.getDepth(marketId, snapshot.get()).getBody());
+        marketStream.publish("bids", marketResponseManager.getBids(marketId, snapshot.get()).getBody());
+        marketStream.publish("asks", marketResponseManager.getAsks(marketId, snapshot.get()).getBody());
+
+        final Optional<TradeTape> tradeTape = marketManager.getTradeTape(marketPubkey);
+        tradeTape.ifPresent(tape -> marketStream.publish(
+                "tradeHistory",
+                marketResponseManager.getTradeHistory(marketId, snapshot.get(), tape).getBody()
+        ));
+    }
+}
@@ -0,0 +1,93 @@
+package com.mmorrell.serumdata.manager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.client.AccountSubscriptionClient;
+import com.mmorrell.serumdata.util.RpcUtil;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams bids, asks and event queue updates of every cached market over accountSubscribe.
+ * Only active when OPENSERUM_WS_ENDPOINT is set. While a stream is down, MarketManager polls as before.
+ */
+@Component
+@Slf4j
+public class SubscriptionManager implements AccountSubscriptionClient.Listener {
+
+    private static final int PING_INTERVAL_SECONDS = 20;
+
+    private final MarketManager marketManager;
+    private final Optional<AccountSubscriptionClient> subscriptionClient;
+
+    // <account, market>
+    private final Map<PublicKey, Market> accountMarkets = new ConcurrentHashMap<>();
+
+    public SubscriptionManager(final MarketManager marketManager,
+                               final OkHttpClient okHttpClient,
+                               final ObjectMapper objectMapper) {
+        this.marketManager = marketManager;
+
+        // No call timeout for long-lived streams, pings detect dead connections instead
+        OkHttpClient websocketClient = okHttpClient.newBuilder()
+                .callTimeout(0, TimeUnit.SECONDS)
+                .pingInterval(PING_INTERVAL_SECONDS, TimeUnit.SECONDS)
+                .build();
+
+        this.subscriptionClient = RpcUtil.getWebsocketEndpoint()
+                .map(endpoint -> new AccountSubscriptionClient(websocketClient, objectMapper, endpoint, this));
+
+        updateSubscriptions();
+    }
+
+    /**
+     * (Re)connects and subscribes any market accounts without a stream, including newly cached markets.
+     */
+    @Scheduled(initialDelay = 15L, fixedRate = 15L, timeUnit = TimeUnit.SECONDS)
+    public void updateSubscriptions() {
+        if (subscriptionClient.isEmpty()) {
+            return;
+        }
+
+        AccountSubscriptionClient client = subscriptionClient.get();
+        client.connect();
+
+        for (Market market : marketManager.getMarketCache()) {
+            subscribe(client, market.getBids(), market);
+            subscribe(client, market.getAsks(), market);
+            subscribe(client, market.getEventQueueKey(), market);
+        }
+    }
+
+    private void subscribe(AccountSubscriptionClient client, PublicKey account, Market market) {
+        accountMarkets.put(account, market);
+        client.accountSubscribe(account);
+    }
+
+    @Override
+    public void onAccountNotification(PublicKey account, byte[] data, long slot) {
+        Market market = accountMarkets.get(account);
+        if (market != null) {
+            marketManager.updateMarketAccount(market, account, data, slot);
+        }
+    }
+
+    @Override
+    public void onSubscribed(PublicKey account) {
+        marketManager.setStreaming(account, true);
+    }
+
+    @Override
+    public void onDisconnected() {
+        // Fall back to polling until the next updateSubscriptions() reconnects
+        accountMarkets.keySet().forEach(account -> marketManager.setStreaming(account, false));
+    }
+}
@@ -0,0 +1,151 @@
+package com.mmorrell.serumdata.manager;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.model.Candle;
+import com.mmorrell.serumdata.model.CandleResolution;
+import com.mmorrell.serumdata.model.MarketSnapshot;
+import com.mmorrell.serumdata.model.Ticker;
+import com.mmorrell.serumdata.model.TradeTape;
+import com.mmorrell.serumdata.util.ResponseCache;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ticker table of every market, for /tickers. Each run only rebuilds the rows of markets whose snapshot or trade
+ * tape changed since, so the cost follows activity rather than the number of markets. The table is serialized once
+ * per change and served as is. Also keeps MarketManager's token prices current.
+ */
+@Component
+public class TickerManager {
+
+    private static final int UPDATE_INTERVAL_MS = 500;
+    private static final long WINDOW_MS = 86_400_000L;
+    // Rows without trades still age out of the window, recomputed at least this often
+    private static final long STATS_MAX_AGE_MS = 60_000L;
+
+    private final MarketManager marketManager;
+    private final CandleManager candleManager;
+    private final TokenManager tokenManager;
+    private final ResponseCache responseCache;
+
+    private final Map<PublicKey, Row> rows = new ConcurrentHashMap<>();
+    // Bumped on every row change, versions the serialized table
+    private final AtomicLong tableVersion = new AtomicLong();
+    private volatile long tableSlot;
+
+    public TickerManager(final MarketManager marketManager,
+                         final CandleManager candleManager,
+                         final TokenManager tokenManager,
+                         final ResponseCache responseCache) {
+        this.marketManager = marketManager;
+        this.candleManager = candleManager;
+        this.tokenManager = tokenManager;
+        this.responseCache = responseCache;
+    }
+
+    @Scheduled(initialDelay = UPDATE_INTERVAL_MS, fixedDelay = UPDATE_INTERVAL_MS)
+    public void updateTickers() {
+        final long now = System.currentTimeMillis();
+        boolean changed = false;
+        for (Market market : marketManager.getMarketCache()) {
+            final PublicKey marketId = market.getOwnAddress();
+            final Optional<MarketSnapshot> snapshot = marketManager.getCachedMarketSnapshot(marketId);
+            if (snapshot.isEmpty()) {
+                continue;
+            }
+
+            final long nextSeqNum = marketManager.getTradeTape(marketId).map(TradeTape::getNextSeqNum).orElse(0L);
+            final Row row = rows.get(marketId);
+            if (row != null && row.snapshotVersion == snapshot.get().getVersion() && row.nextSeqNum == nextSeqNum &&
+                    now - row.updateTime < STATS_MAX_AGE_MS) {
+                continue;
+            }
+
+            final Ticker ticker = buildTicker(market, snapshot.get(), now);
+            rows.put(marketId, new Row(snapshot.get().getVersion(), nextSeqNum, now, ticker));
+            marketManager.updateTokenPrice(market, ticker.getBestBid());
+            tableSlot = Math.max(tableSlot, ticker.getSlot());
+            changed = true;
+        }
+
+        if (changed) {
+            tableVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return all tickers in market registry order, serialized once per change
+     */
+    public ResponseCache.CachedResponse getTickers() {
+        return responseCache.get(
+                "tickers",
+                tableVersion.get(),
+                tableSlot,
+                () -> {
+                    final List<Ticker> tickers = new ArrayList<>(rows.size());
+                    for (Market market : marketManager.getMarketCache()) {
+                        final Row row = rows.get(market.getOwnAddress());
+                        if (row != null) {
+                            tickers.add(row.ticker);
+                        }
+                    }
+                    return tickers;
+                }
+        );
+    }
+
+    private Ticker buildTicker(Market market, MarketSnapshot snapshot, long now) {
+        final PublicKey marketId = market.getOwnAddress();
+        final float bestBid = snapshot.getBids().getBestPrice();
+        final float bestAsk = snapshot.getAsks().getBestPrice();
+        final Optional<Candle> summary = candleManager.getSummary(marketId, CandleResolution.FIVE_MINUTES,
+                now - WINDOW_MS);
+
+        // The tape is ahead of the candles, which are built from it in the background
+        final float lastPrice = marketManager.getTradeTape(marketId)
+                .map(tape -> tape.getFills(1))
+                .filter(fills -> !fills.isEmpty())
+                .map(fills -> fills.get(0).getPrice())
+                .orElseGet(() -> summary.map(candle -> (float) candle.getClose()).orElse(0.0f));
+
+        final Ticker.TickerBuilder ticker = Ticker.builder()
+                .marketId(marketId)
+                .baseSymbol(tokenManager.getTokenSymbolByMint(market.getBaseMint()))
+                .quoteSymbol(tokenManager.getTokenSymbolByMint(market.getQuoteMint()))
+                .bestBid(bestBid)
+                .bestAsk(bestAsk)
+                .spread(bestBid > 0 && bestAsk > 0 ? bestAsk - bestBid : 0.0f)
+                .lastPrice(lastPrice)
+                .slot(snapshot.getBookSlot());
+
+        summary.ifPresent(candle -> ticker
+                .volume24h(candle.getVolume())
+                .quoteVolume24h(candle.getVwap() * candle.getVolume())
+                .high24h(candle.getHigh())
+                .low24h(candle.getLow())
+                .change24h(candle.getOpen() > 0 ? lastPrice / candle.getOpen() - 1 : 0));
+        return ticker.build();
+    }
+
+    private static class Row {
+        private final long snapshotVersion;
+        private final long nextSeqNum;
+        private final long updateTime;
+        private final Ticker ticker;
+
+        Row(long snapshotVersion, long nextSeqNum, long updateTime, Ticker ticker) {
+            this.snapshotVersion = snapshotVersion;
+            this.nextSeqNum = nextSeqNum;
+            this.updateTime = updateTime;
+            this.ticker = ticker;
+        }
+    }
+}
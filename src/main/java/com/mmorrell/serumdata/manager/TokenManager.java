@@ -2,47 +2,49 @@ package com.mmorrell.serumdata.manager;
 
 import com.mmorrell.serum.model.Market;
 import com.mmorrell.serum.model.SerumUtils;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.io.Resources;
 import com.mmorrell.serumdata.model.Token;
+import com.mmorrell.serumdata.model.TokenImage;
+import com.mmorrell.serumdata.model.TokenRegistry;
 import com.mmorrell.serumdata.util.MarketUtil;
+import com.mmorrell.serumdata.util.TokenImageCache;
+import com.mmorrell.serumdata.util.TokenRegistryCodec;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.p2p.solanaj.core.PublicKey;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 // new imports 
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.util.StreamUtils;
 
 /**
- * Caches the Solana token registry in-memory
+ * Caches the Solana token registry in-memory, and on disk for fast startup
  */
 @Component
 @Slf4j
 public class TokenManager {
-    private static final int CHAIN_ID_MAINNET = 101;
+    private static final String TOKEN_LIST_URL =
+            "https://raw.githubusercontent.com/solana-labs/token-list/main/src/tokens/solana.tokenlist.json";
 
     private final OkHttpClient client;
     private final ObjectMapper objectMapper;
 
-    // <tokenMint string, token>
-    private final Map<PublicKey, Token> tokenCache = new HashMap<>();
-    private final Map<PublicKey, ByteBuffer> tokenImageCache = new ConcurrentHashMap<>();
+    // Swapped whole on refresh, saved to registryFile and loaded from it on startup
+    private volatile TokenRegistry registry = TokenRegistry.EMPTY;
+    private final Path registryFile;
+    private final TokenImageCache tokenImageCache;
     private byte[] placeHolderImage;
 
     private final ResourceLoader resourceLoader;
@@ -51,154 +53,121 @@ public class TokenManager {
     @Autowired
     public TokenManager(final OkHttpClient client, 
                         final ObjectMapper objectMapper, 
-                        ResourceLoader resourceLoader) {
+                        ResourceLoader resourceLoader,
+                        final TokenImageCache tokenImageCache,
+                        @Value("${openserum.token.registry-file:tokens.bin}") String registryFile) {
         this.client = client;
         this.objectMapper = objectMapper;
         this.resourceLoader = resourceLoader;
+        this.tokenImageCache = tokenImageCache;
+        this.registryFile = Path.of(registryFile);
         cachePlaceHolderImage();
-        updateRegistry();
+        loadRegistrySnapshot();
+
+        // First start, markets need token decimals before they're cached
+        if (registry.getTokens().isEmpty()) {
+            try {
+                refreshRegistry();
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
     }
 
-    @Scheduled(initialDelay = 2L, fixedRate = 2L, timeUnit = TimeUnit.HOURS)
+    @Scheduled(initialDelay = 1L, fixedDelay = 30L, timeUnit = TimeUnit.MINUTES)
     public void updateRegistry() {
-        log.info("Caching tokens from solana.tokenlist.json");
-        String json = httpGet("https://raw.githubusercontent.com/solana-labs/token-list/main/src/tokens/solana.tokenlist.json");
-
-        JsonNode rootNode;
         try {
-            rootNode = objectMapper.readTree(json);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
+            refreshRegistry();
+        } catch (IOException ex) {
+            log.warn("Unable to refresh token registry: " + ex.getMessage());
         }
+    }
 
-        JsonNode tokensNode = rootNode.path("tokens");
-        Iterator<JsonNode> elements = tokensNode.elements();
-        while (elements.hasNext()) {
-            JsonNode tokenNode = elements.next();
-            PublicKey tokenMint = PublicKey.valueOf(tokenNode.get("address").textValue());
-            String logoURI = tokenNode.get("logoURI").textValue();
-            Token token = Token.builder()
-                    .name(tokenNode.get("name").textValue())
-                    .publicKey(tokenMint)
-                    .address(tokenNode.get("address").textValue())
-                    .symbol(tokenNode.get("symbol").textValue())
-                    .logoURI(logoURI)
-                    .chainId(tokenNode.get("chainId").intValue())
-                    .decimals(tokenNode.get("decimals").intValue())
-                    .imageFormat(getImageFormat(logoURI))
-                    .build();
-
-            // update cache, only mainnet tokens
-            if (token.getChainId() == CHAIN_ID_MAINNET) {
-                tokenCache.put(
-                        token.getPublicKey(),
-                        token
-                );
-            }
+    // Conditional GET, so an unchanged token list costs a 304 instead of a download and parse
+    private synchronized void refreshRegistry() throws IOException {
+        final TokenRegistry current = registry;
+        Request.Builder request = new Request.Builder().url(TOKEN_LIST_URL);
+        if (current.getEtag() != null) {
+            request.header("If-None-Match", current.getEtag());
+        }
+        if (current.getLastModified() != null) {
+            request.header("If-Modified-Since", current.getLastModified());
         }
 
-        log.info("Tokens cached.");
-    }
-
-    /**
-     * Creates executor threads to cache ByteBuffer objects of image data into a local Map
-     *
-     * @param tokenMints tokens to cache images of
-     */
-    public void cacheAllTokenImages(List<PublicKey> tokenMints){
-        ExecutorService service = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        List<Callable<Void>> callableTasks = new ArrayList<>();
+        try (Response response = client.newCall(request.build()).execute()) {
+            if (response.code() == 304) {
+                log.info("Token registry unchanged.");
+                return;
+            }
+            if (!response.isSuccessful()) {
+                throw new IOException("HTTP " + response.code() + " fetching token list");
+            }
 
-        for (PublicKey tokenMint : tokenMints) {
-            Callable<Void> callableTask = () -> {
-                if (!tokenImageCache.containsKey(tokenMint)) {
-                    tokenImageCache.put(tokenMint, cacheTokenImage(getTokenLogoByMint(tokenMint)));
-                }
-                return (Void) null;
-            };
-            callableTasks.add(callableTask);
+            Map<PublicKey, Token> tokens = TokenRegistryCodec.parseTokenList(
+                    response.body().byteStream(),
+                    objectMapper.getFactory()
+            );
+            registry = current.withTokens(tokens, response.header("ETag"), response.header("Last-Modified"));
         }
+        log.info("Tokens cached: " + registry.getTokens().size());
 
         try {
-            service.invokeAll(callableTasks);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            TokenRegistryCodec.writeSnapshot(registry, registryFile);
+        } catch (IOException ex) {
+            log.warn("Unable to save token registry " + registryFile.toAbsolutePath() + ": " + ex.getMessage());
         }
     }
 
-    public boolean isImageCached(PublicKey tokenMint) {
-        return tokenImageCache.containsKey(tokenMint);
-    }
-
-    private ByteBuffer cacheTokenImage(String logoURI) {
+    private void loadRegistrySnapshot() {
         try {
-            Request request = new Request.Builder()
-                    .url(logoURI)
-                    .build();
-
-            try (Response response = client.newCall(request).execute()) {
-                ResponseBody responseBody = response.body();
-                byte[] data = responseBody.bytes();
-                if (data != null) {
-                    if (data.length > 20 && isAcceptedContentType(responseBody.contentType())) {
-                        return ByteBuffer.wrap(data);
-                    } else {
-                        // Case: Non-null response of <20 characters (invalid image)
-                        return ByteBuffer.wrap(placeHolderImage);
-                    }
-                } else {
-                    // Case: Null response body
-                    return ByteBuffer.wrap(placeHolderImage);
-                }
-            } catch (Exception ex) {
-                // Case: HTTP exception
-                return ByteBuffer.wrap(placeHolderImage);
+            long start = System.currentTimeMillis();
+            Optional<TokenRegistry> snapshot = TokenRegistryCodec.readSnapshot(registryFile);
+            if (snapshot.isPresent()) {
+                registry = snapshot.get();
+                log.info("Token registry loaded from " + registryFile.toAbsolutePath() + ": " +
+                        registry.getTokens().size() + " tokens in " + (System.currentTimeMillis() - start) + "ms");
             }
-        } catch (Exception ex) {
-            // Case: URL format exception, or unknown
-            return ByteBuffer.wrap(placeHolderImage);
+        } catch (IOException ex) {
+            log.warn("Unable to read token registry " + registryFile.toAbsolutePath() + ": " + ex.getMessage());
         }
     }
 
-    private boolean isAcceptedContentType(MediaType contentType) {
-        return contentType.type().contains("image");
+    /**
+     * Starts loading the images of the given tokens, without waiting for them.
+     *
+     * @param tokenMints tokens to cache images of
+     */
+    public void prefetchTokenImages(List<PublicKey> tokenMints) {
+        for (PublicKey tokenMint : tokenMints) {
+            getTokenByMint(tokenMint).ifPresent(tokenImageCache::get);
+        }
     }
 
-    // Used for formatting media type
-    private String getImageFormat(String logoURI) {
-        if (logoURI.endsWith(".jpg")) {
-            return "jpg";
-        } else if (logoURI.endsWith(".png")) {
-            return "png";
-        } else if (logoURI.endsWith(".svg")) {
-            return "svg";
-        } else if (logoURI.endsWith(".gif")) {
-            return "gif";
-        } else {
-            return "png";
-        }
+    /**
+     * Token's logo, loaded from disk or fetched on first use.
+     *
+     * @param token registry token
+     * @return future completed with the image, empty if it can't be fetched (use the placeholder)
+     */
+    public CompletableFuture<Optional<TokenImage>> getTokenImage(Token token) {
+        return tokenImageCache.get(token);
     }
 
     public Map<PublicKey, Token> getRegistry() {
-        return tokenCache;
+        return registry.getTokens();
     }
 
-    private String httpGet(String url) {
-        Request request = new Request.Builder().url(url).build();
-
-        try (Response response = client.newCall(request).execute()) {
-            return response.body().string();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    // Changes whenever a new token list is swapped in
+    public long getRegistryGeneration() {
+        return registry.getGeneration();
     }
 
     public Optional<Token> getTokenByMint(PublicKey tokenMint) {
-        return Optional.ofNullable(tokenCache.get(tokenMint));
+        return Optional.ofNullable(registry.getTokens().get(tokenMint));
     }
 
     public String getTokenNameByMint(PublicKey tokenMint) {
-        Token token = tokenCache.get(tokenMint);
+        Token token = registry.getTokens().get(tokenMint);
         if (token != null) {
             return token.getName();
         } else {
@@ -207,7 +176,7 @@ public class TokenManager {
     }
 
     public String getTokenSymbolByMint(PublicKey tokenMint) {
-        Token token = tokenCache.get(tokenMint);
+        Token token = registry.getTokens().get(tokenMint);
         if (token != null) {
             return token.getSymbol();
         } else {
@@ -216,7 +185,7 @@ public class TokenManager {
     }
 
     public String getTokenLogoByMint(PublicKey tokenMint) {
-        Token token = tokenCache.get(tokenMint);
+        Token token = registry.getTokens().get(tokenMint);
         if (token != null) {
             return token.getLogoURI();
         } else {
@@ -250,14 +219,14 @@ public class TokenManager {
             return List.of(getTokenByMint(SerumUtils.WRAPPED_SOL_MINT).get());
         } else {
             // return symbol if we have it
-            return tokenCache.values().stream()
+            return registry.getTokens().values().stream()
                     .filter(token -> token.getSymbol().equalsIgnoreCase(tokenSymbol))
                     .collect(Collectors.toList());
         }
     }
 
     public int getDecimals(PublicKey tokenMint) {
-        final Optional<Token> token = Optional.ofNullable(tokenCache.get(tokenMint));
+        final Optional<Token> token = Optional.ofNullable(registry.getTokens().get(tokenMint));
         return token.map(Token::getDecimals).orElse(9);
     }
 
@@ -277,19 +246,4 @@ public class TokenManager {
     public byte[] getPlaceHolderImage() {
         return placeHolderImage;
     }
-
-    public InputStreamResource getTokenImageInputStream(Token token) {
-        if (tokenImageCache.containsKey(token.getPublicKey())) {
-            ByteBuffer data = tokenImageCache.get(token.getPublicKey());
-            if (data.hasArray()) {
-                return new InputStreamResource(new ByteArrayInputStream(data.array()));
-            } else {
-                // Case: Empty ByteBuffer object
-                return new InputStreamResource(new ByteArrayInputStream(placeHolderImage));
-            }
-        } else {
-            // Case: Non-cached token (has no markets)
-            return new InputStreamResource(new ByteArrayInputStream(placeHolderImage));
-        }
-    }
 }
@@ -0,0 +1,141 @@
+package com.mmorrell.serumdata.manager;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.mmorrell.serumdata.model.TokenImage;
+import com.mmorrell.serumdata.model.TokenSprite;
+import com.mmorrell.serumdata.util.ResponseCache;
+import com.mmorrell.serumdata.util.TokenImageCache;
+import com.mmorrell.serumdata.util.TokenThumbnails;
+import lombok.extern.slf4j.Slf4j;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sprite sheet of the active tokens' icons, so the markets list loads one image instead of one per row. Rebuilt in
+ * the background from the cached thumbnails whenever an active token or its logo changes, tokens whose logo isn't
+ * cached yet, or has no thumbnail (e.g. SVG), are left to the per token icon endpoint.
+ */
+@Component
+@Slf4j
+public class TokenSpriteManager {
+
+    // Sprite URLs keep their first 64 bits of the contents' SHA-256
+    private static final int VERSION_LENGTH = 16;
+
+    private final MarketRankManager marketRankManager;
+    private final TokenManager tokenManager;
+    private final TokenImageCache tokenImageCache;
+    private final ResponseCache responseCache;
+    private volatile TokenSprite sprite = TokenSprite.EMPTY;
+    // Replaced sprite, still served to pages rendered before the swap
+    private volatile TokenSprite previousSprite = TokenSprite.EMPTY;
+
+    public TokenSpriteManager(final MarketRankManager marketRankManager,
+                              final TokenManager tokenManager,
+                              final TokenImageCache tokenImageCache,
+                              final ResponseCache responseCache) {
+        this.marketRankManager = marketRankManager;
+        this.tokenManager = tokenManager;
+        this.tokenImageCache = tokenImageCache;
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Collects the icons of the active tokens already cached, and swaps in a new sprite if they changed since the
+     * last run. Logos still being fetched make it into a later run.
+     */
+    @Scheduled(initialDelay = 10L, fixedDelay = 60L, timeUnit = TimeUnit.SECONDS)
+    public void updateSprite() {
+        // <tokenMint base58, image>, sorted so the same icons always give the same version
+        final SortedMap<String, TokenImage> images = new TreeMap<>();
+        for (PublicKey tokenMint : marketRankManager.getActiveTokenMints()) {
+            tokenManager.getTokenByMint(tokenMint)
+                    .flatMap(token -> tokenManager.getTokenImage(token).getNow(Optional.empty()))
+                    .filter(image -> tokenImageCache.getThumbnail(image, TokenThumbnails.SPRITE_ICON_SIZE).isPresent())
+                    .ifPresent(image -> images.put(tokenMint.toBase58(), image));
+        }
+
+        final Hasher hasher = Hashing.sha256().newHasher();
+        images.forEach((tokenMint, image) -> hasher
+                .putString(tokenMint, StandardCharsets.UTF_8)
+                .putString(image.getHash(), StandardCharsets.UTF_8));
+        final String version = hasher.hash().toString().substring(0, VERSION_LENGTH);
+        if (version.equals(sprite.getVersion())) {
+            return;
+        }
+
+        try {
+            final TokenSprite built = buildSprite(version, images);
+            previousSprite = sprite;
+            sprite = built;
+            log.info("Built token sprite " + version + ": " + images.size() + " tokens, " +
+                    sprite.getPng().length + " bytes.");
+        } catch (IOException ex) {
+            log.warn("Unable to build token sprite: " + ex.getMessage());
+        }
+    }
+
+    // Used in Thymeleaf
+    public TokenSprite getSprite() {
+        return sprite;
+    }
+
+    /**
+     * @param version version from a sprite URL
+     * @return the current or previous sprite with that version, empty once replaced twice
+     */
+    public Optional<TokenSprite> getSprite(String version) {
+        final TokenSprite current = sprite;
+        if (current.getVersion().equals(version)) {
+            return Optional.of(current);
+        }
+        final TokenSprite previous = previousSprite;
+        return previous.getVersion().equals(version) ? Optional.of(previous) : Optional.empty();
+    }
+
+    /**
+     * Offset map of the current sprite, serialized once per version.
+     */
+    public ResponseCache.CachedResponse getSpriteResponse() {
+        final TokenSprite current = sprite;
+        return responseCache.get("token/sprite", current, 0, () -> current);
+    }
+
+    // One cell per distinct logo, in order of first use
+    private TokenSprite buildSprite(String version, SortedMap<String, TokenImage> images) throws IOException {
+        final Map<String, Integer> cellsByHash = new HashMap<>();
+        final Map<String, Integer> icons = new LinkedHashMap<>();
+        final List<BufferedImage> cells = new ArrayList<>();
+        for (Map.Entry<String, TokenImage> entry : images.entrySet()) {
+            final TokenImage image = entry.getValue();
+            Integer cell = cellsByHash.get(image.getHash());
+            if (cell == null) {
+                Optional<Path> thumbnail = tokenImageCache.getThumbnail(image, TokenThumbnails.SPRITE_ICON_SIZE);
+                BufferedImage icon = thumbnail.isPresent() ? ImageIO.read(thumbnail.get().toFile()) : null;
+                if (icon == null) {
+                    continue;
+                }
+                cell = cells.size();
+                cells.add(icon);
+                cellsByHash.put(image.getHash(), cell);
+            }
+            icons.put(entry.getKey(), cell);
+        }
+
+        final int columns = TokenThumbnails.spriteColumns(cells.size());
+        final byte[] png = TokenThumbnails.toPng(
+                TokenThumbnails.packSprite(cells, TokenThumbnails.SPRITE_ICON_SIZE, columns)
+        );
+        return new TokenSprite(version, TokenThumbnails.SPRITE_ICON_SIZE, columns, icons, png);
+    }
+}
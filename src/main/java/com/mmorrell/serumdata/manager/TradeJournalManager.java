@@ -0,0 +1,174 @@
+package com.mmorrell.serumdata.manager;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.model.Fill;
+import com.mmorrell.serumdata.model.TradeTape;
+import com.mmorrell.serumdata.util.TradeJournal;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persists every market's trade tape to a {@link TradeJournal} under openserum.journal.dir, so fill history
+ * survives restarts and redeploys. On startup each tape is seeded from its journal.
+ * The directory is locked by one process at a time, a second instance pointed at it runs without journaling.
+ */
+@Component
+@Slf4j
+public class TradeJournalManager {
+
+    private static final int FLUSH_INTERVAL_MS = 1_000;
+    // 64K records, ~5 MB per segment file
+    private static final int SEGMENT_RECORDS = 65_536;
+    private static final int RESTORED_FILLS = 1_000;
+    private static final String LOCK_FILE = ".lock";
+
+    private final MarketManager marketManager;
+    private final Path journalDirectory;
+    private final int maxSegments;
+    private final Map<PublicKey, TradeJournal> journals = new ConcurrentHashMap<>();
+    private final FileLock directoryLock;
+
+    public TradeJournalManager(final MarketManager marketManager,
+                               @Value("${openserum.journal.dir:journal}") String journalDirectory,
+                               @Value("${openserum.journal.max-segments-per-market:16}") int maxSegments) {
+        this.marketManager = marketManager;
+        this.journalDirectory = Path.of(journalDirectory);
+        this.maxSegments = maxSegments;
+        this.directoryLock = lockDirectory(this.journalDirectory);
+
+        if (directoryLock == null) {
+            return;
+        }
+        for (Market market : marketManager.getMarketCache()) {
+            Optional<TradeJournal> journal = getJournal(market);
+            Optional<TradeTape> tradeTape = marketManager.getTradeTape(market.getOwnAddress());
+            if (journal.isPresent() && tradeTape.isPresent() && journal.get().getLastSeqNum() >= 0) {
+                tradeTape.get().restore(journal.get().getLatestFills(RESTORED_FILLS), journal.get().getLastSeqNum());
+            }
+        }
+        log.info("Trade journal opened at " + this.journalDirectory.toAbsolutePath() + " for " + journals.size() +
+                " markets");
+    }
+
+    /**
+     * Appends fills added to each market's trade tape since the last flush.
+     */
+    @Scheduled(initialDelay = FLUSH_INTERVAL_MS, fixedDelay = FLUSH_INTERVAL_MS)
+    public void flushTradeTapes() {
+        if (directoryLock == null) {
+            return;
+        }
+
+        for (Market market : marketManager.getMarketCache()) {
+            Optional<TradeTape> tradeTape = marketManager.getTradeTape(market.getOwnAddress());
+            Optional<TradeJournal> journal = getJournal(market);
+            if (tradeTape.isEmpty() || journal.isEmpty()) {
+                continue;
+            }
+
+            try {
+                journal.get().append(tradeTape.get().getFillsSince(journal.get().getLastSeqNum() + 1));
+            } catch (IOException ex) {
+                log.warn("Unable to journal fills of " + market.getOwnAddress().toBase58() + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Persisted fills of a market received within a time range.
+     *
+     * @param marketPubkey market id
+     * @param fromTime epoch ms, inclusive
+     * @param toTime epoch ms, exclusive
+     * @param limit max fills returned
+     * @return fills oldest first, empty if the market has no journal
+     */
+    public List<Fill> getFills(PublicKey marketPubkey, long fromTime, long toTime, int limit) {
+        TradeJournal journal = journals.get(marketPubkey);
+        return journal == null ? Collections.emptyList() : journal.getFillsByTime(fromTime, toTime, limit);
+    }
+
+    /**
+     * Persisted fills of a market from a seqNum on, for replaying its history.
+     *
+     * @param marketPubkey market id
+     * @param seqNum first seqNum wanted
+     * @param limit max fills returned
+     * @return fills oldest first, empty if the market has no journal
+     */
+    public List<Fill> getFillsFromSeqNum(PublicKey marketPubkey, long seqNum, int limit) {
+        TradeJournal journal = journals.get(marketPubkey);
+        return journal == null ? Collections.emptyList() : journal.getFillsFromSeqNum(seqNum, limit);
+    }
+
+    @PreDestroy
+    public void close() {
+        journals.values().forEach(TradeJournal::close);
+        if (directoryLock != null) {
+            try {
+                directoryLock.channel().close();
+            } catch (IOException ex) {
+                log.warn("Unable to release journal lock: " + ex.getMessage());
+            }
+        }
+    }
+
+    private Optional<TradeJournal> getJournal(Market market) {
+        PublicKey marketPubkey = market.getOwnAddress();
+        TradeJournal journal = journals.get(marketPubkey);
+        if (journal != null) {
+            return Optional.of(journal);
+        }
+
+        try {
+            journal = new TradeJournal(
+                    journalDirectory.resolve(marketPubkey.toBase58()),
+                    SEGMENT_RECORDS,
+                    maxSegments,
+                    market.getBaseDecimals(),
+                    market.getQuoteDecimals()
+            );
+            journals.put(marketPubkey, journal);
+            return Optional.of(journal);
+        } catch (IOException ex) {
+            log.warn("Unable to open trade journal of " + marketPubkey.toBase58() + ": " + ex.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // Held until shutdown, null if the directory can't be used
+    private static FileLock lockDirectory(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                channel.close();
+                log.warn("Trade journal " + directory.toAbsolutePath() + " is in use by another process, " +
+                        "journaling disabled");
+            }
+            return lock;
+        } catch (IOException ex) {
+            log.warn("Unable to open trade journal " + directory.toAbsolutePath() + ", journaling disabled: " +
+                    ex.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.mmorrell.serumdata.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.Map;
+
+// getMultipleAccounts result, with the context slot all accounts were read at
+@Data
+@AllArgsConstructor
+public class AccountBatch {
+    private long slot;
+
+    // <account, data>, missing accounts are absent
+    private Map<PublicKey, byte[]> accounts;
+}
@@ -0,0 +1,62 @@
+package com.mmorrell.serumdata.model;
+
+import java.util.Optional;
+
+/**
+ * How to aggregate a book for /depth, /bids and /asks: the best levels only, with prices grouped by an absolute
+ * tick or by basis points of the midpoint. Non-positive values are ignored.
+ */
+public class BookGrouping {
+
+    private static final double BPS_PER_UNIT = 10_000.0;
+
+    private final int levels;
+    private final double tick;
+    private final double bps;
+
+    private BookGrouping(int levels, double tick, double bps) {
+        this.levels = levels;
+        this.tick = tick;
+        this.bps = bps;
+    }
+
+    /**
+     * @param levels number of levels per side
+     * @param tick bucket size in quote per base, takes precedence over bps
+     * @param bps bucket size in basis points of the midpoint
+     * @return grouping, empty if no parameter is usable
+     */
+    public static Optional<BookGrouping> of(Integer levels, Double tick, Double bps) {
+        int validLevels = levels != null && levels > 0 ? levels : 0;
+        double validTick = tick != null && tick > 0 ? tick : 0;
+        double validBps = bps != null && bps > 0 ? bps : 0;
+        if (validLevels == 0 && validTick == 0 && validBps == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new BookGrouping(validLevels, validTick, validBps));
+    }
+
+    public int getMaxLevels() {
+        return levels > 0 ? levels : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Bucket size in the side's price lots, at least 1.
+     *
+     * @param side side being grouped, its orders give the lot to price ratio
+     * @param midpoint reference price for bps
+     */
+    public long getTickLots(OrderBookSide side, float midpoint) {
+        double priceTick = tick > 0 ? tick : midpoint * bps / BPS_PER_UNIT;
+        if (priceTick <= 0 || side.size() == 0 || side.getPriceLots(0) == 0) {
+            return 1;
+        }
+
+        double pricePerLot = (double) side.getPrice(0) / side.getPriceLots(0);
+        return Math.max(1, Math.round(priceTick / pricePerLot));
+    }
+
+    public BookLevels apply(OrderBookSide side, float midpoint) {
+        return BookLevels.group(side, getTickLots(side, midpoint), getMaxLevels());
+    }
+}
@@ -0,0 +1,199 @@
+package com.mmorrell.serumdata.model;
+
+/**
+ * Price levels of one book side, with the quantity of every order at the same price summed.
+ * Sorted best price first like OrderBookSide. In a diff, a quantity of 0 marks a removed level.
+ */
+public class BookLevels {
+
+    public static final BookLevels EMPTY = new BookLevels(0, new long[0], new long[0], new float[0], new float[0]);
+
+    private final int size;
+    private final long[] priceLots;
+    private final long[] quantityLots;
+    private final float[] prices;
+    private final float[] quantities;
+
+    private BookLevels(int size, long[] priceLots, long[] quantityLots, float[] prices, float[] quantities) {
+        this.size = size;
+        this.priceLots = priceLots;
+        this.quantityLots = quantityLots;
+        this.prices = prices;
+        this.quantities = quantities;
+    }
+
+    public static BookLevels of(OrderBookSide side) {
+        Builder builder = new Builder(side.size());
+        for (int i = 0; i < side.size(); i++) {
+            // Orders are sorted by price, so equal prices are adjacent
+            if (builder.size > 0 && builder.priceLots[builder.size - 1] == side.getPriceLots(i)) {
+                builder.quantityLots[builder.size - 1] += side.getQuantityLots(i);
+                builder.quantities[builder.size - 1] += side.getQuantity(i);
+            } else {
+                builder.add(side.getPriceLots(i), side.getQuantityLots(i), side.getPrice(i), side.getQuantity(i));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * The best levels of a side, with prices grouped into buckets of tickLots: bids round down, asks round up.
+     * Orders are read best first and reading stops once maxLevels are complete, so the cost follows maxLevels
+     * rather than the book size.
+     *
+     * @param side sorted orders
+     * @param tickLots bucket size in price lots, 1 groups equal prices only
+     * @param maxLevels number of levels to return at most
+     * @return levels, best price first
+     */
+    public static BookLevels group(OrderBookSide side, long tickLots, int maxLevels) {
+        Builder builder = new Builder(Math.min(side.size(), maxLevels));
+        for (int i = 0; i < side.size(); i++) {
+            long priceLots = side.getPriceLots(i);
+            long bucketLots = side.isBid() ?
+                    Math.floorDiv(priceLots, tickLots) * tickLots :
+                    -Math.floorDiv(-priceLots, tickLots) * tickLots;
+
+            if (builder.size > 0 && builder.priceLots[builder.size - 1] == bucketLots) {
+                builder.quantityLots[builder.size - 1] += side.getQuantityLots(i);
+                builder.quantities[builder.size - 1] += side.getQuantity(i);
+            } else if (builder.size == maxLevels) {
+                break;
+            } else {
+                // Lots convert to prices linearly, scale from the order's own price
+                float price = bucketLots == priceLots ?
+                        side.getPrice(i) :
+                        (float) ((double) side.getPrice(i) * bucketLots / priceLots);
+                builder.add(bucketLots, side.getQuantityLots(i), price, side.getQuantity(i));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Levels that differ between two versions of the same side: added or changed levels with their new
+     * quantity, removed levels with quantity 0.
+     *
+     * @param from older levels
+     * @param to newer levels
+     * @param isBid side, decides the sort direction
+     * @return changed levels, sorted best price first
+     */
+    public static BookLevels diff(BookLevels from, BookLevels to, boolean isBid) {
+        Builder builder = new Builder(from.size + to.size);
+        int i = 0, j = 0;
+        while (i < from.size || j < to.size) {
+            int order = i == from.size ? 1 : j == to.size ? -1 : compare(from.priceLots[i], to.priceLots[j], isBid);
+            if (order < 0) {
+                builder.add(from.priceLots[i], 0, from.prices[i], 0.0f);
+                i++;
+            } else if (order > 0) {
+                builder.add(to.priceLots[j], to.quantityLots[j], to.prices[j], to.quantities[j]);
+                j++;
+            } else {
+                if (from.quantityLots[i] != to.quantityLots[j]) {
+                    builder.add(to.priceLots[j], to.quantityLots[j], to.prices[j], to.quantities[j]);
+                }
+                i++;
+                j++;
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Combines two consecutive diffs of the same side into one, the later change of a level wins.
+     *
+     * @param earlier older diff
+     * @param later newer diff
+     * @param isBid side, decides the sort direction
+     * @return combined diff
+     */
+    public static BookLevels combine(BookLevels earlier, BookLevels later, boolean isBid) {
+        if (earlier.size == 0) {
+            return later;
+        }
+        if (later.size == 0) {
+            return earlier;
+        }
+
+        Builder builder = new Builder(earlier.size + later.size);
+        int i = 0, j = 0;
+        while (i < earlier.size || j < later.size) {
+            int order = i == earlier.size ? 1 : j == later.size ? -1 :
+                    compare(earlier.priceLots[i], later.priceLots[j], isBid);
+            if (order < 0) {
+                builder.add(earlier.priceLots[i], earlier.quantityLots[i], earlier.prices[i], earlier.quantities[i]);
+                i++;
+            } else {
+                builder.add(later.priceLots[j], later.quantityLots[j], later.prices[j], later.quantities[j]);
+                if (order == 0) {
+                    i++;
+                }
+                j++;
+            }
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getPriceLots(int index) {
+        return priceLots[index];
+    }
+
+    public long getQuantityLots(int index) {
+        return quantityLots[index];
+    }
+
+    public float getPrice(int index) {
+        return prices[index];
+    }
+
+    public float getQuantity(int index) {
+        return quantities[index];
+    }
+
+    // [[price, quantity], ...], same row shape as MarketDepth
+    public float[][] toArray() {
+        float[][] result = new float[size][];
+        for (int i = 0; i < size; i++) {
+            result[i] = new float[]{prices[i], quantities[i]};
+        }
+        return result;
+    }
+
+    // Negative if a sorts before b on this side
+    private static int compare(long a, long b, boolean isBid) {
+        return isBid ? Long.compare(b, a) : Long.compare(a, b);
+    }
+
+    private static class Builder {
+        private final long[] priceLots;
+        private final long[] quantityLots;
+        private final float[] prices;
+        private final float[] quantities;
+        private int size;
+
+        Builder(int capacity) {
+            priceLots = new long[capacity];
+            quantityLots = new long[capacity];
+            prices = new float[capacity];
+            quantities = new float[capacity];
+        }
+
+        void add(long priceLot, long quantityLot, float price, float quantity) {
+            priceLots[size] = priceLot;
+            quantityLots[size] = quantityLot;
+            prices[size] = price;
+            quantities[size] = quantity;
+            size++;
+        }
+
+        BookLevels build() {
+            return size == 0 ? EMPTY : new BookLevels(size, priceLots, quantityLots, prices, quantities);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.mmorrell.serumdata.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class CacheStats {
+
+    private long hits, staleHits, misses;
+    private long loadSuccesses, loadFailures, coalescedLoads;
+    private double averageLoadMs;
+}
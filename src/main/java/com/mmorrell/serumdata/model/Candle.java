@@ -0,0 +1,19 @@
+package com.mmorrell.serumdata.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class Candle {
+    // Bucket start, epoch ms
+    private long time;
+    private double open;
+    private double high;
+    private double low;
+    private double close;
+    // Base quantity traded
+    private double volume;
+    private double vwap;
+    private int trades;
+}
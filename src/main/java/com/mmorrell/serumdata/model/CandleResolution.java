@@ -0,0 +1,49 @@
+package com.mmorrell.serumdata.model;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Candle intervals, finest first. Each rolls up into the next, so every interval divides the one after it.
+ * Capacity is the number of closed candles kept.
+ */
+public enum CandleResolution {
+    // 1 hour of seconds
+    ONE_SECOND("1s", 1_000L, 3_600),
+    // 1 day of minutes
+    ONE_MINUTE("1m", 60_000L, 1_440),
+    // 1 week
+    FIVE_MINUTES("5m", 300_000L, 2_016),
+    // 90 days
+    ONE_HOUR("1h", 3_600_000L, 2_160),
+    // ~3 years
+    ONE_DAY("1d", 86_400_000L, 1_000);
+
+    private final String label;
+    private final long intervalMs;
+    private final int capacity;
+
+    CandleResolution(String label, long intervalMs, int capacity) {
+        this.label = label;
+        this.intervalMs = intervalMs;
+        this.capacity = capacity;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public static Optional<CandleResolution> fromLabel(String label) {
+        return Arrays.stream(values())
+                .filter(resolution -> resolution.label.equalsIgnoreCase(label))
+                .findFirst();
+    }
+}
@@ -0,0 +1,32 @@
+package com.mmorrell.serumdata.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import org.p2p.solanaj.core.PublicKey;
+
+/**
+ * One fill event read from a market's event queue. Each match produces a maker fill per resting order,
+ * followed by the taker's fill.
+ */
+@Getter
+@Builder
+public class Fill {
+    // Position in the market's event stream, increases by one per event (fills and outs)
+    private final long seqNum;
+    // Slot and epoch ms the event was first seen at. For backfilled fills the timestamp is only a lower bound,
+    // the last trusted time before them (0 if none).
+    private final long slot;
+    private final long timestamp;
+    // Already in the queue when the tape started following it (first read, or catch-up after a restart), so when
+    // it happened is unknown. Left out of candles and time lookups.
+    private final boolean backfilled;
+
+    private final float price;
+    private final float quantity;
+    // Exact amounts, base and quote in native units (quote before fees)
+    private final long nativeQuantity;
+    private final long nativeQuote;
+    private final PublicKey openOrders;
+    private final boolean bid;
+    private final boolean maker;
+}
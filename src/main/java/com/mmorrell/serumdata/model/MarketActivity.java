@@ -0,0 +1,62 @@
+package com.mmorrell.serumdata.model;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Demand and on-chain activity of one market, sampled into moving averages by the refresh scheduler.
+ */
+public class MarketActivity {
+
+    private static final double EWMA_ALPHA = 0.3;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder changes = new LongAdder();
+
+    // API requests per second
+    private volatile double requestRate;
+    // Share of received book updates that actually changed a price level, 0.0 - 1.0
+    private volatile double changeRatio;
+    private long lastSampleTime;
+
+    public MarketActivity(long now) {
+        this.lastSampleTime = now;
+    }
+
+    public void recordRequest() {
+        requests.increment();
+    }
+
+    public void recordUpdate(boolean bookChanged) {
+        updates.increment();
+        if (bookChanged) {
+            changes.increment();
+        }
+    }
+
+    /**
+     * Folds the counts since the last sample into the averages.
+     *
+     * @param now epoch ms
+     */
+    public synchronized void sample(long now) {
+        double elapsedSeconds = Math.max(1, now - lastSampleTime) / 1000.0;
+        lastSampleTime = now;
+
+        requestRate = EWMA_ALPHA * (requests.sumThenReset() / elapsedSeconds) + (1 - EWMA_ALPHA) * requestRate;
+
+        long updateCount = updates.sumThenReset();
+        long changeCount = changes.sumThenReset();
+        if (updateCount > 0) {
+            changeRatio = EWMA_ALPHA * ((double) changeCount / updateCount) + (1 - EWMA_ALPHA) * changeRatio;
+        }
+    }
+
+    public double getRequestRate() {
+        return requestRate;
+    }
+
+    public double getChangeRatio() {
+        return changeRatio;
+    }
+}
@@ -0,0 +1,15 @@
+package com.mmorrell.serumdata.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class MarketDiff {
+
+    // [[price, quantity], ...], quantity 0 removes the level
+    private float[][] bids, asks;
+    private long fromSlot, toSlot;
+    // true if bids/asks hold the full book instead of changes
+    private boolean snapshot;
+}
@@ -0,0 +1,117 @@
+package com.mmorrell.serumdata.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.mmorrell.serum.model.Market;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.*;
+
+/**
+ * Immutable generation of cached markets, with lookups by base mint, quote mint, either mint and pair
+ * built up front. A refresh builds a new generation and swaps it in, so reads never lock or allocate.
+ */
+public class MarketRegistry {
+
+    public static final MarketRegistry EMPTY = of(Collections.emptyList());
+
+    private final long generation;
+    // <marketPubkey, Market>
+    private final ImmutableMap<PublicKey, Market> markets;
+    private final ImmutableList<Market> marketList;
+    // <baseMint, List<Market>>
+    private final ImmutableMap<PublicKey, ImmutableList<Market>> marketsByBaseMint;
+    // <quoteMint, List<Market>>
+    private final ImmutableMap<PublicKey, ImmutableList<Market>> marketsByQuoteMint;
+    // <mint, markets with it as base or quote>
+    private final ImmutableMap<PublicKey, ImmutableList<Market>> marketsByTokenMint;
+    // <baseMint, <quoteMint, List<Market>>>
+    private final ImmutableMap<PublicKey, ImmutableMap<PublicKey, ImmutableList<Market>>> marketsByPair;
+
+    private MarketRegistry(long generation, Collection<Market> markets) {
+        this.generation = generation;
+
+        Map<PublicKey, Market> marketMap = new LinkedHashMap<>();
+        Map<PublicKey, List<Market>> byBaseMint = new HashMap<>();
+        Map<PublicKey, List<Market>> byQuoteMint = new HashMap<>();
+        Map<PublicKey, Set<Market>> byTokenMint = new HashMap<>();
+        Map<PublicKey, Map<PublicKey, List<Market>>> byPair = new HashMap<>();
+
+        for (Market market : markets) {
+            marketMap.put(market.getOwnAddress(), market);
+        }
+        for (Market market : marketMap.values()) {
+            byBaseMint.computeIfAbsent(market.getBaseMint(), mint -> new ArrayList<>()).add(market);
+            byQuoteMint.computeIfAbsent(market.getQuoteMint(), mint -> new ArrayList<>()).add(market);
+            byTokenMint.computeIfAbsent(market.getBaseMint(), mint -> new LinkedHashSet<>()).add(market);
+            byTokenMint.computeIfAbsent(market.getQuoteMint(), mint -> new LinkedHashSet<>()).add(market);
+            byPair.computeIfAbsent(market.getBaseMint(), mint -> new HashMap<>())
+                    .computeIfAbsent(market.getQuoteMint(), mint -> new ArrayList<>())
+                    .add(market);
+        }
+
+        this.markets = ImmutableMap.copyOf(marketMap);
+        this.marketList = ImmutableList.copyOf(marketMap.values());
+        this.marketsByBaseMint = toIndex(byBaseMint);
+        this.marketsByQuoteMint = toIndex(byQuoteMint);
+        this.marketsByTokenMint = toIndex(byTokenMint);
+
+        ImmutableMap.Builder<PublicKey, ImmutableMap<PublicKey, ImmutableList<Market>>> pairBuilder = ImmutableMap.builder();
+        byPair.forEach((baseMint, quoteMarkets) -> pairBuilder.put(baseMint, toIndex(quoteMarkets)));
+        this.marketsByPair = pairBuilder.build();
+    }
+
+    public static MarketRegistry of(Collection<Market> markets) {
+        return new MarketRegistry(0, markets);
+    }
+
+    /**
+     * Next generation, with updated markets replacing existing ones by address and new ones added.
+     * Markets missing from the update are kept, so a failed reload doesn't drop a market.
+     *
+     * @param updatedMarkets freshly loaded markets
+     * @return new registry, this one is unchanged
+     */
+    public MarketRegistry withMarkets(Collection<Market> updatedMarkets) {
+        Map<PublicKey, Market> merged = new LinkedHashMap<>(markets);
+        for (Market market : updatedMarkets) {
+            merged.put(market.getOwnAddress(), market);
+        }
+        return new MarketRegistry(generation + 1, merged.values());
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public Optional<Market> getMarket(PublicKey marketPubkey) {
+        return Optional.ofNullable(markets.get(marketPubkey));
+    }
+
+    public List<Market> getMarkets() {
+        return marketList;
+    }
+
+    public List<Market> getMarketsByBaseMint(PublicKey baseMint) {
+        return marketsByBaseMint.getOrDefault(baseMint, ImmutableList.of());
+    }
+
+    public List<Market> getMarketsByQuoteMint(PublicKey quoteMint) {
+        return marketsByQuoteMint.getOrDefault(quoteMint, ImmutableList.of());
+    }
+
+    public List<Market> getMarketsByTokenMint(PublicKey tokenMint) {
+        return marketsByTokenMint.getOrDefault(tokenMint, ImmutableList.of());
+    }
+
+    public List<Market> getMarketsByPair(PublicKey baseMint, PublicKey quoteMint) {
+        ImmutableMap<PublicKey, ImmutableList<Market>> quoteMarkets = marketsByPair.get(baseMint);
+        return quoteMarkets == null ? ImmutableList.of() : quoteMarkets.getOrDefault(quoteMint, ImmutableList.of());
+    }
+
+    private static ImmutableMap<PublicKey, ImmutableList<Market>> toIndex(Map<PublicKey, ? extends Collection<Market>> index) {
+        ImmutableMap.Builder<PublicKey, ImmutableList<Market>> builder = ImmutableMap.builder();
+        index.forEach((mint, markets) -> builder.put(mint, ImmutableList.copyOf(markets)));
+        return builder.build();
+    }
+}
@@ -0,0 +1,90 @@
+package com.mmorrell.serumdata.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import org.p2p.solanaj.core.PublicKey;
+
+/**
+ * Immutable view of a market's bids, asks and event queue position, with the slot each was read at.
+ * Fills themselves are kept on the market's {@link TradeTape}.
+ * Updates produce a new snapshot with a higher version, so a reader always sees one consistent set.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class MarketSnapshot {
+    private final PublicKey marketId;
+    private final long version;
+
+    private final OrderBookSide bids;
+    private final long bidsSlot;
+    private final OrderBookSide asks;
+    private final long asksSlot;
+    // Event queue seqNum at eventQueueSlot, fills before it are on the trade tape
+    private final long eventQueueSeqNum;
+    private final long eventQueueSlot;
+
+    // Epoch ms each part was last received, by fetch or stream
+    private final long bidsTime;
+    private final long asksTime;
+    private final long eventQueueTime;
+
+    public long getSlot() {
+        return Math.max(bidsSlot, Math.max(asksSlot, eventQueueSlot));
+    }
+
+    // Latest slot of the order book alone, diffs are tagged with it
+    public long getBookSlot() {
+        return Math.max(bidsSlot, asksSlot);
+    }
+
+    public MarketSnapshot withBids(OrderBookSide bids, long slot) {
+        if (slot < bidsSlot) {
+            return this;
+        }
+        return toBuilder().version(version + 1).bids(bids).bidsSlot(slot).bidsTime(System.currentTimeMillis()).build();
+    }
+
+    public MarketSnapshot withAsks(OrderBookSide asks, long slot) {
+        if (slot < asksSlot) {
+            return this;
+        }
+        return toBuilder().version(version + 1).asks(asks).asksSlot(slot).asksTime(System.currentTimeMillis()).build();
+    }
+
+    public MarketSnapshot withEventQueue(long seqNum, long slot) {
+        if (slot < eventQueueSlot) {
+            return this;
+        }
+        return toBuilder()
+                .version(version + 1)
+                .eventQueueSeqNum(seqNum)
+                .eventQueueSlot(slot)
+                .eventQueueTime(System.currentTimeMillis())
+                .build();
+    }
+
+    /**
+     * Merges a full fetch into this snapshot. Sides already pushed at a newer slot (e.g. by a stream) are kept.
+     *
+     * @param fetched snapshot built from one getMultipleAccounts call
+     * @return merged snapshot
+     */
+    public MarketSnapshot merge(MarketSnapshot fetched) {
+        boolean newerBids = fetched.bidsSlot >= bidsSlot;
+        boolean newerAsks = fetched.asksSlot >= asksSlot;
+        boolean newerEventQueue = fetched.eventQueueSlot >= eventQueueSlot;
+
+        return toBuilder()
+                .version(version + 1)
+                .bids(newerBids ? fetched.bids : bids)
+                .bidsSlot(newerBids ? fetched.bidsSlot : bidsSlot)
+                .bidsTime(newerBids ? fetched.bidsTime : bidsTime)
+                .asks(newerAsks ? fetched.asks : asks)
+                .asksSlot(newerAsks ? fetched.asksSlot : asksSlot)
+                .asksTime(newerAsks ? fetched.asksTime : asksTime)
+                .eventQueueSeqNum(newerEventQueue ? fetched.eventQueueSeqNum : eventQueueSeqNum)
+                .eventQueueSlot(newerEventQueue ? fetched.eventQueueSlot : eventQueueSlot)
+                .eventQueueTime(newerEventQueue ? fetched.eventQueueTime : eventQueueTime)
+                .build();
+    }
+}
@@ -0,0 +1,32 @@
+package com.mmorrell.serumdata.model;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Changed price levels of a market's book between two slots. Levels carry absolute quantities,
+ * so applying a diff again, or one that starts before the client's slot, is harmless.
+ */
+@Getter
+@Builder
+public class OrderBookDiff {
+    private final long fromSlot;
+    private final long toSlot;
+    private final BookLevels bids;
+    private final BookLevels asks;
+
+    public static OrderBookDiff between(MarketSnapshot from, MarketSnapshot to) {
+        return OrderBookDiff.builder()
+                .fromSlot(from.getBookSlot())
+                .toSlot(to.getBookSlot())
+                .bids(from.getBids() == to.getBids() ? BookLevels.EMPTY :
+                        BookLevels.diff(from.getBids().getLevels(), to.getBids().getLevels(), true))
+                .asks(from.getAsks() == to.getAsks() ? BookLevels.EMPTY :
+                        BookLevels.diff(from.getAsks().getLevels(), to.getAsks().getLevels(), false))
+                .build();
+    }
+
+    public int size() {
+        return bids.size() + asks.size();
+    }
+}
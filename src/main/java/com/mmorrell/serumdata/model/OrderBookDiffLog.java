@@ -0,0 +1,87 @@
+package com.mmorrell.serumdata.model;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+
+/**
+ * Bounded history of one market's book diffs, fed with every published snapshot.
+ */
+public class OrderBookDiffLog {
+
+    private final int capacity;
+    private final Deque<OrderBookDiff> diffs = new ArrayDeque<>();
+    private MarketSnapshot lastSnapshot;
+
+    public OrderBookDiffLog(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Diffs a newly published snapshot against the last recorded one.
+     * Snapshots published concurrently can arrive out of order, older versions are skipped.
+     *
+     * @param snapshot published snapshot
+     * @return true if any price level changed
+     */
+    public synchronized boolean record(MarketSnapshot snapshot) {
+        if (lastSnapshot == null) {
+            lastSnapshot = snapshot;
+            return false;
+        }
+        if (snapshot.getVersion() <= lastSnapshot.getVersion()) {
+            return false;
+        }
+
+        boolean levelsChanged = false;
+        boolean sideReplaced = snapshot.getBids() != lastSnapshot.getBids() || snapshot.getAsks() != lastSnapshot.getAsks();
+        if (sideReplaced) {
+            OrderBookDiff diff = OrderBookDiff.between(lastSnapshot, snapshot);
+            if (diff.size() > 0) {
+                levelsChanged = true;
+                diffs.addLast(diff);
+                if (diffs.size() > capacity) {
+                    diffs.removeFirst();
+                }
+            }
+        }
+        lastSnapshot = snapshot;
+        return levelsChanged;
+    }
+
+    /**
+     * All changes since a client's slot, combined into one diff.
+     * Diffs ending at sinceSlot are included only when they also start there, since a side can
+     * update twice within one slot, after the client may have read it.
+     *
+     * @param sinceSlot book slot the client last saw
+     * @return combined diff up to the latest slot, empty if the history doesn't reach back to sinceSlot
+     */
+    public synchronized Optional<OrderBookDiff> getDiffSince(long sinceSlot) {
+        if (lastSnapshot == null || sinceSlot > lastSnapshot.getBookSlot()) {
+            return Optional.empty();
+        }
+
+        long oldestSlot = diffs.isEmpty() ? lastSnapshot.getBookSlot() : diffs.peekFirst().getFromSlot();
+        if (sinceSlot < oldestSlot) {
+            return Optional.empty();
+        }
+
+        BookLevels bids = BookLevels.EMPTY;
+        BookLevels asks = BookLevels.EMPTY;
+        for (OrderBookDiff diff : diffs) {
+            boolean sameSlotUpdate = diff.getFromSlot() == sinceSlot && diff.getToSlot() == sinceSlot;
+            if (diff.getToSlot() > sinceSlot || sameSlotUpdate) {
+                bids = BookLevels.combine(bids, diff.getBids(), true);
+                asks = BookLevels.combine(asks, diff.getAsks(), false);
+            }
+        }
+
+        return Optional.of(OrderBookDiff.builder()
+                .fromSlot(sinceSlot)
+                .toSlot(lastSnapshot.getBookSlot())
+                .bids(bids)
+                .asks(asks)
+                .build());
+    }
+}
@@ -0,0 +1,79 @@
+package com.mmorrell.serumdata.model;
+
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.Arrays;
+
+/**
+ * One side of an order book in primitive columns, sorted best price first
+ * (descending for bids, ascending for asks). Built by SlabDecoder without per-order objects.
+ */
+public class OrderBookSide {
+
+    public static final int OWNER_LENGTH = 32;
+
+    private final boolean bid;
+    private final int size;
+    private final long[] priceLots;
+    private final long[] quantityLots;
+    private final float[] prices;
+    private final float[] quantities;
+    // Open orders account of each order, packed OWNER_LENGTH bytes apiece
+    private final byte[] owners;
+    // Aggregated on first use, racing threads compute the same result
+    private volatile BookLevels levels;
+
+    public OrderBookSide(boolean bid, int size, long[] priceLots, long[] quantityLots,
+                         float[] prices, float[] quantities, byte[] owners) {
+        this.bid = bid;
+        this.size = size;
+        this.priceLots = priceLots;
+        this.quantityLots = quantityLots;
+        this.prices = prices;
+        this.quantities = quantities;
+        this.owners = owners;
+    }
+
+    public boolean isBid() {
+        return bid;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getPriceLots(int index) {
+        return priceLots[index];
+    }
+
+    public long getQuantityLots(int index) {
+        return quantityLots[index];
+    }
+
+    public float getPrice(int index) {
+        return prices[index];
+    }
+
+    public float getQuantity(int index) {
+        return quantities[index];
+    }
+
+    public PublicKey getOwner(int index) {
+        int offset = index * OWNER_LENGTH;
+        return new PublicKey(Arrays.copyOfRange(owners, offset, offset + OWNER_LENGTH));
+    }
+
+    public BookLevels getLevels() {
+        BookLevels result = levels;
+        if (result == null) {
+            result = BookLevels.of(this);
+            levels = result;
+        }
+        return result;
+    }
+
+    // Best bid for bids, best ask for asks
+    public float getBestPrice() {
+        return size > 0 ? prices[0] : 0.0f;
+    }
+}
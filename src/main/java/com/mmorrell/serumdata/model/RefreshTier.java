@@ -0,0 +1,23 @@
+package com.mmorrell.serumdata.model;
+
+/**
+ * Background refresh interval of a market, by demand and on-chain activity.
+ * COLD stays under the default book max staleness, so requests for any market are served without waiting.
+ */
+public enum RefreshTier {
+    // Being viewed
+    HOT(1_000),
+    // Recently viewed, trading actively, or top ranked
+    WARM(4_000),
+    COLD(12_000);
+
+    private final long intervalMs;
+
+    RefreshTier(long intervalMs) {
+        this.intervalMs = intervalMs;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+}
@@ -1,26 +1,26 @@
 package com.mmorrell.serumdata.model;
 
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
-import com.mmorrell.serumdata.util.PublicKeySerializer;
+import com.mmorrell.serumdata.util.SerumOrderSerializer;
 import lombok.Data;
 import org.p2p.solanaj.core.PublicKey;
 
-import java.util.HashMap;
-import java.util.Map;
-
 // For easy serialization of Order class, without baggage
 @Data
+@JsonSerialize(using = SerumOrderSerializer.class)
 public class SerumOrder {
     private float price;
     private float quantity;
 
-    // Possible keys: "entityName", "entityIcon" (for the known entity)
-    private final Map<String, Object> metadata = new HashMap<>();
+    // Cumulative share of the side's notional, best price first. Written under "metadata" with the fields below
+    private float percent;
 
-    @JsonSerialize(using = PublicKeySerializer.class)
-    private PublicKey owner;
+    // Known entity of the owner, null if unknown
+    private String entityName;
+    private String entityIcon;
 
-    public void addMetadata(String key, Object value) {
-        metadata.put(key, value);
-    }
+    // Open orders account of Mango owners, for linking to the Mango account
+    private PublicKey mangoKey;
+
+    private PublicKey owner;
 }
@@ -0,0 +1,49 @@
+package com.mmorrell.serumdata.model;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Sections of /snapshot, in response order. Each has the same body as the endpoint of the same name.
+ */
+public enum SnapshotField {
+    MARKET("market"),
+    BIDS("bids"),
+    ASKS("asks"),
+    DEPTH("depth"),
+    TRADE_HISTORY("tradeHistory");
+
+    private final String label;
+
+    SnapshotField(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static Optional<SnapshotField> fromLabel(String label) {
+        return Arrays.stream(values())
+                .filter(field -> field.label.equalsIgnoreCase(label))
+                .findFirst();
+    }
+
+    /**
+     * @param fields comma separated labels, e.g. "bids,asks". Unknown labels are ignored.
+     * @return requested fields, all of them if none are given
+     */
+    public static Set<SnapshotField> parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return EnumSet.allOf(SnapshotField.class);
+        }
+
+        final Set<SnapshotField> result = EnumSet.noneOf(SnapshotField.class);
+        for (String label : fields.split(",")) {
+            fromLabel(label.trim()).ifPresent(result::add);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,36 @@
+package com.mmorrell.serumdata.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.mmorrell.serumdata.util.PublicKeySerializer;
+import lombok.Builder;
+import lombok.Getter;
+import org.p2p.solanaj.core.PublicKey;
+
+/**
+ * Top of book and rolling 24h trade stats of one market. Prices are 0 when unknown, e.g. an empty book side.
+ */
+@Getter
+@Builder
+public class Ticker {
+    @JsonSerialize(using = PublicKeySerializer.class)
+    private final PublicKey marketId;
+    private final String baseSymbol;
+    private final String quoteSymbol;
+
+    private final float bestBid;
+    private final float bestAsk;
+    // bestAsk - bestBid, 0 unless both sides have orders
+    private final float spread;
+    private final float lastPrice;
+
+    // Base and quote quantity traded in the last 24h
+    private final double volume24h;
+    private final double quoteVolume24h;
+    private final double high24h;
+    private final double low24h;
+    // Last price relative to the first trade of the window, e.g. 0.05 for +5%
+    private final double change24h;
+
+    // Slot of the book the prices are from
+    private final long slot;
+}
@@ -0,0 +1,25 @@
+package com.mmorrell.serumdata.model;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Cached token logo, with what's needed to revalidate it against its source.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class TokenImage {
+    // Null when the image was read back from disk, see TokenImageCache.getObjectFile
+    private final byte[] data;
+    // e.g. image/png, from the source's Content-Type
+    private final String contentType;
+    // SHA-256 of data, hex. Names the file in the content store.
+    private final String hash;
+
+    // Source URL and its validators, ETag and Last-Modified may be null
+    private final String logoURI;
+    private final String etag;
+    private final String lastModified;
+    // Last time the source confirmed this image
+    private final long validatedAt;
+}
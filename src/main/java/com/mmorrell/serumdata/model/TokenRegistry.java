@@ -0,0 +1,57 @@
+package com.mmorrell.serumdata.model;
+
+import com.google.common.collect.ImmutableMap;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.Map;
+
+/**
+ * Immutable generation of the token registry. A refresh parses the token list into a new generation and
+ * swaps it in, so reads never see a partially updated registry.
+ */
+public class TokenRegistry {
+
+    public static final TokenRegistry EMPTY = new TokenRegistry(0, Map.of(), null, null);
+
+    private final long generation;
+    // <tokenMint, token>, mainnet only
+    private final ImmutableMap<PublicKey, Token> tokens;
+    // Validators of the token list these tokens came from, sent with the next request. May be null.
+    private final String etag;
+    private final String lastModified;
+
+    public TokenRegistry(long generation, Map<PublicKey, Token> tokens, String etag, String lastModified) {
+        this.generation = generation;
+        this.tokens = ImmutableMap.copyOf(tokens);
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Next generation, replacing all tokens.
+     *
+     * @param tokens freshly parsed tokens
+     * @param etag ETag of the token list, may be null
+     * @param lastModified Last-Modified of the token list, may be null
+     * @return new registry, this one is unchanged
+     */
+    public TokenRegistry withTokens(Map<PublicKey, Token> tokens, String etag, String lastModified) {
+        return new TokenRegistry(generation + 1, tokens, etag, lastModified);
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public Map<PublicKey, Token> getTokens() {
+        return tokens;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+}
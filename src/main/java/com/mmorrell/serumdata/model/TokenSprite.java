@@ -0,0 +1,93 @@
+package com.mmorrell.serumdata.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.common.collect.ImmutableMap;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.Map;
+
+/**
+ * Immutable sprite sheet of active token icons, and the cell of each token in it. Serialized as the offset map
+ * clients place icons with, the sheet itself is served from getUrl.
+ */
+public class TokenSprite {
+
+    public static final TokenSprite EMPTY = new TokenSprite("", 0, 1, Map.of(), new byte[0]);
+
+    // Changes with the tokens and images in the sheet, names its URL
+    private final String version;
+    // Width and height of each cell in px
+    private final int size;
+    private final int columns;
+    private final int rows;
+    // <tokenMint base58, cell index>, tokens sharing a logo share a cell
+    private final ImmutableMap<String, Integer> icons;
+    private final byte[] png;
+
+    public TokenSprite(String version, int size, int columns, Map<String, Integer> icons, byte[] png) {
+        this.version = version;
+        this.size = size;
+        this.columns = columns;
+        this.icons = ImmutableMap.copyOf(icons);
+        int cells = icons.values().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
+        this.rows = (cells + columns - 1) / columns;
+        this.png = png;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getUrl() {
+        return "/api/serum/token/sprite/" + version + ".png";
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public Map<String, Integer> getIcons() {
+        return icons;
+    }
+
+    @JsonIgnore
+    public byte[] getPng() {
+        return png;
+    }
+
+    // Used in Thymeleaf
+    public boolean contains(PublicKey tokenMint) {
+        return tokenMint != null && icons.containsKey(tokenMint.toBase58());
+    }
+
+    /**
+     * Inline style showing the token's icon as the background of a displaySize px element.
+     * NOTE: Don't delete, used at the Thymeleaf layer
+     *
+     * @param tokenMint token in this sprite, see contains
+     * @param displaySize rendered width and height in px
+     * @return CSS declarations
+     */
+    public String getStyle(PublicKey tokenMint, int displaySize) {
+        int cell = icons.get(tokenMint.toBase58());
+        return String.format(
+                "width: %dpx; height: %dpx; background-image: url(%s); background-size: %dpx %dpx; " +
+                        "background-position: -%dpx -%dpx;",
+                displaySize,
+                displaySize,
+                getUrl(),
+                columns * displaySize,
+                rows * displaySize,
+                (cell % columns) * displaySize,
+                (cell / columns) * displaySize
+        );
+    }
+}
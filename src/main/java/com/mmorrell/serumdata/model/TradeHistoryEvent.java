@@ -1,28 +1,23 @@
 package com.mmorrell.serumdata.model;
 
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
-import com.mmorrell.serumdata.util.PublicKeySerializer;
+import com.mmorrell.serumdata.util.TradeHistoryEventSerializer;
 import lombok.Builder;
 import lombok.Data;
 import org.p2p.solanaj.core.PublicKey;
 
 @Data
 @Builder
+@JsonSerialize(using = TradeHistoryEventSerializer.class)
 public class TradeHistoryEvent {
     private int index;
+    private long seqNum;
     private float price;
     private float quantity;
 
-    @JsonSerialize(using = PublicKeySerializer.class)
     private PublicKey takerOoa;
-
-    @JsonSerialize(using = PublicKeySerializer.class)
     private PublicKey makerOoa;
-
-    @JsonSerialize(using = PublicKeySerializer.class)
     private PublicKey owner;
-
-    @JsonSerialize(using = PublicKeySerializer.class)
     private PublicKey makerOwner;
 
     // Known entities
@@ -0,0 +1,151 @@
+package com.mmorrell.serumdata.model;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.util.EventQueueDecoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Append-only history of one market's fills, fed with every event queue read.
+ * Keeps a seqNum cursor so each read only decodes events pushed since the previous one, and counts events
+ * that rotated out of the queue between reads.
+ * <p>
+ * Events already in the queue on the first read, or pushed while the process was down (the first read after a
+ * restore), are backfilled: their fills carry the last trusted timestamp instead of the receive time, see Fill.
+ */
+public class TradeTape {
+
+    private final int capacity;
+    private final Deque<Fill> fills = new ArrayDeque<>();
+    // seqNum of the next unread event, -1 before the first read
+    private long nextSeqNum = -1;
+    // Set by the first read, later reads only find events pushed since the previous one
+    private boolean live;
+    // Latest receive time stamped on a fill, lower bound for backfilled ones
+    private long lastTimestamp;
+    private long gapCount;
+    private long missedEvents;
+
+    public TradeTape(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Appends the fills pushed since the last read. Reads arriving out of order (older seqNum) are skipped.
+     *
+     * @param eventQueue event queue account data
+     * @param market market the queue belongs to, for decimals
+     * @param slot slot the account was read at
+     * @return number of events lost since the previous read, 0 if none
+     */
+    public synchronized long record(ByteBuffer eventQueue, Market market, long slot) {
+        long seqNum = EventQueueDecoder.getSeqNum(eventQueue);
+        if (seqNum <= nextSeqNum) {
+            return 0;
+        }
+
+        long oldestSeqNum = EventQueueDecoder.getOldestSeqNum(eventQueue);
+        long fromSeqNum = Math.max(nextSeqNum, oldestSeqNum);
+        long missed = nextSeqNum < 0 ? 0 : fromSeqNum - nextSeqNum;
+        boolean backfilled = !live;
+        long timestamp = backfilled ? lastTimestamp : System.currentTimeMillis();
+
+        fills.addAll(EventQueueDecoder.decodeFills(
+                eventQueue,
+                fromSeqNum,
+                seqNum,
+                market.getBaseDecimals(),
+                market.getQuoteDecimals(),
+                slot,
+                timestamp,
+                backfilled
+        ));
+        while (fills.size() > capacity) {
+            fills.removeFirst();
+        }
+
+        if (missed > 0) {
+            gapCount++;
+            missedEvents += missed;
+        }
+        nextSeqNum = seqNum;
+        live = true;
+        lastTimestamp = timestamp;
+        return missed;
+    }
+
+    /**
+     * Seeds an unread tape with persisted fills, so history and gap detection carry over a restart.
+     *
+     * @param persisted latest persisted fills, oldest first
+     * @param persistedSeqNum seqNum of the last persisted event
+     */
+    public synchronized void restore(List<Fill> persisted, long persistedSeqNum) {
+        if (nextSeqNum >= 0) {
+            return;
+        }
+        fills.addAll(persisted);
+        if (!persisted.isEmpty()) {
+            lastTimestamp = persisted.get(persisted.size() - 1).getTimestamp();
+        }
+        while (fills.size() > capacity) {
+            fills.removeFirst();
+        }
+        nextSeqNum = persistedSeqNum + 1;
+    }
+
+    /**
+     * @param limit max fills to return
+     * @return latest fills, newest first
+     */
+    public synchronized List<Fill> getFills(int limit) {
+        List<Fill> result = new ArrayList<>(Math.min(limit, fills.size()));
+        Iterator<Fill> iterator = fills.descendingIterator();
+        while (iterator.hasNext() && result.size() < limit) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    /**
+     * For incremental consumers keeping their own cursor.
+     *
+     * @param seqNum first seqNum wanted
+     * @return fills at or after seqNum, oldest first
+     */
+    public synchronized List<Fill> getFillsSince(long seqNum) {
+        if (fills.isEmpty() || fills.peekLast().getSeqNum() < seqNum) {
+            return Collections.emptyList();
+        }
+
+        List<Fill> result = new ArrayList<>();
+        Iterator<Fill> iterator = fills.descendingIterator();
+        while (iterator.hasNext()) {
+            Fill fill = iterator.next();
+            if (fill.getSeqNum() < seqNum) {
+                break;
+            }
+            result.add(fill);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    public synchronized long getNextSeqNum() {
+        return nextSeqNum;
+    }
+
+    public synchronized long getGapCount() {
+        return gapCount;
+    }
+
+    public synchronized long getMissedEvents() {
+        return missedEvents;
+    }
+}
@@ -0,0 +1,23 @@
+package com.mmorrell.serumdata.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.p2p.solanaj.core.PublicKey;
+
+/**
+ * Base58 strings of recently serialized public keys. Owners, open orders accounts and mints repeat across
+ * every response, so each is encoded once instead of per response.
+ */
+public class Base58Cache {
+
+    // Roughly every open orders account and owner seen on the cached markets
+    private static final int MAX_SIZE = 100_000;
+
+    private static final Cache<PublicKey, String> ENCODED = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .build();
+
+    public static String toBase58(PublicKey publicKey) {
+        return ENCODED.asMap().computeIfAbsent(publicKey, PublicKey::toBase58);
+    }
+}
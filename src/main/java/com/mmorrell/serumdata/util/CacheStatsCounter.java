@@ -0,0 +1,60 @@
+package com.mmorrell.serumdata.util;
+
+import com.mmorrell.serumdata.model.CacheStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contention-free counters behind CacheStats.
+ */
+public class CacheStatsCounter {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder coalescedLoads = new LongAdder();
+    private final LongAdder totalLoadNanos = new LongAdder();
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    // Served, with a background refresh started
+    public void recordStaleHit() {
+        staleHits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    public void recordCoalescedLoad() {
+        coalescedLoads.increment();
+    }
+
+    public void recordLoadSuccess(long nanos) {
+        loadSuccesses.increment();
+        totalLoadNanos.add(nanos);
+    }
+
+    public void recordLoadFailure(long nanos) {
+        loadFailures.increment();
+        totalLoadNanos.add(nanos);
+    }
+
+    public CacheStats snapshot() {
+        long loads = loadSuccesses.sum() + loadFailures.sum();
+        return CacheStats.builder()
+                .hits(hits.sum())
+                .staleHits(staleHits.sum())
+                .misses(misses.sum())
+                .loadSuccesses(loadSuccesses.sum())
+                .loadFailures(loadFailures.sum())
+                .coalescedLoads(coalescedLoads.sum())
+                .averageLoadMs(loads == 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(totalLoadNanos.sum()) / loads / 1000)
+                .build();
+    }
+}
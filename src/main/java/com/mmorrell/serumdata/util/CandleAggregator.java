@@ -0,0 +1,283 @@
+package com.mmorrell.serumdata.util;
+
+import com.mmorrell.serumdata.model.Candle;
+import com.mmorrell.serumdata.model.CandleResolution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * OHLCV candles of one market at every {@link CandleResolution}, built once as trades arrive.
+ * Trades only update the finest (1s) candle. When a candle closes it is folded into the next resolution, and so
+ * on up, so coarser candles never rescan trades. Closed candles are kept in primitive ring buffers.
+ * Buckets without trades have no candle.
+ */
+public class CandleAggregator {
+
+    // Finest first, in CandleResolution order
+    private final Series[] series;
+
+    public CandleAggregator() {
+        CandleResolution[] resolutions = CandleResolution.values();
+        this.series = new Series[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            series[i] = new Series(resolutions[i].getIntervalMs(), resolutions[i].getCapacity());
+        }
+    }
+
+    /**
+     * @param timestamp epoch ms of the trade
+     * @param price trade price
+     * @param quantity base quantity
+     */
+    public synchronized void addTrade(long timestamp, double price, double quantity) {
+        Bar closed = series[0].add(new Bar(timestamp, price, quantity));
+        for (int i = 1; i < series.length && closed != null; i++) {
+            closed = series[i].add(closed);
+        }
+    }
+
+    /**
+     * Candles starting within [from, to), oldest first. The latest candle includes trades still being rolled up
+     * from finer resolutions.
+     *
+     * @param resolution candle interval
+     * @param from epoch ms, inclusive
+     * @param to epoch ms, exclusive
+     */
+    public synchronized List<Candle> getCandles(CandleResolution resolution, long from, long to) {
+        int level = resolution.ordinal();
+        Series target = series[level];
+        List<Candle> candles = new ArrayList<>();
+
+        for (int i = 0; i < target.size; i++) {
+            int index = target.index(i);
+            long time = target.time[index];
+            if (time >= to) {
+                break;
+            }
+            if (time >= from) {
+                candles.add(toCandle(time, target.open[index], target.high[index], target.low[index],
+                        target.close[index], target.volume[index], target.quoteVolume[index], target.trades[index]));
+            }
+        }
+
+        // Open candles of this and every finer resolution, each newer than the one above it
+        Bar pending = target.current == null ? null : target.current.copy();
+        for (int i = level - 1; i >= 0; i--) {
+            Bar open = series[i].current;
+            if (open == null) {
+                continue;
+            }
+            long bucket = target.bucket(open.time);
+            if (pending == null || bucket > pending.time) {
+                addIfInRange(candles, pending, from, to);
+                pending = open.copy();
+                pending.time = bucket;
+            } else {
+                pending.merge(open);
+            }
+        }
+        addIfInRange(candles, pending, from, to);
+        return candles;
+    }
+
+    /**
+     * All trades since a time folded into one candle, e.g. rolling 24h stats. Covers whole candles of the
+     * resolution starting at or after from, without building the candle list.
+     *
+     * @param resolution granularity of the window start
+     * @param from epoch ms, inclusive
+     * @return summary candle starting at the first bucket, empty if there were no trades
+     */
+    public synchronized Optional<Candle> getSummary(CandleResolution resolution, long from) {
+        int level = resolution.ordinal();
+        Series target = series[level];
+
+        // Closed candles are in time order, find the oldest one in range
+        int first = target.size;
+        while (first > 0 && target.time[target.index(first - 1)] >= from) {
+            first--;
+        }
+
+        Bar summary = null;
+        for (int i = first; i < target.size; i++) {
+            int index = target.index(i);
+            Bar closed = new Bar();
+            closed.time = target.time[index];
+            closed.open = target.open[index];
+            closed.high = target.high[index];
+            closed.low = target.low[index];
+            closed.close = target.close[index];
+            closed.volume = target.volume[index];
+            closed.quoteVolume = target.quoteVolume[index];
+            closed.trades = target.trades[index];
+            summary = merge(summary, closed);
+        }
+
+        // Open candles, coarsest first, each newer than the one before
+        for (int i = level; i >= 0; i--) {
+            Bar open = series[i].current;
+            if (open != null && target.bucket(open.time) >= from) {
+                summary = merge(summary, open);
+            }
+        }
+
+        if (summary == null) {
+            return Optional.empty();
+        }
+        return Optional.of(toCandle(summary.time, summary.open, summary.high, summary.low, summary.close,
+                summary.volume, summary.quoteVolume, summary.trades));
+    }
+
+    private static Bar merge(Bar summary, Bar later) {
+        if (summary == null) {
+            return later.copy();
+        }
+        summary.merge(later);
+        return summary;
+    }
+
+    private static void addIfInRange(List<Candle> candles, Bar bar, long from, long to) {
+        if (bar != null && bar.time >= from && bar.time < to) {
+            candles.add(toCandle(bar.time, bar.open, bar.high, bar.low, bar.close, bar.volume, bar.quoteVolume,
+                    bar.trades));
+        }
+    }
+
+    private static Candle toCandle(long time, double open, double high, double low, double close, double volume,
+                                   double quoteVolume, int trades) {
+        return Candle.builder()
+                .time(time)
+                .open(open)
+                .high(high)
+                .low(low)
+                .close(close)
+                .volume(volume)
+                .vwap(volume > 0 ? quoteVolume / volume : close)
+                .trades(trades)
+                .build();
+    }
+
+    // Candle being built
+    private static class Bar {
+        private long time;
+        private double open;
+        private double high;
+        private double low;
+        private double close;
+        private double volume;
+        private double quoteVolume;
+        private int trades;
+
+        private Bar() {
+        }
+
+        Bar(long time, double price, double quantity) {
+            this.time = time;
+            this.open = price;
+            this.high = price;
+            this.low = price;
+            this.close = price;
+            this.volume = quantity;
+            this.quoteVolume = price * quantity;
+            this.trades = 1;
+        }
+
+        // Folds in a later bar
+        void merge(Bar later) {
+            high = Math.max(high, later.high);
+            low = Math.min(low, later.low);
+            close = later.close;
+            volume += later.volume;
+            quoteVolume += later.quoteVolume;
+            trades += later.trades;
+        }
+
+        Bar copy() {
+            Bar copy = new Bar();
+            copy.time = time;
+            copy.open = open;
+            copy.high = high;
+            copy.low = low;
+            copy.close = close;
+            copy.volume = volume;
+            copy.quoteVolume = quoteVolume;
+            copy.trades = trades;
+            return copy;
+        }
+    }
+
+    // One resolution: the open candle, plus a ring of closed ones
+    private static class Series {
+        private final long intervalMs;
+        private final int capacity;
+        private final long[] time;
+        private final double[] open;
+        private final double[] high;
+        private final double[] low;
+        private final double[] close;
+        private final double[] volume;
+        private final double[] quoteVolume;
+        private final int[] trades;
+        // Next write position, and number of closed candles held
+        private int head;
+        private int size;
+        private Bar current;
+
+        Series(long intervalMs, int capacity) {
+            this.intervalMs = intervalMs;
+            this.capacity = capacity;
+            this.time = new long[capacity];
+            this.open = new double[capacity];
+            this.high = new double[capacity];
+            this.low = new double[capacity];
+            this.close = new double[capacity];
+            this.volume = new double[capacity];
+            this.quoteVolume = new double[capacity];
+            this.trades = new int[capacity];
+        }
+
+        // Ring position of the i-th oldest closed candle
+        int index(int i) {
+            return (head - size + i + capacity) % capacity;
+        }
+
+        long bucket(long timestamp) {
+            return Math.floorDiv(timestamp, intervalMs) * intervalMs;
+        }
+
+        /**
+         * Adds a trade or a closed finer candle.
+         *
+         * @return the candle closed by it, to be rolled up, or null
+         */
+        Bar add(Bar bar) {
+            long bucket = bucket(bar.time);
+            // Late arrivals (clock steps back) stay in the open candle
+            if (current != null && bucket <= current.time) {
+                current.merge(bar);
+                return null;
+            }
+
+            Bar closed = current;
+            if (closed != null) {
+                time[head] = closed.time;
+                open[head] = closed.open;
+                high[head] = closed.high;
+                low[head] = closed.low;
+                close[head] = closed.close;
+                volume[head] = closed.volume;
+                quoteVolume[head] = closed.quoteVolume;
+                trades[head] = closed.trades;
+                head = (head + 1) % capacity;
+                size = Math.min(size + 1, capacity);
+            }
+
+            current = bar.copy();
+            current.time = bucket;
+            return closed;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.mmorrell.serumdata.util;
+
+import com.mmorrell.serumdata.model.Fill;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a Serum/OpenBook event queue in place, by sequence number. Only the requested range of events is decoded,
+ * instead of the whole ring.
+ * <p>
+ * Layout: 5 byte "serum" padding, u64 account flags, u64 head, u64 count, u64 seqNum, then 88 byte events and
+ * 7 bytes of tail padding. seqNum counts every event ever pushed. Consumed events stay in their ring slot until
+ * overwritten, so the last {@code capacity} events can be read, not just the {@code count} still queued.
+ */
+public class EventQueueDecoder {
+
+    private static final int HEAD_OFFSET = 5 + 8;
+    private static final int COUNT_OFFSET = HEAD_OFFSET + 8;
+    private static final int SEQ_NUM_OFFSET = COUNT_OFFSET + 8;
+    private static final int EVENTS_OFFSET = SEQ_NUM_OFFSET + 8;
+    private static final int TAIL_PADDING = 7;
+    private static final int EVENT_SIZE = 88;
+
+    // Event field offsets, relative to the event start
+    private static final int FLAGS_OFFSET = 0;
+    private static final int NATIVE_QUANTITY_RELEASED_OFFSET = 8;
+    private static final int NATIVE_QUANTITY_PAID_OFFSET = 16;
+    private static final int NATIVE_FEE_OR_REBATE_OFFSET = 24;
+    private static final int OPEN_ORDERS_OFFSET = 48;
+    private static final int OPEN_ORDERS_LENGTH = 32;
+
+    private static final int FLAG_FILL = 1;
+    private static final int FLAG_BID = 4;
+    private static final int FLAG_MAKER = 8;
+
+    public static long getSeqNum(ByteBuffer data) {
+        return data.duplicate().order(ByteOrder.LITTLE_ENDIAN).getLong(data.position() + SEQ_NUM_OFFSET);
+    }
+
+    public static int getCapacity(ByteBuffer data) {
+        return (data.remaining() - EVENTS_OFFSET - TAIL_PADDING) / EVENT_SIZE;
+    }
+
+    /**
+     * Sequence number of the oldest event still readable.
+     */
+    public static long getOldestSeqNum(ByteBuffer data) {
+        return Math.max(0, getSeqNum(data) - getCapacity(data));
+    }
+
+    /**
+     * Decodes the fill events in [fromSeqNum, toSeqNum), oldest first. Out events are skipped.
+     *
+     * @param data event queue account data
+     * @param fromSeqNum first event, at least {@link #getOldestSeqNum(ByteBuffer)}
+     * @param toSeqNum end of the range, at most {@link #getSeqNum(ByteBuffer)}
+     * @param slot slot the account was read at, stamped on each fill
+     * @param timestamp epoch ms the account was received, stamped on each fill
+     * @param backfilled fills were pushed at unknown times before this read, see Fill
+     * @return fills in sequence order
+     */
+    public static List<Fill> decodeFills(ByteBuffer data, long fromSeqNum, long toSeqNum, int baseDecimals,
+                                         int quoteDecimals, long slot, long timestamp, boolean backfilled) {
+        final ByteBuffer queue = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final int base = queue.position();
+        final int capacity = getCapacity(queue);
+        final long head = queue.getLong(base + HEAD_OFFSET);
+        final long count = queue.getLong(base + COUNT_OFFSET);
+        final long seqNum = queue.getLong(base + SEQ_NUM_OFFSET);
+        final double baseMultiplier = Math.pow(10, baseDecimals);
+        final double quoteMultiplier = Math.pow(10, quoteDecimals);
+
+        final List<Fill> fills = new ArrayList<>((int) Math.max(0, toSeqNum - fromSeqNum));
+        final byte[] openOrders = new byte[OPEN_ORDERS_LENGTH];
+
+        for (long eventSeqNum = fromSeqNum; eventSeqNum < toSeqNum; eventSeqNum++) {
+            // The newest event (seqNum - 1) sits just before head + count
+            long index = Math.floorMod(head + count - (seqNum - eventSeqNum), capacity);
+            int event = base + EVENTS_OFFSET + (int) index * EVENT_SIZE;
+
+            int flags = queue.get(event + FLAGS_OFFSET);
+            if ((flags & FLAG_FILL) == 0) {
+                continue;
+            }
+
+            boolean bid = (flags & FLAG_BID) != 0;
+            boolean maker = (flags & FLAG_MAKER) != 0;
+            long released = queue.getLong(event + NATIVE_QUANTITY_RELEASED_OFFSET);
+            long paid = queue.getLong(event + NATIVE_QUANTITY_PAID_OFFSET);
+            long feeOrRebate = queue.getLong(event + NATIVE_FEE_OR_REBATE_OFFSET);
+
+            // Bids pay quote and receive base, asks the opposite. Makers earn a rebate, takers pay a fee.
+            long nativeBase = bid ? released : paid;
+            long nativeQuote;
+            if (bid) {
+                nativeQuote = maker ? paid + feeOrRebate : paid - feeOrRebate;
+            } else {
+                nativeQuote = maker ? released - feeOrRebate : released + feeOrRebate;
+            }
+            if (nativeBase == 0) {
+                continue;
+            }
+
+            queue.get(event + OPEN_ORDERS_OFFSET, openOrders);
+            fills.add(buildFill(eventSeqNum, slot, timestamp, backfilled, nativeBase, nativeQuote,
+                    new PublicKey(openOrders), bid, maker, baseMultiplier, quoteMultiplier));
+        }
+
+        return fills;
+    }
+
+    // Shared with TradeJournal, which stores the native amounts
+    static Fill buildFill(long seqNum, long slot, long timestamp, boolean backfilled, long nativeQuantity,
+                          long nativeQuote, PublicKey openOrders, boolean bid, boolean maker, double baseMultiplier,
+                          double quoteMultiplier) {
+        double quantity = nativeQuantity / baseMultiplier;
+        return Fill.builder()
+                .seqNum(seqNum)
+                .slot(slot)
+                .timestamp(timestamp)
+                .backfilled(backfilled)
+                .price((float) (nativeQuote / quoteMultiplier / quantity))
+                .quantity((float) quantity)
+                .nativeQuantity(nativeQuantity)
+                .nativeQuote(nativeQuote)
+                .openOrders(openOrders)
+                .bid(bid)
+                .maker(maker)
+                .build();
+    }
+}
@@ -0,0 +1,56 @@
+package com.mmorrell.serumdata.util;
+
+import com.mmorrell.serumdata.model.MarketDepth;
+import org.springframework.http.MediaType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary form of {@link MarketDepth}, served by /depth to clients accepting {@link #MEDIA_TYPE}.
+ * All little-endian:
+ * <pre>
+ * 0   int32   format version (1)
+ * 4   float32 midpoint
+ * 8   int64   bid context slot
+ * 16  int64   ask context slot
+ * 24  int32   bid level count
+ * 28  int32   ask level count
+ * 32  bids, then asks: float32[count] prices, float32[count] cumulative quantities, float32[count] quantities
+ * </pre>
+ * Levels are in ascending price order, same as the JSON triplets. Decoded by decodeDepth in custom.js.
+ */
+public class MarketDepthEncoder {
+
+    public static final MediaType MEDIA_TYPE = new MediaType("application", "vnd.openserum.depth");
+
+    public static final int FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = 32;
+    private static final int LEVEL_LENGTH = 3 * Float.BYTES;
+
+    public static byte[] encode(MarketDepth marketDepth) {
+        final float[][] bids = marketDepth.getBids() == null ? new float[0][] : marketDepth.getBids();
+        final float[][] asks = marketDepth.getAsks() == null ? new float[0][] : marketDepth.getAsks();
+
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + (bids.length + asks.length) * LEVEL_LENGTH)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putFloat(marketDepth.getMidpoint());
+        buffer.putLong(marketDepth.getBidContextSlot());
+        buffer.putLong(marketDepth.getAskContextSlot());
+        buffer.putInt(bids.length);
+        buffer.putInt(asks.length);
+        putLevels(buffer, bids);
+        putLevels(buffer, asks);
+        return buffer.array();
+    }
+
+    // One column per triplet field
+    private static void putLevels(ByteBuffer buffer, float[][] levels) {
+        for (int column = 0; column < 3; column++) {
+            for (float[] level : levels) {
+                buffer.putFloat(level[column]);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.mmorrell.serumdata.util;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.LongSupplier;
+
+/**
+ * Fans out one market's events to all of its subscribers. Each event name carries the full latest state
+ * (e.g. "bids"), so a subscriber that is still sending only keeps the newest payload per name, older ones are
+ * coalesced away. Subscribers stuck on one send for longer than the slow consumer timeout are dropped.
+ * Sends run on the executor, never on the publishing thread. When the executor is full, the payloads stay coalesced
+ * and the send is retried with the next event, subscribers that can't get a send through within the slow consumer
+ * timeout are dropped as well.
+ */
+public class MarketStream {
+
+    /**
+     * Connection of one subscriber, e.g. an SseEmitter.
+     */
+    public interface Sink {
+        void send(String event, byte[] data) throws IOException;
+
+        void close();
+    }
+
+    private final Executor executor;
+    private final long slowConsumerMs;
+    private final LongSupplier clock;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    // <event name, latest payload>, replayed to new subscribers
+    private final Map<String, byte[]> latest = new ConcurrentHashMap<>();
+    private volatile long lastPublishTime;
+
+    public MarketStream(Executor executor, long slowConsumerMs, LongSupplier clock) {
+        this.executor = executor;
+        this.slowConsumerMs = slowConsumerMs;
+        this.clock = clock;
+        this.lastPublishTime = clock.getAsLong();
+    }
+
+    /**
+     * Adds a subscriber, queueing the latest payload of every event for it.
+     *
+     * @param sink connection to send to
+     * @return subscriber, close it when the connection ends
+     */
+    public Subscriber subscribe(Sink sink) {
+        Subscriber subscriber = new Subscriber(sink);
+        subscribers.add(subscriber);
+        latest.forEach(subscriber::offer);
+        return subscriber;
+    }
+
+    /**
+     * Sends an event to all subscribers, unless it's the payload last published for that name.
+     * Payloads are compared by identity, e.g. bodies from {@link ResponseCache} stay the same until rebuilt.
+     *
+     * @param event event name
+     * @param data serialized payload
+     * @return true if published
+     */
+    public boolean publish(String event, byte[] data) {
+        if (latest.put(event, data) == data) {
+            return false;
+        }
+
+        lastPublishTime = clock.getAsLong();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event, data);
+        }
+        return true;
+    }
+
+    /**
+     * Sends an event to all subscribers without keeping it for new ones, e.g. keep-alives.
+     */
+    public void broadcast(String event, byte[] data) {
+        lastPublishTime = clock.getAsLong();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event, data);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public long getLastPublishTime() {
+        return lastPublishTime;
+    }
+
+    public class Subscriber {
+        private final Sink sink;
+        // Newest payload per event name, not sent yet
+        private final Map<String, byte[]> pending = new LinkedHashMap<>();
+        // Guarded by this
+        private boolean draining;
+        // Start of the running send, 0 when idle
+        private long sendingSince;
+        // First send the executor rejected since the last accepted one, 0 if none
+        private long rejectedSince;
+        private boolean closed;
+
+        private Subscriber(Sink sink) {
+            this.sink = sink;
+        }
+
+        private void offer(String event, byte[] data) {
+            boolean slow = false;
+            boolean startDrain = false;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                final long now = clock.getAsLong();
+                if ((sendingSince > 0 && now - sendingSince > slowConsumerMs) ||
+                        (rejectedSince > 0 && now - rejectedSince > slowConsumerMs)) {
+                    // The connection, or the send pool, can't keep up
+                    slow = true;
+                } else {
+                    pending.put(event, data);
+                    startDrain = !draining;
+                    draining = true;
+                }
+            }
+
+            if (slow) {
+                close();
+            } else if (startDrain) {
+                startDrain();
+            }
+        }
+
+        private void startDrain() {
+            try {
+                executor.execute(this::drain);
+                synchronized (this) {
+                    rejectedSince = 0;
+                }
+            } catch (RejectedExecutionException ex) {
+                // Send pool full, the payload stays pending until the next offer
+                synchronized (this) {
+                    draining = false;
+                    if (rejectedSince == 0) {
+                        rejectedSince = clock.getAsLong();
+                    }
+                }
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                Map<String, byte[]> batch;
+                synchronized (this) {
+                    if (closed || pending.isEmpty()) {
+                        draining = false;
+                        sendingSince = 0;
+                        return;
+                    }
+                    batch = new LinkedHashMap<>(pending);
+                    pending.clear();
+                    sendingSince = clock.getAsLong();
+                }
+
+                try {
+                    for (Map.Entry<String, byte[]> event : batch.entrySet()) {
+                        sink.send(event.getKey(), event.getValue());
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    // Disconnected
+                    close();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Stops sending and closes the sink, safe to call more than once.
+         */
+        public void close() {
+            synchronized (this) {
+                closed = true;
+                pending.clear();
+            }
+            if (subscribers.remove(this)) {
+                sink.close();
+            }
+        }
+
+        public synchronized boolean isClosed() {
+            return closed;
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package com.mmorrell.serumdata.util;
 
-import com.mmorrell.serum.model.OrderBook;
+import com.mmorrell.serumdata.model.OrderBookSide;
 import com.mmorrell.serumdata.model.SerumOrder;
 import org.p2p.solanaj.core.PublicKey;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class MarketUtil {
 
@@ -26,22 +26,29 @@ public class MarketUtil {
             PublicKey.valueOf("61CjGbapEVoyCC51x5tPZGZHCYsgtPSSssCatHEEUWeG");
 
 
-    public static List<SerumOrder> convertOrderBookToSerumOrders(OrderBook orderBook, boolean isBid) {
-        return orderBook.getOrders().stream()
-                .map(order -> {
-                    SerumOrder serumOrder = new SerumOrder();
-                    serumOrder.setPrice(order.getFloatPrice());
-                    serumOrder.setQuantity(order.getFloatQuantity());
-                    serumOrder.setOwner(order.getOwner());
-                    return serumOrder;
-                })
-                .sorted((o1, o2) -> {
-                    if (isBid) {
-                        return Float.compare(o2.getPrice(), o1.getPrice());
-                    }
-                    return Float.compare(o1.getPrice(), o2.getPrice());
-                })
-                .collect(Collectors.toList());
+    /**
+     * Converts a decoded book side into SerumOrders. The side is already sorted best price first,
+     * so this only walks it forwards or backwards.
+     *
+     * @param orderBookSide decoded bids or asks
+     * @param isBid true for descending price order, false for ascending
+     * @return orders in the requested price order
+     */
+    public static List<SerumOrder> convertOrderBookToSerumOrders(OrderBookSide orderBookSide, boolean isBid) {
+        final int size = orderBookSide.size();
+        final boolean reversed = isBid != orderBookSide.isBid();
+        final List<SerumOrder> serumOrders = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            int index = reversed ? size - 1 - i : i;
+            SerumOrder serumOrder = new SerumOrder();
+            serumOrder.setPrice(orderBookSide.getPrice(index));
+            serumOrder.setQuantity(orderBookSide.getQuantity(index));
+            serumOrder.setOwner(orderBookSide.getOwner(index));
+            serumOrders.add(serumOrder);
+        }
+
+        return serumOrders;
     }
 
 }
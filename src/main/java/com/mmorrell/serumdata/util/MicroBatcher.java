@@ -0,0 +1,89 @@
+package com.mmorrell.serumdata.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects keys submitted by any number of callers and hands them to a handler in one deduplicated batch,
+ * a short window after the first key arrives. Submitting never blocks on the handler. Keys already pending
+ * or being handled are skipped, so concurrent callers asking for the same keys share one lookup.
+ *
+ * @param <K> key, e.g. open orders account
+ */
+public class MicroBatcher<K> {
+
+    private final ScheduledExecutorService scheduler;
+    private final long windowMs;
+    private final Consumer<List<K>> handler;
+
+    // Guarded by this
+    private final Set<K> pending = new LinkedHashSet<>();
+    private final Set<K> inFlight = new HashSet<>();
+    private boolean flushScheduled;
+
+    /**
+     * @param scheduler runs the handler, a single thread keeps batches from overlapping
+     * @param windowMs time keys are collected for before the batch is handled
+     * @param handler called with each batch, keys it fails on may be submitted again
+     */
+    public MicroBatcher(ScheduledExecutorService scheduler, long windowMs, Consumer<List<K>> handler) {
+        this.scheduler = scheduler;
+        this.windowMs = windowMs;
+        this.handler = handler;
+    }
+
+    /**
+     * Queues keys for the next batch.
+     *
+     * @param keys keys to handle, duplicates are ignored
+     * @return number of keys queued, excluding those already pending or in flight
+     */
+    public synchronized int submit(Collection<K> keys) {
+        int queued = 0;
+        for (K key : keys) {
+            if (!inFlight.contains(key) && pending.add(key)) {
+                queued++;
+            }
+        }
+
+        if (!pending.isEmpty() && !flushScheduled) {
+            try {
+                scheduler.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+                flushScheduled = true;
+            } catch (RejectedExecutionException ex) {
+                // Shutting down, keys stay pending
+            }
+        }
+        return queued;
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private void flush() {
+        final List<K> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            inFlight.addAll(batch);
+            flushScheduled = false;
+        }
+
+        try {
+            handler.accept(batch);
+        } finally {
+            synchronized (this) {
+                batch.forEach(inFlight::remove);
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.mmorrell.serumdata.util;
+
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Open orders account to owner lookups, bounded and safe for concurrent use. Keys and owners are kept as raw
+ * 32 byte keys in flat arrays, so entries cost no objects. Split into segments that are locked separately.
+ * Each segment holds two generations: once the current one is full it becomes the previous one, and the previous
+ * one is dropped. Hits in the previous generation are copied forward, so owners in use survive.
+ * Can be saved to and warmed from a snapshot file.
+ */
+public class OwnerCache {
+
+    private static final int KEY_LENGTH = PublicKey.PUBLIC_KEY_LENGTH;
+    private static final int SEGMENTS = 64;
+    private static final double LOAD_FACTOR = 0.75;
+
+    // Snapshot file: magic, format version, entry count, then ooa and owner pairs
+    private static final int MAGIC = 0x4f574e52;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = 3 * Integer.BYTES;
+    private static final int ENTRY_LENGTH = 2 * KEY_LENGTH;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    // Bumped by every put that adds or changes an owner
+    private final AtomicLong modifications = new AtomicLong();
+
+    /**
+     * @param maxEntries entries kept at most, about half of that once every generation has turned over
+     */
+    public OwnerCache(int maxEntries) {
+        int generationEntries = Math.max(1, maxEntries / SEGMENTS / 2);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(generationEntries);
+        }
+    }
+
+    public Optional<PublicKey> get(PublicKey ooa) {
+        byte[] key = ooa.toByteArray();
+        int hash = hash(key);
+        byte[] owner = segments[hash & (SEGMENTS - 1)].get(key, hash);
+        return owner == null ? Optional.empty() : Optional.of(new PublicKey(owner));
+    }
+
+    public void put(PublicKey ooa, PublicKey owner) {
+        byte[] key = ooa.toByteArray();
+        int hash = hash(key);
+        if (segments[hash & (SEGMENTS - 1)].put(key, 0, hash, owner.toByteArray(), 0)) {
+            modifications.incrementAndGet();
+        }
+    }
+
+    // Entries held, a key in both generations counts twice
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    // Changes whenever an owner is added or changed, unlike size once the cache is full
+    public long getModificationCount() {
+        return modifications.get();
+    }
+
+    /**
+     * Saves all entries, replacing the file atomically.
+     *
+     * @param file snapshot file
+     * @return number of entries written
+     */
+    public int writeTo(Path file) throws IOException {
+        List<byte[]> entries = new ArrayList<>(SEGMENTS);
+        int count = 0;
+        for (Segment segment : segments) {
+            byte[] segmentEntries = segment.copyEntries();
+            entries.add(segmentEntries);
+            count += segmentEntries.length / ENTRY_LENGTH;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(MAGIC)
+                .putInt(FORMAT_VERSION)
+                .putInt(count)
+                .flip();
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.write(header);
+            for (byte[] segmentEntries : entries) {
+                ByteBuffer buffer = ByteBuffer.wrap(segmentEntries);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            channel.force(false);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temporary);
+            throw ex;
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Adds the entries of a snapshot file, read through a memory mapping.
+     *
+     * @param file snapshot written by writeTo
+     * @return number of entries read, 0 if the file is missing
+     * @throws IOException if the file can't be read or isn't a snapshot
+     */
+    public int readFrom(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC ||
+                    buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("Not an owner cache snapshot: " + file);
+            }
+            int count = buffer.getInt();
+            if (count < 0 || buffer.remaining() != (long) count * ENTRY_LENGTH) {
+                throw new IOException("Truncated owner cache snapshot: " + file);
+            }
+
+            byte[] entry = new byte[ENTRY_LENGTH];
+            for (int i = 0; i < count; i++) {
+                buffer.get(entry);
+                int hash = hash(entry);
+                if (segments[hash & (SEGMENTS - 1)].put(entry, 0, hash, entry, KEY_LENGTH)) {
+                    modifications.incrementAndGet();
+                }
+            }
+            return count;
+        }
+    }
+
+    // Keys are hashes or curve points already, their first bytes are well spread
+    private static int hash(byte[] key) {
+        return (key[0] & 0xff) | (key[1] & 0xff) << 8 | (key[2] & 0xff) << 16 | (key[3] & 0xff) << 24;
+    }
+
+    private static class Segment {
+        private final int maxEntries;
+        private Table current;
+        private Table previous;
+
+        Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+            this.current = new Table(maxEntries);
+        }
+
+        synchronized byte[] get(byte[] key, int hash) {
+            int slot = current.find(key, 0, hash);
+            if (slot >= 0) {
+                return current.getOwner(slot);
+            }
+            if (previous == null || (slot = previous.find(key, 0, hash)) < 0) {
+                return null;
+            }
+
+            byte[] owner = previous.getOwner(slot);
+            putCurrent(key, 0, hash, owner, 0);
+            return owner;
+        }
+
+        // True if the owner was added or changed
+        synchronized boolean put(byte[] key, int keyOffset, int hash, byte[] owner, int ownerOffset) {
+            int slot = current.find(key, keyOffset, hash);
+            if (slot >= 0 && current.hasOwner(slot, owner, ownerOffset)) {
+                return false;
+            }
+            boolean changed = true;
+            if (slot < 0 && previous != null && (slot = previous.find(key, keyOffset, hash)) >= 0) {
+                changed = !previous.hasOwner(slot, owner, ownerOffset);
+            }
+            putCurrent(key, keyOffset, hash, owner, ownerOffset);
+            return changed;
+        }
+
+        synchronized int size() {
+            return current.size + (previous == null ? 0 : previous.size);
+        }
+
+        // Previous generation first, so current entries win when read back in order
+        synchronized byte[] copyEntries() {
+            byte[] entries = new byte[size() * ENTRY_LENGTH];
+            int offset = previous == null ? 0 : previous.copyEntries(entries, 0);
+            current.copyEntries(entries, offset);
+            return entries;
+        }
+
+        private void putCurrent(byte[] key, int keyOffset, int hash, byte[] owner, int ownerOffset) {
+            if (current.size == maxEntries && current.find(key, keyOffset, hash) < 0) {
+                previous = current;
+                current = new Table(maxEntries);
+            }
+            current.put(key, keyOffset, hash, owner, ownerOffset);
+        }
+    }
+
+    // Open addressing with linear probing, insert only
+    private static class Table {
+        private final int mask;
+        private final byte[] keys;
+        private final byte[] owners;
+        private final boolean[] used;
+        private int size;
+
+        Table(int maxEntries) {
+            int slots = Integer.highestOneBit((int) Math.ceil(maxEntries / LOAD_FACTOR) * 2 - 1);
+            this.mask = slots - 1;
+            this.keys = new byte[slots * KEY_LENGTH];
+            this.owners = new byte[slots * KEY_LENGTH];
+            this.used = new boolean[slots];
+        }
+
+        // Slot of the key, or -(insertion slot + 1)
+        int find(byte[] key, int keyOffset, int hash) {
+            // Low bits pick the segment, probe from the next ones
+            int slot = (hash >>> 6) & mask;
+            while (used[slot]) {
+                int offset = slot * KEY_LENGTH;
+                if (Arrays.equals(keys, offset, offset + KEY_LENGTH, key, keyOffset, keyOffset + KEY_LENGTH)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -(slot + 1);
+        }
+
+        void put(byte[] key, int keyOffset, int hash, byte[] owner, int ownerOffset) {
+            int slot = find(key, keyOffset, hash);
+            if (slot < 0) {
+                slot = -(slot + 1);
+                System.arraycopy(key, keyOffset, keys, slot * KEY_LENGTH, KEY_LENGTH);
+                used[slot] = true;
+                size++;
+            }
+            System.arraycopy(owner, ownerOffset, owners, slot * KEY_LENGTH, KEY_LENGTH);
+        }
+
+        byte[] getOwner(int slot) {
+            return Arrays.copyOfRange(owners, slot * KEY_LENGTH, (slot + 1) * KEY_LENGTH);
+        }
+
+        boolean hasOwner(int slot, byte[] owner, int ownerOffset) {
+            int offset = slot * KEY_LENGTH;
+            return Arrays.equals(owners, offset, offset + KEY_LENGTH, owner, ownerOffset, ownerOffset + KEY_LENGTH);
+        }
+
+        // Returns the offset after the last entry copied
+        int copyEntries(byte[] entries, int offset) {
+            for (int slot = 0; slot < used.length; slot++) {
+                if (used[slot]) {
+                    System.arraycopy(keys, slot * KEY_LENGTH, entries, offset, KEY_LENGTH);
+                    System.arraycopy(owners, slot * KEY_LENGTH, entries, offset + KEY_LENGTH, KEY_LENGTH);
+                    offset += ENTRY_LENGTH;
+                }
+            }
+            return offset;
+        }
+    }
+}
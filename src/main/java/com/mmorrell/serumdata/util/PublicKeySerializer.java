@@ -14,11 +14,20 @@ public class PublicKeySerializer extends JsonSerializer<PublicKey> {
     @Override
     public void serialize(PublicKey publicKey, JsonGenerator jsonGenerator,
                           SerializerProvider serializerProvider) throws IOException {
+        writePublicKey(jsonGenerator, publicKey);
+    }
+
+    // {"publicKey": "<base58>"}, or null. For serializers writing keys field by field
+    public static void writePublicKey(JsonGenerator jsonGenerator, PublicKey publicKey) throws IOException {
+        if (publicKey == null) {
+            jsonGenerator.writeNull();
+            return;
+        }
 
         jsonGenerator.writeStartObject();
         jsonGenerator.writeStringField(
                 "publicKey",
-                publicKey.toBase58()
+                Base58Cache.toBase58(publicKey)
         );
         jsonGenerator.writeEndObject();
     }
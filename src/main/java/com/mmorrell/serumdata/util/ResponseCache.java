@@ -0,0 +1,148 @@
+package com.mmorrell.serumdata.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized responses, one per key (e.g. market and endpoint), rebuilt only when the data version they
+ * were built from changes. Concurrent misses for the same version may both build, the result is the same.
+ */
+public class ResponseCache {
+
+    // Smaller bodies gain little from compression
+    private static final int MIN_GZIP_LENGTH = 1_024;
+
+    private final ObjectWriter writer;
+    private final Map<String, CachedResponse> responses = new ConcurrentHashMap<>();
+
+    public ResponseCache(ObjectMapper objectMapper) {
+        this.writer = objectMapper.writer().without(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+    }
+
+    /**
+     * @param key response identity, e.g. marketId + endpoint
+     * @param version everything the body depends on, compared with equals (identity for snapshot parts)
+     * @param slot slot of the data, leads the ETag
+     * @param body builds the response object on a miss
+     * @return cached response for this version
+     */
+    public CachedResponse get(String key, Object version, long slot, Supplier<Object> body) {
+        return getEncoded(key, version, slot, () -> serialize(body.get()));
+    }
+
+    /**
+     * Same as {@link #get}, for bodies already encoded, e.g. binary formats.
+     */
+    public CachedResponse getEncoded(String key, Object version, long slot, Supplier<byte[]> body) {
+        CachedResponse cached = responses.get(key);
+        if (cached != null && Objects.equals(cached.version, version)) {
+            return cached;
+        }
+
+        cached = new CachedResponse(version, slot, body.get());
+        responses.put(key, cached);
+        return cached;
+    }
+
+    /**
+     * One-off response, not kept. For parameterized queries, which would grow the cache without bound.
+     */
+    public CachedResponse build(long slot, Object body) {
+        return buildEncoded(slot, serialize(body));
+    }
+
+    public CachedResponse buildEncoded(long slot, byte[] body) {
+        return new CachedResponse(null, slot, body);
+    }
+
+    public byte[] serialize(Object body) {
+        try {
+            return writer.writeValueAsBytes(body);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Unable to serialize response", ex);
+        }
+    }
+
+    /**
+     * @param ifNoneMatch If-None-Match header, may be null
+     * @param etag current ETag
+     * @return true if the client's copy is current
+     */
+    public static boolean isNotModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class CachedResponse {
+        private final Object version;
+        private final String etag;
+        // Strong validators can't be shared between representations, the gzip body has its own
+        private final String gzipEtag;
+        private final byte[] body;
+        // Compressed on first request accepting gzip
+        private volatile byte[] gzipBody;
+
+        private CachedResponse(Object version, long slot, byte[] body) {
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            this.version = version;
+            this.etag = "\"" + slot + "-" + Long.toHexString(crc.getValue()) + "\"";
+            this.gzipEtag = "\"" + slot + "-" + Long.toHexString(crc.getValue()) + "-gz\"";
+            this.body = body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getGzipEtag() {
+            return gzipEtag;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public boolean isCompressible() {
+            return body.length >= MIN_GZIP_LENGTH;
+        }
+
+        public byte[] getGzipBody() {
+            byte[] compressed = gzipBody;
+            if (compressed == null) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream(body.length / 4);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+                    gzip.write(body);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                compressed = output.toByteArray();
+                gzipBody = compressed;
+            }
+            return compressed;
+        }
+    }
+}
@@ -1,13 +1,21 @@
 package com.mmorrell.serumdata.util;
 
+import com.mmorrell.serumdata.model.AccountBatch;
+import org.p2p.solanaj.core.PublicKey;
+import org.p2p.solanaj.rpc.RpcClient;
+import org.p2p.solanaj.rpc.RpcException;
+import org.p2p.solanaj.rpc.types.config.Commitment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.*;
+
 public class RpcUtil {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RpcUtil.class);
     private static final PublicCluster DEFAULT_CLUSTER = PublicCluster.PROJECT_SERUM;
     private static final String CUSTOM_ENDPOINT = System.getenv("OPENSERUM_ENDPOINT");
+    private static final String WEBSOCKET_ENDPOINT = System.getenv("OPENSERUM_WS_ENDPOINT");
     public static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/103.0.0.0 Safari/537.36";
 
     private enum PublicCluster {
@@ -25,19 +33,92 @@ public class RpcUtil {
         }
     }
 
-    public static String getPublicEndpoint() {
-        if (CUSTOM_ENDPOINT != null) {
-            try {
-                PublicCluster cluster = PublicCluster.valueOf(CUSTOM_ENDPOINT);
-                LOGGER.info("Using known endpoint: " + cluster.name() + " (" + cluster.getEndpoint() + ")");
-                return cluster.getEndpoint();
-            } catch (IllegalArgumentException ex) {
-                LOGGER.info("Using custom endpoint: " + CUSTOM_ENDPOINT);
-                return CUSTOM_ENDPOINT;
+    /**
+     * RPC endpoints from OPENSERUM_ENDPOINT, comma separated for a pool. Each entry is a known cluster name or a URL.
+     *
+     * @return endpoints in configured order, at least one
+     */
+    public static List<String> getPublicEndpoints() {
+        if (CUSTOM_ENDPOINT != null && !CUSTOM_ENDPOINT.isBlank()) {
+            List<String> endpoints = Arrays.stream(CUSTOM_ENDPOINT.split(","))
+                    .map(String::trim)
+                    .filter(endpoint -> !endpoint.isEmpty())
+                    .map(RpcUtil::resolveEndpoint)
+                    .toList();
+            if (!endpoints.isEmpty()) {
+                return endpoints;
             }
         }
 
         LOGGER.info("Using fallback endpoint: " + DEFAULT_CLUSTER.getEndpoint());
-        return DEFAULT_CLUSTER.getEndpoint();
+        return List.of(DEFAULT_CLUSTER.getEndpoint());
+    }
+
+    // First configured endpoint, for single-node clients
+    public static String getPublicEndpoint() {
+        return getPublicEndpoints().get(0);
+    }
+
+    private static String resolveEndpoint(String endpoint) {
+        try {
+            PublicCluster cluster = PublicCluster.valueOf(endpoint);
+            LOGGER.info("Using known endpoint: " + cluster.name() + " (" + cluster.getEndpoint() + ")");
+            return cluster.getEndpoint();
+        } catch (IllegalArgumentException ex) {
+            LOGGER.info("Using custom endpoint: " + endpoint);
+            return endpoint;
+        }
+    }
+
+    /**
+     * Websocket endpoint used for accountSubscribe streaming. Streaming is disabled when unset.
+     *
+     * @return ws:// or wss:// endpoint, if configured
+     */
+    public static Optional<String> getWebsocketEndpoint() {
+        if (WEBSOCKET_ENDPOINT == null || WEBSOCKET_ENDPOINT.isBlank()) {
+            return Optional.empty();
+        }
+
+        LOGGER.info("Using websocket endpoint: " + WEBSOCKET_ENDPOINT);
+        return Optional.of(WEBSOCKET_ENDPOINT);
+    }
+
+    /**
+     * getMultipleAccounts with base64 encoding, keeping the response context slot (which RpcApi discards).
+     *
+     * @param client rpc client
+     * @param accounts up to 100 accounts
+     * @param minContextSlot minimum slot the node must have reached
+     * @return account data and the slot it was read at
+     * @throws RpcException on RPC error, including minContextSlot not reached
+     */
+    @SuppressWarnings("unchecked")
+    public static AccountBatch getMultipleAccounts(RpcClient client,
+                                                   List<PublicKey> accounts,
+                                                   long minContextSlot) throws RpcException {
+        List<Object> params = List.of(
+                accounts.stream().map(PublicKey::toBase58).toList(),
+                Map.of(
+                        "encoding", "base64",
+                        "commitment", Commitment.CONFIRMED.getValue(),
+                        "minContextSlot", minContextSlot
+                )
+        );
+
+        Map<String, Object> result = client.call("getMultipleAccounts", params, Map.class);
+        Map<String, Object> context = (Map<String, Object>) result.get("context");
+        List<Map<String, Object>> values = (List<Map<String, Object>>) result.get("value");
+
+        Map<PublicKey, byte[]> accountData = new HashMap<>();
+        for (int i = 0; i < accounts.size() && i < values.size(); i++) {
+            Map<String, Object> value = values.get(i);
+            if (value != null) {
+                List<String> data = (List<String>) value.get("data");
+                accountData.put(accounts.get(i), Base64.getDecoder().decode(data.get(0)));
+            }
+        }
+
+        return new AccountBatch(((Number) context.get("slot")).longValue(), accountData);
     }
 }
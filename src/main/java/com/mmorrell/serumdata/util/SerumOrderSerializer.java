@@ -0,0 +1,38 @@
+package com.mmorrell.serumdata.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.mmorrell.serumdata.model.SerumOrder;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link SerumOrder} field by field, without reflection. The entity fields keep their place in the
+ * "metadata" object the front end reads: name, icon and mangoKey, only when known.
+ */
+public class SerumOrderSerializer extends JsonSerializer<SerumOrder> {
+
+    @Override
+    public void serialize(SerumOrder order, JsonGenerator jsonGenerator,
+                          SerializerProvider serializerProvider) throws IOException {
+        jsonGenerator.writeStartObject();
+        jsonGenerator.writeNumberField("price", order.getPrice());
+        jsonGenerator.writeNumberField("quantity", order.getQuantity());
+
+        jsonGenerator.writeObjectFieldStart("metadata");
+        jsonGenerator.writeNumberField("percent", order.getPercent());
+        if (order.getEntityName() != null) {
+            jsonGenerator.writeStringField("name", order.getEntityName());
+            jsonGenerator.writeStringField("icon", order.getEntityIcon());
+        }
+        if (order.getMangoKey() != null) {
+            jsonGenerator.writeStringField("mangoKey", Base58Cache.toBase58(order.getMangoKey()));
+        }
+        jsonGenerator.writeEndObject();
+
+        jsonGenerator.writeFieldName("owner");
+        PublicKeySerializer.writePublicKey(jsonGenerator, order.getOwner());
+        jsonGenerator.writeEndObject();
+    }
+}
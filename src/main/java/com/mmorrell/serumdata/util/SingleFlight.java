@@ -0,0 +1,110 @@
+package com.mmorrell.serumdata.util;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Runs loads on an executor with at most one in flight per key. Callers asking for a key that is
+ * already loading get the same future instead of starting another fetch.
+ *
+ * @param <K> key, e.g. market id
+ * @param <V> loaded value
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Executor executor;
+    private final CacheStatsCounter stats;
+
+    public SingleFlight(Executor executor, CacheStatsCounter stats) {
+        this.executor = executor;
+        this.stats = stats;
+    }
+
+    /**
+     * Starts a load for key, or joins the one already running.
+     *
+     * @param key key to load
+     * @param loader fetch, run on the executor
+     * @return future completed with the loaded value, or exceptionally if the loader threw
+     */
+    public CompletableFuture<V> load(K key, Callable<V> loader) {
+        CompletableFuture<V> existing = inFlight.get(key);
+        if (existing != null) {
+            stats.recordCoalescedLoad();
+            return existing;
+        }
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            stats.recordCoalescedLoad();
+            return existing;
+        }
+
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    V value = loader.call();
+                    stats.recordLoadSuccess(System.nanoTime() - start);
+                    future.complete(value);
+                } catch (Exception ex) {
+                    stats.recordLoadFailure(System.nanoTime() - start);
+                    future.completeExceptionally(ex);
+                } finally {
+                    inFlight.remove(key, future);
+                }
+            });
+        } catch (RuntimeException ex) {
+            // Executor rejected the task
+            inFlight.remove(key, future);
+            future.completeExceptionally(ex);
+        }
+
+        return future;
+    }
+
+    /**
+     * Same as {@link #load}, for loaders that are asynchronous already, e.g. OkHttp callbacks.
+     *
+     * @param key key to load
+     * @param loader starts the fetch on the calling thread, the executor is not used
+     * @return future completed with the loaded value, or exceptionally if the loader failed
+     */
+    public CompletableFuture<V> loadAsync(K key, Supplier<CompletableFuture<V>> loader) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            stats.recordCoalescedLoad();
+            return existing;
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<V> loading;
+        try {
+            loading = loader.get();
+        } catch (RuntimeException ex) {
+            loading = CompletableFuture.failedFuture(ex);
+        }
+        loading.whenComplete((value, error) -> {
+            inFlight.remove(key, future);
+            if (error == null) {
+                stats.recordLoadSuccess(System.nanoTime() - start);
+                future.complete(value);
+            } else {
+                stats.recordLoadFailure(System.nanoTime() - start);
+                future.completeExceptionally(error);
+            }
+        });
+        return future;
+    }
+
+    public boolean isLoading(K key) {
+        return inFlight.containsKey(key);
+    }
+}
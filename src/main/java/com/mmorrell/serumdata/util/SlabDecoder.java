@@ -0,0 +1,102 @@
+package com.mmorrell.serumdata.util;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.model.OrderBookSide;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes a Serum/OpenBook bids or asks account by walking its critbit slab in place.
+ * Orders come out already sorted (best price first) into primitive arrays, without building
+ * the OrderBook/Order object graph. Works on heap, direct or pooled buffers; the buffer is only read.
+ * <p>
+ * Layout: 5 byte "serum" padding, u64 account flags, 32 byte slab header, then 72 byte nodes.
+ */
+public class SlabDecoder {
+
+    private static final int SLAB_HEADER_OFFSET = 5 + 8;
+    private static final int ROOT_OFFSET = SLAB_HEADER_OFFSET + 20;
+    private static final int LEAF_COUNT_OFFSET = SLAB_HEADER_OFFSET + 24;
+    private static final int NODES_OFFSET = SLAB_HEADER_OFFSET + 32;
+    private static final int NODE_SIZE = 72;
+
+    private static final int INNER_NODE = 1;
+    private static final int LEAF_NODE = 2;
+
+    // Node field offsets, relative to the node start
+    private static final int CHILDREN_OFFSET = 24;
+    private static final int PRICE_OFFSET = 16; // upper 64 bits of the u128 key
+    private static final int OWNER_OFFSET = 24;
+    private static final int QUANTITY_OFFSET = 56;
+
+    // Critbit depth is bounded by the 128 bit key
+    private static final int MAX_STACK_DEPTH = 130;
+
+    public static OrderBookSide decode(ByteBuffer data, boolean isBid, Market market) {
+        return decode(
+                data,
+                isBid,
+                market.getBaseDecimals(),
+                market.getQuoteDecimals(),
+                market.getBaseLotSize(),
+                market.getQuoteLotSize()
+        );
+    }
+
+    public static OrderBookSide decode(ByteBuffer data, boolean isBid, int baseDecimals, int quoteDecimals,
+                                       long baseLotSize, long quoteLotSize) {
+        final ByteBuffer slab = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final int base = slab.position();
+        final int leafCount = (int) slab.getLong(base + LEAF_COUNT_OFFSET);
+        final int root = slab.getInt(base + ROOT_OFFSET);
+
+        final long[] priceLots = new long[leafCount];
+        final long[] quantityLots = new long[leafCount];
+        final float[] prices = new float[leafCount];
+        final float[] quantities = new float[leafCount];
+        final byte[] owners = new byte[leafCount * OrderBookSide.OWNER_LENGTH];
+
+        // price = lots * quoteLotSize * 10^baseDecimals / (baseLotSize * 10^quoteDecimals)
+        final double priceMultiplier = (double) quoteLotSize * Math.pow(10, baseDecimals) /
+                ((double) baseLotSize * Math.pow(10, quoteDecimals));
+        final double quantityMultiplier = (double) baseLotSize / Math.pow(10, baseDecimals);
+
+        // In-order walk; bids visit the higher child first so the best (highest) price comes out first
+        final int firstChild = isBid ? 4 : 0;
+        final int secondChild = isBid ? 0 : 4;
+        final int[] stack = new int[MAX_STACK_DEPTH];
+        int stackSize = 0;
+        int count = 0;
+
+        if (leafCount > 0) {
+            stack[stackSize++] = root;
+        }
+
+        while (stackSize > 0 && count < leafCount) {
+            int node = base + NODES_OFFSET + stack[--stackSize] * NODE_SIZE;
+            int tag = slab.getInt(node);
+
+            if (tag == LEAF_NODE) {
+                long price = slab.getLong(node + PRICE_OFFSET);
+                long quantity = slab.getLong(node + QUANTITY_OFFSET);
+
+                priceLots[count] = price;
+                quantityLots[count] = quantity;
+                prices[count] = (float) (price * priceMultiplier);
+                quantities[count] = (float) (quantity * quantityMultiplier);
+                slab.get(node + OWNER_OFFSET, owners, count * OrderBookSide.OWNER_LENGTH, OrderBookSide.OWNER_LENGTH);
+                count++;
+            } else if (tag == INNER_NODE) {
+                if (stackSize + 2 > MAX_STACK_DEPTH) {
+                    throw new IllegalStateException("Slab deeper than a critbit tree allows");
+                }
+                // Pushed in reverse, so firstChild is popped first
+                stack[stackSize++] = slab.getInt(node + CHILDREN_OFFSET + secondChild);
+                stack[stackSize++] = slab.getInt(node + CHILDREN_OFFSET + firstChild);
+            }
+        }
+
+        return new OrderBookSide(isBid, count, priceLots, quantityLots, prices, quantities, owners);
+    }
+}
@@ -0,0 +1,86 @@
+package com.mmorrell.serumdata.util;
+
+import java.util.*;
+
+/**
+ * Hashed timer wheel: scheduling and expiry are O(1) per item, however many items are scheduled.
+ * Rescheduling an item replaces its previous deadline. Delays longer than one turn wait extra rounds.
+ *
+ * @param <T> scheduled item, e.g. market id
+ */
+public class TimerWheel<T> {
+
+    private final long tickMs;
+    private final List<List<Entry<T>>> buckets;
+    // <item, id of its current entry>, older entries of the item are skipped on expiry
+    private final Map<T, Long> scheduled = new HashMap<>();
+    private long currentTick;
+    private long nextEntryId;
+
+    public TimerWheel(int size, long tickMs) {
+        this.tickMs = tickMs;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Schedules item to expire after delayMs, rounded up to whole ticks (at least one).
+     *
+     * @param item item to schedule, replaces any earlier schedule of it
+     * @param delayMs delay from the current tick
+     */
+    public synchronized void schedule(T item, long delayMs) {
+        long ticks = Math.max(1, (delayMs + tickMs - 1) / tickMs);
+        long expiryTick = currentTick + ticks;
+        long entryId = nextEntryId++;
+
+        scheduled.put(item, entryId);
+        buckets.get((int) (expiryTick % buckets.size())).add(new Entry<>(item, entryId, expiryTick));
+    }
+
+    public synchronized void cancel(T item) {
+        scheduled.remove(item);
+    }
+
+    public synchronized boolean isScheduled(T item) {
+        return scheduled.containsKey(item);
+    }
+
+    /**
+     * Moves the wheel one tick forward.
+     *
+     * @return items expiring at the new tick, no longer scheduled
+     */
+    public synchronized List<T> advance() {
+        currentTick++;
+        List<Entry<T>> bucket = buckets.get((int) (currentTick % buckets.size()));
+        if (bucket.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<T> expired = new ArrayList<>();
+        Iterator<Entry<T>> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Entry<T> entry = iterator.next();
+            Long currentId = scheduled.get(entry.item);
+            if (currentId == null || currentId != entry.id) {
+                // Rescheduled or cancelled since
+                iterator.remove();
+            } else if (entry.expiryTick <= currentTick) {
+                iterator.remove();
+                scheduled.remove(entry.item);
+                expired.add(entry.item);
+            }
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return scheduled.size();
+    }
+
+    private record Entry<T>(T item, long id, long expiryTick) {
+    }
+}
@@ -0,0 +1,360 @@
+package com.mmorrell.serumdata.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.mmorrell.serumdata.model.CacheStats;
+import com.mmorrell.serumdata.model.Token;
+import com.mmorrell.serumdata.model.TokenImage;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token logos in two tiers: recently used images in memory, bounded by their total size, in front of a store on
+ * disk. The store is content-addressed (objects/sha-256, shared by tokens with the same logo), with a small index
+ * file per mint (mints/mint) pointing at the object and keeping the source's validators. Images read back from disk
+ * keep only their index in memory and are served from their object file.
+ * <p>
+ * Each new object is rasterized once into fixed size PNG thumbnails (thumbs/sha-256-size.png, see TokenThumbnails)
+ * when it's stored. Objects stored without them get them on first request.
+ * <p>
+ * Images not cached yet are fetched on first request, once per mint however many callers ask, through a client
+ * limited to maxConcurrentFetches. Images older than {@value #REVALIDATE_AFTER_HOURS}h are revalidated with a
+ * conditional request while the cached one is served.
+ */
+public class TokenImageCache {
+
+    private static final long REVALIDATE_AFTER_HOURS = 24;
+    private static final long REVALIDATE_AFTER_MS = TimeUnit.HOURS.toMillis(REVALIDATE_AFTER_HOURS);
+    // Broken logos aren't requested again for this long
+    private static final long RETRY_FAILED_AFTER_MS = TimeUnit.HOURS.toMillis(1);
+    // Smaller bodies are error pages, not images
+    private static final int MIN_IMAGE_LENGTH = 20;
+    // Memory held by an entry besides its data, roughly
+    private static final int ENTRY_OVERHEAD_BYTES = 512;
+
+    // Index file: magic, format version, then the TokenImage fields besides data
+    private static final int MAGIC = 0x494d4731;
+    private static final int FORMAT_VERSION = 1;
+
+    private final OkHttpClient client;
+    private final Path objectsDirectory;
+    private final Path mintsDirectory;
+    private final Path thumbsDirectory;
+    private final Cache<PublicKey, TokenImage> memory;
+    private final CacheStatsCounter stats = new CacheStatsCounter();
+    private final SingleFlight<PublicKey, Optional<TokenImage>> loads;
+    private final Set<PublicKey> revalidating = ConcurrentHashMap.newKeySet();
+    // <mint, time of the failed fetch>
+    private final Map<PublicKey, Long> failedFetches = new ConcurrentHashMap<>();
+    // Hashes of objects ImageIO can't decode, e.g. SVG, not tried again
+    private final Set<String> undecodable = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param client shared client, its connection pool is reused
+     * @param directory root of the disk store, created if missing
+     * @param maxMemoryBytes image bytes kept in memory at most
+     * @param maxConcurrentFetches image downloads running at once, the rest are queued
+     */
+    public TokenImageCache(OkHttpClient client, Path directory, long maxMemoryBytes, int maxConcurrentFetches)
+            throws IOException {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxConcurrentFetches);
+        dispatcher.setMaxRequestsPerHost(maxConcurrentFetches);
+        this.client = client.newBuilder()
+                .dispatcher(dispatcher)
+                .build();
+
+        this.objectsDirectory = Files.createDirectories(directory.resolve("objects"));
+        this.mintsDirectory = Files.createDirectories(directory.resolve("mints"));
+        this.thumbsDirectory = Files.createDirectories(directory.resolve("thumbs"));
+        this.memory = CacheBuilder.newBuilder()
+                .maximumWeight(maxMemoryBytes)
+                .weigher((PublicKey mint, TokenImage image) ->
+                        ENTRY_OVERHEAD_BYTES + (image.getData() == null ? 0 : image.getData().length))
+                .build();
+        // loadAsync doesn't use the executor
+        this.loads = new SingleFlight<>(Runnable::run, stats);
+    }
+
+    /**
+     * Image of the token, from memory, disk or its logoURI, in that order.
+     *
+     * @param token registry token
+     * @return future completed with the image, or empty if it can't be fetched. Never completes exceptionally.
+     */
+    public CompletableFuture<Optional<TokenImage>> get(Token token) {
+        final PublicKey mint = token.getPublicKey();
+        final TokenImage cached = memory.getIfPresent(mint);
+        if (cached != null && cached.getLogoURI().equals(token.getLogoURI())) {
+            if (isStale(cached)) {
+                stats.recordStaleHit();
+                revalidate(token, cached);
+            } else {
+                stats.recordHit();
+            }
+            return CompletableFuture.completedFuture(Optional.of(cached));
+        }
+
+        stats.recordMiss();
+        return loads.loadAsync(mint, () -> load(token));
+    }
+
+    // Memory only, never loads
+    public Optional<TokenImage> getIfPresent(PublicKey mint) {
+        return Optional.ofNullable(memory.getIfPresent(mint));
+    }
+
+    // Content store file of the image, exists once the image is cached
+    public Path getObjectFile(TokenImage image) {
+        return objectsDirectory.resolve(image.getHash());
+    }
+
+    /**
+     * Square PNG thumbnail of the image, written when the image was stored, or now if it wasn't.
+     *
+     * @param image cached image
+     * @param size one of TokenThumbnails.SIZES
+     * @return thumbnail file, empty if the image can't be decoded
+     */
+    public Optional<Path> getThumbnail(TokenImage image, int size) {
+        Path thumbnail = getThumbnailFile(image.getHash(), size);
+        if (Files.exists(thumbnail)) {
+            return Optional.of(thumbnail);
+        }
+        if (undecodable.contains(image.getHash())) {
+            return Optional.empty();
+        }
+
+        try {
+            byte[] data = image.getData() != null ? image.getData() : Files.readAllBytes(getObjectFile(image));
+            writeThumbnails(image.getHash(), data);
+        } catch (IOException ex) {
+            return Optional.empty();
+        }
+        return Files.exists(thumbnail) ? Optional.of(thumbnail) : Optional.empty();
+    }
+
+    public CacheStats getStats() {
+        return stats.snapshot();
+    }
+
+    private CompletableFuture<Optional<TokenImage>> load(Token token) {
+        Optional<TokenImage> stored = readFromDisk(token);
+        if (stored.isPresent()) {
+            memory.put(token.getPublicKey(), stored.get());
+            if (isStale(stored.get())) {
+                revalidate(token, stored.get());
+            }
+            return CompletableFuture.completedFuture(stored);
+        }
+
+        Long failedAt = failedFetches.get(token.getPublicKey());
+        if (failedAt != null && System.currentTimeMillis() - failedAt < RETRY_FAILED_AFTER_MS) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return fetch(token, null);
+    }
+
+    private void revalidate(Token token, TokenImage cached) {
+        if (revalidating.add(token.getPublicKey())) {
+            fetch(token, cached).whenComplete((image, error) -> revalidating.remove(token.getPublicKey()));
+        }
+    }
+
+    /**
+     * Downloads the token's logo, conditionally if a previous version is known.
+     *
+     * @param token registry token
+     * @param previous cached version, may be null
+     * @return future completed with the current image, previous if the fetch failed (may be empty)
+     */
+    private CompletableFuture<Optional<TokenImage>> fetch(Token token, TokenImage previous) {
+        final CompletableFuture<Optional<TokenImage>> result = new CompletableFuture<>();
+        final Request request;
+        try {
+            Request.Builder builder = new Request.Builder().url(token.getLogoURI());
+            if (previous != null && previous.getEtag() != null) {
+                builder.header("If-None-Match", previous.getEtag());
+            }
+            if (previous != null && previous.getLastModified() != null) {
+                builder.header("If-Modified-Since", previous.getLastModified());
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException ex) {
+            // Missing logo, or a URL OkHttp can't fetch, e.g. data: or ipfs:
+            failedFetches.put(token.getPublicKey(), System.currentTimeMillis());
+            return CompletableFuture.completedFuture(Optional.ofNullable(previous));
+        }
+
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try (response) {
+                    result.complete(Optional.of(handleResponse(token, previous, response)));
+                } catch (IOException | RuntimeException ex) {
+                    onFailure(call, ex instanceof IOException ioException ? ioException : new IOException(ex));
+                }
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException ex) {
+                failedFetches.put(token.getPublicKey(), System.currentTimeMillis());
+                result.complete(Optional.ofNullable(previous));
+            }
+        });
+        return result;
+    }
+
+    private TokenImage handleResponse(Token token, TokenImage previous, Response response) throws IOException {
+        final long now = System.currentTimeMillis();
+        if (response.code() == 304 && previous != null) {
+            TokenImage image = previous.toBuilder()
+                    .validatedAt(now)
+                    .build();
+            store(token.getPublicKey(), image);
+            return image;
+        }
+
+        ResponseBody body = response.body();
+        MediaType contentType = body == null ? null : body.contentType();
+        if (!response.isSuccessful() || contentType == null || !contentType.type().equals("image")) {
+            throw new IOException("Not an image: HTTP " + response.code() + ", " + contentType);
+        }
+        byte[] data = body.bytes();
+        if (data.length <= MIN_IMAGE_LENGTH) {
+            throw new IOException("Image too small: " + data.length + " bytes");
+        }
+
+        TokenImage image = TokenImage.builder()
+                .data(data)
+                .contentType(contentType.type() + "/" + contentType.subtype())
+                .hash(Hashing.sha256().hashBytes(data).toString())
+                .logoURI(token.getLogoURI())
+                .etag(response.header("ETag"))
+                .lastModified(response.header("Last-Modified"))
+                .validatedAt(now)
+                .build();
+        store(token.getPublicKey(), image);
+        failedFetches.remove(token.getPublicKey());
+        return image;
+    }
+
+    private boolean isStale(TokenImage image) {
+        return System.currentTimeMillis() - image.getValidatedAt() > REVALIDATE_AFTER_MS;
+    }
+
+    private void store(PublicKey mint, TokenImage image) {
+        memory.put(mint, image);
+        try {
+            writeToDisk(mint, image);
+        } catch (IOException ex) {
+            // Served from memory, fetched again once evicted
+        }
+    }
+
+    // Writes the object if it's new, then the mint's index, then the new object's thumbnails
+    private void writeToDisk(PublicKey mint, TokenImage image) throws IOException {
+        Path objectFile = getObjectFile(image);
+        boolean newObject = !Files.exists(objectFile);
+        if (newObject) {
+            Path temporary = Files.createTempFile(objectsDirectory, image.getHash(), ".tmp");
+            try {
+                Files.write(temporary, image.getData());
+                Files.move(temporary, objectFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        Path indexFile = mintsDirectory.resolve(mint.toBase58());
+        Path temporary = Files.createTempFile(mintsDirectory, mint.toBase58(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                TokenRegistryCodec.writeString(output, image.getHash());
+                TokenRegistryCodec.writeString(output, image.getContentType());
+                TokenRegistryCodec.writeString(output, image.getLogoURI());
+                TokenRegistryCodec.writeString(output, image.getEtag());
+                TokenRegistryCodec.writeString(output, image.getLastModified());
+                output.writeLong(image.getValidatedAt());
+            }
+            Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        if (newObject) {
+            writeThumbnails(image.getHash(), image.getData());
+        }
+    }
+
+    // One PNG per thumbnail size, nothing if the object can't be decoded
+    private void writeThumbnails(String hash, byte[] data) throws IOException {
+        Optional<BufferedImage> decoded = TokenThumbnails.decode(data);
+        if (decoded.isEmpty()) {
+            undecodable.add(hash);
+            return;
+        }
+
+        for (int size : TokenThumbnails.SIZES) {
+            Path temporary = Files.createTempFile(thumbsDirectory, hash, ".tmp");
+            try {
+                Files.write(temporary, TokenThumbnails.toPng(TokenThumbnails.resize(decoded.get(), size)));
+                Files.move(temporary, getThumbnailFile(hash, size),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    private Path getThumbnailFile(String hash, int size) {
+        return thumbsDirectory.resolve(hash + "-" + size + ".png");
+    }
+
+    // Empty if the mint isn't stored, or was stored from another logoURI
+    private Optional<TokenImage> readFromDisk(Token token) {
+        Path indexFile = mintsDirectory.resolve(token.getPublicKey().toBase58());
+        if (!Files.exists(indexFile)) {
+            return Optional.empty();
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            TokenImage.TokenImageBuilder image = TokenImage.builder()
+                    .hash(TokenRegistryCodec.readString(input))
+                    .contentType(TokenRegistryCodec.readString(input));
+            String logoURI = TokenRegistryCodec.readString(input);
+            if (!token.getLogoURI().equals(logoURI)) {
+                return Optional.empty();
+            }
+            image.logoURI(logoURI)
+                    .etag(TokenRegistryCodec.readString(input))
+                    .lastModified(TokenRegistryCodec.readString(input))
+                    .validatedAt(input.readLong());
+
+            TokenImage indexed = image.build();
+            return Files.exists(getObjectFile(indexed)) ? Optional.of(indexed) : Optional.empty();
+        } catch (IOException | RuntimeException ex) {
+            // Truncated index, fetched again
+            return Optional.empty();
+        }
+    }
+}
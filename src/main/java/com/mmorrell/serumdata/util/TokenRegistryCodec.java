@@ -0,0 +1,221 @@
+package com.mmorrell.serumdata.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.mmorrell.serumdata.model.Token;
+import com.mmorrell.serumdata.model.TokenRegistry;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads solana.tokenlist.json token by token with the Jackson streaming API, without building the whole
+ * document in memory. Also saves parsed registries to a compact binary snapshot and reads them back.
+ */
+public class TokenRegistryCodec {
+
+    public static final int CHAIN_ID_MAINNET = 101;
+
+    // Snapshot file: magic, format version, ETag, Last-Modified, token count, then tokens
+    private static final int MAGIC = 0x544f4b4e;
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Parses a token list, keeping mainnet tokens. Later entries replace earlier ones with the same address.
+     *
+     * @param input token list JSON, not closed
+     * @param jsonFactory e.g. the ObjectMapper's factory
+     * @return <tokenMint, token> in list order
+     * @throws IOException if the input is not a token list
+     */
+    public static Map<PublicKey, Token> parseTokenList(InputStream input, JsonFactory jsonFactory) throws IOException {
+        Map<PublicKey, Token> tokens = new LinkedHashMap<>();
+        try (JsonParser parser = jsonFactory.createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Token list is not a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (!field.equals("tokens") || value != JsonToken.START_ARRAY) {
+                    // name, logoURI, tags, timestamp, version
+                    parser.skipChildren();
+                    continue;
+                }
+
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    Token token = readToken(parser);
+                    if (token != null && token.getChainId() == CHAIN_ID_MAINNET) {
+                        tokens.put(token.getPublicKey(), token);
+                    }
+                }
+            }
+        }
+        return tokens;
+    }
+
+    // Reads the fields of one token object, null if it has no valid address
+    private static Token readToken(JsonParser parser) throws IOException {
+        String address = null;
+        String name = "";
+        String symbol = "";
+        String logoURI = "";
+        int chainId = 0;
+        int decimals = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "address" -> address = parser.getValueAsString();
+                case "name" -> name = parser.getValueAsString("");
+                case "symbol" -> symbol = parser.getValueAsString("");
+                case "logoURI" -> logoURI = parser.getValueAsString("");
+                case "chainId" -> chainId = parser.getValueAsInt();
+                case "decimals" -> decimals = parser.getValueAsInt();
+                // tags, extensions
+                default -> parser.skipChildren();
+            }
+        }
+
+        if (address == null) {
+            return null;
+        }
+        try {
+            return buildToken(PublicKey.valueOf(address), address, name, symbol, logoURI, chainId, decimals);
+        } catch (IllegalArgumentException ex) {
+            // Not a base58 key
+            return null;
+        }
+    }
+
+    /**
+     * Saves the registry's tokens and validators, replacing the file atomically.
+     *
+     * @param registry registry to save
+     * @param file snapshot file
+     */
+    public static void writeSnapshot(TokenRegistry registry, Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            writeString(output, registry.getEtag());
+            writeString(output, registry.getLastModified());
+            output.writeInt(registry.getTokens().size());
+            for (Token token : registry.getTokens().values()) {
+                output.write(token.getPublicKey().toByteArray());
+                writeString(output, token.getName());
+                writeString(output, token.getSymbol());
+                writeString(output, token.getLogoURI());
+                output.writeInt(token.getChainId());
+                output.writeInt(token.getDecimals());
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(temporary);
+            throw ex;
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot written by writeSnapshot.
+     *
+     * @param file snapshot file
+     * @return registry of generation 1, empty if the file is missing
+     * @throws IOException if the file can't be read or isn't a snapshot
+     */
+    public static Optional<TokenRegistry> readSnapshot(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a token registry snapshot: " + file);
+            }
+            String etag = readString(input);
+            String lastModified = readString(input);
+            int count = input.readInt();
+
+            Map<PublicKey, Token> tokens = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                // PublicKey keeps the array
+                byte[] key = new byte[PublicKey.PUBLIC_KEY_LENGTH];
+                input.readFully(key);
+                PublicKey tokenMint = new PublicKey(key);
+                String name = readString(input);
+                String symbol = readString(input);
+                String logoURI = readString(input);
+                int chainId = input.readInt();
+                int decimals = input.readInt();
+                tokens.put(tokenMint, buildToken(tokenMint, tokenMint.toBase58(), name, symbol, logoURI, chainId, decimals));
+            }
+            return Optional.of(new TokenRegistry(1, tokens, etag, lastModified));
+        } catch (EOFException ex) {
+            throw new IOException("Truncated token registry snapshot: " + file, ex);
+        }
+    }
+
+    // Used for formatting media type
+    public static String getImageFormat(String logoURI) {
+        if (logoURI.endsWith(".jpg")) {
+            return "jpg";
+        } else if (logoURI.endsWith(".png")) {
+            return "png";
+        } else if (logoURI.endsWith(".svg")) {
+            return "svg";
+        } else if (logoURI.endsWith(".gif")) {
+            return "gif";
+        } else {
+            return "png";
+        }
+    }
+
+    private static Token buildToken(PublicKey tokenMint, String address, String name, String symbol, String logoURI,
+                                    int chainId, int decimals) {
+        return Token.builder()
+                .name(name)
+                .publicKey(tokenMint)
+                .address(address)
+                .symbol(symbol)
+                .logoURI(logoURI)
+                .chainId(chainId)
+                .decimals(decimals)
+                .imageFormat(getImageFormat(logoURI))
+                .build();
+    }
+
+    // Length prefixed UTF-8, -1 for null. Unlike writeUTF, not limited to 64 KiB (some logos are data URIs).
+    // Also used by the TokenImageCache index.
+    static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
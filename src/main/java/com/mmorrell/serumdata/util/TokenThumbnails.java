@@ -0,0 +1,125 @@
+package com.mmorrell.serumdata.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Fixed size PNG thumbnails of token logos, and sprite sheets packing them. Decodes what ImageIO reads (PNG, JPEG,
+ * GIF, BMP); vector or newer formats, e.g. SVG or WebP, have no thumbnail and are served as they are.
+ */
+public class TokenThumbnails {
+
+    // Square thumbnail sizes in px: markets list icons, and the same at 2x for high density screens
+    public static final List<Integer> SIZES = List.of(20, 40);
+    // Sprite sheets are built from the largest thumbnails, browsers scale them down
+    public static final int SPRITE_ICON_SIZE = 40;
+    // Larger logos aren't decoded, 64 MB of pixels
+    private static final long MAX_SOURCE_PIXELS = 4096L * 4096L;
+
+    /**
+     * @param data image file, e.g. a cached logo
+     * @return decoded image, or empty if the format isn't supported, it's too large or corrupt
+     */
+    public static Optional<BufferedImage> decode(byte[] data) {
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return Optional.empty();
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > MAX_SOURCE_PIXELS) {
+                    return Optional.empty();
+                }
+                return Optional.of(reader.read(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException ex) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Scales the image to fit a size x size square, keeping its aspect ratio, centered on a transparent background.
+     * Large images are halved repeatedly before the last step, so downsizing averages all their pixels.
+     */
+    public static BufferedImage resize(BufferedImage source, int size) {
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        while (width / 2 >= size && height / 2 >= size) {
+            width /= 2;
+            height /= 2;
+            current = draw(current, width, height, width, height, 0, 0);
+        }
+
+        double scale = Math.min((double) size / width, (double) size / height);
+        int scaledWidth = Math.max(1, (int) Math.round(width * scale));
+        int scaledHeight = Math.max(1, (int) Math.round(height * scale));
+        return draw(current, size, size, scaledWidth, scaledHeight,
+                (size - scaledWidth) / 2, (size - scaledHeight) / 2);
+    }
+
+    /**
+     * Packs square icons of the same size left to right, top to bottom.
+     *
+     * @param icons icons, the index of each is its cell
+     * @param size width and height of every icon
+     * @param columns icons per row
+     * @return sprite sheet, transparent where there is no icon
+     */
+    public static BufferedImage packSprite(List<BufferedImage> icons, int size, int columns) {
+        int rows = Math.max(1, (icons.size() + columns - 1) / columns);
+        BufferedImage sheet = new BufferedImage(columns * size, rows * size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = sheet.createGraphics();
+        try {
+            for (int i = 0; i < icons.size(); i++) {
+                graphics.drawImage(icons.get(i), (i % columns) * size, (i / columns) * size, size, size, null);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return sheet;
+    }
+
+    // Columns of a roughly square sheet holding count icons
+    public static int spriteColumns(int count) {
+        return Math.max(1, (int) Math.ceil(Math.sqrt(count)));
+    }
+
+    public static byte[] toPng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, "png", output)) {
+            throw new IOException("No PNG writer");
+        }
+        return output.toByteArray();
+    }
+
+    private static BufferedImage draw(BufferedImage source, int canvasWidth, int canvasHeight,
+                                      int width, int height, int x, int y) {
+        BufferedImage target = new BufferedImage(canvasWidth, canvasHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, x, y, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+}
@@ -0,0 +1,45 @@
+package com.mmorrell.serumdata.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.mmorrell.serumdata.model.TradeHistoryEvent;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link TradeHistoryEvent} field by field, without reflection. Same fields, order and nulls as the
+ * bean serialization it replaces.
+ */
+public class TradeHistoryEventSerializer extends JsonSerializer<TradeHistoryEvent> {
+
+    @Override
+    public void serialize(TradeHistoryEvent event, JsonGenerator jsonGenerator,
+                          SerializerProvider serializerProvider) throws IOException {
+        jsonGenerator.writeStartObject();
+        jsonGenerator.writeNumberField("index", event.getIndex());
+        jsonGenerator.writeNumberField("seqNum", event.getSeqNum());
+        jsonGenerator.writeNumberField("price", event.getPrice());
+        jsonGenerator.writeNumberField("quantity", event.getQuantity());
+
+        jsonGenerator.writeFieldName("takerOoa");
+        PublicKeySerializer.writePublicKey(jsonGenerator, event.getTakerOoa());
+        jsonGenerator.writeFieldName("makerOoa");
+        PublicKeySerializer.writePublicKey(jsonGenerator, event.getMakerOoa());
+        jsonGenerator.writeFieldName("owner");
+        PublicKeySerializer.writePublicKey(jsonGenerator, event.getOwner());
+        jsonGenerator.writeFieldName("makerOwner");
+        PublicKeySerializer.writePublicKey(jsonGenerator, event.getMakerOwner());
+
+        jsonGenerator.writeStringField("takerEntityName", event.getTakerEntityName());
+        jsonGenerator.writeStringField("takerEntityIcon", event.getTakerEntityIcon());
+        jsonGenerator.writeStringField("makerEntityName", event.getMakerEntityName());
+        jsonGenerator.writeStringField("makerEntityIcon", event.getMakerEntityIcon());
+
+        jsonGenerator.writeBooleanField("fill", event.isFill());
+        jsonGenerator.writeBooleanField("out", event.isOut());
+        jsonGenerator.writeBooleanField("bid", event.isBid());
+        jsonGenerator.writeBooleanField("maker", event.isMaker());
+        jsonGenerator.writeEndObject();
+    }
+}
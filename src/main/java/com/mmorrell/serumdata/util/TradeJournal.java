@@ -0,0 +1,397 @@
+package com.mmorrell.serumdata.util;
+
+import com.mmorrell.serumdata.model.Fill;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Persistent, append-only fill history of one market: a directory of memory-mapped segment files holding
+ * fixed-size records in seqNum order. Full segments roll over to a new file, the oldest are deleted past
+ * maxSegments. Every {@value #INDEX_INTERVAL}th record's timestamp and slot are kept in memory (rebuilt on open),
+ * so a range lookup is a binary search followed by a sequential read. Backfilled fills are kept, but left out of
+ * time lookups: their timestamp is only a lower bound (which keeps timestamps ordered along seqNum).
+ * <p>
+ * Segment layout: 16 byte header (u32 magic, u32 version, u64 record count), then records of
+ * u64 seqNum, u64 slot, u64 timestamp, u64 native quantity, u64 native quote, u8 flags, 32 byte open orders,
+ * padded to {@value #RECORD_SIZE} bytes. Little endian.
+ */
+public class TradeJournal implements AutoCloseable {
+
+    private static final int MAGIC = 0x4F534A31; // "OSJ1"
+    private static final int VERSION = 1;
+    private static final int COUNT_OFFSET = 8;
+    private static final int HEADER_SIZE = 16;
+
+    private static final int RECORD_SIZE = 80;
+    private static final int SEQ_NUM_OFFSET = 0;
+    private static final int SLOT_OFFSET = 8;
+    private static final int TIMESTAMP_OFFSET = 16;
+    private static final int NATIVE_QUANTITY_OFFSET = 24;
+    private static final int NATIVE_QUOTE_OFFSET = 32;
+    private static final int FLAGS_OFFSET = 40;
+    private static final int OPEN_ORDERS_OFFSET = 41;
+    private static final int OPEN_ORDERS_LENGTH = 32;
+
+    private static final int FLAG_BID = 1;
+    private static final int FLAG_MAKER = 2;
+    private static final int FLAG_BACKFILLED = 4;
+
+    private static final int INDEX_INTERVAL = 64;
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final int maxSegments;
+    private final double baseMultiplier;
+    private final double quoteMultiplier;
+
+    // Oldest first, the last one is written to
+    private final List<Segment> segments = new ArrayList<>();
+    private long lastSeqNum = -1;
+
+    /**
+     * Opens the journal in directory, reopening existing segments.
+     *
+     * @param segmentRecords records per segment file
+     * @param maxSegments segments kept, older ones are deleted on rollover
+     */
+    public TradeJournal(Path directory, int segmentRecords, int maxSegments, int baseDecimals, int quoteDecimals)
+            throws IOException {
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.maxSegments = maxSegments;
+        this.baseMultiplier = Math.pow(10, baseDecimals);
+        this.quoteMultiplier = Math.pow(10, quoteDecimals);
+
+        Files.createDirectories(directory);
+        List<Path> segmentFiles;
+        try (Stream<Path> files = Files.list(directory)) {
+            segmentFiles = files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+
+        for (Path segmentFile : segmentFiles) {
+            Segment segment = Segment.open(segmentFile, getSegmentNumber(segmentFile), segmentRecords);
+            if (segment == null) {
+                continue;
+            }
+            segments.add(segment);
+            if (segment.count > 0) {
+                lastSeqNum = segment.getLong(segment.count - 1, SEQ_NUM_OFFSET);
+            }
+        }
+    }
+
+    /**
+     * Appends fills newer than the last one journaled, in seqNum order. Older fills are skipped, so the same
+     * fills can be offered again (e.g. re-read after a restart).
+     *
+     * @param fills fills oldest first
+     * @return number of fills appended
+     */
+    public synchronized int append(List<Fill> fills) throws IOException {
+        int appended = 0;
+        for (Fill fill : fills) {
+            if (fill.getSeqNum() <= lastSeqNum) {
+                continue;
+            }
+
+            Segment segment = getWritableSegment();
+            int record = segment.count;
+            int offset = HEADER_SIZE + record * RECORD_SIZE;
+            segment.buffer.putLong(offset + SEQ_NUM_OFFSET, fill.getSeqNum());
+            segment.buffer.putLong(offset + SLOT_OFFSET, fill.getSlot());
+            segment.buffer.putLong(offset + TIMESTAMP_OFFSET, fill.getTimestamp());
+            segment.buffer.putLong(offset + NATIVE_QUANTITY_OFFSET, fill.getNativeQuantity());
+            segment.buffer.putLong(offset + NATIVE_QUOTE_OFFSET, fill.getNativeQuote());
+            segment.buffer.put(offset + FLAGS_OFFSET, (byte) ((fill.isBid() ? FLAG_BID : 0) |
+                    (fill.isMaker() ? FLAG_MAKER : 0) | (fill.isBackfilled() ? FLAG_BACKFILLED : 0)));
+            segment.buffer.put(offset + OPEN_ORDERS_OFFSET, fill.getOpenOrders().toByteArray());
+
+            // Count is published after the record, a crash mid-write leaves the record unseen
+            segment.setCount(record + 1);
+            lastSeqNum = fill.getSeqNum();
+            appended++;
+        }
+        return appended;
+    }
+
+    /**
+     * Fills received between two times, oldest first. Backfilled fills are skipped.
+     *
+     * @param fromTime epoch ms, inclusive
+     * @param toTime epoch ms, exclusive
+     * @param limit max fills returned
+     */
+    public synchronized List<Fill> getFillsByTime(long fromTime, long toTime, int limit) {
+        return read(fromTime, toTime, limit, TIMESTAMP_OFFSET);
+    }
+
+    /**
+     * Fills read between two slots, oldest first.
+     *
+     * @param fromSlot inclusive
+     * @param toSlot exclusive
+     * @param limit max fills returned
+     */
+    public synchronized List<Fill> getFillsBySlot(long fromSlot, long toSlot, int limit) {
+        return read(fromSlot, toSlot, limit, SLOT_OFFSET);
+    }
+
+    /**
+     * For replaying the journal in batches.
+     *
+     * @param seqNum first seqNum wanted
+     * @param limit max fills returned
+     * @return fills at or after seqNum, oldest first
+     */
+    public synchronized List<Fill> getFillsFromSeqNum(long seqNum, int limit) {
+        List<Fill> fills = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.count == 0 || segment.getLong(segment.count - 1, SEQ_NUM_OFFSET) < seqNum) {
+                continue;
+            }
+
+            // seqNums are unique and increasing, records can be searched directly
+            int low = 0;
+            int high = segment.count - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (segment.getLong(mid, SEQ_NUM_OFFSET) < seqNum) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int record = low; record < segment.count && fills.size() < limit; record++) {
+                fills.add(readFill(segment, record));
+            }
+            if (fills.size() >= limit) {
+                break;
+            }
+        }
+        return fills;
+    }
+
+    /**
+     * @param limit max fills returned
+     * @return latest fills, oldest first
+     */
+    public synchronized List<Fill> getLatestFills(int limit) {
+        List<Fill> fills = new ArrayList<>(limit);
+        for (int i = segments.size() - 1; i >= 0 && fills.size() < limit; i--) {
+            Segment segment = segments.get(i);
+            for (int record = segment.count - 1; record >= 0 && fills.size() < limit; record--) {
+                fills.add(readFill(segment, record));
+            }
+        }
+        Collections.reverse(fills);
+        return fills;
+    }
+
+    public synchronized long getLastSeqNum() {
+        return lastSeqNum;
+    }
+
+    public synchronized long size() {
+        return segments.stream().mapToLong(segment -> segment.count).sum();
+    }
+
+    // Written through to the page cache as it goes, forced to disk on close
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    // Timestamps and slots only increase along seqNum, so both can be searched
+    private List<Fill> read(long from, long to, int limit, int keyOffset) {
+        List<Fill> fills = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.count == 0 || segment.getLong(segment.count - 1, keyOffset) < from) {
+                continue;
+            }
+            if (segment.getLong(0, keyOffset) >= to) {
+                break;
+            }
+
+            long[] index = keyOffset == TIMESTAMP_OFFSET ? segment.timeIndex : segment.slotIndex;
+            int record = findStart(index, segment.count, from);
+            for (; record < segment.count; record++) {
+                long key = segment.getLong(record, keyOffset);
+                if (key >= to) {
+                    return fills;
+                }
+                if (key >= from && !(keyOffset == TIMESTAMP_OFFSET && isBackfilled(segment, record))) {
+                    fills.add(readFill(segment, record));
+                    if (fills.size() >= limit) {
+                        return fills;
+                    }
+                }
+            }
+        }
+        return fills;
+    }
+
+    // First record of the last index block starting before from
+    private static int findStart(long[] index, int count, long from) {
+        int entries = (count + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+        int low = 0;
+        int high = entries - 1;
+        int block = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (index[mid] < from) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return block * INDEX_INTERVAL;
+    }
+
+    private static boolean isBackfilled(Segment segment, int record) {
+        return (segment.buffer.get(HEADER_SIZE + record * RECORD_SIZE + FLAGS_OFFSET) & FLAG_BACKFILLED) != 0;
+    }
+
+    private Fill readFill(Segment segment, int record) {
+        int offset = HEADER_SIZE + record * RECORD_SIZE;
+        byte flags = segment.buffer.get(offset + FLAGS_OFFSET);
+        byte[] openOrders = new byte[OPEN_ORDERS_LENGTH];
+        segment.buffer.get(offset + OPEN_ORDERS_OFFSET, openOrders);
+
+        return EventQueueDecoder.buildFill(
+                segment.buffer.getLong(offset + SEQ_NUM_OFFSET),
+                segment.buffer.getLong(offset + SLOT_OFFSET),
+                segment.buffer.getLong(offset + TIMESTAMP_OFFSET),
+                (flags & FLAG_BACKFILLED) != 0,
+                segment.buffer.getLong(offset + NATIVE_QUANTITY_OFFSET),
+                segment.buffer.getLong(offset + NATIVE_QUOTE_OFFSET),
+                new PublicKey(openOrders),
+                (flags & FLAG_BID) != 0,
+                (flags & FLAG_MAKER) != 0,
+                baseMultiplier,
+                quoteMultiplier
+        );
+    }
+
+    private Segment getWritableSegment() throws IOException {
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last != null && last.count < segmentRecords) {
+            return last;
+        }
+
+        long number = last == null ? 0 : last.number + 1;
+        Segment segment = Segment.create(directory.resolve(String.format("%012d%s", number, SEGMENT_SUFFIX)),
+                number, segmentRecords);
+        if (last != null) {
+            last.buffer.force();
+        }
+        segments.add(segment);
+
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.remove(0);
+            oldest.close();
+            Files.deleteIfExists(oldest.file);
+        }
+        return segment;
+    }
+
+    private static long getSegmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static class Segment {
+        private final Path file;
+        private final long number;
+        private final MappedByteBuffer buffer;
+        // Key of every INDEX_INTERVALth record
+        private final long[] timeIndex;
+        private final long[] slotIndex;
+        private int count;
+
+        private Segment(Path file, long number, MappedByteBuffer buffer, int segmentRecords) {
+            this.file = file;
+            this.number = number;
+            this.buffer = buffer;
+            this.timeIndex = new long[(segmentRecords + INDEX_INTERVAL - 1) / INDEX_INTERVAL];
+            this.slotIndex = new long[timeIndex.length];
+        }
+
+        static Segment create(Path file, long number, int segmentRecords) throws IOException {
+            Segment segment = new Segment(file, number, map(file, segmentRecords), segmentRecords);
+            segment.buffer.putInt(0, MAGIC);
+            segment.buffer.putInt(4, VERSION);
+            segment.setCount(0);
+            return segment;
+        }
+
+        // Null if the file isn't a readable segment of this size
+        static Segment open(Path file, long number, int segmentRecords) throws IOException {
+            if (Files.size(file) != HEADER_SIZE + (long) segmentRecords * RECORD_SIZE) {
+                return null;
+            }
+
+            Segment segment = new Segment(file, number, map(file, segmentRecords), segmentRecords);
+            long count = segment.buffer.getLong(COUNT_OFFSET);
+            if (segment.buffer.getInt(0) != MAGIC || count < 0 || count > segmentRecords) {
+                return null;
+            }
+
+            segment.count = (int) count;
+            for (int record = 0; record < segment.count; record += INDEX_INTERVAL) {
+                segment.timeIndex[record / INDEX_INTERVAL] = segment.getLong(record, TIMESTAMP_OFFSET);
+                segment.slotIndex[record / INDEX_INTERVAL] = segment.getLong(record, SLOT_OFFSET);
+            }
+            return segment;
+        }
+
+        private static MappedByteBuffer map(Path file, int segmentRecords) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        HEADER_SIZE + (long) segmentRecords * RECORD_SIZE);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                return buffer;
+            }
+        }
+
+        long getLong(int record, int fieldOffset) {
+            return buffer.getLong(HEADER_SIZE + record * RECORD_SIZE + fieldOffset);
+        }
+
+        void setCount(int count) {
+            if (count > 0 && (count - 1) % INDEX_INTERVAL == 0) {
+                timeIndex[(count - 1) / INDEX_INTERVAL] = getLong(count - 1, TIMESTAMP_OFFSET);
+                slotIndex[(count - 1) / INDEX_INTERVAL] = getLong(count - 1, SLOT_OFFSET);
+            }
+            this.count = count;
+            buffer.putLong(COUNT_OFFSET, count);
+        }
+
+        void close() {
+            try {
+                buffer.force();
+            } catch (UncheckedIOException ex) {
+                // Already written to the page cache, only lost on a host crash
+            }
+        }
+    }
+}
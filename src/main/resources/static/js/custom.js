@@ -3,14 +3,40 @@ $.fn.DataTable.ext.pager.numbers_length = 5;
 
 var chartTitle = "", baseSymbol, quoteSymbol, baseLogo, quoteLogo, bidContextSlot, askContextSlot, marketTable;
 
+// Server-sent events of the active market, handlers keyed by event name
+var marketStream, marketStreamHandlers = {depth: renderDepthChart};
+const MARKET_STREAM_EVENTS = ['depth', 'bids', 'asks', 'tradeHistory'];
+
+// Sprite sheet of active token icons, tokens missing from it load their own 20px thumbnail
+const TOKEN_ICON_SIZE = 18;
+const TOKEN_THUMBNAIL_SIZE = 20;
+var tokenSprite = {icons: {}};
+$.getJSON('/api/serum/token/sprite', function (sprite) {
+    tokenSprite = sprite;
+});
+
+function tokenIcon(tokenMint, style) {
+    let cell = tokenSprite.icons[tokenMint];
+    if (cell === undefined) {
+        return "<img loading='lazy' style='" + style + "' class='img-icon' src='/api/serum/token/" + tokenMint +
+            "/icon?size=" + TOKEN_THUMBNAIL_SIZE + "'>";
+    }
+    return "<span class='img-icon token-sprite' style='" + style +
+        " width: " + TOKEN_ICON_SIZE + "px; height: " + TOKEN_ICON_SIZE + "px; margin-right: 4px;" +
+        " background-image: url(" + tokenSprite.url + ");" +
+        " background-size: " + (tokenSprite.columns * TOKEN_ICON_SIZE) + "px " +
+        (tokenSprite.rows * TOKEN_ICON_SIZE) + "px;" +
+        " background-position: -" + ((cell % tokenSprite.columns) * TOKEN_ICON_SIZE) + "px -" +
+        (Math.floor(cell / tokenSprite.columns) * TOKEN_ICON_SIZE) + "px;'></span>";
+}
+
 function formatToken(token) {
     if (!token.id) {
         return token.text;
     }
     if (token.element.dataset.icon != null) {
         return $(
-            '<span><img loading="lazy" src="/api/serum/token/' + token.id + '/icon"' +
-            ' class="img-icon" /> ' + token.text + '</span>'
+            '<span>' + tokenIcon(token.id, '') + ' ' + token.text + '</span>'
         );
     } else {
         return $(
@@ -52,7 +78,7 @@ function loadMarkets(tokenId) {
                     data: 'base',
                     render: function (data, type, row) {
                         if (row.baseLogo !== "" && row.baseSymbol !== "") {
-                            return "<img style='float: left;' class='img-icon' src='/api/serum/token/" + row.baseMint + "/icon'><span" +
+                            return tokenIcon(row.baseMint, 'float: left;') + "<span" +
                                 " style='padding-left: 5px;'>" + row.baseSymbol + "</span>";
                         } else {
                             return "<img style='float: left;' class='img-icon'" +
@@ -65,7 +91,7 @@ function loadMarkets(tokenId) {
                     data: 'quote',
                     render: function (data, type, row) {
                         if (row.quoteLogo !== "" && row.quoteSymbol !== "") {
-                            return "<img style='float: left;' class='img-icon' src='/api/serum/token/" + row.quoteMint + "/icon'><span" +
+                            return tokenIcon(row.quoteMint, 'float: left;') + "<span" +
                                 " style='padding-left: 5px;'>" + row.quoteSymbol + "</span>";
                         } else {
                             return "?";
@@ -124,213 +150,279 @@ function loadMarkets(tokenId) {
 function setMarket(marketId) {
     activeMarketId = marketId; // starts order book loop
 
-    loadMarketDetail();
-
-    // update trade history
-    loadTradeHistory(marketId);
+    loadMarketSnapshot(marketId);
+    connectMarketStream();
 }
 
-function loadTradeHistory(marketId) {
-    let apiUrl = "/api/serum/market/" + marketId + "/tradeHistory";
-    $.get(apiUrl, function (data) {
-        // reset chart
-        myChart.data = {
-            labels: [],
-            datasets: [{
-                label: 'Price',
-                data: [],
-                fill: false,
-                borderColor: 'rgb(41,98,255)',
-                tension: 0.1
-            }]
-        };
-        myChart.update();
-
-        $.each(data, function (k, v) {
-            if (!v.maker) {
-                addData(k, v.price, false);
+// Details, chart, depth and tables of a market from one consistent snapshot
+function loadMarketSnapshot(marketId) {
+    $.get("/api/serum/market/" + marketId + "/snapshot")
+        .done(function (data) {
+            if (marketId !== activeMarketId || !data.market) {
+                return;
             }
-        });
 
-        myChart.data.datasets.forEach((dataset) => {
-            dataset.data.reverse();
+            renderMarketDetail(data.market);
+            renderTradeHistory(marketId, data.tradeHistory);
+            renderDepthChart(data.depth);
+            ['bids', 'asks', 'tradeHistory'].forEach(function (field) {
+                if (marketStreamHandlers[field]) {
+                    marketStreamHandlers[field](data[field]);
+                }
+            });
         });
-        myChart.update();
+}
 
-        lastLoadedChartId = marketId;
+function renderTradeHistory(marketId, data) {
+    // reset chart
+    myChart.data = {
+        labels: [],
+        datasets: [{
+            label: 'Price',
+            data: [],
+            fill: false,
+            borderColor: 'rgb(41,98,255)',
+            tension: 0.1
+        }]
+    };
+    myChart.update();
+
+    $.each(data, function (k, v) {
+        if (!v.maker) {
+            addData(k, v.price, false);
+        }
     });
+
+    myChart.data.datasets.forEach((dataset) => {
+        dataset.data.reverse();
+    });
+    myChart.update();
+
+    lastLoadedChartId = marketId;
 }
 
-function loadMarketDetail() {
-    let apiUrl = "/api/serum/market/" + activeMarketId;
-    $.get({url: apiUrl, cache: true})
-        .done(function (data) {
-            $("#orderBookHeader").html("Order Book: " +
-                "<img class=\"baseLogo img-icon\">" +
-                "<span id=\"baseName\"></span> / " +
-                "<img class=\"quoteLogo img-icon\">" +
-                "<span id=\"quoteName\"></span> " +
-                "<span id=\"ownerName\"></span> " +
-                "<span class=\"livePrice\"></span>" +
-                "<span class=\"marketContext\" style=\"float: right;\"></span>"
-            );
-            baseSymbol = data.baseSymbol;
-            quoteSymbol = data.quoteSymbol;
-            chartTitle = baseSymbol + " / " + data.quoteSymbol;
-            lastLoadedMarketId = data.id;
-            baseLogo = "/api/serum/token/" + data.baseMint + "/icon";
-            quoteLogo = "/api/serum/token/" + data.quoteMint + "/icon";
-
-            if (quoteSymbol === 'USDC' || quoteSymbol === 'USDT') {
-                marketCurrencySymbol = '$';
-            } else {
-                marketCurrencySymbol = '';
-            }
+function renderMarketDetail(data) {
+    $("#orderBookHeader").html("Order Book: " +
+        "<img class=\"baseLogo img-icon\">" +
+        "<span id=\"baseName\"></span> / " +
+        "<img class=\"quoteLogo img-icon\">" +
+        "<span id=\"quoteName\"></span> " +
+        "<span id=\"ownerName\"></span> " +
+        "<span class=\"livePrice\"></span>" +
+        "<span class=\"marketContext\" style=\"float: right;\"></span>"
+    );
+    baseSymbol = data.baseSymbol;
+    quoteSymbol = data.quoteSymbol;
+    chartTitle = baseSymbol + " / " + data.quoteSymbol;
+    lastLoadedMarketId = data.id;
+    baseLogo = "/api/serum/token/" + data.baseMint + "/icon";
+    quoteLogo = "/api/serum/token/" + data.quoteMint + "/icon";
+
+    if (quoteSymbol === 'USDC' || quoteSymbol === 'USDT') {
+        marketCurrencySymbol = '$';
+    } else {
+        marketCurrencySymbol = '';
+    }
 
-            $("#baseName").text(baseSymbol);
-            $("#priceChartTitle").html("<img class=\"baseLogo img-icon\" style=\"float: left; margin-right: 5px !important;\">" + " <span class=\"livePrice\"></span>" + chartTitle + " Price - " + activeMarketId);
-            $("#tradeHistoryTitle").text(baseSymbol + " Trade History")
-            $("#quoteName").text(quoteSymbol);
-            $("#ownerName").text("(" + lastLoadedMarketId.substring(0, 3) + ".." + lastLoadedMarketId.substring(lastLoadedMarketId.toString().length - 3) + ")");
-
-            // Mkt details (bottom)
-            $(".marketDetailsId").html(explorerLink(activeMarketId));
-            $(".marketDetailsBaseMint").html(explorerLink(data.baseMint));
-            $(".marketDetailsQuoteMint").html(explorerLink(data.quoteMint));
-            $(".marketDetailsBids").html(explorerLink(data.bids));
-            $(".marketDetailsAsks").html(explorerLink(data.asks));
-            $(".marketDetailsEventQueue").html(explorerLink(data.eventQueue));
-            $(".marketDetailsBaseVault").html(explorerLink(data.baseVault));
-            $(".marketDetailsQuoteVault").html(explorerLink(data.quoteVault));
-            $(".marketDetailsBaseDepositsTotal").text(formatter.format(data.baseDepositsFloat).substring(1) + " " + data.baseSymbol);
-            $(".marketDetailsQuoteDepositsTotal").text(marketCurrencySymbol + formatter.format(data.quoteDepositsFloat).substring(1) + " " + data.quoteSymbol);
-            $(".marketDetailsQuoteFeesAccrued").text(marketCurrencySymbol + formatter.format(data.quoteFeesAccruedFloat).substring(1) + " " + data.quoteSymbol);
-            $(".marketDetailsBaseLotSize").text(data.baseLotSize);
-            $(".marketDetailsQuoteLotSize").text(data.quoteLotSize);
-            $(".marketDetailsBaseDecimals").text(data.baseDecimals);
-            $(".marketDetailsQuoteDecimals").text(data.quoteDecimals);
-            $(".marketDetailsReferrerRebatesAccrued").text(marketCurrencySymbol + formatter.format(data.referrerRebatesAccruedFloat).substring(1) + " " + data.quoteSymbol);
-            $(".marketDetailsQuoteDustThreshold").text(data.quoteDustThreshold);
-            $(".marketDetailsFeeRateBps").text(data.feeRateBps);
-            $(".marketDetailsBaseTokenName").html("<img class=\"baseLogo img-icon\"/>" + data.baseName);
-            $(".marketDetailsQuoteTokenName").html("<img class=\"quoteLogo img-icon\"/>" + data.quoteName);
-            $(".marketDetailsName").html("<img class=\"baseLogo img-icon\"/>" + baseSymbol + " / " + "<img" +
-                " class=\"quoteLogo img-icon\"/>" + quoteSymbol);
-            $(".marketDetailsPermalink").val("https://alpha.openserum.io/" + activeMarketId);
-
-            $(".baseLogo").attr("src", baseLogo);
-            $(".quoteLogo").attr("src", quoteLogo);
-        });
+    $("#baseName").text(baseSymbol);
+    $("#priceChartTitle").html("<img class=\"baseLogo img-icon\" style=\"float: left; margin-right: 5px !important;\">" + " <span class=\"livePrice\"></span>" + chartTitle + " Price - " + activeMarketId);
+    $("#tradeHistoryTitle").text(baseSymbol + " Trade History")
+    $("#quoteName").text(quoteSymbol);
+    $("#ownerName").text("(" + lastLoadedMarketId.substring(0, 3) + ".." + lastLoadedMarketId.substring(lastLoadedMarketId.toString().length - 3) + ")");
+
+    // Mkt details (bottom)
+    $(".marketDetailsId").html(explorerLink(activeMarketId));
+    $(".marketDetailsBaseMint").html(explorerLink(data.baseMint));
+    $(".marketDetailsQuoteMint").html(explorerLink(data.quoteMint));
+    $(".marketDetailsBids").html(explorerLink(data.bids));
+    $(".marketDetailsAsks").html(explorerLink(data.asks));
+    $(".marketDetailsEventQueue").html(explorerLink(data.eventQueue));
+    $(".marketDetailsBaseVault").html(explorerLink(data.baseVault));
+    $(".marketDetailsQuoteVault").html(explorerLink(data.quoteVault));
+    $(".marketDetailsBaseDepositsTotal").text(formatter.format(data.baseDepositsFloat).substring(1) + " " + data.baseSymbol);
+    $(".marketDetailsQuoteDepositsTotal").text(marketCurrencySymbol + formatter.format(data.quoteDepositsFloat).substring(1) + " " + data.quoteSymbol);
+    $(".marketDetailsQuoteFeesAccrued").text(marketCurrencySymbol + formatter.format(data.quoteFeesAccruedFloat).substring(1) + " " + data.quoteSymbol);
+    $(".marketDetailsBaseLotSize").text(data.baseLotSize);
+    $(".marketDetailsQuoteLotSize").text(data.quoteLotSize);
+    $(".marketDetailsBaseDecimals").text(data.baseDecimals);
+    $(".marketDetailsQuoteDecimals").text(data.quoteDecimals);
+    $(".marketDetailsReferrerRebatesAccrued").text(marketCurrencySymbol + formatter.format(data.referrerRebatesAccruedFloat).substring(1) + " " + data.quoteSymbol);
+    $(".marketDetailsQuoteDustThreshold").text(data.quoteDustThreshold);
+    $(".marketDetailsFeeRateBps").text(data.feeRateBps);
+    $(".marketDetailsBaseTokenName").html("<img class=\"baseLogo img-icon\"/>" + data.baseName);
+    $(".marketDetailsQuoteTokenName").html("<img class=\"quoteLogo img-icon\"/>" + data.quoteName);
+    $(".marketDetailsName").html("<img class=\"baseLogo img-icon\"/>" + baseSymbol + " / " + "<img" +
+        " class=\"quoteLogo img-icon\"/>" + quoteSymbol);
+    $(".marketDetailsPermalink").val("https://alpha.openserum.io/" + activeMarketId);
+
+    $(".baseLogo").attr("src", baseLogo);
+    $(".quoteLogo").attr("src", quoteLogo);
 }
 
 function explorerLink(accountId) {
     return "<a target=_blank href=\"https://solana.fm/account/" + accountId + "\">" + accountId + "</a>";
 }
 
+// Pushes updates of the active market, polling is only used while this isn't connected
+function connectMarketStream() {
+    if (marketStream) {
+        marketStream.close();
+        marketStream = null;
+    }
+    if (!activeMarketId || typeof EventSource === 'undefined') {
+        return;
+    }
+
+    marketStream = new EventSource("/api/serum/market/" + activeMarketId + "/stream");
+    MARKET_STREAM_EVENTS.forEach(function (event) {
+        marketStream.addEventListener(event, function (message) {
+            if (marketStreamHandlers[event]) {
+                marketStreamHandlers[event](JSON.parse(message.data));
+            }
+        });
+    });
+}
+
+function isMarketStreamOpen() {
+    return marketStream != null && marketStream.readyState === EventSource.OPEN;
+}
+
 function updateDepthChart() {
-    if (activeMarketId) {
+    if (activeMarketId && !isMarketStreamOpen()) {
         let apiUrl = "/api/serum/market/" + activeMarketId + "/depth";
-        // bids + asks
-        $.get({url: apiUrl, cache: true})
-            .done(function (newData) {
-                bidContextSlot = newData.bidContextSlot;
-                askContextSlot = newData.askContextSlot;
-
-                $(".marketContext").text("Slot: " + bidContextSlot)
-
-                // loop total bids, total each level, total all that
-                totalBids = newData.bids.reduce(
-                    (previousValue, currentValue) => {
-                        return previousValue + (currentValue[0] * currentValue[2]);
-                    },
-                    0
-                );
-
-                var totalBidsString = formatter.format(totalBids);
-                if (marketCurrencySymbol !== '$') {
-                    // trim $ if not a usdc pair, since formatter assumes money
-                    totalBidsString = totalBidsString.substring(1);
-                }
+        // bids + asks, in the packed binary format
+        fetch(apiUrl, {headers: {'Accept': DEPTH_MEDIA_TYPE}})
+            .then(response => response.arrayBuffer())
+            .then(buffer => renderDepthChart(decodeDepth(buffer)));
+    }
+}
 
-                if (newData.asks.length === 0) {
-                    totalAsks = 0;
-                } else {
-                    totalAsks = newData.asks[newData.asks.length - 1][1].toFixed(2);
-                }
+const DEPTH_MEDIA_TYPE = 'application/vnd.openserum.depth';
+
+// Reads the binary /depth layout (see MarketDepthEncoder) into the same shape as its JSON form
+function decodeDepth(buffer) {
+    const view = new DataView(buffer);
+    const bidCount = view.getInt32(24, true);
+    const askCount = view.getInt32(28, true);
+
+    function readLevels(offset, count) {
+        const levels = new Array(count);
+        for (let i = 0; i < count; i++) {
+            levels[i] = [
+                view.getFloat32(offset + i * 4, true),
+                view.getFloat32(offset + (count + i) * 4, true),
+                view.getFloat32(offset + (2 * count + i) * 4, true)
+            ];
+        }
+        return levels;
+    }
 
-                depthChart.series[0].setData(newData.bids);
-                depthChart.series[1].setData(newData.asks);
-                depthChart.xAxis[0].options.plotLines[0].value = newData.midpoint;
-                depthChart.xAxis[0].setExtremes(newData.midpoint - (newData.midpoint / 3), newData.midpoint + (newData.midpoint / 3));
-                depthChart.xAxis[0].update();
-
-                // text for agg totals
-                bidTotal ? bidTotal.destroy() : null;
-                bidTotal = depthChart.renderer.text(totalBidsString + " " + $("#quoteName").text(), 50, 133)
-                    .attr({
-                        zIndex: 5
-                    })
-                    .css({
-                        fontSize: '12px',
-                        color: '#00ff08'
-                    })
-                    .add();
-
-                var totalAsksString = formatter.format(totalAsks).substring(1);
-
-                askTotal ? askTotal.destroy() : null;
-                var xAskTotal = $("#container").width() * 0.75;
-                askTotal = depthChart.renderer.text(totalAsksString + " " + $("#baseName").text(), xAskTotal, 133)
-                    .attr({
-                        zIndex: 5
-                    })
-                    .css({
-                        fontSize: '12px',
-                        color: '#ff0000'
-                    })
-                    .add();
-
-                depthChart.redraw();
-                depthChart.hideLoading();
-
-                // update ticker spans
-                $(".livePrice").text(marketCurrencySymbol + newData.midpoint.toFixed(3) + " ");
-
-                // update price chart with a midpoint tick, if it has changed.
-                if (parseFloat(myChart.data.datasets[0].data[myChart.data.labels.length - 1]).toFixed(8) !== parseFloat(newData.midpoint).toFixed(8)) {
-                    // only update it if the midpoint changes
-
-                    if (activeMarketId !== lastLoadedChartId) {
-                        return;
-                    }
+    return {
+        midpoint: view.getFloat32(4, true),
+        bidContextSlot: Number(view.getBigInt64(8, true)),
+        askContextSlot: Number(view.getBigInt64(16, true)),
+        bids: readLevels(32, bidCount),
+        asks: readLevels(32 + bidCount * 12, askCount)
+    };
+}
 
-                    if (totalBids === 0) {
-                        return;
-                    }
+function renderDepthChart(newData) {
+    bidContextSlot = newData.bidContextSlot;
+    askContextSlot = newData.askContextSlot;
 
-                    addData(parseInt(myChart.data.labels[myChart.data.labels.length - 1]) + 1, newData.midpoint, true);
+    $(".marketContext").text("Slot: " + bidContextSlot)
 
-                    // if over 1000 data points, start popping from the front
-                    if (myChart.data.labels.length >= 100) {
-                        myChart.data.datasets[0].data.shift();
-                        myChart.data.labels.shift();
-                        myChart.update();
-                    }
+    // loop total bids, total each level, total all that
+    totalBids = newData.bids.reduce(
+        (previousValue, currentValue) => {
+            return previousValue + (currentValue[0] * currentValue[2]);
+        },
+        0
+    );
 
-                }
+    var totalBidsString = formatter.format(totalBids);
+    if (marketCurrencySymbol !== '$') {
+        // trim $ if not a usdc pair, since formatter assumes money
+        totalBidsString = totalBidsString.substring(1);
+    }
 
-                // paint midpoint once if no other data exists
-                if (isNaN(myChart.data.labels[0])) {
-                    myChart.data.labels.pop();
-                    myChart.data.datasets[0].data.pop();
-                    addData(0, newData.midpoint, true);
-                    addData(1, newData.midpoint, true); // 2 entries to draw a straight line
-                }
+    if (newData.asks.length === 0) {
+        totalAsks = 0;
+    } else {
+        totalAsks = newData.asks[newData.asks.length - 1][1].toFixed(2);
+    }
+
+    depthChart.series[0].setData(newData.bids);
+    depthChart.series[1].setData(newData.asks);
+    depthChart.xAxis[0].options.plotLines[0].value = newData.midpoint;
+    depthChart.xAxis[0].setExtremes(newData.midpoint - (newData.midpoint / 3), newData.midpoint + (newData.midpoint / 3));
+    depthChart.xAxis[0].update();
+
+    // text for agg totals
+    bidTotal ? bidTotal.destroy() : null;
+    bidTotal = depthChart.renderer.text(totalBidsString + " " + $("#quoteName").text(), 50, 133)
+        .attr({
+            zIndex: 5
+        })
+        .css({
+            fontSize: '12px',
+            color: '#00ff08'
+        })
+        .add();
+
+    var totalAsksString = formatter.format(totalAsks).substring(1);
+
+    askTotal ? askTotal.destroy() : null;
+    var xAskTotal = $("#container").width() * 0.75;
+    askTotal = depthChart.renderer.text(totalAsksString + " " + $("#baseName").text(), xAskTotal, 133)
+        .attr({
+            zIndex: 5
+        })
+        .css({
+            fontSize: '12px',
+            color: '#ff0000'
+        })
+        .add();
+
+    depthChart.redraw();
+    depthChart.hideLoading();
+
+    // update ticker spans
+    $(".livePrice").text(marketCurrencySymbol + newData.midpoint.toFixed(3) + " ");
+
+    // update price chart with a midpoint tick, if it has changed.
+    if (parseFloat(myChart.data.datasets[0].data[myChart.data.labels.length - 1]).toFixed(8) !== parseFloat(newData.midpoint).toFixed(8)) {
+        // only update it if the midpoint changes
+
+        if (activeMarketId !== lastLoadedChartId) {
+            return;
+        }
+
+        if (totalBids === 0) {
+            return;
+        }
+
+        addData(parseInt(myChart.data.labels[myChart.data.labels.length - 1]) + 1, newData.midpoint, true);
+
+        // if over 1000 data points, start popping from the front
+        if (myChart.data.labels.length >= 100) {
+            myChart.data.datasets[0].data.shift();
+            myChart.data.labels.shift();
+            myChart.update();
+        }
 
-                $(document).attr("title",
-                    marketCurrencySymbol + newData.midpoint.toFixed(3) + ' ' + chartTitle.replace(/\s/g, '') + ' -' +
-                    ' openbook-dex Market Data - OpenSerum'
-                );
-            });
     }
+
+    // paint midpoint once if no other data exists
+    if (isNaN(myChart.data.labels[0])) {
+        myChart.data.labels.pop();
+        myChart.data.datasets[0].data.pop();
+        addData(0, newData.midpoint, true);
+        addData(1, newData.midpoint, true); // 2 entries to draw a straight line
+    }
+
+    $(document).attr("title",
+        marketCurrencySymbol + newData.midpoint.toFixed(3) + ' ' + chartTitle.replace(/\s/g, '') + ' -' +
+        ' openbook-dex Market Data - OpenSerum'
+    );
 }
\ No newline at end of file
@@ -59,7 +59,6 @@
             // todo - async?
             loadMarkets(defaultTokenId);
             setMarket(initialMarketId);
-            updateDepthChart();
         });
     </script>
     <!-- Global site tag (gtag.js) - Google Analytics -->
@@ -489,11 +488,7 @@
             var bidTable = $('#bidsTable').DataTable({
                 paging: false,
                 info: false,
-                ajax: {
-                    url: '/api/serum/market/' + activeMarketId + '/bids',
-                    cache: true,
-                    dataSrc: ''
-                },
+                data: [],
                 columns: [
                     {
                         data: 'owner',
@@ -564,11 +559,7 @@
             var askTable = $('#asksTable').DataTable({
                 paging: false,
                 info: false,
-                ajax: {
-                    url: '/api/serum/market/' + activeMarketId + '/asks',
-                    cache: true,
-                    dataSrc: ''
-                },
+                data: [],
                 columns: [
                     {
                         data: 'price',
@@ -641,11 +632,7 @@
                 searching: false,
                 paging: false,
                 info: false,
-                ajax: {
-                    url: '/api/serum/market/' + activeMarketId + '/tradeHistory',
-                    cache: true,
-                    dataSrc: ''
-                },
+                data: [],
                 columns: [
                     {
                         data: 'price',
@@ -756,17 +743,32 @@
                 }
             });
 
+            // Filled by the market snapshot, then pushed by the market stream, see setMarket
+            marketStreamHandlers.bids = function (data) {
+                bidTable.clear().rows.add(data).draw();
+            };
+            marketStreamHandlers.asks = function (data) {
+                askTable.clear().rows.add(data).draw();
+            };
+            marketStreamHandlers.tradeHistory = function (data) {
+                tradeHistoryTable.clear().rows.add(data).draw();
+            };
+
+            // Polling fallback, while the stream isn't connected
             setInterval(function () {
-                bidTable.ajax.url('/api/serum/market/' + activeMarketId + '/bids');
-                bidTable.ajax.reload();
+                if (!isMarketStreamOpen()) {
+                    $.get('/api/serum/market/' + activeMarketId + '/bids').done(marketStreamHandlers.bids);
+                }
             }, 400);
             setInterval(function () {
-                askTable.ajax.url('/api/serum/market/' + activeMarketId + '/asks');
-                askTable.ajax.reload();
+                if (!isMarketStreamOpen()) {
+                    $.get('/api/serum/market/' + activeMarketId + '/asks').done(marketStreamHandlers.asks);
+                }
             }, 400);
             setInterval(function () {
-                tradeHistoryTable.ajax.url('/api/serum/market/' + activeMarketId + '/tradeHistory');
-                tradeHistoryTable.ajax.reload();
+                if (!isMarketStreamOpen()) {
+                    $.get('/api/serum/market/' + activeMarketId + '/tradeHistory').done(marketStreamHandlers.tradeHistory);
+                }
             }, 2500);
         }
     );
@@ -86,11 +86,17 @@
                             <tbody>
                             <tr th:each="market : ${marketListings}">
                                 <td>
-                                    <img loading="lazy" width="20" height="20"
-                                         th:src="${marketRankManager.getImage(market.baseMint)}"
+                                    <span th:if="${tokenSprite.contains(market.baseMint)}" class="token-sprite"
+                                          th:style="${tokenSprite.getStyle(market.baseMint, 20)}"></span>
+                                    <img th:unless="${tokenSprite.contains(market.baseMint)}" loading="lazy"
+                                         width="20" height="20"
+                                         th:src="${marketRankManager.getImage(market.baseMint, 20)}"
                                          style="border-radius: 5px;">
-                                    <img loading="lazy" width="20" height="20"
-                                         th:src="${marketRankManager.getImage(market.quoteMint)}"
+                                    <span th:if="${tokenSprite.contains(market.quoteMint)}" class="token-sprite"
+                                          th:style="${tokenSprite.getStyle(market.quoteMint, 20)}"></span>
+                                    <img th:unless="${tokenSprite.contains(market.quoteMint)}" loading="lazy"
+                                         width="20" height="20"
+                                         th:src="${marketRankManager.getImage(market.quoteMint, 20)}"
                                          style="border-radius: 5px;">
                                     <span th:text="${marketRankManager.getMarketListingName(market)}"></span>
                                 </td>
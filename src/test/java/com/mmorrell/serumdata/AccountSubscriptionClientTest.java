@@ -0,0 +1,191 @@
+package com.mmorrell.serumdata;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmorrell.serumdata.client.AccountSubscriptionClient;
+import okhttp3.OkHttpClient;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Replays recorded accountNotification messages from a local stub websocket server.
+ */
+public class AccountSubscriptionClientTest {
+
+    private static final PublicKey TEST_ACCOUNT = PublicKey.valueOf("8BnEgHoWFysVcuFFX7QztDmzuH8r5ZFvyP3sYwn1XTh6");
+    private static final long RECORDED_SUBSCRIPTION_ID = 1001;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> subscribeRequests = new CopyOnWriteArrayList<>();
+    private List<String> recordedNotifications;
+    private StubServer stubServer;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        recordedNotifications = new ArrayList<>();
+        try (InputStream inputStream = getClass().getResourceAsStream("/account_notifications.json")) {
+            for (JsonNode notification : objectMapper.readTree(inputStream)) {
+                recordedNotifications.add(objectMapper.writeValueAsString(notification));
+            }
+        }
+
+        stubServer = new StubServer();
+        stubServer.start();
+        assertTrue(stubServer.started.await(5, TimeUnit.SECONDS));
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        stubServer.stop(1000);
+    }
+
+    @Test
+    public void replaysRecordedNotificationsTest() throws Exception {
+        CountDownLatch notifications = new CountDownLatch(recordedNotifications.size());
+        List<Long> slots = new CopyOnWriteArrayList<>();
+        List<byte[]> payloads = new CopyOnWriteArrayList<>();
+        CountDownLatch subscribed = new CountDownLatch(1);
+
+        AccountSubscriptionClient client = newClient(new TestListener() {
+            @Override
+            public void onAccountNotification(PublicKey account, byte[] data, long slot) {
+                assertEquals(TEST_ACCOUNT, account);
+                slots.add(slot);
+                payloads.add(data);
+                notifications.countDown();
+            }
+
+            @Override
+            public void onSubscribed(PublicKey account) {
+                subscribed.countDown();
+            }
+        });
+
+        client.connect();
+        client.accountSubscribe(TEST_ACCOUNT);
+
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+        assertTrue(notifications.await(5, TimeUnit.SECONDS));
+        assertTrue(client.isSubscribed(TEST_ACCOUNT));
+        assertEquals(List.of(187654321L, 187654325L), slots);
+        assertEquals("serum", new String(Arrays.copyOfRange(payloads.get(0), 0, 5)));
+
+        // Subscribe request is sent once, with base64 encoding
+        client.accountSubscribe(TEST_ACCOUNT);
+        JsonNode request = objectMapper.readTree(subscribeRequests.get(0));
+        assertEquals(1, subscribeRequests.size());
+        assertEquals("accountSubscribe", request.get("method").asText());
+        assertEquals(TEST_ACCOUNT.toBase58(), request.get("params").get(0).asText());
+        assertEquals("base64", request.get("params").get(1).get("encoding").asText());
+
+        client.close();
+    }
+
+    @Test
+    public void disconnectDropsSubscriptionsTest() throws Exception {
+        CountDownLatch subscribed = new CountDownLatch(1);
+        CountDownLatch disconnected = new CountDownLatch(1);
+
+        AccountSubscriptionClient client = newClient(new TestListener() {
+            @Override
+            public void onSubscribed(PublicKey account) {
+                subscribed.countDown();
+            }
+
+            @Override
+            public void onDisconnected() {
+                disconnected.countDown();
+            }
+        });
+
+        client.connect();
+        client.accountSubscribe(TEST_ACCOUNT);
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+
+        stubServer.getConnections().forEach(WebSocket::close);
+
+        assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+        assertFalse(client.isSubscribed(TEST_ACCOUNT));
+    }
+
+    private AccountSubscriptionClient newClient(AccountSubscriptionClient.Listener listener) {
+        return new AccountSubscriptionClient(
+                new OkHttpClient(),
+                objectMapper,
+                "ws://localhost:" + stubServer.getPort(),
+                listener
+        );
+    }
+
+    private abstract static class TestListener implements AccountSubscriptionClient.Listener {
+        @Override
+        public void onAccountNotification(PublicKey account, byte[] data, long slot) {
+        }
+
+        @Override
+        public void onSubscribed(PublicKey account) {
+        }
+
+        @Override
+        public void onDisconnected() {
+        }
+    }
+
+    private class StubServer extends WebSocketServer {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        StubServer() {
+            super(new InetSocketAddress("localhost", 0));
+            setReuseAddr(true);
+        }
+
+        @Override
+        public void onMessage(WebSocket conn, String message) {
+            subscribeRequests.add(message);
+            try {
+                long id = objectMapper.readTree(message).get("id").asLong();
+                conn.send(objectMapper.writeValueAsString(Map.of(
+                        "jsonrpc", "2.0",
+                        "result", RECORDED_SUBSCRIPTION_ID,
+                        "id", id
+                )));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            recordedNotifications.forEach(conn::send);
+        }
+
+        @Override
+        public void onStart() {
+            started.countDown();
+        }
+
+        @Override
+        public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        }
+
+        @Override
+        public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        }
+
+        @Override
+        public void onError(WebSocket conn, Exception ex) {
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.manager.BatchRefreshManager;
+import com.mmorrell.serumdata.model.AccountBatch;
+import com.mmorrell.serumdata.util.RpcUtil;
+import org.junit.jupiter.api.Test;
+import org.p2p.solanaj.core.PublicKey;
+import org.p2p.solanaj.rpc.RpcClient;
+import org.p2p.solanaj.rpc.RpcException;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchRefreshTest {
+
+    private static final long FIRST_SLOT = 187654321L;
+
+    @Test
+    public void getMultipleAccountsTest() throws RpcException {
+        StubRpcClient client = new StubRpcClient();
+        PublicKey present = randomKey(new Random(1));
+        PublicKey missing = randomKey(new Random(2));
+        client.missing.add(missing);
+
+        AccountBatch batch = RpcUtil.getMultipleAccounts(client, List.of(present, missing), 42L);
+
+        // Context slot kept, missing accounts left out
+        assertEquals(FIRST_SLOT, batch.getSlot());
+        assertEquals(Set.of(present), batch.getAccounts().keySet());
+        assertArrayEquals(present.toByteArray(), batch.getAccounts().get(present));
+
+        Map<?, ?> config = (Map<?, ?>) client.calls.get(0).get(1);
+        assertEquals(List.of(present.toBase58(), missing.toBase58()), client.calls.get(0).get(0));
+        assertEquals("base64", config.get("encoding"));
+        assertEquals(42L, config.get("minContextSlot"));
+    }
+
+    @Test
+    public void packsMarketsIntoBatchesTest() {
+        StubRpcClient client = new StubRpcClient();
+        Random random = new Random(3);
+        List<Market> markets = new ArrayList<>();
+        for (int i = 0; i < 2 * BatchRefreshManager.MAX_MARKETS_PER_BATCH + 4; i++) {
+            Market market = new Market();
+            market.setOwnAddress(randomKey(random));
+            market.setBids(randomKey(random));
+            market.setAsks(randomKey(random));
+            market.setEventQueueKey(randomKey(random));
+            markets.add(market);
+        }
+
+        Map<PublicKey, AccountBatch> fetched = new LinkedHashMap<>();
+        AtomicLong lastContextSlot = new AtomicLong();
+        BatchRefreshManager.fetchMarketAccounts(client, markets, lastContextSlot,
+                (market, batch) -> assertNull(fetched.put(market.getOwnAddress(), batch)));
+
+        // 33 + 33 + 4 markets, 3 accounts each
+        assertEquals(3, client.calls.size());
+        assertEquals(99, ((List<?>) client.calls.get(0).get(0)).size());
+        assertEquals(99, ((List<?>) client.calls.get(1).get(0)).size());
+        assertEquals(12, ((List<?>) client.calls.get(2).get(0)).size());
+
+        // Each call asks for at least the slot of the previous one
+        assertEquals(0L, ((Map<?, ?>) client.calls.get(0).get(1)).get("minContextSlot"));
+        assertEquals(FIRST_SLOT, ((Map<?, ?>) client.calls.get(1).get(1)).get("minContextSlot"));
+        assertEquals(FIRST_SLOT + 1, ((Map<?, ?>) client.calls.get(2).get(1)).get("minContextSlot"));
+        assertEquals(FIRST_SLOT + 2, lastContextSlot.get());
+
+        // Every market gets the batch holding its own bids, asks and event queue
+        assertEquals(markets.size(), fetched.size());
+        for (int i = 0; i < markets.size(); i++) {
+            Market market = markets.get(i);
+            AccountBatch batch = fetched.get(market.getOwnAddress());
+            assertEquals(FIRST_SLOT + i / BatchRefreshManager.MAX_MARKETS_PER_BATCH, batch.getSlot());
+            assertArrayEquals(market.getBids().toByteArray(), batch.getAccounts().get(market.getBids()));
+            assertArrayEquals(market.getAsks().toByteArray(), batch.getAccounts().get(market.getAsks()));
+            assertArrayEquals(market.getEventQueueKey().toByteArray(),
+                    batch.getAccounts().get(market.getEventQueueKey()));
+        }
+    }
+
+    @Test
+    public void failedBatchSkipsItsMarketsTest() {
+        StubRpcClient client = new StubRpcClient();
+        client.failingCall = 0;
+        Random random = new Random(4);
+        List<Market> markets = new ArrayList<>();
+        for (int i = 0; i < BatchRefreshManager.MAX_MARKETS_PER_BATCH + 1; i++) {
+            Market market = new Market();
+            market.setOwnAddress(randomKey(random));
+            market.setBids(randomKey(random));
+            market.setAsks(randomKey(random));
+            market.setEventQueueKey(randomKey(random));
+            markets.add(market);
+        }
+
+        List<Market> fetched = new ArrayList<>();
+        BatchRefreshManager.fetchMarketAccounts(client, markets, new AtomicLong(),
+                (market, batch) -> fetched.add(market));
+
+        // The first call failed, the second still ran
+        assertEquals(2, client.calls.size());
+        assertEquals(List.of(markets.get(markets.size() - 1)), fetched);
+    }
+
+    private static PublicKey randomKey(Random random) {
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        return new PublicKey(key);
+    }
+
+    // getMultipleAccounts node answering each account with its own key as data, one slot later each call
+    private static class StubRpcClient extends RpcClient {
+        private final List<List<Object>> calls = new ArrayList<>();
+        private final Set<PublicKey> missing = new HashSet<>();
+        private int failingCall = -1;
+
+        private StubRpcClient() {
+            super("http://127.0.0.1:1");
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T call(String method, List<Object> params, Class<T> clazz) throws RpcException {
+            assertEquals("getMultipleAccounts", method);
+            final int call = calls.size();
+            calls.add(params);
+            if (call == failingCall) {
+                throw new RpcException("Minimum context slot has not been reached");
+            }
+
+            List<Map<String, Object>> values = new ArrayList<>();
+            for (String account : (List<String>) params.get(0)) {
+                PublicKey key = new PublicKey(account);
+                values.add(missing.contains(key) ? null : Map.of(
+                        "data", List.of(Base64.getEncoder().encodeToString(key.toByteArray()), "base64")
+                ));
+            }
+            Map<String, Object> result = new HashMap<>();
+            result.put("context", Map.of("slot", FIRST_SLOT + call));
+            result.put("value", values);
+            return (T) result;
+        }
+    }
+}
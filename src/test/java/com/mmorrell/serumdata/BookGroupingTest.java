@@ -0,0 +1,85 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.model.BookGrouping;
+import com.mmorrell.serumdata.model.BookLevels;
+import com.mmorrell.serumdata.model.OrderBookSide;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BookGroupingTest {
+
+    // 1 price lot = 0.01
+    private static final float PRICE_PER_LOT = 0.01f;
+
+    @Test
+    public void levelsTest() {
+        OrderBookSide bids = side(true, new long[]{1005, 1005, 1004, 1001, 990}, new long[]{1, 2, 3, 4, 5});
+
+        BookLevels levels = BookLevels.group(bids, 1, 2);
+        assertEquals(2, levels.size());
+        assertEquals(1005, levels.getPriceLots(0));
+        assertEquals(3, levels.getQuantityLots(0));
+        assertEquals(1004, levels.getPriceLots(1));
+        assertEquals(3f, levels.getQuantity(1));
+    }
+
+    @Test
+    public void tickTest() {
+        OrderBookSide bids = side(true, new long[]{1009, 1005, 999, 990, 985}, new long[]{1, 2, 3, 4, 5});
+        OrderBookSide asks = side(false, new long[]{1011, 1015, 1020, 1021}, new long[]{1, 2, 3, 4});
+
+        // 0.10 buckets: bids round down, asks up
+        BookLevels bidLevels = BookGrouping.of(null, 0.1, null).orElseThrow().apply(bids, 10.1f);
+        assertEquals(3, bidLevels.size());
+        assertArrayEquals(new long[]{1000, 990, 980}, priceLots(bidLevels));
+        assertArrayEquals(new long[]{3, 7, 5}, quantityLots(bidLevels));
+        assertEquals(10.0f, bidLevels.getPrice(0), 1e-5);
+
+        BookLevels askLevels = BookGrouping.of(2, 0.1, null).orElseThrow().apply(asks, 10.1f);
+        assertArrayEquals(new long[]{1020, 1030}, priceLots(askLevels));
+        assertArrayEquals(new long[]{6, 4}, quantityLots(askLevels));
+    }
+
+    @Test
+    public void bpsTest() {
+        OrderBookSide asks = side(false, new long[]{1000, 1004, 1006, 1012}, new long[]{1, 1, 1, 1});
+
+        // 50 bps of a 10.00 midpoint is 5 lots
+        BookGrouping grouping = BookGrouping.of(null, null, 50.0).orElseThrow();
+        assertEquals(5, grouping.getTickLots(asks, 10f));
+        assertArrayEquals(new long[]{1000, 1005, 1010, 1015}, priceLots(grouping.apply(asks, 10f)));
+
+        // A tick wins over bps, unusable values are ignored
+        assertEquals(10, BookGrouping.of(null, 0.1, 50.0).orElseThrow().getTickLots(asks, 10f));
+        assertTrue(BookGrouping.of(0, -1.0, null).isEmpty());
+        assertEquals(1, BookGrouping.of(5, null, null).orElseThrow().getTickLots(asks, 10f));
+    }
+
+    private static OrderBookSide side(boolean isBid, long[] priceLots, long[] quantityLots) {
+        float[] prices = new float[priceLots.length];
+        float[] quantities = new float[priceLots.length];
+        for (int i = 0; i < priceLots.length; i++) {
+            prices[i] = priceLots[i] * PRICE_PER_LOT;
+            quantities[i] = quantityLots[i];
+        }
+        return new OrderBookSide(isBid, priceLots.length, priceLots, quantityLots, prices, quantities,
+                new byte[priceLots.length * OrderBookSide.OWNER_LENGTH]);
+    }
+
+    private static long[] priceLots(BookLevels levels) {
+        long[] result = new long[levels.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = levels.getPriceLots(i);
+        }
+        return result;
+    }
+
+    private static long[] quantityLots(BookLevels levels) {
+        long[] result = new long[levels.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = levels.getQuantityLots(i);
+        }
+        return result;
+    }
+}
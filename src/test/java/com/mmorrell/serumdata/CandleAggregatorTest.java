@@ -0,0 +1,133 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.model.Candle;
+import com.mmorrell.serumdata.model.CandleResolution;
+import com.mmorrell.serumdata.util.CandleAggregator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CandleAggregatorTest {
+
+    private static final long START = 1_700_000_000_000L - 1_700_000_000_000L % 86_400_000L;
+
+    @Test
+    public void ohlcvTest() {
+        CandleAggregator aggregator = new CandleAggregator();
+        aggregator.addTrade(START + 100, 10, 1);
+        aggregator.addTrade(START + 200, 12, 3);
+        aggregator.addTrade(START + 300, 9, 1);
+        aggregator.addTrade(START + 900, 11, 5);
+
+        List<Candle> candles = aggregator.getCandles(CandleResolution.ONE_SECOND, 0, Long.MAX_VALUE);
+        assertEquals(1, candles.size());
+        Candle candle = candles.get(0);
+        assertEquals(START, candle.getTime());
+        assertEquals(10, candle.getOpen());
+        assertEquals(12, candle.getHigh());
+        assertEquals(9, candle.getLow());
+        assertEquals(11, candle.getClose());
+        assertEquals(10, candle.getVolume());
+        assertEquals((10 + 36 + 9 + 55) / 10.0, candle.getVwap(), 1e-9);
+        assertEquals(4, candle.getTrades());
+    }
+
+    @Test
+    public void rollupMatchesDirectAggregationTest() {
+        CandleAggregator aggregator = new CandleAggregator();
+        Random random = new Random(7);
+        long[] times = new long[5_000];
+        double[] prices = new double[times.length];
+        double[] quantities = new double[times.length];
+        long time = START;
+        for (int i = 0; i < times.length; i++) {
+            time += random.nextInt(120_000);
+            times[i] = time;
+            prices[i] = 100 + random.nextGaussian();
+            quantities[i] = 1 + random.nextInt(10);
+            aggregator.addTrade(times[i], prices[i], quantities[i]);
+        }
+
+        for (CandleResolution resolution : CandleResolution.values()) {
+            // Only the ring's span is kept for finer resolutions
+            long from = Math.max(START, bucket(time, resolution) -
+                    (long) (resolution.getCapacity() - 1) * resolution.getIntervalMs());
+            List<Candle> candles = aggregator.getCandles(resolution, from, Long.MAX_VALUE);
+
+            int trade = 0;
+            while (times[trade] < from) {
+                trade++;
+            }
+            for (Candle candle : candles) {
+                long bucket = bucket(times[trade], resolution);
+                assertEquals(bucket, candle.getTime(), resolution.getLabel());
+                assertEquals(prices[trade], candle.getOpen(), 1e-9);
+
+                double high = Double.MIN_VALUE;
+                double volume = 0;
+                int count = 0;
+                while (trade < times.length && bucket(times[trade], resolution) == bucket) {
+                    high = Math.max(high, prices[trade]);
+                    volume += quantities[trade];
+                    count++;
+                    trade++;
+                }
+                assertEquals(high, candle.getHigh(), 1e-9);
+                assertEquals(prices[trade - 1], candle.getClose(), 1e-9);
+                assertEquals(volume, candle.getVolume(), 1e-6);
+                assertEquals(count, candle.getTrades(), resolution.getLabel());
+            }
+            assertEquals(times.length, trade, resolution.getLabel());
+        }
+    }
+
+    @Test
+    public void summaryTest() {
+        CandleAggregator aggregator = new CandleAggregator();
+        Random random = new Random(11);
+        long time = START;
+        for (int i = 0; i < 2_000; i++) {
+            time += random.nextInt(120_000);
+            aggregator.addTrade(time, 100 + random.nextGaussian(), 1 + random.nextInt(10));
+        }
+
+        // Same as folding the candles of the window
+        long from = bucket(time, CandleResolution.FIVE_MINUTES) - 86_400_000L;
+        List<Candle> candles = aggregator.getCandles(CandleResolution.FIVE_MINUTES, from, Long.MAX_VALUE);
+        Candle summary = aggregator.getSummary(CandleResolution.FIVE_MINUTES, from).orElseThrow();
+        assertEquals(candles.get(0).getTime(), summary.getTime());
+        assertEquals(candles.get(0).getOpen(), summary.getOpen());
+        assertEquals(candles.get(candles.size() - 1).getClose(), summary.getClose());
+        assertEquals(candles.stream().mapToDouble(Candle::getHigh).max().orElseThrow(), summary.getHigh());
+        assertEquals(candles.stream().mapToDouble(Candle::getLow).min().orElseThrow(), summary.getLow());
+        assertEquals(candles.stream().mapToDouble(Candle::getVolume).sum(), summary.getVolume(), 1e-6);
+        assertEquals(candles.stream().mapToInt(Candle::getTrades).sum(), summary.getTrades());
+
+        assertTrue(aggregator.getSummary(CandleResolution.FIVE_MINUTES, time + 300_000).isEmpty());
+    }
+
+    @Test
+    public void rangeTest() {
+        CandleAggregator aggregator = new CandleAggregator();
+        for (int minute = 0; minute < 10; minute++) {
+            aggregator.addTrade(START + minute * 60_000L, minute, 1);
+        }
+
+        List<Candle> candles = aggregator.getCandles(CandleResolution.ONE_MINUTE, START + 120_000, START + 300_000);
+        assertEquals(List.of(2.0, 3.0, 4.0), candles.stream().map(Candle::getClose).toList());
+
+        List<Candle> fiveMinutes = aggregator.getCandles(CandleResolution.FIVE_MINUTES, 0, Long.MAX_VALUE);
+        assertEquals(2, fiveMinutes.size());
+        assertEquals(5, fiveMinutes.get(1).getTrades());
+        assertEquals(9, fiveMinutes.get(1).getClose());
+
+        assertTrue(aggregator.getCandles(CandleResolution.ONE_DAY, START + 1, Long.MAX_VALUE).isEmpty());
+    }
+
+    private static long bucket(long time, CandleResolution resolution) {
+        return time - Math.floorMod(time, resolution.getIntervalMs());
+    }
+}
@@ -0,0 +1,52 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.model.MarketDepth;
+import com.mmorrell.serumdata.util.MarketDepthEncoder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MarketDepthEncoderTest {
+
+    @Test
+    public void layoutTest() {
+        MarketDepth marketDepth = MarketDepth.builder()
+                .bids(new float[][]{{9.5f, 3f, 1f}, {9.9f, 2f, 2f}})
+                .asks(new float[][]{{10.1f, 4f, 4f}})
+                .midpoint(10f)
+                .bidContextSlot(150_000_000_000L)
+                .askContextSlot(150_000_000_001L)
+                .build();
+
+        ByteBuffer buffer = ByteBuffer.wrap(MarketDepthEncoder.encode(marketDepth)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(32 + 3 * 3 * Float.BYTES, buffer.remaining());
+        assertEquals(MarketDepthEncoder.FORMAT_VERSION, buffer.getInt());
+        assertEquals(10f, buffer.getFloat());
+        assertEquals(150_000_000_000L, buffer.getLong());
+        assertEquals(150_000_000_001L, buffer.getLong());
+        assertEquals(2, buffer.getInt());
+        assertEquals(1, buffer.getInt());
+
+        // Columns: prices, cumulative, quantities
+        float[] bids = new float[6];
+        buffer.asFloatBuffer().get(bids);
+        assertArrayEquals(new float[]{9.5f, 9.9f, 3f, 2f, 1f, 2f}, bids);
+        buffer.position(buffer.position() + bids.length * Float.BYTES);
+        assertEquals(10.1f, buffer.getFloat());
+        assertEquals(4f, buffer.getFloat());
+        assertEquals(4f, buffer.getFloat());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void emptyTest() {
+        ByteBuffer buffer = ByteBuffer.wrap(MarketDepthEncoder.encode(MarketDepth.builder().build()))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(32, buffer.remaining());
+        assertEquals(0, buffer.getInt(24));
+        assertEquals(0, buffer.getInt(28));
+    }
+}
@@ -0,0 +1,159 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.model.MarketRegistry;
+import org.junit.jupiter.api.Test;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MarketRegistryTest {
+
+    private static final int MARKET_COUNT = 60;
+    private static final int MINT_COUNT = 8;
+    private static final List<PublicKey> MINTS = new ArrayList<>();
+    private static final List<PublicKey> MARKET_IDS = new ArrayList<>();
+
+    static {
+        Random random = new Random(11);
+        for (int i = 0; i < MINT_COUNT; i++) {
+            MINTS.add(randomKey(random));
+        }
+        for (int i = 0; i < MARKET_COUNT; i++) {
+            MARKET_IDS.add(randomKey(random));
+        }
+    }
+
+    @Test
+    public void indexesTest() {
+        MarketRegistry registry = MarketRegistry.of(generation(0));
+
+        assertEquals(MARKET_COUNT, registry.getMarkets().size());
+        for (Market market : registry.getMarkets()) {
+            assertSame(market, registry.getMarket(market.getOwnAddress()).orElseThrow());
+            assertTrue(registry.getMarketsByBaseMint(market.getBaseMint()).contains(market));
+            assertTrue(registry.getMarketsByQuoteMint(market.getQuoteMint()).contains(market));
+            assertTrue(registry.getMarketsByTokenMint(market.getBaseMint()).contains(market));
+            assertTrue(registry.getMarketsByTokenMint(market.getQuoteMint()).contains(market));
+            assertTrue(registry.getMarketsByPair(market.getBaseMint(), market.getQuoteMint()).contains(market));
+        }
+
+        // Same list instance on every read, nothing copied
+        PublicKey mint = MINTS.get(0);
+        assertSame(registry.getMarketsByTokenMint(mint), registry.getMarketsByTokenMint(mint));
+        assertTrue(registry.getMarketsByBaseMint(randomKey(new Random(1))).isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> registry.getMarkets().clear());
+    }
+
+    @Test
+    public void withMarketsKeepsMissingMarketsTest() {
+        MarketRegistry registry = MarketRegistry.of(generation(0));
+        List<Market> partialReload = generation(1).subList(0, 10);
+
+        MarketRegistry next = registry.withMarkets(partialReload);
+
+        assertEquals(1, next.getGeneration());
+        assertEquals(MARKET_COUNT, next.getMarkets().size());
+        assertEquals(1, next.getMarket(MARKET_IDS.get(0)).orElseThrow().getBaseDepositsTotal());
+        assertEquals(0, next.getMarket(MARKET_IDS.get(20)).orElseThrow().getBaseDepositsTotal());
+        // Previous generation untouched
+        assertEquals(0, registry.getMarket(MARKET_IDS.get(0)).orElseThrow().getBaseDepositsTotal());
+    }
+
+    /**
+     * One writer publishes fully replaced generations while readers walk every index. Each market is stamped
+     * with its generation, so a reader seeing a market from another generation than the registry it read
+     * would be a torn read.
+     */
+    @Test
+    public void noTornReadsDuringRefreshTest() throws Exception {
+        final AtomicReference<MarketRegistry> published = new AtomicReference<>(MarketRegistry.of(generation(0)));
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong reads = new AtomicLong();
+        final int readerCount = 4;
+        final ExecutorService executor = Executors.newFixedThreadPool(readerCount + 1);
+
+        List<Future<?>> readers = new ArrayList<>();
+        for (int i = 0; i < readerCount; i++) {
+            readers.add(executor.submit(() -> {
+                while (running.get()) {
+                    MarketRegistry registry = published.get();
+                    assertConsistent(registry);
+                    reads.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        Future<?> writer = executor.submit(() -> {
+            for (long generation = 1; generation <= 2_000; generation++) {
+                published.set(published.get().withMarkets(generation(generation)));
+            }
+            return null;
+        });
+
+        writer.get(60, TimeUnit.SECONDS);
+        running.set(false);
+        for (Future<?> reader : readers) {
+            reader.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(2_000, published.get().getGeneration());
+        assertTrue(reads.get() > 0);
+    }
+
+    private static void assertConsistent(MarketRegistry registry) {
+        long generation = registry.getGeneration();
+        assertEquals(MARKET_COUNT, registry.getMarkets().size());
+
+        int baseIndexed = 0, quoteIndexed = 0;
+        for (PublicKey mint : MINTS) {
+            for (Market market : registry.getMarketsByBaseMint(mint)) {
+                assertEquals(generation, market.getBaseDepositsTotal());
+                baseIndexed++;
+            }
+            for (Market market : registry.getMarketsByQuoteMint(mint)) {
+                assertEquals(generation, market.getBaseDepositsTotal());
+                quoteIndexed++;
+            }
+            for (Market market : registry.getMarketsByTokenMint(mint)) {
+                assertEquals(generation, market.getBaseDepositsTotal());
+            }
+        }
+        assertEquals(MARKET_COUNT, baseIndexed);
+        assertEquals(MARKET_COUNT, quoteIndexed);
+
+        for (Market market : registry.getMarkets()) {
+            assertEquals(generation, market.getBaseDepositsTotal());
+            assertSame(market, registry.getMarket(market.getOwnAddress()).orElseThrow());
+            assertTrue(registry.getMarketsByPair(market.getBaseMint(), market.getQuoteMint()).contains(market));
+        }
+    }
+
+    // Every market reloaded, stamped with its generation. Mints shift with the generation so indexes change too.
+    private static List<Market> generation(long generation) {
+        List<Market> markets = new ArrayList<>();
+        for (int i = 0; i < MARKET_COUNT; i++) {
+            Market market = new Market();
+            market.setOwnAddress(MARKET_IDS.get(i));
+            market.setBaseMint(MINTS.get((int) ((i + generation) % MINT_COUNT)));
+            market.setQuoteMint(MINTS.get(i % 2));
+            market.setBaseDepositsTotal(generation);
+            markets.add(market);
+        }
+        return markets;
+    }
+
+    private static PublicKey randomKey(Random random) {
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        return new PublicKey(key);
+    }
+}
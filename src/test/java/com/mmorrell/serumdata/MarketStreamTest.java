@@ -0,0 +1,162 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.util.MarketStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MarketStreamTest {
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final AtomicLong clock = new AtomicLong(1_000);
+    private final MarketStream marketStream = new MarketStream(tasks::add, 5_000, clock::get);
+
+    @Test
+    public void fanOutTest() {
+        RecordingSink first = new RecordingSink();
+        RecordingSink second = new RecordingSink();
+        marketStream.subscribe(first);
+        marketStream.subscribe(second);
+
+        byte[] bids = bytes("[1]");
+        assertTrue(marketStream.publish("bids", bids));
+        // Same payload again, nothing to send
+        assertFalse(marketStream.publish("bids", bids));
+        runTasks();
+
+        assertEquals(List.of("bids:[1]"), first.events);
+        assertEquals(List.of("bids:[1]"), second.events);
+
+        // Late subscribers get the latest payloads first
+        RecordingSink late = new RecordingSink();
+        marketStream.publish("asks", bytes("[2]"));
+        marketStream.subscribe(late);
+        runTasks();
+        assertTrue(late.events.containsAll(List.of("bids:[1]", "asks:[2]")));
+        assertEquals(2, late.events.size());
+    }
+
+    @Test
+    public void coalesceTest() {
+        RecordingSink sink = new RecordingSink();
+        marketStream.subscribe(sink);
+
+        // Published faster than the subscriber is sent to, only the newest of each event remains
+        marketStream.publish("bids", bytes("[1]"));
+        marketStream.publish("asks", bytes("[1]"));
+        marketStream.publish("bids", bytes("[2]"));
+        marketStream.publish("bids", bytes("[3]"));
+        assertEquals(1, tasks.size());
+        runTasks();
+
+        assertEquals(List.of("bids:[3]", "asks:[1]"), sink.events);
+    }
+
+    @Test
+    public void slowConsumerTest() {
+        RecordingSink fast = new RecordingSink();
+        marketStream.subscribe(fast);
+        // Each send takes 10s, the book changes meanwhile
+        RecordingSink slow = new RecordingSink() {
+            @Override
+            public void send(String event, byte[] data) throws IOException {
+                super.send(event, data);
+                clock.addAndGet(10_000);
+                marketStream.publish("bids", bytes("[2]"));
+            }
+        };
+        MarketStream.Subscriber slowSubscriber = marketStream.subscribe(slow);
+
+        marketStream.publish("bids", bytes("[1]"));
+        runTasks();
+
+        assertTrue(slowSubscriber.isClosed());
+        assertTrue(slow.closed);
+        assertEquals(List.of("bids:[1]"), slow.events);
+        assertEquals(1, marketStream.getSubscriberCount());
+        assertEquals(List.of("bids:[1]", "bids:[2]"), fast.events);
+    }
+
+    @Test
+    public void sendPoolFullTest() {
+        List<Runnable> accepted = new ArrayList<>();
+        boolean[] full = {true};
+        MarketStream stream = new MarketStream(task -> {
+            if (full[0]) {
+                throw new RejectedExecutionException("Pool full");
+            }
+            accepted.add(task);
+        }, 5_000, clock::get);
+        RecordingSink sink = new RecordingSink();
+        MarketStream.Subscriber subscriber = stream.subscribe(sink);
+
+        // Rejected sends keep the payloads coalesced, and are retried with the next event
+        stream.publish("bids", bytes("[1]"));
+        stream.publish("bids", bytes("[2]"));
+        assertFalse(subscriber.isClosed());
+        full[0] = false;
+        stream.publish("asks", bytes("[1]"));
+        accepted.forEach(Runnable::run);
+        assertEquals(List.of("bids:[2]", "asks:[1]"), sink.events);
+
+        // Still rejected past the slow consumer timeout, dropped
+        full[0] = true;
+        stream.publish("bids", bytes("[3]"));
+        clock.addAndGet(10_000);
+        stream.publish("bids", bytes("[4]"));
+        assertTrue(subscriber.isClosed());
+        assertTrue(sink.closed);
+        assertEquals(0, stream.getSubscriberCount());
+    }
+
+    @Test
+    public void disconnectTest() {
+        RecordingSink sink = new RecordingSink();
+        sink.failing = true;
+        MarketStream.Subscriber subscriber = marketStream.subscribe(sink);
+
+        marketStream.publish("depth", bytes("{}"));
+        runTasks();
+
+        assertTrue(subscriber.isClosed());
+        assertEquals(0, marketStream.getSubscriberCount());
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class RecordingSink implements MarketStream.Sink {
+        private final List<String> events = new ArrayList<>();
+        private boolean failing;
+        private boolean closed;
+
+        @Override
+        public void send(String event, byte[] data) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            events.add(event + ":" + new String(data, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
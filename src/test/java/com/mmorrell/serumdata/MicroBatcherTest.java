@@ -0,0 +1,89 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.util.MicroBatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MicroBatcherTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final BlockingQueue<List<Integer>> batches = new LinkedBlockingQueue<>();
+
+    @AfterEach
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void concurrentSubmitsMergeTest() throws Exception {
+        MicroBatcher<Integer> batcher = new MicroBatcher<>(scheduler, 200, batches::add);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> queued = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final int first = i * 5;
+            // Overlapping ranges, 0 to 44
+            queued.add(callers.submit(() -> batcher.submit(List.of(first, first + 1, first + 2, first + 3, first + 4,
+                    first + 5, first + 6, first + 7, first + 8, first + 9))));
+        }
+        int total = 0;
+        for (Future<Integer> future : queued) {
+            total += future.get(5, TimeUnit.SECONDS);
+        }
+        callers.shutdown();
+
+        List<Integer> batch = batches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(45, total);
+        assertEquals(45, batch.size());
+        assertEquals(45, batch.stream().distinct().count());
+        assertNull(batches.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(0, batcher.getPendingCount());
+    }
+
+    @Test
+    public void inFlightKeysSkippedTest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MicroBatcher<Integer> batcher = new MicroBatcher<>(scheduler, 1, batch -> {
+            batches.add(batch);
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertEquals(2, batcher.submit(List.of(1, 2)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // 1 and 2 are being handled, only 3 waits for the next batch
+        assertEquals(1, batcher.submit(List.of(1, 2, 3)));
+        assertEquals(1, batcher.getPendingCount());
+        release.countDown();
+
+        assertEquals(List.of(1, 2), batches.poll(5, TimeUnit.SECONDS));
+        assertEquals(List.of(3), batches.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failedBatchCanBeResubmittedTest() throws Exception {
+        MicroBatcher<Integer> batcher = new MicroBatcher<>(scheduler, 1, batch -> {
+            batches.add(batch);
+            throw new IllegalStateException("rpc down");
+        });
+
+        batcher.submit(List.of(7));
+        assertEquals(List.of(7), batches.poll(5, TimeUnit.SECONDS));
+        // Released once the failed batch returns
+        for (int i = 0; i < 100 && batcher.submit(List.of(7)) == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(7), batches.poll(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,162 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.model.*;
+import org.junit.jupiter.api.Test;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderBookDiffTest {
+
+    private static final PublicKey MARKET_ID = new PublicKey("8BnEgHoWFysVcuFFX7QztDmzuH8r5ZFvyP3sYwn1XTh6");
+
+    @Test
+    public void aggregateLevelsTest() {
+        // Two orders at 100, one at 99
+        OrderBookSide bids = side(true, new long[]{100, 100, 99}, new long[]{5, 7, 3});
+        BookLevels levels = bids.getLevels();
+
+        assertEquals(2, levels.size());
+        assertEquals(100, levels.getPriceLots(0));
+        assertEquals(12, levels.getQuantityLots(0));
+        assertEquals(99, levels.getPriceLots(1));
+        assertEquals(3, levels.getQuantityLots(1));
+    }
+
+    @Test
+    public void diffAddedChangedRemovedTest() {
+        BookLevels from = side(false, new long[]{10, 11, 12}, new long[]{1, 1, 1}).getLevels();
+        BookLevels to = side(false, new long[]{10, 12, 13}, new long[]{1, 2, 4}).getLevels();
+
+        BookLevels diff = BookLevels.diff(from, to, false);
+
+        // 11 removed, 12 changed, 13 added, 10 unchanged
+        assertEquals(3, diff.size());
+        assertEquals(11, diff.getPriceLots(0));
+        assertEquals(0, diff.getQuantityLots(0));
+        assertEquals(12, diff.getPriceLots(1));
+        assertEquals(2, diff.getQuantityLots(1));
+        assertEquals(13, diff.getPriceLots(2));
+        assertEquals(4, diff.getQuantityLots(2));
+    }
+
+    @Test
+    public void replayedDiffsMatchLatestBookTest() {
+        Random random = new Random(99);
+        OrderBookDiffLog diffLog = new OrderBookDiffLog(500);
+
+        MarketSnapshot snapshot = snapshot(0, randomSide(random, true), 1000, randomSide(random, false), 1000);
+        diffLog.record(snapshot);
+
+        Map<Long, Long> clientBids = toMap(snapshot.getBids().getLevels());
+        Map<Long, Long> clientAsks = toMap(snapshot.getAsks().getLevels());
+        long clientSlot = snapshot.getBookSlot();
+
+        for (int i = 1; i <= 200; i++) {
+            long slot = 1000 + i / 2;
+            snapshot = i % 3 == 0 ?
+                    snapshot.withAsks(randomSide(random, false), slot) :
+                    snapshot.withBids(randomSide(random, true), slot);
+            diffLog.record(snapshot);
+
+            // Client polls every few updates
+            if (i % 7 == 0) {
+                OrderBookDiff diff = diffLog.getDiffSince(clientSlot).orElseThrow();
+                apply(clientBids, diff.getBids());
+                apply(clientAsks, diff.getAsks());
+                clientSlot = diff.getToSlot();
+
+                assertEquals(toMap(snapshot.getBids().getLevels()), clientBids);
+                assertEquals(toMap(snapshot.getAsks().getLevels()), clientAsks);
+            }
+        }
+    }
+
+    @Test
+    public void gapFallsBackToFullBookTest() {
+        Random random = new Random(5);
+        OrderBookDiffLog diffLog = new OrderBookDiffLog(4);
+
+        MarketSnapshot snapshot = snapshot(0, randomSide(random, true), 1000, randomSide(random, false), 1000);
+        diffLog.record(snapshot);
+        for (int i = 1; i <= 10; i++) {
+            snapshot = snapshot.withBids(randomSide(random, true), 1000 + i);
+            diffLog.record(snapshot);
+        }
+
+        // Only the last 4 diffs (1006 -> 1010) are kept
+        assertTrue(diffLog.getDiffSince(1005).isEmpty());
+        assertTrue(diffLog.getDiffSince(1006).isPresent());
+        // Ahead of the server
+        assertTrue(diffLog.getDiffSince(1011).isEmpty());
+
+        OrderBookDiff upToDate = diffLog.getDiffSince(1010).orElseThrow();
+        assertEquals(0, upToDate.size());
+        assertEquals(1010, upToDate.getToSlot());
+    }
+
+    private static void apply(Map<Long, Long> book, BookLevels diff) {
+        for (int i = 0; i < diff.size(); i++) {
+            if (diff.getQuantityLots(i) == 0) {
+                book.remove(diff.getPriceLots(i));
+            } else {
+                book.put(diff.getPriceLots(i), diff.getQuantityLots(i));
+            }
+        }
+    }
+
+    private static Map<Long, Long> toMap(BookLevels levels) {
+        Map<Long, Long> result = new HashMap<>();
+        for (int i = 0; i < levels.size(); i++) {
+            result.put(levels.getPriceLots(i), levels.getQuantityLots(i));
+        }
+        return result;
+    }
+
+    private static MarketSnapshot snapshot(long version, OrderBookSide bids, long bidsSlot,
+                                           OrderBookSide asks, long asksSlot) {
+        return MarketSnapshot.builder()
+                .marketId(MARKET_ID)
+                .version(version)
+                .bids(bids)
+                .bidsSlot(bidsSlot)
+                .asks(asks)
+                .asksSlot(asksSlot)
+                .build();
+    }
+
+    // Mostly stable book around a mid of 1000 lots, like a liquid market between slots
+    private static OrderBookSide randomSide(Random random, boolean isBid) {
+        int size = 20 + random.nextInt(10);
+        long[] prices = new long[size];
+        long[] quantities = new long[size];
+        for (int i = 0; i < size; i++) {
+            prices[i] = isBid ? 999 - i - random.nextInt(2) * i : 1001 + i + random.nextInt(2) * i;
+            quantities[i] = 1 + random.nextInt(3);
+        }
+        // Keep best-first order after the random gaps
+        Arrays.sort(prices);
+        if (isBid) {
+            for (int i = 0; i < size / 2; i++) {
+                long swap = prices[i];
+                prices[i] = prices[size - 1 - i];
+                prices[size - 1 - i] = swap;
+            }
+        }
+        return side(isBid, prices, quantities);
+    }
+
+    private static OrderBookSide side(boolean isBid, long[] priceLots, long[] quantityLots) {
+        int size = priceLots.length;
+        float[] prices = new float[size];
+        float[] quantities = new float[size];
+        for (int i = 0; i < size; i++) {
+            prices[i] = priceLots[i] * 0.01f;
+            quantities[i] = quantityLots[i] * 0.1f;
+        }
+        return new OrderBookSide(isBid, size, priceLots, quantityLots, prices, quantities,
+                new byte[size * OrderBookSide.OWNER_LENGTH]);
+    }
+}
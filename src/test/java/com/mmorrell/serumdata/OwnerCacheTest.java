@@ -0,0 +1,90 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.util.OwnerCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OwnerCacheTest {
+
+    private static final PublicKey OOA = new PublicKey("9Lyhks5bQQxb9EyyX55NtgKQzpM4WK7JCmeaWuQ5MoXD");
+    private static final PublicKey OWNER = new PublicKey("8BnEgHoWFysVcuFFX7QztDmzuH8r5ZFvyP3sYwn1XTh6");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void putGetTest() {
+        OwnerCache cache = new OwnerCache(1_000);
+        assertTrue(cache.get(OOA).isEmpty());
+
+        cache.put(OOA, OWNER);
+        assertEquals(OWNER, cache.get(OOA).orElseThrow());
+        assertEquals(1, cache.getModificationCount());
+
+        // Same owner again is not a change
+        cache.put(OOA, OWNER);
+        assertEquals(1, cache.getModificationCount());
+        cache.put(OOA, OOA);
+        assertEquals(OOA, cache.get(OOA).orElseThrow());
+        assertEquals(2, cache.getModificationCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void boundedTest() {
+        OwnerCache cache = new OwnerCache(6_400);
+        Random random = new Random(3);
+        PublicKey hot = randomKey(random);
+        cache.put(hot, OWNER);
+
+        for (int i = 0; i < 100_000; i++) {
+            cache.put(randomKey(random), OWNER);
+            // Used entries are carried into each new generation
+            if (i % 1_000 == 0) {
+                assertEquals(OWNER, cache.get(hot).orElseThrow());
+            }
+        }
+        assertTrue(cache.size() <= 6_400);
+        assertEquals(OWNER, cache.get(hot).orElseThrow());
+    }
+
+    @Test
+    public void snapshotTest() throws IOException {
+        Path file = directory.resolve("owners.bin");
+        OwnerCache cache = new OwnerCache(100_000);
+        Random random = new Random(5);
+        PublicKey[] ooas = new PublicKey[500];
+        PublicKey[] owners = new PublicKey[ooas.length];
+        for (int i = 0; i < ooas.length; i++) {
+            ooas[i] = randomKey(random);
+            owners[i] = randomKey(random);
+            cache.put(ooas[i], owners[i]);
+        }
+        assertEquals(500, cache.writeTo(file));
+        assertEquals(12 + 500 * 64, Files.size(file));
+
+        OwnerCache restored = new OwnerCache(100_000);
+        assertEquals(500, restored.readFrom(file));
+        for (int i = 0; i < ooas.length; i++) {
+            assertEquals(owners[i], restored.get(ooas[i]).orElseThrow());
+        }
+
+        assertEquals(0, new OwnerCache(1_000).readFrom(directory.resolve("missing.bin")));
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+        assertThrows(IOException.class, () -> new OwnerCache(1_000).readFrom(file));
+    }
+
+    private static PublicKey randomKey(Random random) {
+        byte[] key = new byte[PublicKey.PUBLIC_KEY_LENGTH];
+        random.nextBytes(key);
+        return new PublicKey(key);
+    }
+}
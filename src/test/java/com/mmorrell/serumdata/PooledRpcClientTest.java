@@ -0,0 +1,153 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.client.PooledRpcClient;
+import com.mmorrell.serumdata.client.RpcEndpoint;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.p2p.solanaj.rpc.RpcException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PooledRpcClientTest {
+
+    private static final int TIMEOUT_SECONDS = 10;
+    private final List<StubRpcNode> nodes = new ArrayList<>();
+
+    @AfterEach
+    public void stopNodes() {
+        nodes.forEach(node -> node.server.stop(0));
+    }
+
+    @Test
+    public void routesToFastestEndpointTest() throws Exception {
+        StubRpcNode slow = startNode(120);
+        StubRpcNode fast = startNode(5);
+        PooledRpcClient client = new PooledRpcClient(List.of(slow.url(), fast.url()), TIMEOUT_SECONDS, 0);
+
+        for (int i = 0; i < 30; i++) {
+            assertEquals(187654321L, getSlot(client));
+        }
+
+        // One exploratory call to the slow node, everything else on the fast one
+        assertTrue(slow.hits.get() <= 2, "slow node hits: " + slow.hits.get());
+        assertTrue(fast.hits.get() >= 28, "fast node hits: " + fast.hits.get());
+    }
+
+    @Test
+    public void failsOverAndEjectsFailingEndpointTest() throws Exception {
+        StubRpcNode broken = startNode(1);
+        broken.failing = true;
+        StubRpcNode healthy = startNode(1);
+        PooledRpcClient client = new PooledRpcClient(List.of(broken.url(), healthy.url()), TIMEOUT_SECONDS, 0);
+
+        // Every call succeeds, failures are retried on the healthy node
+        for (int i = 0; i < 40; i++) {
+            assertEquals(187654321L, getSlot(client));
+        }
+
+        RpcEndpoint brokenEndpoint = client.getEndpoints().get(0);
+        assertTrue(broken.hits.get() <= 5, "broken node hits: " + broken.hits.get());
+        assertTrue(brokenEndpoint.getErrorRate() > 0);
+        assertEquals(40, healthy.hits.get());
+    }
+
+    @Test
+    public void allEndpointsFailingThrowsTest() throws Exception {
+        StubRpcNode first = startNode(1);
+        StubRpcNode second = startNode(1);
+        first.failing = true;
+        second.failing = true;
+        PooledRpcClient client = new PooledRpcClient(List.of(first.url(), second.url()), TIMEOUT_SECONDS, 0);
+
+        assertThrows(RpcException.class, () -> getSlot(client));
+        assertEquals(1, first.hits.get());
+        assertEquals(1, second.hits.get());
+    }
+
+    @Test
+    public void hedgesSlowRequestTest() throws Exception {
+        StubRpcNode primary = startNode(5);
+        StubRpcNode secondary = startNode(30);
+        PooledRpcClient client = new PooledRpcClient(List.of(primary.url(), secondary.url()), TIMEOUT_SECONDS, 0.95);
+
+        // Warm up latency history, primary becomes the preferred node
+        for (int i = 0; i < 20; i++) {
+            getSlot(client);
+        }
+        int secondaryHits = secondary.hits.get();
+
+        // Primary stalls, the hedge to secondary answers long before it
+        primary.delayMs = 3_000;
+        long start = System.currentTimeMillis();
+        assertEquals(187654321L, getSlot(client));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue(elapsed < 1_000, "hedged call took " + elapsed + " ms");
+        assertEquals(secondaryHits + 1, secondary.hits.get());
+
+        // The stalled call to primary is cancelled, not left running until it answers
+        long deadline = System.currentTimeMillis() + 1_000;
+        while (client.getRunningCallCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, client.getRunningCallCount());
+        assertTrue(System.currentTimeMillis() - start < 2_000);
+        // Cancelling isn't a node failure
+        assertEquals(0, client.getEndpoints().get(0).getFailures());
+    }
+
+    private static long getSlot(PooledRpcClient client) throws RpcException {
+        return client.call("getSlot", new ArrayList<>(), Long.class);
+    }
+
+    private StubRpcNode startNode(long delayMs) throws IOException {
+        StubRpcNode node = new StubRpcNode(delayMs);
+        nodes.add(node);
+        return node;
+    }
+
+    private static class StubRpcNode {
+        private static final String RESPONSE = "{\"jsonrpc\":\"2.0\",\"result\":187654321,\"id\":\"1\"}";
+
+        final HttpServer server;
+        final AtomicInteger hits = new AtomicInteger();
+        volatile long delayMs;
+        volatile boolean failing;
+
+        StubRpcNode(long delayMs) throws IOException {
+            this.delayMs = delayMs;
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/", exchange -> {
+                hits.incrementAndGet();
+                exchange.getRequestBody().readAllBytes();
+                try {
+                    Thread.sleep(this.delayMs);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+
+                byte[] body = (failing ? "upstream unavailable" : RESPONSE).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(failing ? 503 : 200, body.length);
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            });
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        }
+    }
+}
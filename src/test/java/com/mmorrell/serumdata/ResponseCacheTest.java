@@ -0,0 +1,84 @@
+package com.mmorrell.serumdata;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmorrell.serumdata.util.ResponseCache;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseCacheTest {
+
+    private final ResponseCache responseCache = new ResponseCache(new ObjectMapper());
+
+    @Test
+    public void buildsOncePerVersionTest() {
+        AtomicInteger builds = new AtomicInteger();
+        Object bids = new Object();
+
+        ResponseCache.CachedResponse first = responseCache.get("market/bids", List.of(bids, 1), 100, () -> {
+            builds.incrementAndGet();
+            return Map.of("price", 1.5);
+        });
+        ResponseCache.CachedResponse second = responseCache.get("market/bids", List.of(bids, 1), 100, () -> {
+            builds.incrementAndGet();
+            return Map.of("price", 1.5);
+        });
+
+        assertSame(first, second);
+        assertEquals(1, builds.get());
+        assertEquals("{\"price\":1.5}", new String(first.getBody(), StandardCharsets.UTF_8));
+        assertTrue(first.getEtag().matches("\"100-[0-9a-f]+\""), first.getEtag());
+
+        // Owners resolved since, same book
+        ResponseCache.CachedResponse rebuilt = responseCache.get("market/bids", List.of(bids, 2), 100,
+                () -> Map.of("price", 1.5, "owner", "known"));
+        assertNotEquals(first.getEtag(), rebuilt.getEtag());
+
+        // Other keys are independent
+        responseCache.get("market/asks", List.of(bids, 2), 100, Collections::emptyList);
+        assertSame(rebuilt, responseCache.get("market/bids", List.of(bids, 2), 100, Collections::emptyList));
+    }
+
+    @Test
+    public void notModifiedTest() {
+        String etag = responseCache.get("market/depth", 1, 42, Collections::emptyList).getEtag();
+
+        assertTrue(ResponseCache.isNotModified(etag, etag));
+        assertTrue(ResponseCache.isNotModified("\"41-abc\", W/" + etag, etag));
+        assertTrue(ResponseCache.isNotModified("*", etag));
+        assertFalse(ResponseCache.isNotModified("\"41-abc\"", etag));
+        assertFalse(ResponseCache.isNotModified(null, etag));
+    }
+
+    @Test
+    public void gzipTest() throws IOException {
+        String[] levels = new String[500];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = "level-" + i;
+        }
+        ResponseCache.CachedResponse cached = responseCache.get("market/depth", 1, 42, () -> levels);
+
+        assertTrue(cached.isCompressible());
+        assertTrue(cached.getGzipBody().length < cached.getBody().length);
+        assertSame(cached.getGzipBody(), cached.getGzipBody());
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(cached.getGzipBody()))) {
+            assertArrayEquals(cached.getBody(), gzip.readAllBytes());
+        }
+
+        // Own validator, a 304 for one encoding doesn't validate the other
+        assertNotEquals(cached.getEtag(), cached.getGzipEtag());
+        assertTrue(cached.getGzipEtag().matches("\"42-[0-9a-f]+-gz\""), cached.getGzipEtag());
+        assertFalse(ResponseCache.isNotModified(cached.getEtag(), cached.getGzipEtag()));
+
+        assertFalse(responseCache.get("market/bids", 1, 42, Collections::emptyList).isCompressible());
+    }
+}
@@ -0,0 +1,78 @@
+package com.mmorrell.serumdata;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmorrell.serumdata.model.SerumOrder;
+import com.mmorrell.serumdata.model.TradeHistoryEvent;
+import com.mmorrell.serumdata.util.Base58Cache;
+import org.junit.jupiter.api.Test;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SerializerTest {
+
+    private static final PublicKey OOA = new PublicKey("9Lyhks5bQQxb9EyyX55NtgKQzpM4WK7JCmeaWuQ5MoXD");
+    private static final PublicKey OWNER = new PublicKey("8BnEgHoWFysVcuFFX7QztDmzuH8r5ZFvyP3sYwn1XTh6");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void serumOrderTest() throws Exception {
+        SerumOrder known = new SerumOrder();
+        known.setPrice(1.5f);
+        known.setQuantity(2f);
+        known.setPercent(0.25f);
+        known.setEntityName("Mango");
+        known.setEntityIcon("mango");
+        known.setMangoKey(OOA);
+        known.setOwner(OWNER);
+
+        SerumOrder unknown = new SerumOrder();
+        unknown.setPrice(1.4f);
+        unknown.setQuantity(3f);
+        unknown.setPercent(1f);
+        unknown.setOwner(OOA);
+
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsBytes(List.of(known, unknown)));
+        assertEquals(objectMapper.readTree("""
+                [{"price":1.5,"quantity":2.0,
+                  "metadata":{"percent":0.25,"name":"Mango","icon":"mango",
+                              "mangoKey":"9Lyhks5bQQxb9EyyX55NtgKQzpM4WK7JCmeaWuQ5MoXD"},
+                  "owner":{"publicKey":"8BnEgHoWFysVcuFFX7QztDmzuH8r5ZFvyP3sYwn1XTh6"}},
+                 {"price":1.4,"quantity":3.0,"metadata":{"percent":1.0},
+                  "owner":{"publicKey":"9Lyhks5bQQxb9EyyX55NtgKQzpM4WK7JCmeaWuQ5MoXD"}}]
+                """), json);
+    }
+
+    @Test
+    public void tradeHistoryEventTest() throws Exception {
+        TradeHistoryEvent event = TradeHistoryEvent.builder()
+                .index(2)
+                .seqNum(77)
+                .price(10f)
+                .quantity(0.5f)
+                .owner(OWNER)
+                .takerOoa(OOA)
+                .bid(true)
+                .fill(true)
+                .build();
+
+        assertEquals(objectMapper.readTree("""
+                {"index":2,"seqNum":77,"price":10.0,"quantity":0.5,
+                 "takerOoa":{"publicKey":"9Lyhks5bQQxb9EyyX55NtgKQzpM4WK7JCmeaWuQ5MoXD"},"makerOoa":null,
+                 "owner":{"publicKey":"8BnEgHoWFysVcuFFX7QztDmzuH8r5ZFvyP3sYwn1XTh6"},"makerOwner":null,
+                 "takerEntityName":null,"takerEntityIcon":null,"makerEntityName":null,"makerEntityIcon":null,
+                 "fill":true,"out":false,"bid":true,"maker":false}
+                """), objectMapper.readTree(objectMapper.writeValueAsBytes(event)));
+    }
+
+    @Test
+    public void base58CacheTest() {
+        String encoded = Base58Cache.toBase58(OWNER);
+        assertEquals(OWNER.toBase58(), encoded);
+        assertSame(encoded, Base58Cache.toBase58(new PublicKey(OWNER.toByteArray())));
+    }
+}
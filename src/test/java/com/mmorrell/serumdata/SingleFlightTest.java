@@ -0,0 +1,115 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.model.CacheStats;
+import com.mmorrell.serumdata.util.CacheStatsCounter;
+import com.mmorrell.serumdata.util.SingleFlight;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final CacheStatsCounter stats = new CacheStatsCounter();
+    private final SingleFlight<String, Integer> singleFlight = new SingleFlight<>(executor, stats);
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentLoadsCoalesceTest() throws Exception {
+        final AtomicInteger loaderCalls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final int callers = 50;
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            futures.add(singleFlight.load("market", () -> {
+                loaderCalls.incrementAndGet();
+                release.await();
+                return 42;
+            }));
+        }
+
+        assertTrue(singleFlight.isLoading("market"));
+        release.countDown();
+        for (CompletableFuture<Integer> future : futures) {
+            assertEquals(42, future.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, loaderCalls.get());
+        CacheStats cacheStats = stats.snapshot();
+        assertEquals(1, cacheStats.getLoadSuccesses());
+        assertEquals(callers - 1, cacheStats.getCoalescedLoads());
+    }
+
+    @Test
+    public void nextLoadStartsAfterCompletionTest() throws Exception {
+        AtomicInteger loaderCalls = new AtomicInteger();
+
+        assertEquals(1, singleFlight.load("market", loaderCalls::incrementAndGet).get(5, TimeUnit.SECONDS));
+        // In-flight entry is dropped on completion
+        for (int i = 0; i < 100 && singleFlight.isLoading("market"); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, singleFlight.load("market", loaderCalls::incrementAndGet).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void separateKeysLoadSeparatelyTest() throws Exception {
+        CompletableFuture<Integer> first = singleFlight.load("first", () -> 1);
+        CompletableFuture<Integer> second = singleFlight.load("second", () -> 2);
+
+        assertEquals(1, first.get(5, TimeUnit.SECONDS));
+        assertEquals(2, second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failedLoadCompletesExceptionallyTest() {
+        CompletableFuture<Integer> future = singleFlight.load("market", () -> {
+            throw new IllegalStateException("rpc down");
+        });
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, ex.getCause());
+        assertEquals(1, stats.snapshot().getLoadFailures());
+    }
+
+    @Test
+    public void asyncLoadsCoalesceTest() throws Exception {
+        AtomicInteger loaderCalls = new AtomicInteger();
+        CompletableFuture<Integer> pending = new CompletableFuture<>();
+
+        CompletableFuture<Integer> first = singleFlight.loadAsync("market", () -> {
+            loaderCalls.incrementAndGet();
+            return pending;
+        });
+        CompletableFuture<Integer> second = singleFlight.loadAsync("market", () -> {
+            loaderCalls.incrementAndGet();
+            return CompletableFuture.completedFuture(0);
+        });
+        assertSame(first, second);
+        assertTrue(singleFlight.isLoading("market"));
+
+        pending.complete(42);
+        assertEquals(42, second.get(5, TimeUnit.SECONDS));
+        assertFalse(singleFlight.isLoading("market"));
+        assertEquals(1, loaderCalls.get());
+        assertEquals(1, stats.snapshot().getCoalescedLoads());
+
+        // Loader that throws instead of returning a failed future
+        CompletableFuture<Integer> failed = singleFlight.loadAsync("market", () -> {
+            throw new IllegalStateException("rpc down");
+        });
+        assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertFalse(singleFlight.isLoading("market"));
+    }
+}
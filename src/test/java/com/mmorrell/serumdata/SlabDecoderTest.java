@@ -0,0 +1,290 @@
+package com.mmorrell.serumdata;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serum.model.Order;
+import com.mmorrell.serum.model.OrderBook;
+import com.mmorrell.serumdata.model.OrderBookSide;
+import com.mmorrell.serumdata.model.SerumOrder;
+import com.mmorrell.serumdata.util.MarketUtil;
+import com.mmorrell.serumdata.util.SlabDecoder;
+import org.junit.jupiter.api.Test;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks SlabDecoder against the orders written into a critbit slab, and against serum's OrderBook on the same bytes,
+ * for those slabs and for mainnet accounts recorded with scripts/record_orderbook.py.
+ */
+public class SlabDecoderTest {
+
+    // SOL/USDC style market: 9 base decimals, 6 quote decimals
+    private static final byte BASE_DECIMALS = 9;
+    private static final byte QUOTE_DECIMALS = 6;
+    private static final long BASE_LOT_SIZE = 1_000_000L;
+    private static final long QUOTE_LOT_SIZE = 1L;
+    private static final int ORDER_COUNT = 250;
+
+    private static final int NODE_SIZE = 72;
+    private static final int NODES_OFFSET = 5 + 8 + 32;
+
+    @Test
+    public void decodeSortedSidesTest() {
+        List<TestOrder> orders = randomOrders(new Random(1337));
+        byte[] slab = buildSlab(orders);
+
+        OrderBookSide bids = decode(slab, true);
+        OrderBookSide asks = decode(slab, false);
+        assertEquals(ORDER_COUNT, bids.size());
+        assertEquals(ORDER_COUNT, asks.size());
+
+        // Asks come out in ascending key order, bids in descending
+        List<TestOrder> ascending = new ArrayList<>(orders);
+        ascending.sort(TestOrder.KEY_ORDER);
+        for (int i = 0; i < ORDER_COUNT; i++) {
+            assertOrder(ascending.get(i), asks, i);
+            assertOrder(ascending.get(ORDER_COUNT - 1 - i), bids, i);
+        }
+
+        assertEquals(ascending.get(ORDER_COUNT - 1).price * 0.001f, bids.getBestPrice(), 1e-3);
+        assertEquals(ascending.get(0).price * 0.001f, asks.getBestPrice(), 1e-3);
+    }
+
+    @Test
+    public void decodeDirectBufferTest() {
+        byte[] slab = buildSlab(randomOrders(new Random(42)));
+        ByteBuffer direct = ByteBuffer.allocateDirect(slab.length);
+        direct.put(slab).flip();
+
+        OrderBookSide heap = decode(slab, false);
+        OrderBookSide fromDirect = SlabDecoder.decode(direct, false, BASE_DECIMALS, QUOTE_DECIMALS,
+                BASE_LOT_SIZE, QUOTE_LOT_SIZE);
+
+        assertEquals(heap.size(), fromDirect.size());
+        for (int i = 0; i < heap.size(); i++) {
+            assertEquals(heap.getPriceLots(i), fromDirect.getPriceLots(i));
+            assertEquals(heap.getOwner(i), fromDirect.getOwner(i));
+        }
+    }
+
+    @Test
+    public void decodeEmptySlabTest() {
+        OrderBookSide empty = decode(buildSlab(Collections.emptyList()), true);
+        assertEquals(0, empty.size());
+        assertEquals(0.0f, empty.getBestPrice());
+    }
+
+    @Test
+    public void matchesSerumOrderBookTest() {
+        byte[] slab = buildSlab(randomOrders(new Random(7)));
+
+        OrderBook orderBook = OrderBook.readOrderBook(slab);
+        orderBook.setBaseDecimals(BASE_DECIMALS);
+        orderBook.setQuoteDecimals(QUOTE_DECIMALS);
+        orderBook.setBaseLotSize(BASE_LOT_SIZE);
+        orderBook.setQuoteLotSize(QUOTE_LOT_SIZE);
+
+        List<Order> serumOrders = new ArrayList<>(orderBook.getOrders());
+        serumOrders.sort(Comparator.comparingLong(Order::getPrice).reversed());
+        OrderBookSide bids = decode(slab, true);
+
+        assertEquals(serumOrders.size(), bids.size());
+        for (int i = 0; i < bids.size(); i++) {
+            Order order = serumOrders.get(i);
+            assertEquals(order.getPrice(), bids.getPriceLots(i));
+            assertEquals(order.getQuantity(), bids.getQuantityLots(i));
+            assertEquals(order.getFloatPrice(), bids.getPrice(i), Math.abs(order.getFloatPrice()) * 1e-6);
+            assertEquals(order.getFloatQuantity(), bids.getQuantity(i), Math.abs(order.getFloatQuantity()) * 1e-6);
+            assertEquals(order.getOwner(), bids.getOwner(i));
+        }
+    }
+
+    @Test
+    public void matchesSerumOnRecordedAccountsTest() throws IOException {
+        final JsonNode recording;
+        try (InputStream inputStream = getClass().getResourceAsStream("/orderbook_accounts.json")) {
+            assumeTrue(inputStream != null, "No recording, run scripts/record_orderbook.py");
+            recording = new ObjectMapper().readTree(inputStream);
+        }
+        final JsonNode accounts = recording.get("accounts");
+        final Market market = Market.readMarket(base64(accounts, "market"));
+        // SPL mint: decimals follow the mint authority option and supply
+        final byte baseDecimals = base64(accounts, "baseMint")[44];
+        final byte quoteDecimals = base64(accounts, "quoteMint")[44];
+
+        for (boolean isBid : new boolean[]{true, false}) {
+            final byte[] slab = base64(accounts, isBid ? "bids" : "asks");
+
+            OrderBook orderBook = OrderBook.readOrderBook(slab);
+            orderBook.setBaseDecimals(baseDecimals);
+            orderBook.setQuoteDecimals(quoteDecimals);
+            orderBook.setBaseLotSize(market.getBaseLotSize());
+            orderBook.setQuoteLotSize(market.getQuoteLotSize());
+            List<SerumOrder> expected = convertSerumOrderBook(orderBook, isBid);
+
+            OrderBookSide side = SlabDecoder.decode(ByteBuffer.wrap(slab), isBid, baseDecimals, quoteDecimals,
+                    market.getBaseLotSize(), market.getQuoteLotSize());
+            List<SerumOrder> actual = MarketUtil.convertOrderBookToSerumOrders(side, isBid);
+
+            assertFalse(expected.isEmpty(), "Recorded side is empty");
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getPrice(), actual.get(i).getPrice());
+            }
+            // Serum sorts by price only, orders at one price may come in another order
+            assertEquals(ordersByPrice(expected), ordersByPrice(actual));
+        }
+    }
+
+    // Conversion from before SlabDecoder: serum's orders, sorted by float price, best first
+    private static List<SerumOrder> convertSerumOrderBook(OrderBook orderBook, boolean isBid) {
+        return orderBook.getOrders().stream()
+                .map(order -> {
+                    SerumOrder serumOrder = new SerumOrder();
+                    serumOrder.setPrice(order.getFloatPrice());
+                    serumOrder.setQuantity(order.getFloatQuantity());
+                    serumOrder.setOwner(order.getOwner());
+                    return serumOrder;
+                })
+                .sorted((o1, o2) -> isBid ?
+                        Float.compare(o2.getPrice(), o1.getPrice()) :
+                        Float.compare(o1.getPrice(), o2.getPrice()))
+                .collect(Collectors.toList());
+    }
+
+    // <price, sorted "owner quantity" of each order at that price>
+    private static Map<Float, List<String>> ordersByPrice(List<SerumOrder> orders) {
+        Map<Float, List<String>> byPrice = new HashMap<>();
+        for (SerumOrder order : orders) {
+            byPrice.computeIfAbsent(order.getPrice(), price -> new ArrayList<>())
+                    .add(order.getOwner().toBase58() + " " + order.getQuantity());
+        }
+        byPrice.values().forEach(Collections::sort);
+        return byPrice;
+    }
+
+    private static byte[] base64(JsonNode accounts, String name) {
+        return Base64.getDecoder().decode(accounts.get(name).asText());
+    }
+
+    private static OrderBookSide decode(byte[] slab, boolean isBid) {
+        return SlabDecoder.decode(ByteBuffer.wrap(slab), isBid, BASE_DECIMALS, QUOTE_DECIMALS,
+                BASE_LOT_SIZE, QUOTE_LOT_SIZE);
+    }
+
+    private static void assertOrder(TestOrder expected, OrderBookSide side, int index) {
+        assertEquals(expected.price, side.getPriceLots(index));
+        assertEquals(expected.quantity, side.getQuantityLots(index));
+        assertEquals(expected.price * 0.001f, side.getPrice(index), expected.price * 1e-9);
+        assertEquals(expected.quantity * 0.001f, side.getQuantity(index), expected.quantity * 1e-9);
+        assertEquals(new PublicKey(expected.owner), side.getOwner(index));
+    }
+
+    // Unique prices, so serum's unsorted order list can be compared by price alone
+    private static List<TestOrder> randomOrders(Random random) {
+        Set<Long> prices = new HashSet<>();
+        List<TestOrder> orders = new ArrayList<>();
+        while (orders.size() < ORDER_COUNT) {
+            long price = 15_000 + random.nextInt(20_000);
+            if (prices.add(price)) {
+                byte[] owner = new byte[32];
+                random.nextBytes(owner);
+                orders.add(new TestOrder(price, random.nextInt(1_000_000), 1 + random.nextInt(50_000), owner));
+            }
+        }
+        return orders;
+    }
+
+    /**
+     * Writes orders into an account laid out like an on-chain bids/asks account,
+     * as a valid critbit tree over the u128 (price, seqNum) keys.
+     */
+    private static byte[] buildSlab(List<TestOrder> orders) {
+        List<TestOrder> sorted = new ArrayList<>(orders);
+        sorted.sort(TestOrder.KEY_ORDER);
+
+        int nodeCount = Math.max(1, 2 * sorted.size() - 1);
+        ByteBuffer buffer = ByteBuffer.allocate(NODES_OFFSET + nodeCount * NODE_SIZE + 7)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("serum".getBytes());
+        buffer.putLong(5, 0x41L); // initialized | bids/asks flag
+        buffer.putLong(13, nodeCount); // bumpIndex
+        buffer.putInt(33, 0); // root
+        buffer.putLong(37, sorted.size()); // leafCount
+
+        if (!sorted.isEmpty()) {
+            writeTree(buffer, sorted, 0, sorted.size(), new int[]{0});
+        }
+        return buffer.array();
+    }
+
+    private static int writeTree(ByteBuffer buffer, List<TestOrder> sorted, int from, int to, int[] nextNode) {
+        int nodeIndex = nextNode[0]++;
+        int node = NODES_OFFSET + nodeIndex * NODE_SIZE;
+        TestOrder first = sorted.get(from);
+
+        if (to - from == 1) {
+            buffer.putInt(node, 2);
+            buffer.putLong(node + 8, first.seqNum);
+            buffer.putLong(node + 16, first.price);
+            buffer.put(node + 24, first.owner);
+            buffer.putLong(node + 56, first.quantity);
+            return nodeIndex;
+        }
+
+        // Critical bit: first bit where the lowest and highest keys of the range differ
+        int critBit = firstDifferingBit(first, sorted.get(to - 1));
+        int split = from;
+        while (bit(sorted.get(split), critBit) == 0) {
+            split++;
+        }
+
+        buffer.putInt(node, 1);
+        buffer.putInt(node + 4, critBit);
+        buffer.putLong(node + 8, first.seqNum);
+        buffer.putLong(node + 16, first.price);
+        buffer.putInt(node + 24, writeTree(buffer, sorted, from, split, nextNode));
+        buffer.putInt(node + 28, writeTree(buffer, sorted, split, to, nextNode));
+        return nodeIndex;
+    }
+
+    private static int firstDifferingBit(TestOrder a, TestOrder b) {
+        if (a.price != b.price) {
+            return Long.numberOfLeadingZeros(a.price ^ b.price);
+        }
+        return 64 + Long.numberOfLeadingZeros(a.seqNum ^ b.seqNum);
+    }
+
+    private static int bit(TestOrder order, int index) {
+        long word = index < 64 ? order.price : order.seqNum;
+        return (int) (word >>> (63 - (index % 64))) & 1;
+    }
+
+    private static class TestOrder {
+        static final Comparator<TestOrder> KEY_ORDER = (a, b) -> a.price != b.price ?
+                Long.compareUnsigned(a.price, b.price) :
+                Long.compareUnsigned(a.seqNum, b.seqNum);
+
+        final long price;
+        final long seqNum;
+        final long quantity;
+        final byte[] owner;
+
+        TestOrder(long price, long seqNum, long quantity, byte[] owner) {
+            this.price = price;
+            this.seqNum = seqNum;
+            this.quantity = quantity;
+            this.owner = owner;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.mmorrell.serumdata;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmorrell.serumdata.manager.MarketResponseManager;
+import com.mmorrell.serumdata.model.MarketSnapshot;
+import com.mmorrell.serumdata.model.SnapshotField;
+import com.mmorrell.serumdata.util.ResponseCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotResponseTest {
+
+    private static final String MARKET_ID = "8BnEgHoWFysVcuFFX7QztDmzuH8r5ZFvyP3sYwn1XTh6";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ResponseCache responseCache = new ResponseCache(objectMapper);
+    // No book or trade sections are requested, so no identity lookups
+    private final MarketResponseManager marketResponseManager = new MarketResponseManager(null, responseCache);
+
+    @Test
+    public void parseTest() {
+        assertEquals(EnumSet.allOf(SnapshotField.class), SnapshotField.parse(null));
+        assertEquals(EnumSet.allOf(SnapshotField.class), SnapshotField.parse(" "));
+        assertEquals(EnumSet.of(SnapshotField.BIDS, SnapshotField.TRADE_HISTORY),
+                SnapshotField.parse("tradehistory, bids,unknown"));
+        assertTrue(SnapshotField.parse("unknown").isEmpty());
+    }
+
+    @Test
+    public void spliceTest() throws Exception {
+        MarketSnapshot snapshot = MarketSnapshot.builder()
+                .bidsSlot(100)
+                .asksSlot(101)
+                .eventQueueSlot(102)
+                .build();
+        ResponseCache.CachedResponse market = responseCache.get(MARKET_ID + "/market", 1, 0,
+                () -> Map.of("id", MARKET_ID));
+
+        ResponseCache.CachedResponse response = marketResponseManager.getSnapshot(MARKET_ID, snapshot,
+                Optional.empty(), market, EnumSet.of(SnapshotField.TRADE_HISTORY, SnapshotField.MARKET));
+        assertEquals(objectMapper.readTree("""
+                {"slot":102,"bidsSlot":100,"asksSlot":101,"eventQueueSlot":102,
+                 "market":{"id":"8BnEgHoWFysVcuFFX7QztDmzuH8r5ZFvyP3sYwn1XTh6"},"tradeHistory":[]}
+                """), objectMapper.readTree(response.getBody()));
+        assertTrue(response.getEtag().startsWith("\"102-"));
+
+        // Same sections and slots, same cached body
+        assertSame(response, marketResponseManager.getSnapshot(MARKET_ID, snapshot, Optional.empty(), market,
+                EnumSet.of(SnapshotField.MARKET, SnapshotField.TRADE_HISTORY)));
+        assertNotSame(response, marketResponseManager.getSnapshot(MARKET_ID, snapshot.withEventQueue(5, 103),
+                Optional.empty(), market, EnumSet.of(SnapshotField.MARKET, SnapshotField.TRADE_HISTORY)));
+    }
+}
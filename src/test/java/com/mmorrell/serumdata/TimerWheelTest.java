@@ -0,0 +1,81 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.util.TimerWheel;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimerWheelTest {
+
+    private static final long TICK_MS = 250;
+
+    @Test
+    public void expiresAfterDelayTest() {
+        TimerWheel<String> wheel = new TimerWheel<>(8, TICK_MS);
+        wheel.schedule("hot", 1_000);
+        wheel.schedule("now", 0);
+
+        assertEquals(List.of("now"), wheel.advance());
+        assertEquals(List.of(), wheel.advance());
+        assertEquals(List.of(), wheel.advance());
+        assertEquals(List.of("hot"), wheel.advance());
+        assertFalse(wheel.isScheduled("hot"));
+    }
+
+    @Test
+    public void delaysLongerThanOneTurnTest() {
+        TimerWheel<String> wheel = new TimerWheel<>(8, TICK_MS);
+        // 20 ticks on an 8 tick wheel, passes its bucket twice before expiring
+        wheel.schedule("cold", 20 * TICK_MS);
+
+        for (int tick = 1; tick < 20; tick++) {
+            assertTrue(wheel.advance().isEmpty(), "tick " + tick);
+        }
+        assertEquals(List.of("cold"), wheel.advance());
+    }
+
+    @Test
+    public void rescheduleReplacesDeadlineTest() {
+        TimerWheel<String> wheel = new TimerWheel<>(16, TICK_MS);
+        wheel.schedule("market", 10 * TICK_MS);
+        // Promoted to a shorter interval
+        wheel.schedule("market", 2 * TICK_MS);
+
+        assertEquals(List.of(), wheel.advance());
+        assertEquals(List.of("market"), wheel.advance());
+        // Original deadline doesn't fire again
+        for (int i = 0; i < 20; i++) {
+            assertTrue(wheel.advance().isEmpty());
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cancelTest() {
+        TimerWheel<String> wheel = new TimerWheel<>(8, TICK_MS);
+        wheel.schedule("market", TICK_MS);
+        wheel.cancel("market");
+
+        assertTrue(wheel.advance().isEmpty());
+        assertFalse(wheel.isScheduled("market"));
+    }
+
+    @Test
+    public void spreadsManyItemsTest() {
+        TimerWheel<Integer> wheel = new TimerWheel<>(64, TICK_MS);
+        for (int i = 0; i < 1_000; i++) {
+            wheel.schedule(i, (i % 48) * TICK_MS);
+        }
+
+        int expired = 0;
+        for (int tick = 0; tick < 64; tick++) {
+            List<Integer> due = wheel.advance();
+            // About 1000 / 48 per tick (twice that on the first, delay 0 rounds up to one tick)
+            assertTrue(due.size() <= 50, "tick " + tick + ": " + due.size());
+            expired += due.size();
+        }
+        assertEquals(1_000, expired);
+    }
+}
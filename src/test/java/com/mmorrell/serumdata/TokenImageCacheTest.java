@@ -0,0 +1,200 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.model.Token;
+import com.mmorrell.serumdata.model.TokenImage;
+import com.mmorrell.serumdata.util.TokenImageCache;
+import com.mmorrell.serumdata.util.TokenThumbnails;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.p2p.solanaj.core.PublicKey;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenImageCacheTest {
+
+    private static final PublicKey USDC = new PublicKey("EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v");
+    private static final PublicKey SOL = new PublicKey("So11111111111111111111111111111111111111112");
+    private static final byte[] IMAGE = new byte[1_000];
+
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .callTimeout(5, TimeUnit.SECONDS)
+            .build();
+    private final AtomicInteger imageRequests = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpServer server;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        Arrays.fill(IMAGE, (byte) 7);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/logo.png", exchange -> {
+            imageRequests.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "image/png");
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            exchange.sendResponseHeaders(200, IMAGE.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(IMAGE);
+            }
+        });
+        server.createContext("/real.png", exchange -> {
+            byte[] png = TokenThumbnails.toPng(new BufferedImage(300, 300, BufferedImage.TYPE_INT_ARGB));
+            exchange.getResponseHeaders().add("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, png.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(png);
+            }
+        });
+        server.createContext("/missing.png", exchange -> {
+            imageRequests.incrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void concurrentFetchesCoalesceTest() throws Exception {
+        TokenImageCache cache = new TokenImageCache(client, directory, 1_000_000, 2);
+        Token usdc = token(USDC, "/logo.png");
+
+        List<CompletableFuture<Optional<TokenImage>>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(cache.get(usdc));
+        }
+        release.countDown();
+
+        for (CompletableFuture<Optional<TokenImage>> future : futures) {
+            TokenImage image = future.get(5, TimeUnit.SECONDS).orElseThrow();
+            assertArrayEquals(IMAGE, image.getData());
+            assertEquals("image/png", image.getContentType());
+            assertEquals("\"v1\"", image.getEtag());
+        }
+        assertEquals(1, imageRequests.get());
+
+        // Memory hit
+        assertTrue(cache.get(usdc).isDone());
+        assertTrue(cache.getIfPresent(USDC).isPresent());
+        assertEquals(1, imageRequests.get());
+    }
+
+    @Test
+    public void diskStoreTest() throws Exception {
+        release.countDown();
+        TokenImageCache cache = new TokenImageCache(client, directory, 1_000_000, 2);
+        TokenImage first = cache.get(token(USDC, "/logo.png")).get(5, TimeUnit.SECONDS).orElseThrow();
+        TokenImage second = cache.get(token(SOL, "/logo.png")).get(5, TimeUnit.SECONDS).orElseThrow();
+
+        // Same logo, one object
+        assertEquals(first.getHash(), second.getHash());
+        assertEquals(first.getData().length, Files.size(cache.getObjectFile(first)));
+        try (var objects = Files.list(directory.resolve("objects"))) {
+            assertEquals(1, objects.count());
+        }
+
+        // Restart, served from disk
+        TokenImageCache restarted = new TokenImageCache(client, directory, 1_000_000, 2);
+        assertTrue(restarted.getIfPresent(USDC).isEmpty());
+        CompletableFuture<Optional<TokenImage>> stored = restarted.get(token(USDC, "/logo.png"));
+        assertTrue(stored.isDone());
+        TokenImage restored = stored.get().orElseThrow();
+        assertNull(restored.getData());
+        assertEquals("\"v1\"", restored.getEtag());
+        assertArrayEquals(IMAGE, Files.readAllBytes(restarted.getObjectFile(restored)));
+        assertEquals(2, imageRequests.get());
+    }
+
+    @Test
+    public void thumbnailTest() throws Exception {
+        release.countDown();
+        TokenImageCache cache = new TokenImageCache(client, directory, 1_000_000, 2);
+        TokenImage image = cache.get(token(USDC, "/real.png")).get(5, TimeUnit.SECONDS).orElseThrow();
+
+        // Written on ingestion, one per size
+        try (var thumbs = Files.list(directory.resolve("thumbs"))) {
+            assertEquals(TokenThumbnails.SIZES.size(), thumbs.count());
+        }
+        for (int size : TokenThumbnails.SIZES) {
+            BufferedImage thumbnail = ImageIO.read(cache.getThumbnail(image, size).orElseThrow().toFile());
+            assertEquals(size, thumbnail.getWidth());
+            assertEquals(size, thumbnail.getHeight());
+        }
+
+        // Stored before thumbnails existed, written on first request
+        Files.delete(cache.getThumbnail(image, 40).orElseThrow());
+        TokenImage restored = new TokenImageCache(client, directory, 1_000_000, 2)
+                .get(token(USDC, "/real.png")).get().orElseThrow();
+        assertNull(restored.getData());
+        assertTrue(cache.getThumbnail(restored, 40).isPresent());
+
+        // Not an image ImageIO reads
+        TokenImage undecodable = cache.get(token(SOL, "/logo.png")).get(5, TimeUnit.SECONDS).orElseThrow();
+        assertTrue(cache.getThumbnail(undecodable, 20).isEmpty());
+    }
+
+    @Test
+    public void memoryBoundedTest() throws Exception {
+        release.countDown();
+        TokenImageCache cache = new TokenImageCache(client, directory, 1_500, 2);
+        cache.get(token(USDC, "/logo.png")).get(5, TimeUnit.SECONDS).orElseThrow();
+        cache.get(token(SOL, "/logo.png")).get(5, TimeUnit.SECONDS).orElseThrow();
+
+        // Only one 1000 byte image fits
+        assertTrue(cache.getIfPresent(USDC).isEmpty() || cache.getIfPresent(SOL).isEmpty());
+    }
+
+    @Test
+    public void failedFetchTest() throws Exception {
+        TokenImageCache cache = new TokenImageCache(client, directory, 1_000_000, 2);
+        Token missing = token(USDC, "/missing.png");
+
+        assertTrue(cache.get(missing).get(5, TimeUnit.SECONDS).isEmpty());
+        // Not retried right away
+        assertTrue(cache.get(missing).get(5, TimeUnit.SECONDS).isEmpty());
+        assertEquals(1, imageRequests.get());
+
+        Token noLogo = token(SOL, "");
+        assertTrue(cache.get(noLogo).get(5, TimeUnit.SECONDS).isEmpty());
+    }
+
+    private Token token(PublicKey mint, String path) {
+        String logoURI = path.isEmpty() ? "" : "http://127.0.0.1:" + server.getAddress().getPort() + path;
+        return Token.builder()
+                .publicKey(mint)
+                .address(mint.toBase58())
+                .logoURI(logoURI)
+                .build();
+    }
+}
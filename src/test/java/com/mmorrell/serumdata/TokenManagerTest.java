@@ -2,15 +2,18 @@ package com.mmorrell.serumdata;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mmorrell.serumdata.manager.TokenManager;
+import com.mmorrell.serumdata.util.TokenImageCache;
 import okhttp3.OkHttpClient;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.concurrent.TimeUnit;
 import java.util.Arrays;
 
@@ -19,6 +22,9 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 public class TokenManagerTest {
 
     private TokenManager tokenManager;
+
+    @TempDir
+    Path directory;
     
     @BeforeEach
     public void setup() throws IOException {
@@ -44,7 +50,9 @@ public class TokenManagerTest {
         Mockito.when(resourceLoader.getResource(Mockito.anyString())).thenReturn(mockResource);
     
         // Initialize TokenManager with mocked dependencies
-        tokenManager = new TokenManager(client, objectMapper, resourceLoader);
+        TokenImageCache tokenImageCache = new TokenImageCache(client, directory.resolve("images"), 1_000_000, 4);
+        tokenManager = new TokenManager(client, objectMapper, resourceLoader, tokenImageCache,
+                directory.resolve("tokens.bin").toString());
     }
         
 
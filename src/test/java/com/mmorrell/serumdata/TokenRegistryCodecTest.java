@@ -0,0 +1,116 @@
+package com.mmorrell.serumdata;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.mmorrell.serumdata.model.Token;
+import com.mmorrell.serumdata.model.TokenRegistry;
+import com.mmorrell.serumdata.util.TokenRegistryCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenRegistryCodecTest {
+
+    private static final PublicKey USDC = new PublicKey("EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v");
+    private static final PublicKey SOL = new PublicKey("So11111111111111111111111111111111111111112");
+
+    private static final String TOKEN_LIST = """
+            {
+              "name": "Solana Token List",
+              "logoURI": "https://cdn.jsdelivr.net/gh/trustwallet/assets@master/blockchains/solana/info/logo.png",
+              "keywords": ["solana", "spl"],
+              "tags": {"stablecoin": {"description": "Tokens that are fixed to an external asset"}},
+              "tokens": [
+                {
+                  "chainId": 101,
+                  "address": "EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v",
+                  "symbol": "USDC",
+                  "name": "USD Coin",
+                  "decimals": 6,
+                  "logoURI": "https://example.com/usdc.svg",
+                  "tags": ["stablecoin"],
+                  "extensions": {"coingeckoId": "usd-coin", "website": "https://www.centre.io/"}
+                },
+                {
+                  "chainId": 103,
+                  "address": "So11111111111111111111111111111111111111112",
+                  "symbol": "SOL",
+                  "name": "Devnet SOL",
+                  "decimals": 9
+                },
+                {
+                  "chainId": 101,
+                  "address": "So11111111111111111111111111111111111111112",
+                  "symbol": "SOL",
+                  "name": "Wrapped SOL",
+                  "decimals": 9
+                },
+                {
+                  "chainId": 101,
+                  "address": "not a key",
+                  "symbol": "BAD"
+                }
+              ],
+              "version": {"major": 0, "minor": 3, "patch": 3}
+            }
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void parseTokenListTest() throws IOException {
+        Map<PublicKey, Token> tokens = parse(TOKEN_LIST);
+
+        assertEquals(2, tokens.size());
+        Token usdc = tokens.get(USDC);
+        assertEquals("USD Coin", usdc.getName());
+        assertEquals("USDC", usdc.getSymbol());
+        assertEquals(USDC.toBase58(), usdc.getAddress());
+        assertEquals(6, usdc.getDecimals());
+        assertEquals("svg", usdc.getImageFormat());
+
+        // Devnet entry skipped, missing logo defaults
+        Token sol = tokens.get(SOL);
+        assertEquals("Wrapped SOL", sol.getName());
+        assertEquals("", sol.getLogoURI());
+        assertEquals("png", sol.getImageFormat());
+    }
+
+    @Test
+    public void parseInvalidTokenListTest() {
+        assertThrows(IOException.class, () -> parse("[]"));
+    }
+
+    @Test
+    public void snapshotTest() throws IOException {
+        Path file = directory.resolve("tokens.bin");
+        TokenRegistry registry = TokenRegistry.EMPTY.withTokens(parse(TOKEN_LIST), "\"abc\"", null);
+        TokenRegistryCodec.writeSnapshot(registry, file);
+
+        TokenRegistry restored = TokenRegistryCodec.readSnapshot(file).orElseThrow();
+        assertEquals(registry.getTokens(), restored.getTokens());
+        assertEquals("\"abc\"", restored.getEtag());
+        assertNull(restored.getLastModified());
+        assertEquals(1, restored.getGeneration());
+
+        assertTrue(TokenRegistryCodec.readSnapshot(directory.resolve("missing.bin")).isEmpty());
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        assertThrows(IOException.class, () -> TokenRegistryCodec.readSnapshot(file));
+    }
+
+    private static Map<PublicKey, Token> parse(String json) throws IOException {
+        return TokenRegistryCodec.parseTokenList(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+                new JsonFactory()
+        );
+    }
+}
@@ -0,0 +1,68 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.util.TokenThumbnails;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenThumbnailsTest {
+
+    private static final int RED = 0xffff0000;
+    private static final int BLUE = 0xff0000ff;
+
+    @Test
+    public void resizeTest() throws IOException {
+        // Wide logo, decoded from PNG
+        BufferedImage logo = TokenThumbnails.decode(TokenThumbnails.toPng(filled(400, 200, RED))).orElseThrow();
+        BufferedImage thumbnail = TokenThumbnails.resize(logo, 20);
+
+        assertEquals(20, thumbnail.getWidth());
+        assertEquals(20, thumbnail.getHeight());
+        // Centered, transparent above and below
+        assertEquals(RED, thumbnail.getRGB(10, 10));
+        assertEquals(0, thumbnail.getRGB(10, 0) >>> 24);
+        assertEquals(0, thumbnail.getRGB(10, 19) >>> 24);
+
+        // Small logos are scaled up
+        assertEquals(40, TokenThumbnails.resize(filled(16, 16, RED), 40).getWidth());
+    }
+
+    @Test
+    public void decodeUnsupportedTest() {
+        byte[] svg = "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"10\" height=\"10\"/>"
+                .getBytes(StandardCharsets.UTF_8);
+        assertTrue(TokenThumbnails.decode(svg).isEmpty());
+        assertTrue(TokenThumbnails.decode(new byte[]{(byte) 0x89, 'P', 'N', 'G', 1, 2, 3}).isEmpty());
+    }
+
+    @Test
+    public void packSpriteTest() {
+        List<BufferedImage> icons = List.of(filled(10, 10, RED), filled(10, 10, BLUE), filled(10, 10, RED));
+        int columns = TokenThumbnails.spriteColumns(icons.size());
+        assertEquals(2, columns);
+
+        BufferedImage sprite = TokenThumbnails.packSprite(icons, 10, columns);
+        assertEquals(20, sprite.getWidth());
+        assertEquals(20, sprite.getHeight());
+        assertEquals(RED, sprite.getRGB(5, 5));
+        assertEquals(BLUE, sprite.getRGB(15, 5));
+        assertEquals(RED, sprite.getRGB(5, 15));
+        // Last cell is empty
+        assertEquals(0, sprite.getRGB(15, 15) >>> 24);
+    }
+
+    private static BufferedImage filled(int width, int height, int argb) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,160 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.model.Fill;
+import com.mmorrell.serumdata.util.TradeJournal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TradeJournalTest {
+
+    private static final int SEGMENT_RECORDS = 100;
+    private static final PublicKey OPEN_ORDERS = new PublicKey("9Lyhks5bQQxb9EyyX55NtgKQzpM4WK7JCmeaWuQ5MoXD");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void appendAndReopenTest() throws IOException {
+        try (TradeJournal journal = open(10)) {
+            assertEquals(-1, journal.getLastSeqNum());
+            assertEquals(250, journal.append(fills(0, 250)));
+            // Re-offered fills are skipped
+            assertEquals(10, journal.append(fills(240, 260)));
+        }
+
+        try (TradeJournal journal = open(10)) {
+            assertEquals(259, journal.getLastSeqNum());
+            assertEquals(260, journal.size());
+
+            List<Fill> latest = journal.getLatestFills(3);
+            assertEquals(List.of(257L, 258L, 259L), latest.stream().map(Fill::getSeqNum).toList());
+
+            Fill fill = latest.get(2);
+            assertEquals(fill(259).getPrice(), fill.getPrice(), 1e-6);
+            assertEquals(2.5f, fill.getQuantity(), 1e-6);
+            assertEquals(OPEN_ORDERS, fill.getOpenOrders());
+            assertTrue(fill.isBid());
+            assertFalse(fill.isMaker());
+        }
+    }
+
+    @Test
+    public void rangeLookupTest() throws IOException {
+        try (TradeJournal journal = open(10)) {
+            journal.append(fills(0, 1_000));
+
+            // Spans segments and index blocks
+            List<Fill> byTime = journal.getFillsByTime(timestamp(150), timestamp(420), 1_000);
+            assertEquals(270, byTime.size());
+            assertEquals(150, byTime.get(0).getSeqNum());
+            assertEquals(419, byTime.get(byTime.size() - 1).getSeqNum());
+
+            List<Fill> bySlot = journal.getFillsBySlot(slot(999), slot(2_000), 1_000);
+            assertEquals(List.of(999L), bySlot.stream().map(Fill::getSeqNum).toList());
+
+            assertEquals(5, journal.getFillsByTime(0, Long.MAX_VALUE, 5).size());
+            assertTrue(journal.getFillsByTime(timestamp(1_000), Long.MAX_VALUE, 10).isEmpty());
+        }
+    }
+
+    @Test
+    public void backfilledFillsTest() throws IOException {
+        try (TradeJournal journal = open(10)) {
+            // Backfilled on a cold start, stamped with the 0 lower bound
+            List<Fill> fills = new ArrayList<>();
+            for (long seqNum = 0; seqNum < 100; seqNum++) {
+                fills.add(Fill.builder()
+                        .seqNum(seqNum)
+                        .slot(slot(seqNum))
+                        .nativeQuantity(2_500_000)
+                        .nativeQuote(50_000_000)
+                        .openOrders(OPEN_ORDERS)
+                        .backfilled(true)
+                        .build());
+            }
+            fills.addAll(fills(100, 200));
+            journal.append(fills);
+        }
+
+        try (TradeJournal journal = open(10)) {
+            assertTrue(journal.getFillsFromSeqNum(0, 1).get(0).isBackfilled());
+            assertFalse(journal.getFillsFromSeqNum(100, 1).get(0).isBackfilled());
+
+            // Only live fills have a time
+            List<Fill> byTime = journal.getFillsByTime(0, Long.MAX_VALUE, 1_000);
+            assertEquals(100, byTime.size());
+            assertEquals(100, byTime.get(0).getSeqNum());
+            // Backfilled fills were still read at a known slot
+            assertEquals(200, journal.getFillsBySlot(0, Long.MAX_VALUE, 1_000).size());
+        }
+    }
+
+    @Test
+    public void segmentRolloverTest() throws IOException {
+        try (TradeJournal journal = open(3)) {
+            journal.append(fills(0, 450));
+
+            // 5 segments written, the oldest 2 deleted
+            assertEquals(3, countSegments());
+            assertEquals(250, journal.size());
+            assertEquals(200, journal.getFillsByTime(0, Long.MAX_VALUE, 1_000).get(0).getSeqNum());
+        }
+
+        try (TradeJournal journal = open(3)) {
+            journal.append(fills(450, 460));
+            assertEquals(459, journal.getLastSeqNum());
+            assertEquals(260, journal.size());
+        }
+    }
+
+    private TradeJournal open(int maxSegments) throws IOException {
+        return new TradeJournal(directory, SEGMENT_RECORDS, maxSegments, 6, 6);
+    }
+
+    private long countSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static List<Fill> fills(long fromSeqNum, long toSeqNum) {
+        List<Fill> fills = new ArrayList<>();
+        for (long seqNum = fromSeqNum; seqNum < toSeqNum; seqNum++) {
+            fills.add(fill(seqNum));
+        }
+        return fills;
+    }
+
+    private static Fill fill(long seqNum) {
+        long nativeQuote = 50_000_000 + seqNum;
+        return Fill.builder()
+                .seqNum(seqNum)
+                .slot(slot(seqNum))
+                .timestamp(timestamp(seqNum))
+                .price((float) (nativeQuote / 1e6 / 2.5))
+                .quantity(2.5f)
+                .nativeQuantity(2_500_000)
+                .nativeQuote(nativeQuote)
+                .openOrders(OPEN_ORDERS)
+                .bid(true)
+                .build();
+    }
+
+    private static long slot(long seqNum) {
+        return 1_000 + seqNum;
+    }
+
+    private static long timestamp(long seqNum) {
+        return 1_700_000_000_000L + seqNum * 10;
+    }
+}
@@ -0,0 +1,204 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.model.Fill;
+import com.mmorrell.serumdata.model.TradeTape;
+import com.mmorrell.serumdata.util.EventQueueDecoder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TradeTapeTest {
+
+    private static final int CAPACITY = 8;
+    private static final int EVENT_SIZE = 88;
+    private static final int EVENTS_OFFSET = 37;
+
+    private static final int FILL = 1;
+    private static final int OUT = 2;
+    private static final int BID = 4;
+    private static final int MAKER = 8;
+
+    @Test
+    public void decodesFillPriceTest() {
+        // Taker buys 2.5 base (6 decimals) for 50 quote (6 decimals) plus a 0.02 fee: price 20
+        EventQueueBuilder queue = new EventQueueBuilder();
+        queue.push(FILL | BID, 2_500_000, 50_020_000, 20_000);
+        // Maker sells the same at a 0.01 rebate
+        queue.push(FILL | MAKER, 50_010_000, 2_500_000, 10_000);
+        queue.push(OUT, 0, 0, 0);
+
+        List<Fill> fills = EventQueueDecoder.decodeFills(queue.build(), 0, 3, 6, 6, 100, 0, false);
+        assertEquals(2, fills.size());
+        assertEquals(20f, fills.get(0).getPrice(), 1e-4);
+        assertEquals(2.5f, fills.get(0).getQuantity(), 1e-6);
+        assertTrue(fills.get(0).isBid());
+        assertEquals(20f, fills.get(1).getPrice(), 1e-4);
+        assertTrue(fills.get(1).isMaker());
+        assertEquals(1, fills.get(1).getSeqNum());
+    }
+
+    @Test
+    public void readsOnlyNewEventsTest() {
+        TradeTape tradeTape = new TradeTape(100);
+        EventQueueBuilder queue = new EventQueueBuilder();
+        queue.pushFills(3);
+        assertEquals(0, tradeTape.record(queue.build(), market(), 1));
+        assertEquals(3, tradeTape.getFills(100).size());
+
+        // Two consumed by the crank, two new ones pushed
+        queue.consume(2);
+        queue.pushFills(2);
+        assertEquals(0, tradeTape.record(queue.build(), market(), 2));
+
+        List<Fill> fills = tradeTape.getFills(100);
+        assertEquals(List.of(4L, 3L, 2L, 1L, 0L), fills.stream().map(Fill::getSeqNum).toList());
+        assertEquals(2, fills.get(0).getSlot());
+        assertEquals(5, tradeTape.getNextSeqNum());
+        assertEquals(List.of(3L, 4L), tradeTape.getFillsSince(3).stream().map(Fill::getSeqNum).toList());
+    }
+
+    @Test
+    public void backfillsFirstReadTest() {
+        TradeTape tradeTape = new TradeTape(100);
+        EventQueueBuilder queue = new EventQueueBuilder();
+        queue.pushFills(3);
+        tradeTape.record(queue.build(), market(), 1);
+
+        // Already in the queue, pushed at unknown times
+        assertTrue(tradeTape.getFills(100).stream().allMatch(Fill::isBackfilled));
+        assertTrue(tradeTape.getFills(100).stream().allMatch(fill -> fill.getTimestamp() == 0));
+
+        long before = System.currentTimeMillis();
+        queue.pushFills(1);
+        tradeTape.record(queue.build(), market(), 2);
+        Fill live = tradeTape.getFills(1).get(0);
+        assertFalse(live.isBackfilled());
+        assertTrue(live.getTimestamp() >= before);
+    }
+
+    @Test
+    public void backfillsCatchUpAfterRestoreTest() {
+        long persistedTime = 1_700_000_000_000L;
+        Fill persisted = Fill.builder()
+                .seqNum(1)
+                .timestamp(persistedTime)
+                .build();
+        TradeTape tradeTape = new TradeTape(100);
+        tradeTape.restore(List.of(persisted), 1);
+
+        // Pushed while down: seqNum 2 - 4 are backfilled, stamped no later than the last persisted fill
+        EventQueueBuilder queue = new EventQueueBuilder();
+        queue.pushFills(5);
+        tradeTape.record(queue.build(), market(), 1);
+        List<Fill> caughtUp = tradeTape.getFillsSince(2);
+        assertEquals(List.of(2L, 3L, 4L), caughtUp.stream().map(Fill::getSeqNum).toList());
+        assertTrue(caughtUp.stream().allMatch(fill -> fill.isBackfilled() && fill.getTimestamp() == persistedTime));
+
+        queue.pushFills(1);
+        tradeTape.record(queue.build(), market(), 2);
+        assertFalse(tradeTape.getFills(1).get(0).isBackfilled());
+    }
+
+    @Test
+    public void skipsOlderReadsTest() {
+        TradeTape tradeTape = new TradeTape(100);
+        EventQueueBuilder queue = new EventQueueBuilder();
+        queue.pushFills(2);
+        ByteBuffer older = queue.build();
+        queue.pushFills(2);
+
+        tradeTape.record(queue.build(), market(), 2);
+        tradeTape.record(older, market(), 1);
+        assertEquals(4, tradeTape.getFills(100).size());
+    }
+
+    @Test
+    public void detectsGapTest() {
+        TradeTape tradeTape = new TradeTape(100);
+        EventQueueBuilder queue = new EventQueueBuilder();
+        queue.pushFills(2);
+        tradeTape.record(queue.build(), market(), 1);
+
+        // 11 more events between reads, 3 more than the ring holds
+        for (int i = 0; i < 11; i++) {
+            queue.pushFills(1);
+            queue.consume(1);
+        }
+        assertEquals(3, tradeTape.record(queue.build(), market(), 2));
+        assertEquals(1, tradeTape.getGapCount());
+        assertEquals(3, tradeTape.getMissedEvents());
+
+        // Readable window is the last CAPACITY events, seqNum 5 - 12
+        List<Fill> fills = tradeTape.getFills(100);
+        assertEquals(2 + CAPACITY, fills.size());
+        assertEquals(12, fills.get(0).getSeqNum());
+        assertEquals(5, fills.get(CAPACITY - 1).getSeqNum());
+    }
+
+    @Test
+    public void boundedCapacityTest() {
+        TradeTape tradeTape = new TradeTape(4);
+        EventQueueBuilder queue = new EventQueueBuilder();
+        queue.pushFills(6);
+        tradeTape.record(queue.build(), market(), 1);
+
+        assertEquals(List.of(5L, 4L, 3L, 2L), tradeTape.getFills(10).stream().map(Fill::getSeqNum).toList());
+        assertEquals(List.of(5L), tradeTape.getFills(1).stream().map(Fill::getSeqNum).toList());
+    }
+
+    private static Market market() {
+        Market market = new Market();
+        market.setBaseDecimals((byte) 6);
+        market.setQuoteDecimals((byte) 6);
+        return market;
+    }
+
+    // Ring buffer with the on-chain push/pop semantics
+    private static class EventQueueBuilder {
+        private final ByteBuffer data = ByteBuffer.allocate(EVENTS_OFFSET + CAPACITY * EVENT_SIZE + 7)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        private long head;
+        private long count;
+        private long seqNum;
+
+        void push(int flags, long released, long paid, long feeOrRebate) {
+            int event = EVENTS_OFFSET + (int) ((head + count) % CAPACITY) * EVENT_SIZE;
+            data.put(event, (byte) flags);
+            data.putLong(event + 8, released);
+            data.putLong(event + 16, paid);
+            data.putLong(event + 24, feeOrRebate);
+            data.put(event + 48, (byte) seqNum);
+            if (count == CAPACITY) {
+                head = (head + 1) % CAPACITY;
+            } else {
+                count++;
+            }
+            seqNum++;
+        }
+
+        void pushFills(int fills) {
+            for (int i = 0; i < fills; i++) {
+                push(FILL | BID, 1_000_000, 10_000_000, 0);
+            }
+        }
+
+        void consume(int events) {
+            head = (head + events) % CAPACITY;
+            count -= events;
+        }
+
+        ByteBuffer build() {
+            data.putLong(13, head);
+            data.putLong(21, count);
+            data.putLong(29, seqNum);
+            ByteBuffer copy = ByteBuffer.allocate(data.capacity());
+            copy.put(data.duplicate().clear());
+            return copy.flip();
+        }
+    }
+}